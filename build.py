@@ -195,6 +195,7 @@ CTX.INPUT['executors'] = """
  deleteexecutor.cpp
  distinctexecutor.cpp
  executorutil.cpp
+ hashjoinexecutor.cpp
  indexscanexecutor.cpp
  insertexecutor.cpp
  limitexecutor.cpp
@@ -206,6 +207,7 @@ CTX.INPUT['executors'] = """
  receiveexecutor.cpp
  sendexecutor.cpp
  seqscanexecutor.cpp
+ tuplebatch.cpp
  unionexecutor.cpp
  updateexecutor.cpp
 """
@@ -224,6 +226,7 @@ CTX.INPUT['plannodes'] = """
  aggregatenode.cpp
  deletenode.cpp
  distinctnode.cpp
+ hashjoinnode.cpp
  indexscannode.cpp
  insertnode.cpp
  limitnode.cpp
@@ -270,6 +273,7 @@ CTX.INPUT['storage'] = """
 """
 
 CTX.INPUT['stats'] = """
+ FragmentCacheStats.cpp
  StatsAgent.cpp
  StatsSource.cpp
 """
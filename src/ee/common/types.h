@@ -162,6 +162,7 @@ enum PlanNodeType {
     //
     PLAN_NODE_TYPE_NESTLOOP         = 20,
     PLAN_NODE_TYPE_NESTLOOPINDEX    = 21,
+    PLAN_NODE_TYPE_HASHJOIN         = 22,
 
     //
     // Operator Nodes
@@ -282,6 +283,8 @@ enum TableIndexType {
     BALANCED_TREE_INDEX     = 1,
     HASH_TABLE_INDEX        = 2,
     ARRAY_INDEX             = 3,
+    BTREE_INDEX             = 4,
+    OPEN_HASH_INDEX         = 5,
 };
 
 // ------------------------------------------------------------------
@@ -303,8 +306,10 @@ enum IndexLookupType {
 // ------------------------------------------------------------------
 // Statistics Selector Types
 // ------------------------------------------------------------------
+// These must match the ordinals of org.voltdb.SysProcSelector
 enum StatisticsSelectorType {
-    STATISTICS_SELECTOR_TYPE_TABLE
+    STATISTICS_SELECTOR_TYPE_TABLE        = 0,
+    STATISTICS_SELECTOR_TYPE_PLANFRAGMENT = 7
 };
 
 // ------------------------------------------------------------------
@@ -50,6 +50,7 @@
 #include <sstream>
 #include <unistd.h>
 #include <locale>
+#include <algorithm>
 #include "boost/shared_array.hpp"
 #include "boost/scoped_array.hpp"
 #include "boost/foreach.hpp"
@@ -90,6 +91,7 @@
 #include "executors/executorutil.h"
 #include "storage/table.h"
 #include "storage/tablefactory.h"
+#include "storage/temptable.h"
 #include "indexes/tableindex.h"
 #include "storage/constraintutil.h"
 #include "storage/persistenttable.h"
@@ -107,6 +109,22 @@ namespace voltdb {
 
 const int64_t AD_HOC_FRAG_ID = -1;
 
+/**
+ * Add the TempTables that the given PlanNode and its inline PlanNodes write
+ * into to the list (without duplicates)
+ */
+static void collectTempTables(AbstractPlanNode* node, std::vector<TempTable*> &tables) {
+    TempTable *table = dynamic_cast<TempTable*>(node->getOutputTable());
+    if (table != NULL && std::find(tables.begin(), tables.end(), table) == tables.end()) {
+        tables.push_back(table);
+    }
+    std::map<PlanNodeType, AbstractPlanNode*>::iterator internal_it;
+    for (internal_it = node->getInlinePlanNodes().begin();
+         internal_it != node->getInlinePlanNodes().end(); internal_it++) {
+        collectTempTables(internal_it->second, tables);
+    } // FOR
+}
+
 VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
     : m_currentUndoQuantum(NULL),
       m_staticParams(MAX_PARAM_COUNT),
@@ -115,6 +133,7 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
       m_isELEnabled(false),
       m_stringPool(16777216, 2),
       m_numResultDependencies(0),
+      m_numLocalDependencies(0),
       m_logManager(logProxy),
       m_templateSingleLongTable(NULL),
       m_topend(topend)
@@ -124,6 +143,10 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
     // init the number of planfragments executed
     m_pfCount = 0;
 
+    // nothing is warm until it gets executed
+    m_warmFragmentCount = 0;
+    m_warmFragmentLimit = WARM_FRAGMENT_CACHE_SIZE;
+
     // require a site id, at least, to inititalize.
     m_executorContext = NULL;
 }
@@ -286,6 +309,7 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
      * number of produced depenencies may not be known in advance.
      */
     m_numResultDependencies = 0;
+    m_numLocalDependencies = 0;
     std::size_t numResultDependenciesCountOffset = m_resultOutput.reserveBytes(4);
 
     // configure the execution context.
@@ -313,6 +337,12 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
     assert (iter != m_executorMap.end());
     boost::shared_ptr<ExecutorVector> execsForFrag = iter->second;
 
+    // Keep this fragment's output tables warm so that the blocks they
+    // allocate are still there the next time that it gets executed.
+    // Ad-hoc fragments get thrown away right after this, so don't bother
+    if (planfragmentId != AD_HOC_FRAG_ID)
+        warmFragment(planfragmentId, execsForFrag.get());
+
     // PAVLO: If we see a SendPlanNode with the "fake" flag set to true,
     // then we won't really execute it and instead will send back the 
     // number of tuples that we modified
@@ -373,12 +403,18 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
         cleanUpTable->deleteAllTuples(false);
 
     // assume this is sendless dml
-    if (send_tuple_count || m_numResultDependencies == 0) {
+    if (send_tuple_count || (m_numResultDependencies == 0 && m_numLocalDependencies == 0)) {
         // put the number of tuples modified into our simple table
         uint64_t changedCount = htonll(m_tuplesModified);
         memcpy(m_templateSingleLongTable + m_templateSingleLongTableSize - 8, &changedCount, sizeof(changedCount));
-        m_resultOutput.writeBytes(m_templateSingleLongTable, m_templateSingleLongTableSize);
-        m_numResultDependencies++;
+        if (isLocalDependency(m_currentOutputDepId)) {
+            // skip the dependency id at the front of the template
+            storeLocalDependency(m_templateSingleLongTable + sizeof(int32_t),
+                                 m_templateSingleLongTableSize - sizeof(int32_t));
+        } else {
+            m_resultOutput.writeBytes(m_templateSingleLongTable, m_templateSingleLongTableSize);
+            m_numResultDependencies++;
+        }
     }
 
     //Write the number of result dependencies if necessary.
@@ -477,6 +513,19 @@ int VoltDBEngine::executePlanFragment(std::string fragmentString,
 // RESULT FUNCTIONS
 // -------------------------------------------------
 bool VoltDBEngine::send(Table* dependency) {
+    // If a later fragment in this batch is going to read this dependency,
+    // then there is no reason to send it all the way up to Java and back
+    if (isLocalDependency(m_currentOutputDepId)) {
+        VOLT_DEBUG("Keeping Dependency '%d' in the EE for the rest of the batch", m_currentOutputDepId);
+        size_t start = m_localDependencyBuffer->position();
+        if (!dependency->serializeTo(*m_localDependencyBuffer))
+            return false;
+        m_localDependencies.insert(std::make_pair(m_currentOutputDepId,
+                                                  std::make_pair(start, m_localDependencyBuffer->position() - start)));
+        m_numLocalDependencies++;
+        return true;
+    }
+
     VOLT_DEBUG("Sending Dependency '%d' from C++", m_currentOutputDepId);
     m_resultOutput.writeInt(m_currentOutputDepId);
     if (!dependency->serializeTo(m_resultOutput))
@@ -486,9 +535,61 @@ bool VoltDBEngine::send(Table* dependency) {
 }
 
 int VoltDBEngine::loadNextDependency(Table* destination) {
+    // Check whether an earlier fragment in this batch left it for us
+    if (m_localDependencies.empty() == false) {
+        std::multimap<int32_t, std::pair<size_t, size_t> >::iterator iter =
+            m_localDependencies.find(m_currentInputDepId);
+        if (iter != m_localDependencies.end()) {
+            VOLT_DEBUG("Loading Dependency '%d' from the EE [length=%ld]",
+                       m_currentInputDepId, (long)iter->second.second);
+            // Skip over the total table size at the front
+            ReferenceSerializeInput serialize_in(m_localDependencyBuffer->data() + iter->second.first + sizeof(int32_t),
+                                                 iter->second.second - sizeof(int32_t));
+            destination->loadTuplesFrom(true, serialize_in, &m_stringPool);
+            m_localDependencies.erase(iter);
+            return 1;
+        }
+    }
+    // If this dependency was produced inside of this batch, then Java never
+    // saw it and there is nothing else for us to go ask the topend for
+    if (isLocalDependency(m_currentInputDepId)) {
+        return 0;
+    }
     return m_topend->loadNextDependency(m_currentInputDepId, &m_stringPool, destination);
 }
 
+void VoltDBEngine::prepareLocalDependencies(int batchSize, const int32_t *inputDepIds, const int32_t *outputDepIds) {
+    clearLocalDependencies();
+
+    // Walk backwards so that we know what the fragments after each one need
+    std::set<int32_t> laterInputDepIds;
+    for (int i = batchSize - 1; i >= 0; i--) {
+        if (outputDepIds[i] >= 0 && laterInputDepIds.find(outputDepIds[i]) != laterInputDepIds.end()) {
+            m_localDependencyIds.insert(outputDepIds[i]);
+        }
+        if (inputDepIds[i] >= 0) laterInputDepIds.insert(inputDepIds[i]);
+    } // FOR
+
+    if (m_localDependencyIds.empty() == false && m_localDependencyBuffer == NULL) {
+        m_localDependencyBuffer.reset(new CopySerializeOutput());
+    }
+    VOLT_DEBUG("Keeping %d of the output dependencies for %d fragments in the EE",
+               (int)m_localDependencyIds.size(), batchSize);
+}
+
+void VoltDBEngine::clearLocalDependencies() {
+    m_localDependencyIds.clear();
+    m_localDependencies.clear();
+    if (m_localDependencyBuffer != NULL) m_localDependencyBuffer->reset();
+}
+
+void VoltDBEngine::storeLocalDependency(const char *data, size_t length) {
+    size_t start = m_localDependencyBuffer->position();
+    m_localDependencyBuffer->writeBytes(data, length);
+    m_localDependencies.insert(std::make_pair(m_currentOutputDepId, std::make_pair(start, length)));
+    m_numLocalDependencies++;
+}
+
 // -------------------------------------------------
 // Catalog Functions
 // -------------------------------------------------
@@ -542,6 +643,17 @@ bool VoltDBEngine::loadCatalog(const std::string &catalogPayload) {
     // load up all the materialized views
     initMaterializedViews();
 
+    // the warm fragment cache is not tied to anything in the catalog,
+    // so its stats source is always registered under locator zero
+    m_fragmentCacheStats.configure("Fragment cache stats",
+                                   m_executorContext->m_hostId,
+                                   m_executorContext->m_hostname,
+                                   m_siteId,
+                                   m_partitionId,
+                                   m_database->relativeIndex());
+    getStatsManager().registerStatsSource(STATISTICS_SELECTOR_TYPE_PLANFRAGMENT,
+                                          0, &m_fragmentCacheStats);
+
     // load the plan fragments from the catalog
     if (!clearAndLoadAllPlanFragments())
         return false;
@@ -621,6 +733,8 @@ bool VoltDBEngine::clearAndLoadAllPlanFragments() {
         delete m_planFragments[ii];
     m_planFragments.clear();
     m_executorMap.clear();
+    m_warmFragments.clear();
+    m_warmFragmentCount = 0;
 
     // initialize all the planfragments.
     std::map<std::string, catalog::Procedure*>::const_iterator proc_iterator;
@@ -707,6 +821,7 @@ bool VoltDBEngine::initPlanFragment(const int64_t fragId,
 
     boost::shared_ptr<ExecutorVector> ev = boost::shared_ptr<ExecutorVector>(new ExecutorVector());
     ev->tempTableMemoryInBytes = 0;
+    ev->warm = false;
 
     // Initialize each node!
     for (int ctr = 0, cnt = (int)pnf->getExecuteList().size();
@@ -725,12 +840,88 @@ bool VoltDBEngine::initPlanFragment(const int64_t fragId,
     for (int ctr = 0, cnt = (int)pnf->getExecuteList().size();
          ctr < cnt; ctr++) {
         ev->list.push_back(pnf->getExecuteList()[ctr]->getExecutor());
+        collectTempTables(pnf->getExecuteList()[ctr], ev->tempTables);
     }
     m_executorMap[fragId] = ev;
 
     return true;
 }
 
+// -------------------------------------------------
+// Warm Fragment Functions
+// -------------------------------------------------
+void VoltDBEngine::setWarmFragmentLimit(size_t limit) {
+    m_warmFragmentLimit = limit;
+    while (m_warmFragmentCount > m_warmFragmentLimit) {
+        std::map<int64_t, boost::shared_ptr<ExecutorVector> >::const_iterator victim =
+            m_executorMap.find(m_warmFragments.back());
+        assert (victim != m_executorMap.end());
+        coolFragment(victim->second.get());
+        m_fragmentCacheStats.recordEviction();
+    } // WHILE
+}
+
+void VoltDBEngine::warmFragment(const int64_t fragId, ExecutorVector *ev) {
+    if (ev->warm) {
+        m_fragmentCacheStats.recordHit();
+        m_warmFragments.splice(m_warmFragments.begin(), m_warmFragments, ev->lruPosition);
+        return;
+    }
+    m_fragmentCacheStats.recordMiss();
+    if (m_warmFragmentLimit == 0) return;
+
+    // Make room by evicting whatever fragment was executed the longest time ago
+    while (m_warmFragmentCount >= m_warmFragmentLimit) {
+        std::map<int64_t, boost::shared_ptr<ExecutorVector> >::const_iterator victim =
+            m_executorMap.find(m_warmFragments.back());
+        assert (victim != m_executorMap.end());
+        VOLT_DEBUG("Evicting PlanFragment %jd from the warm fragment list to make room for %jd",
+                   (intmax_t)victim->first, (intmax_t)fragId);
+        coolFragment(victim->second.get());
+        m_fragmentCacheStats.recordEviction();
+    } // WHILE
+
+    m_warmFragments.push_front(fragId);
+    ev->lruPosition = m_warmFragments.begin();
+    ev->warm = true;
+    m_warmFragmentCount++;
+    for (int ctr = 0, cnt = (int)ev->tempTables.size(); ctr < cnt; ctr++) {
+        ev->tempTables[ctr]->setRetainedBlockCount(TEMP_TABLE_MAX_RETAINED_BLOCKS);
+    } // FOR
+}
+
+void VoltDBEngine::coolFragment(ExecutorVector *ev) {
+    assert (ev->warm);
+    m_warmFragments.erase(ev->lruPosition);
+    m_warmFragmentCount--;
+    ev->warm = false;
+
+    // Whatever is left in these tables is from the last time that the
+    // fragment was executed, so we can drop it and give back the blocks now
+    for (int ctr = 0, cnt = (int)ev->tempTables.size(); ctr < cnt; ctr++) {
+        ev->tempTables[ctr]->deleteAllTuplesNonVirtual(false);
+        ev->tempTables[ctr]->setRetainedBlockCount(1);
+    } // FOR
+}
+
+void VoltDBEngine::updateFragmentCacheStats() {
+    int64_t retained = 0;
+    int64_t total = 0;
+    std::map<int64_t, boost::shared_ptr<ExecutorVector> >::const_iterator iter;
+    for (iter = m_executorMap.begin(); iter != m_executorMap.end(); iter++) {
+        // Count the blocks that the temp tables are actually holding on to
+        // instead of the estimate that we got when the executors were initialized
+        int64_t bytes = 0;
+        const std::vector<TempTable*> &tempTables = iter->second->tempTables;
+        for (int ctr = 0, cnt = (int)tempTables.size(); ctr < cnt; ctr++) {
+            bytes += tempTables[ctr]->getAllocatedBlockMemory();
+        } // FOR
+        total += bytes;
+        if (iter->second->warm) retained += bytes;
+    } // FOR
+    m_fragmentCacheStats.setCacheState(m_warmFragmentCount, m_warmFragmentLimit, retained, total);
+}
+
 bool VoltDBEngine::initPlanNode(const int64_t fragId, AbstractPlanNode* node, int* tempTableMemoryInBytes) {
     assert(node);
     assert(node->getExecutor() == NULL);
@@ -1187,6 +1378,15 @@ int VoltDBEngine::getStats(int selector, int locators[], int numLocators,
                 locatorIds, interval, now);
 
             break;
+        case STATISTICS_SELECTOR_TYPE_PLANFRAGMENT:
+            // there is only one source for the fragment cache
+            locatorIds.clear();
+            locatorIds.push_back(0);
+            updateFragmentCacheStats();
+            resultTable = m_statsManager.getStats(
+                (voltdb::StatisticsSelectorType) selector,
+                locatorIds, interval, now);
+            break;
         default:
             char message[256];
             sprintf(message, "getStats() called with an unrecognized selector"
@@ -46,11 +46,13 @@
 #ifndef VOLTDBENGINE_H
 #define VOLTDBENGINE_H
 
+#include <list>
 #include <map>
 #include <set>
 #include <string>
 #include <vector>
 #include "boost/shared_ptr.hpp"
+#include "boost/scoped_ptr.hpp"
 #include "json_spirit/json_spirit.h"
 #include "catalog/database.h"
 #include "common/ids.h"
@@ -68,6 +70,7 @@
 #include "logging/LogProxy.h"
 #include "logging/StdoutLogProxy.h"
 #include "stats/StatsAgent.h"
+#include "stats/FragmentCacheStats.h"
 
 // shorthand for ExecutionEngine versions generated by javah
 #define ENGINE_ERRORCODE_SUCCESS 0
@@ -75,6 +78,7 @@
 
 #define MAX_BATCH_COUNT 1000
 #define MAX_PARAM_COUNT 1000 // or whatever
+#define WARM_FRAGMENT_CACHE_SIZE 32
 
 namespace boost {
 template <typename T> class shared_ptr;
@@ -97,6 +101,7 @@ class AbstractPlanNode;
 class SerializeInput;
 class SerializeOutput;
 class Table;
+class TempTable;
 class ReferenceSerializeInput;
 class ReferenceSerializeOutput;
 class PlanNodeFragment;
@@ -118,6 +123,7 @@ class __attribute__((visibility("default"))) VoltDBEngine {
           m_currentInputDepId(-1),
           m_isELEnabled(false),
           m_numResultDependencies(0),
+          m_numLocalDependencies(0),
           m_logManager(new StdoutLogProxy()), m_templateSingleLongTable(NULL), m_topend(NULL)
         {
             m_currentUndoQuantum = new DummyUndoQuantum();
@@ -167,6 +173,22 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         bool send(Table* dependency);
         int loadNextDependency(Table* destination);
 
+        /**
+         * Look at the dependency ids for a batch of fragments that is about to be
+         * executed and find the output dependencies that are consumed by a later
+         * fragment in the same batch. These dependencies are kept in native memory
+         * and handed straight to the fragment that needs them instead of being
+         * sent back up to Java. Only the remaining outputs go into the result buffer.
+         */
+        void prepareLocalDependencies(int batchSize, const int32_t *inputDepIds, const int32_t *outputDepIds);
+
+        /**
+         * Throw away whatever is left over from the last batch.
+         * Must be called once the batch is finished so that single fragment
+         * executions always send their results back to Java.
+         */
+        void clearLocalDependencies();
+
         // -------------------------------------------------
         // Catalog Functions
         // -------------------------------------------------
@@ -285,6 +307,13 @@ class __attribute__((visibility("default"))) VoltDBEngine {
                 bool interval,
                 int64_t now);
 
+        /**
+         * Set the maximum number of plan fragments that are kept warm at the same time.
+         * The output temp tables of a warm fragment hold on to their blocks between
+         * invocations. Fragments beyond the limit are evicted in LRU order.
+         */
+        void setWarmFragmentLimit(size_t limit);
+
         inline Pool* getStringPool() { return &m_stringPool; }
 
         inline LogManager* getLogManager() {
@@ -393,9 +422,27 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         struct ExecutorVector {
             std::vector<AbstractExecutor*> list;
             int tempTableMemoryInBytes;
+            /** Output tables of the executors (including inline nodes) */
+            std::vector<TempTable*> tempTables;
+            /** Whether this fragment is in the warm fragment list */
+            bool warm;
+            std::list<int64_t>::iterator lruPosition;
         };
         std::map<int64_t, boost::shared_ptr<ExecutorVector> > m_executorMap;
 
+        /**
+         * Warm plan fragments, most recently executed first.
+         * The temp tables of these fragments keep their blocks after they are cleared
+         */
+        std::list<int64_t> m_warmFragments;
+        size_t m_warmFragmentCount;
+        size_t m_warmFragmentLimit;
+        FragmentCacheStats m_fragmentCacheStats;
+
+        void warmFragment(const int64_t fragId, ExecutorVector *ev);
+        void coolFragment(ExecutorVector *ev);
+        void updateFragmentCacheStats();
+
         voltdb::UndoLog m_undoLog;
         voltdb::UndoQuantum *m_currentUndoQuantum;
 
@@ -479,6 +526,30 @@ class __attribute__((visibility("default"))) VoltDBEngine {
          */
         int32_t m_numResultDependencies;
 
+        /*
+         * When executing a plan fragment this is set to the number of output dependencies
+         * that were kept in m_localDependencyBuffer for a later fragment in the batch
+         */
+        int32_t m_numLocalDependencies;
+
+        /*
+         * Output dependency ids in the current batch that are consumed by a later fragment
+         * in the same batch
+         */
+        std::set<int32_t> m_localDependencyIds;
+
+        /*
+         * DependencyId -> (offset, length) of the serialized tables in m_localDependencyBuffer
+         */
+        std::multimap<int32_t, std::pair<size_t, size_t> > m_localDependencies;
+        boost::scoped_ptr<CopySerializeOutput> m_localDependencyBuffer;
+
+        inline bool isLocalDependency(int32_t dependencyId) const {
+            return (m_localDependencyIds.empty() == false &&
+                    m_localDependencyIds.find(dependencyId) != m_localDependencyIds.end());
+        }
+        void storeLocalDependency(const char *data, size_t length);
+
         /*
          * Cache plan node fragments in order to allow for deletion.
          */
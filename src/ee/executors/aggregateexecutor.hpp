@@ -60,6 +60,7 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "executors/abstractexecutor.h"
+#include "executors/tuplebatch.h"
 #include "expressions/abstractexpression.h"
 #include "plannodes/aggregatenode.h"
 #include "plannodes/projectionnode.h"
@@ -313,6 +314,31 @@ private:
     bool m_haveAdvanced;
 };
 
+/*
+ * An aggregate whose result was already computed somewhere else
+ * (i.e., column-wise by a BatchAggregate)
+ */
+class PrecomputedAgg : public Agg
+{
+public:
+    PrecomputedAgg(const NValue value) :
+        m_value(value)
+    {}
+
+    void advance(const NValue val)
+    {
+        throwFatalException("Unexpected call to advance a precomputed aggregate");
+    }
+
+    NValue finalize()
+    {
+        return m_value;
+    }
+
+private:
+    NValue m_value;
+};
+
 /*
  * Create an instance of an aggregator for the specified aggregate
  * type, column type, and result type. The object is constructed in
@@ -367,7 +393,8 @@ class AggregateExecutor : public AbstractExecutor
 {
 public:
     AggregateExecutor(VoltDBEngine* engine, AbstractPlanNode* abstract_node) :
-        AbstractExecutor(engine, abstract_node), m_groupByKeySchema(NULL)
+        AbstractExecutor(engine, abstract_node), m_groupByKeySchema(NULL),
+        m_batched(false)
     { };
     ~AggregateExecutor();
 
@@ -375,6 +402,8 @@ protected:
     bool p_init(AbstractPlanNode* abstract_node,
                 const catalog::Database *catalog_db, int* tempTableMemoryInBytes);
     bool p_execute(const NValueArray &params);
+    bool p_executeBatched(AggregatePlanNode* node, Table* input_table,
+                          Table* output_table);
 
     /*
      * List of mappings of columns from the output table that are
@@ -384,6 +413,15 @@ protected:
     PassThroughColType m_passThroughColumns;
     Pool m_memoryPool;
     TupleSchema* m_groupByKeySchema;
+
+    /*
+     * When there is no GROUP BY and all of the aggregates can be
+     * computed column-wise, we process the input table a batch of
+     * tuples at a time instead.
+     */
+    bool m_batched;
+    TupleBatch m_batch;
+    std::vector<BatchAggregate> m_batchAggregates;
 };
 
 /*
@@ -619,7 +657,7 @@ public:
         {
             VOLT_TRACE("no record. outputting a NULL row..");
             Agg** aggregates =
-                static_cast<Agg**>(m_memoryPool->allocate(sizeof(void*)));
+                static_cast<Agg**>(m_memoryPool->allocate(sizeof(void*) * m_colTypes->size()));
             for (int i = 0; i < m_colTypes->size(); i++)
             {
                 // It is necessary to look up the mapping between the
@@ -968,6 +1006,29 @@ AggregateExecutor<aggregateType>::p_init(AbstractPlanNode *abstract_node,
                                                    groupByColumnAllowNull,
                                                    true);
         delete[] columnNames;
+
+        /*
+         * Check whether we can use batch execution
+         */
+        m_batched = groupByColumns.empty() &&
+                    !node->getAggregateOutputColumns().empty();
+        std::vector<ExpressionType> aggregateTypes = node->getAggregates();
+        for (int ii = 0; m_batched && ii < aggregateTypes.size(); ii++)
+        {
+            m_batched = BatchAggregate::isSupported(aggregateTypes[ii],
+                            childSchema->columnType(aggregateColumns[ii]));
+        }
+        if (m_batched)
+        {
+            m_batchAggregates.resize(aggregateTypes.size());
+            for (int ii = 0; ii < aggregateTypes.size(); ii++)
+            {
+                m_batchAggregates[ii].init(aggregateTypes[ii], childSchema,
+                                           aggregateColumns[ii]);
+            }
+        }
+        VOLT_DEBUG("Batch execution for %s: %d",
+                   node->debug().c_str(), (int)m_batched);
     }
     return true;
 }
@@ -988,6 +1049,11 @@ bool AggregateExecutor<aggregateType>::p_execute(const NValueArray &params)
     assert(input_table);
     VOLT_DEBUG("%s Input Table\n%s", node->debug().c_str(), input_table->debug().c_str());
 
+    if (m_batched)
+    {
+        return p_executeBatched(node, input_table, output_table);
+    }
+
     std::vector<ExpressionType> agg_types = node->getAggregates();
     std::vector<ValueType> col_types(node->getAggregateColumns().size());
     for (int i = 0; i < col_types.size(); i++)
@@ -1026,6 +1092,64 @@ bool AggregateExecutor<aggregateType>::p_execute(const NValueArray &params)
     return true;
 }
 
+//
+// Computes all of the aggregates column-wise over batches of tuples.
+// This is only used when there is no GROUP BY, so there is always
+// exactly one output tuple.
+//
+template<PlanNodeType aggregateType>
+bool AggregateExecutor<aggregateType>::p_executeBatched(AggregatePlanNode* node,
+                                                         Table* input_table,
+                                                         Table* output_table)
+{
+    const int num_aggs = static_cast<int>(m_batchAggregates.size());
+    for (int ii = 0; ii < num_aggs; ii++)
+    {
+        m_batchAggregates[ii].reset();
+    }
+
+    TableIterator it(input_table);
+    TableTuple cur(input_table->schema());
+    char* first = NULL;
+    char* last = NULL;
+    VOLT_TRACE("looping [batched]..");
+    while (m_batch.fill(it, cur) > 0)
+    {
+        if (first == NULL) first = m_batch.get(0);
+        last = m_batch.get(m_batch.size() - 1);
+        for (int ii = 0; ii < num_aggs; ii++)
+        {
+            m_batchAggregates[ii].advance(m_batch);
+        }
+    }
+
+    VOLT_TRACE("finalizing [batched]..");
+    Agg** aggs = static_cast<Agg**>(m_memoryPool.allocate(sizeof(void*) * num_aggs));
+    for (int ii = 0; ii < num_aggs; ii++)
+    {
+        aggs[ii] = new (m_memoryPool.allocate(sizeof(PrecomputedAgg)))
+            PrecomputedAgg(m_batchAggregates[ii].finalize());
+    }
+
+    // The pass through columns come from the last tuple when the input is
+    // sorted and from the first tuple of the group when it is hashed
+    TableTuple passThrough(input_table->schema());
+    char* passThroughAddress = (aggregateType == PLAN_NODE_TYPE_HASHAGGREGATE ? first : last);
+    if (passThroughAddress != NULL)
+    {
+        passThrough.move(passThroughAddress);
+    }
+    if (!helper(node, aggs, output_table, input_table, passThrough,
+                &m_passThroughColumns))
+    {
+        return false;
+    }
+
+    VOLT_TRACE("finished");
+    VOLT_TRACE("output table\n%s", output_table->debug().c_str());
+    return true;
+}
+
 template<PlanNodeType aggregateType>
 AggregateExecutor<aggregateType>::~AggregateExecutor()
 {
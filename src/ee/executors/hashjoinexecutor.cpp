@@ -0,0 +1,261 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <stack>
+#include "hashjoinexecutor.h"
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "expressions/abstractexpression.h"
+#include "expressions/tuplevalueexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "plannodes/hashjoinnode.h"
+
+namespace voltdb {
+
+/**
+ * Returns true if the given type is stored as an integer that we can
+ * safely promote to a BIGINT for hashing
+ */
+static inline bool isIntegralKeyType(ValueType type) {
+    switch (type) {
+        case VALUE_TYPE_TINYINT:
+        case VALUE_TYPE_SMALLINT:
+        case VALUE_TYPE_INTEGER:
+        case VALUE_TYPE_BIGINT:
+            return true;
+        default:
+            return false;
+    }
+}
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstract_node, const catalog::Database* catalog_db, int* tempTableMemoryInBytes) {
+    VOLT_TRACE("init HashJoin Executor");
+
+    // Let the NestLoopExecutor build our output table and figure out
+    // which tuple each column reference in the predicate belongs to
+    if (!NestLoopExecutor::p_init(abstract_node, catalog_db, tempTableMemoryInBytes)) {
+        return false;
+    }
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+
+    m_outerKeys.clear();
+    m_innerKeys.clear();
+    m_keyTypes.clear();
+    collectJoinKeys(node->getPredicate(),
+                    node->getInputTables()[0]->schema(),
+                    node->getInputTables()[1]->schema());
+
+    if (m_keyTypes.empty()) {
+        VOLT_WARN("No equality clauses in HashJoin predicate. Falling back to nested-loop join");
+    } else {
+        VOLT_DEBUG("HashJoin using %d key columns", (int)m_keyTypes.size());
+    }
+    return true;
+}
+
+/**
+ * Find all of the "outer.col = inner.col" clauses that are AND'ed together
+ * at the top of the predicate and use them as our join keys
+ */
+void HashJoinExecutor::collectJoinKeys(const AbstractExpression *predicate,
+                                       const TupleSchema *outer_schema,
+                                       const TupleSchema *inner_schema) {
+    std::stack<const AbstractExpression*> stack;
+    if (predicate != NULL) stack.push(predicate);
+    while (!stack.empty()) {
+        const AbstractExpression *expr = stack.top();
+        stack.pop();
+
+        if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND) {
+            if (expr->getLeft() != NULL) stack.push(expr->getLeft());
+            if (expr->getRight() != NULL) stack.push(expr->getRight());
+            continue;
+        }
+        if (expr->getExpressionType() != EXPRESSION_TYPE_COMPARE_EQUAL ||
+            expr->getLeft() == NULL || expr->getRight() == NULL ||
+            expr->getLeft()->getExpressionType() != EXPRESSION_TYPE_VALUE_TUPLE ||
+            expr->getRight()->getExpressionType() != EXPRESSION_TYPE_VALUE_TUPLE) {
+            continue;
+        }
+
+        TupleValueExpression *left = dynamic_cast<TupleValueExpression*>(const_cast<AbstractExpression*>(expr->getLeft()));
+        TupleValueExpression *right = dynamic_cast<TupleValueExpression*>(const_cast<AbstractExpression*>(expr->getRight()));
+        assert(left && right);
+        if (left->getTupleIndex() == right->getTupleIndex()) {
+            continue;
+        }
+        TupleValueExpression *outer = (left->getTupleIndex() == 0 ? left : right);
+        TupleValueExpression *inner = (left->getTupleIndex() == 0 ? right : left);
+
+        // Both sides have to hash the same way for equal values, so we only
+        // use clauses where the column types match or are both integers.
+        // Anything else is left for the predicate to check.
+        ValueType outer_type = outer_schema->columnType(outer->getColumnId());
+        ValueType inner_type = inner_schema->columnType(inner->getColumnId());
+        ValueType key_type;
+        if (outer_type == inner_type) {
+            key_type = outer_type;
+        } else if (isIntegralKeyType(outer_type) && isIntegralKeyType(inner_type)) {
+            key_type = VALUE_TYPE_BIGINT;
+        } else {
+            VOLT_DEBUG("Not using join clause with mismatched types %s and %s",
+                       getTypeName(outer_type).c_str(), getTypeName(inner_type).c_str());
+            continue;
+        }
+        m_outerKeys.push_back(outer);
+        m_innerKeys.push_back(inner);
+        m_keyTypes.push_back(key_type);
+    } // WHILE
+}
+
+/**
+ * Evaluate the key expressions for a tuple and store their values in the given key.
+ * Returns false if any of the values are null, since they can never match anything.
+ */
+inline bool HashJoinExecutor::fillJoinKey(const std::vector<AbstractExpression*> &exprs,
+                                          const TableTuple *outer_tuple,
+                                          const TableTuple *inner_tuple,
+                                          HashJoinKey &key) const {
+    for (int ii = 0, cnt = static_cast<int>(exprs.size()); ii < cnt; ii++) {
+        NValue value = exprs[ii]->eval(outer_tuple, inner_tuple);
+        if (value.isNull()) {
+            return false;
+        }
+        key[ii] = value.castAs(m_keyTypes[ii]);
+    }
+    return true;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    if (m_keyTypes.empty()) {
+        return NestLoopExecutor::p_execute(params);
+    }
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(abstract_node);
+    assert(node);
+    assert(node->getInputTables().size() == 2);
+
+    // output table must be a temp table
+    TempTable* output_table = dynamic_cast<TempTable*>(node->getOutputTable());
+    assert(output_table);
+
+    Table* outer_table = node->getInputTables()[0];
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTables()[1];
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    //
+    // Join Expression
+    //
+    AbstractExpression *predicate = node->getPredicate();
+    assert(predicate);
+    predicate->substitute(params);
+    VOLT_TRACE ("predicate: %s", predicate->debug(true).c_str());
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(outer_table->schema());
+    TableTuple inner_tuple(inner_table->schema());
+    TableTuple &joined = output_table->tempTuple();
+    HashJoinKey key(m_keyTypes.size());
+
+    //
+    // Build Phase
+    // The hash table only holds pointers to the inner table's tuples, which
+    // stay put until we are done with this execution
+    //
+    HashJoinMapType hash_table(static_cast<std::size_t>(inner_table->activeTupleCount()));
+    TableIterator iterator1(inner_table);
+    while (iterator1.next(inner_tuple)) {
+        if (fillJoinKey(m_innerKeys, NULL, &inner_tuple, key)) {
+            hash_table.insert(HashJoinMapType::value_type(key, inner_tuple));
+        }
+    }
+    VOLT_TRACE("Built HashJoin table with %d entries", (int)hash_table.size());
+
+    //
+    // Probe Phase
+    //
+    TableIterator iterator0(outer_table);
+    while (iterator0.next(outer_tuple)) {
+        if (!fillJoinKey(m_outerKeys, &outer_tuple, NULL, key)) {
+            continue;
+        }
+        std::pair<HashJoinMapType::const_iterator, HashJoinMapType::const_iterator> range = hash_table.equal_range(key);
+        if (range.first == range.second) {
+            continue;
+        }
+
+        // populate output table's temp tuple with outer table's values
+        for (int col_ctr = 0; col_ctr < outer_cols; col_ctr++) {
+            joined.setNValue(col_ctr, outer_tuple.getNValue(col_ctr));
+        }
+
+        for (HashJoinMapType::const_iterator iter = range.first; iter != range.second; iter++) {
+            const TableTuple &match = iter->second;
+            if (predicate->eval(&outer_tuple, &match).isTrue()) {
+                // Matched! Complete the joined tuple with the inner column values.
+                for (int col_ctr = 0; col_ctr < inner_cols; col_ctr++) {
+                    joined.setNValue(col_ctr + outer_cols, match.getNValue(col_ctr));
+                }
+                output_table->insertTupleNonVirtual(joined);
+            }
+        }
+    }
+
+    return (true);
+}
+
+}
@@ -0,0 +1,139 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREHASHJOINEXECUTOR_H
+#define HSTOREHASHJOINEXECUTOR_H
+
+#include <vector>
+#include "common/common.h"
+#include "common/valuevector.h"
+#include "common/tabletuple.h"
+#include "executors/nestloopexecutor.h"
+#include "boost/unordered_map.hpp"
+
+namespace voltdb {
+
+class AbstractExpression;
+
+/**
+ * The values of the equi-join columns for a single tuple
+ */
+typedef std::vector<NValue> HashJoinKey;
+
+/**
+ * Hasher for HashJoinKeys for use with boost::unordered_multimap
+ */
+struct HashJoinKeyHasher : std::unary_function<HashJoinKey, std::size_t>
+{
+    inline std::size_t operator()(const HashJoinKey &key) const
+    {
+        std::size_t seed = 0;
+        for (int ii = 0, cnt = static_cast<int>(key.size()); ii < cnt; ii++) {
+            key[ii].hashCombine(seed);
+        }
+        return seed;
+    }
+};
+
+/**
+ * Equality operator for HashJoinKeys for use with boost::unordered_multimap
+ */
+class HashJoinKeyEqualityChecker {
+public:
+    inline bool operator()(const HashJoinKey &lhs, const HashJoinKey &rhs) const {
+        for (int ii = 0, cnt = static_cast<int>(lhs.size()); ii < cnt; ii++) {
+            if (lhs[ii].compare(rhs[ii]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+};
+
+/**
+ * Hash table from join key values to the inner table's tuples
+ */
+typedef boost::unordered_multimap<HashJoinKey,
+                                  TableTuple,
+                                  HashJoinKeyHasher,
+                                  HashJoinKeyEqualityChecker> HashJoinMapType;
+
+/**
+ * Hash join for equality predicates between the outer and inner input tables.
+ * The inner table is loaded into a hash table keyed on the values of the
+ * inner side of every "outer.col = inner.col" clause in the predicate, and then
+ * each outer tuple probes the hash table with its own values. The full
+ * predicate is still evaluated on every match, so any other clauses in it
+ * are handled exactly like in the NestLoopExecutor.
+ * If the predicate does not have any usable equality clauses, then we fall
+ * back to a nested-loop join.
+ */
+class HashJoinExecutor : public NestLoopExecutor {
+    public:
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) : NestLoopExecutor(engine, abstract_node) { }
+    protected:
+        bool p_init(AbstractPlanNode*, const catalog::Database* catalog_db, int* tempTableMemoryInBytes);
+        bool p_execute(const NValueArray &params);
+
+    private:
+        void collectJoinKeys(const AbstractExpression *predicate,
+                             const TupleSchema *outer_schema,
+                             const TupleSchema *inner_schema);
+        inline bool fillJoinKey(const std::vector<AbstractExpression*> &exprs,
+                                const TableTuple *outer_tuple,
+                                const TableTuple *inner_tuple,
+                                HashJoinKey &key) const;
+
+        /** The outer and inner side of each equality clause in the predicate */
+        std::vector<AbstractExpression*> m_outerKeys;
+        std::vector<AbstractExpression*> m_innerKeys;
+
+        /** The type that both sides of each key are cast to before hashing */
+        std::vector<ValueType> m_keyTypes;
+};
+
+}
+
+#endif
@@ -280,6 +280,17 @@ bool IndexScanExecutor::p_init(AbstractPlanNode *abstractNode,
             m_node->getPredicate()->hasParameter();
     }
 
+    //
+    // OPTIMIZATION: COMPILED PREDICATES
+    // The end and post expressions get evaluated for every tuple that
+    // comes back from the index, so replace their simple comparisons
+    // with type-specialized evaluators
+    //
+    m_compiledEndExpression.reset(compilePredicate(m_node->getEndExpression(),
+                                                   m_targetTable->schema()));
+    m_compiledPostExpression.reset(compilePredicate(m_node->getPredicate(),
+                                                    m_targetTable->schema()));
+
     //
     // INLINE AGGREGATE
     //
@@ -420,7 +431,9 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
     //
     // END EXPRESSION
     //
-    AbstractExpression* end_expression = m_node->getEndExpression();
+    AbstractExpression* end_expression =
+        (m_compiledEndExpression.get() != NULL ?
+         m_compiledEndExpression.get() : m_node->getEndExpression());
     if (end_expression != NULL)
     {
         if (m_needsSubstituteEndExpression) {
@@ -432,7 +445,9 @@ bool IndexScanExecutor::p_execute(const NValueArray &params)
     //
     // POST EXPRESSION
     //
-    AbstractExpression* post_expression = m_node->getPredicate();
+    AbstractExpression* post_expression =
+        (m_compiledPostExpression.get() != NULL ?
+         m_compiledPostExpression.get() : m_node->getPredicate());
     if (post_expression != NULL)
     {
         if (m_needsSubstitutePostExpression) {
@@ -51,6 +51,7 @@
 #include "executors/abstractexecutor.h"
 
 #include "boost/shared_array.hpp"
+#include "boost/scoped_ptr.hpp"
 #include "boost/unordered_set.hpp"
 #include "boost/pool/pool_alloc.hpp"
 #include <set>
@@ -117,6 +118,10 @@ protected:
     bool m_needsSubstitutePostExpression;
     bool m_needsSubstituteEndExpression;
 
+    // Type-specialized versions of the end and post expressions (may be NULL)
+    boost::scoped_ptr<AbstractExpression> m_compiledEndExpression;
+    boost::scoped_ptr<AbstractExpression> m_compiledPostExpression;
+
     // Inline Aggregate
     AggregatePlanNode* m_aggregateNode;
     int m_aggregateColumnIdx;
@@ -111,6 +111,7 @@ bool ProjectionExecutor::p_init(AbstractPlanNode *abstract_node,
     if (!node->isInline()) {
         input_table = node->getInputTables()[0];
         tuple = TableTuple(input_table->schema());
+        m_batchProjection.init(node->getOutputColumnExpressions(), input_table->schema(), output_table->schema());
     }
     return true;
 }
@@ -144,6 +145,21 @@ bool ProjectionExecutor::p_execute(const NValueArray &params) {
         }
     }
 
+    //
+    // OPTIMIZATION: BATCH EXECUTION
+    // If some of the output columns are just copies of fixed-width input
+    // columns, then project the input table a batch of tuples at a time
+    //
+    if (m_batchProjection.getFastColumnCount() > 0) {
+        VOLT_TRACE("Using batch execution for %d/%d columns",
+                   m_batchProjection.getFastColumnCount(), num_of_columns);
+        TableIterator iterator(input_table);
+        while (m_batch.fill(iterator, tuple) > 0) {
+            m_batchProjection.project(m_batch, output_table);
+        } // WHILE
+        return (true);
+    }
+
     //
     // Now loop through all the tuples and push them through our output
     // expression This will generate new tuple values that we will insert into
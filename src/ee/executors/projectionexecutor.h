@@ -52,6 +52,7 @@
 #include "common/valuevector.h"
 #include "common/tabletuple.h"
 #include "executors/abstractexecutor.h"
+#include "executors/tuplebatch.h"
 
 namespace voltdb {
 
@@ -86,6 +87,9 @@ class ProjectionExecutor : public AbstractExecutor {
 
         boost::shared_array<AbstractExpression*> expression_array_ptr;
         AbstractExpression** expression_array;
+
+        TupleBatch m_batch;
+        BatchProjection m_batchProjection;
 };
 
 }
@@ -50,6 +50,7 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "expressions/abstractexpression.h"
+#include "expressions/expressionutil.h"
 #include "plannodes/seqscannode.h"
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
@@ -85,6 +86,9 @@ bool SeqScanExecutor::p_init(AbstractPlanNode *abstract_node,
         //
         assert(projection_node->getOutputTable());
         node->setOutputTable(projection_node->getOutputTable());
+        m_batchProjection.init(projection_node->getOutputColumnExpressions(),
+                               node->getTargetTable()->schema(),
+                               projection_node->getOutputTable()->schema());
     //
     // FULL TABLE SCHEMA
     //
@@ -113,9 +117,26 @@ bool SeqScanExecutor::p_init(AbstractPlanNode *abstract_node,
                     tempTableMemoryInBytes));
         }
     }
+
+    //
+    // BATCH EXECUTION
+    // Figure out which parts of the predicate can be evaluated column-wise
+    //
+    m_batchPredicate.init(node->getPredicate(), node->getTargetTable()->schema());
+
+    //
+    // OPTIMIZATION: COMPILED PREDICATE
+    // Replace the simple comparisons in the predicate with type-specialized
+    // evaluators. This is built once when the plan fragment is loaded.
+    //
+    m_compiledPredicate.reset(compilePredicate(node->getPredicate(),
+                                               node->getTargetTable()->schema()));
     return true;
 }
 
+SeqScanExecutor::~SeqScanExecutor() {
+}
+
 bool SeqScanExecutor::needsOutputTableClear() {
     // clear the temporary output table only when it has a predicate.
     // if it doesn't have a predicate, it's the original persistent table
@@ -192,7 +213,8 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
         //
         TableTuple tuple(target_table->schema());
         TableIterator iterator(target_table);
-        AbstractExpression *predicate = node->getPredicate();
+        AbstractExpression *predicate = (m_compiledPredicate.get() != NULL ?
+                                         m_compiledPredicate.get() : node->getPredicate());
         VOLT_TRACE("SCAN PREDICATE A:\n%s\n", predicate->debug(true).c_str());
 
         if (predicate)
@@ -203,8 +225,29 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                        predicate->debug(true).c_str());
         }
 
+        //
+        // OPTIMIZATION: BATCH EXECUTION
+        //
+        // If some of the predicate's clauses or the projection's columns
+        // can be evaluated column-wise, then we will process the table
+        // a batch of tuples at a time. The parameter values have to match
+        // their columns' types, otherwise we fall back to the tuple-at-a-time
+        // loop below
+        //
+        bool batched = (m_batchPredicate.hasClauses() ||
+                        (projection_node != NULL && m_batchProjection.getFastColumnCount() > 0));
+        if (batched && m_batchPredicate.prepare()) {
+            VOLT_DEBUG("Using batch execution for table '%s'", target_table->name().c_str());
+            return (p_executeBatched(node, target_table, output_table, projection_node, limit));
+        }
+
+        //
+        // Check the limit before we pull out the next tuple so that a
+        // LIMIT 0 does not emit anything, just like the LimitExecutor
+        // and the batched path
+        //
         int tuple_ctr = 0;
-        while (iterator.next(tuple))
+        while ((limit < 0 || tuple_ctr < limit) && iterator.next(tuple))
         {
             VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
                        tuple.debug(target_table->name()).c_str(), tuple_ctr,
@@ -251,10 +294,6 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                     }
                 }
                 ++tuple_ctr;
-                // Check whether we have gone past our limit
-                if (limit >= 0 && tuple_ctr >= limit) {
-                    break;
-                }
             }
         }
     }
@@ -263,3 +302,72 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
 
     return true;
 }
+
+bool SeqScanExecutor::p_executeBatched(SeqScanPlanNode *node,
+                                       Table *target_table,
+                                       Table *output_table,
+                                       ProjectionPlanNode *projection_node,
+                                       int limit) {
+    TableTuple tuple(target_table->schema());
+    TableIterator iterator(target_table);
+    AbstractExpression *predicate = (m_compiledPredicate.get() != NULL ?
+                                     m_compiledPredicate.get() : node->getPredicate());
+    TempTable *temp_output = NULL;
+    if (projection_node != NULL && m_batchProjection.getFastColumnCount() > 0) {
+        temp_output = dynamic_cast<TempTable*>(output_table);
+    }
+    int num_of_columns = (int)output_table->columnCount();
+
+    int tuple_ctr = 0;
+    while (m_batch.fill(iterator, tuple) > 0) {
+        //
+        // Evaluate the simple clauses column-wise over the entire batch and
+        // then only evaluate the full predicate on the tuples that survive
+        //
+        m_batchPredicate.filter(m_batch);
+        if (predicate != NULL && !m_batchPredicate.isComplete()) {
+            m_batch.filter(predicate, tuple);
+        }
+        if (limit >= 0 && tuple_ctr + m_batch.size() > limit) {
+            m_batch.truncate(limit - tuple_ctr);
+        }
+
+        if (temp_output != NULL) {
+            m_batchProjection.project(m_batch, temp_output);
+        } else {
+            for (int ii = 0, cnt = m_batch.size(); ii < cnt; ii++) {
+                tuple.move(m_batch.get(ii));
+                if (projection_node != NULL) {
+                    TableTuple &temp_tuple = output_table->tempTuple();
+                    for (int ctr = 0; ctr < num_of_columns; ctr++) {
+                        NValue value = projection_node->getOutputColumnExpressions()[ctr]->eval(&tuple, NULL);
+                        temp_tuple.setNValue(ctr, value);
+                    }
+                    if (!output_table->insertTuple(temp_tuple)) {
+                        VOLT_ERROR("Failed to insert tuple from table '%s' into"
+                                   " output table '%s'",
+                                   target_table->name().c_str(),
+                                   output_table->name().c_str());
+                        return false;
+                    }
+                } else if (!output_table->insertTuple(tuple)) {
+                    VOLT_ERROR("Failed to insert tuple from table '%s' into"
+                               " output table '%s'",
+                               target_table->name().c_str(),
+                               output_table->name().c_str());
+                    return false;
+                }
+            } // FOR
+        }
+
+        tuple_ctr += m_batch.size();
+        // Check whether we have gone past our limit
+        if (limit >= 0 && tuple_ctr >= limit) {
+            break;
+        }
+    } // WHILE
+    VOLT_TRACE("\n%s\n", output_table->debug().c_str());
+    VOLT_TRACE("Finished Seq scanning [batched]");
+
+    return true;
+}
@@ -49,22 +49,42 @@
 #include "common/common.h"
 #include "common/valuevector.h"
 #include "executors/abstractexecutor.h"
+#include "executors/tuplebatch.h"
+#include "boost/scoped_ptr.hpp"
 
 namespace voltdb
 {
     class UndoLog;
     class ReadWriteSet;
+    class AbstractExpression;
+    class SeqScanPlanNode;
+    class ProjectionPlanNode;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
         SeqScanExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
             : AbstractExecutor(engine, abstract_node)
         {}
+        ~SeqScanExecutor();
     protected:
         bool p_init(AbstractPlanNode* abstract_node,
                     const catalog::Database* catalog_db, int* tempTableMemoryInBytes);
         bool p_execute(const NValueArray& params);
         bool needsOutputTableClear();
+
+    private:
+        bool p_executeBatched(SeqScanPlanNode *node,
+                              Table *target_table,
+                              Table *output_table,
+                              ProjectionPlanNode *projection_node,
+                              int limit);
+
+        // Type-specialized version of the node's predicate (may be NULL)
+        boost::scoped_ptr<AbstractExpression> m_compiledPredicate;
+
+        TupleBatch m_batch;
+        BatchPredicate m_batchPredicate;
+        BatchProjection m_batchProjection;
     };
 }
 
@@ -0,0 +1,556 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include <cstring>
+#include <limits>
+#include <stack>
+#include "tuplebatch.h"
+#include "common/debuglog.h"
+#include "common/NValue.hpp"
+#include "common/ValuePeeker.hpp"
+#include "common/ValueFactory.hpp"
+#include "expressions/abstractexpression.h"
+#include "expressions/compiledpredicateexpression.h"
+#include "expressions/tuplevalueexpression.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
+
+namespace voltdb {
+
+// ------------------------------------------------------------------
+// TupleBatch
+// ------------------------------------------------------------------
+
+int TupleBatch::fill(TableIterator &iterator, TableTuple &scratch) {
+    m_size = 0;
+    while (m_size < TUPLE_BATCH_SIZE && iterator.next(scratch)) {
+        m_tuples[m_size++] = scratch.address();
+    }
+    return m_size;
+}
+
+void TupleBatch::filter(const AbstractExpression *predicate, TableTuple &scratch) {
+    int out = 0;
+    for (int ii = 0; ii < m_size; ii++) {
+        scratch.move(m_tuples[ii]);
+        if (predicate->eval(&scratch, NULL).isTrue()) {
+            m_tuples[out++] = m_tuples[ii];
+        }
+    }
+    m_size = out;
+}
+
+// ------------------------------------------------------------------
+// BatchPredicate
+// ------------------------------------------------------------------
+
+namespace {
+
+/*
+ * Integers are compared as BIGINTs with their NULL value mapped to
+ * INT64_NULL, which is exactly what NValue::compare() does.
+ * The tuple pointers that pass are compacted to the front of the array.
+ */
+template<typename T, typename C>
+inline int filterIntegerColumn(char **tuples, int count, uint32_t offset, T nullValue, int64_t rhs) {
+    C cmp;
+    int out = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const T raw = *reinterpret_cast<const T*>(tuples[ii] + offset);
+        const int64_t value = (raw == nullValue ? INT64_NULL : static_cast<int64_t>(raw));
+        tuples[out] = tuples[ii];
+        out += cmp(value, rhs);
+    }
+    return out;
+}
+
+/*
+ * Doubles go through the same three-way comparison as NValue::compareDoubleValue()
+ * (in the predicate's original operand order) so that NaNs come out the same way.
+ */
+template<typename C>
+inline int filterDoubleColumn(char **tuples, int count, uint32_t offset, double rhs, bool flipped) {
+    C cmp;
+    int out = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const double value = *reinterpret_cast<const double*>(tuples[ii] + offset);
+        const int result = (flipped ? -compareRawDoubles(rhs, value) : compareRawDoubles(value, rhs));
+        tuples[out] = tuples[ii];
+        out += cmp(result, 0);
+    }
+    return out;
+}
+
+template<typename C>
+inline int filterColumn(ValueType type, char **tuples, int count, uint32_t offset,
+                        int64_t intValue, double doubleValue, bool flipped) {
+    switch (type) {
+        case VALUE_TYPE_TINYINT:
+            return filterIntegerColumn<int8_t, C>(tuples, count, offset, static_cast<int8_t>(INT8_NULL), intValue);
+        case VALUE_TYPE_SMALLINT:
+            return filterIntegerColumn<int16_t, C>(tuples, count, offset, static_cast<int16_t>(INT16_NULL), intValue);
+        case VALUE_TYPE_INTEGER:
+            return filterIntegerColumn<int32_t, C>(tuples, count, offset, static_cast<int32_t>(INT32_NULL), intValue);
+        case VALUE_TYPE_BIGINT:
+        case VALUE_TYPE_TIMESTAMP:
+            return filterIntegerColumn<int64_t, C>(tuples, count, offset, static_cast<int64_t>(INT64_NULL), intValue);
+        case VALUE_TYPE_DOUBLE:
+            return filterDoubleColumn<C>(tuples, count, offset, doubleValue, flipped);
+        default:
+            throwFatalException("Unexpected column type '%d' in BatchPredicate", (int)type);
+    }
+    return count;
+}
+
+inline bool isFixedWidthColumnType(ValueType type) {
+    return (isRawIntegerType(type) ||
+            type == VALUE_TYPE_DOUBLE ||
+            type == VALUE_TYPE_DECIMAL);
+}
+
+}
+
+void BatchPredicate::init(const AbstractExpression *predicate, const TupleSchema *schema) {
+    m_clauses.clear();
+    m_complete = true;
+    m_prepared = false;
+
+    std::stack<const AbstractExpression*> stack;
+    if (predicate != NULL) stack.push(predicate);
+    while (!stack.empty()) {
+        const AbstractExpression *expr = stack.top();
+        stack.pop();
+        if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND) {
+            if (expr->getLeft() != NULL) stack.push(expr->getLeft());
+            if (expr->getRight() != NULL) stack.push(expr->getRight());
+        } else if (!addClause(expr, schema)) {
+            m_complete = false;
+        }
+    } // WHILE
+    VOLT_DEBUG("BatchPredicate has %d column-wise clauses [complete=%d]",
+               (int)m_clauses.size(), (int)m_complete);
+}
+
+bool BatchPredicate::addClause(const AbstractExpression *expr, const TupleSchema *schema) {
+    ExpressionType compare = expr->getExpressionType();
+    switch (compare) {
+        case EXPRESSION_TYPE_COMPARE_EQUAL:
+        case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+        case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+            break;
+        default:
+            return false;
+    }
+    const AbstractExpression *left = expr->getLeft();
+    const AbstractExpression *right = expr->getRight();
+    if (left == NULL || right == NULL) return false;
+
+    // Always put the column on the left
+    bool flipped = false;
+    if (right->getExpressionType() == EXPRESSION_TYPE_VALUE_TUPLE) {
+        std::swap(left, right);
+        compare = flipComparison(compare);
+        flipped = true;
+    }
+    if (left->getExpressionType() != EXPRESSION_TYPE_VALUE_TUPLE ||
+        (right->getExpressionType() != EXPRESSION_TYPE_VALUE_CONSTANT &&
+         right->getExpressionType() != EXPRESSION_TYPE_VALUE_PARAMETER)) {
+        return false;
+    }
+
+    const TupleValueExpression *tve = dynamic_cast<const TupleValueExpression*>(left);
+    if (tve == NULL) return false;
+    const int column = tve->getColumnId();
+    const ValueType type = schema->columnType(column);
+    if (!isRawIntegerType(type) && type != VALUE_TYPE_DOUBLE) return false;
+
+    Clause clause;
+    clause.m_compare = compare;
+    clause.m_flipped = flipped;
+    clause.m_columnType = type;
+    clause.m_offset = static_cast<uint32_t>(schema->columnOffset(column) + TUPLE_HEADER_SIZE);
+    clause.m_value = right;
+    clause.m_intValue = 0;
+    clause.m_doubleValue = 0;
+    m_clauses.push_back(clause);
+    return true;
+}
+
+bool BatchPredicate::prepare() {
+    m_prepared = false;
+    for (int ii = 0, cnt = static_cast<int>(m_clauses.size()); ii < cnt; ii++) {
+        Clause &clause = m_clauses[ii];
+        const NValue value = clause.m_value->eval(NULL, NULL);
+        const ValueType valueType = ValuePeeker::peekValueType(value);
+        if (isRawIntegerType(clause.m_columnType)) {
+            if (!isRawIntegerType(valueType) && valueType != VALUE_TYPE_NULL) {
+                return false;
+            }
+            clause.m_intValue = ValuePeeker::peekAsBigInt(value);
+        } else {
+            if (valueType != VALUE_TYPE_DOUBLE) {
+                return false;
+            }
+            clause.m_doubleValue = ValuePeeker::peekDouble(value);
+        }
+    } // FOR
+    m_prepared = true;
+    return true;
+}
+
+void BatchPredicate::filter(TupleBatch &batch) const {
+    assert(m_prepared);
+    for (int ii = 0, cnt = static_cast<int>(m_clauses.size()); ii < cnt && batch.m_size > 0; ii++) {
+        const Clause &clause = m_clauses[ii];
+        int size = batch.m_size;
+        switch (clause.m_compare) {
+            case EXPRESSION_TYPE_COMPARE_EQUAL:
+                size = filterColumn<RawCmpEq>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+                size = filterColumn<RawCmpNe>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+                size = filterColumn<RawCmpLt>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+                size = filterColumn<RawCmpGt>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+                size = filterColumn<RawCmpLte>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+                size = filterColumn<RawCmpGte>(clause.m_columnType, batch.m_tuples, size, clause.m_offset,
+                        clause.m_intValue, clause.m_doubleValue, clause.m_flipped);
+                break;
+            default:
+                throwFatalException("Unexpected comparison type '%d' in BatchPredicate", (int)clause.m_compare);
+        }
+        batch.m_size = size;
+    } // FOR
+}
+
+// ------------------------------------------------------------------
+// BatchProjection
+// ------------------------------------------------------------------
+
+void BatchProjection::init(const std::vector<AbstractExpression*> &expressions,
+                           const TupleSchema *input_schema,
+                           const TupleSchema *output_schema) {
+    m_columns.clear();
+    m_inputSchema = input_schema;
+    m_outputSchema = output_schema;
+    m_fastColumns = 0;
+
+    for (int ii = 0, cnt = static_cast<int>(expressions.size()); ii < cnt; ii++) {
+        const AbstractExpression *expr = expressions[ii];
+        assert(expr);
+        Column column;
+        column.m_mode = COLUMN_EXPRESSION;
+        column.m_inputIndex = -1;
+        column.m_inputOffset = 0;
+        column.m_outputOffset = static_cast<uint32_t>(output_schema->columnOffset(ii) + TUPLE_HEADER_SIZE);
+        column.m_length = 0;
+        column.m_expression = expr;
+
+        const TupleValueExpression *tve = NULL;
+        if (expr->getExpressionType() == EXPRESSION_TYPE_VALUE_TUPLE) {
+            tve = dynamic_cast<const TupleValueExpression*>(expr);
+        }
+        if (tve != NULL) {
+            const int input_idx = tve->getColumnId();
+            const ValueType type = input_schema->columnType(input_idx);
+            column.m_mode = COLUMN_TUPLE;
+            column.m_inputIndex = input_idx;
+            if (type == output_schema->columnType(ii) &&
+                isFixedWidthColumnType(type) &&
+                input_schema->columnIsInlined(input_idx) &&
+                output_schema->columnIsInlined(ii) &&
+                input_schema->columnLength(input_idx) == output_schema->columnLength(ii)) {
+                column.m_mode = COLUMN_COPY;
+                column.m_inputOffset = static_cast<uint32_t>(input_schema->columnOffset(input_idx) + TUPLE_HEADER_SIZE);
+                column.m_length = static_cast<uint32_t>(output_schema->columnLength(ii));
+                m_fastColumns++;
+            }
+        }
+        m_columns.push_back(column);
+    } // FOR
+    m_buffer.resize(TUPLE_BATCH_SIZE * (output_schema->tupleLength() + TUPLE_HEADER_SIZE));
+    VOLT_DEBUG("BatchProjection has %d/%d fixed-width column copies",
+               m_fastColumns, (int)m_columns.size());
+}
+
+void BatchProjection::project(const TupleBatch &batch, TempTable *output_table) {
+    assert(m_outputSchema);
+    const int count = batch.size();
+    const int tupleLength = m_outputSchema->tupleLength() + TUPLE_HEADER_SIZE;
+    char *buffer = &m_buffer[0];
+
+    // Every output tuple starts out with the same header as the output table's temp tuple
+    const char header = output_table->tempTuple().address()[0];
+    for (int ii = 0; ii < count; ii++) {
+        buffer[ii * tupleLength] = header;
+    }
+
+    TableTuple input(m_inputSchema);
+    TableTuple output(m_outputSchema);
+    for (int col = 0, cnt = static_cast<int>(m_columns.size()); col < cnt; col++) {
+        const Column &column = m_columns[col];
+        switch (column.m_mode) {
+            case COLUMN_COPY:
+                for (int ii = 0; ii < count; ii++) {
+                    ::memcpy(buffer + (ii * tupleLength) + column.m_outputOffset,
+                             batch.get(ii) + column.m_inputOffset,
+                             column.m_length);
+                }
+                break;
+            case COLUMN_TUPLE:
+                for (int ii = 0; ii < count; ii++) {
+                    input.move(batch.get(ii));
+                    output.move(buffer + (ii * tupleLength));
+                    output.setNValue(col, input.getNValue(column.m_inputIndex));
+                }
+                break;
+            case COLUMN_EXPRESSION:
+                for (int ii = 0; ii < count; ii++) {
+                    input.move(batch.get(ii));
+                    output.move(buffer + (ii * tupleLength));
+                    output.setNValue(col, column.m_expression->eval(&input, NULL));
+                }
+                break;
+        } // SWITCH
+    } // FOR
+
+    for (int ii = 0; ii < count; ii++) {
+        output.move(buffer + (ii * tupleLength));
+        output_table->insertTupleNonVirtual(output);
+    }
+}
+
+// ------------------------------------------------------------------
+// BatchAggregate
+// ------------------------------------------------------------------
+
+bool BatchAggregate::isSupported(ExpressionType agg_type, ValueType column_type) {
+    switch (agg_type) {
+        case EXPRESSION_TYPE_AGGREGATE_COUNT_STAR:
+            return true;
+        case EXPRESSION_TYPE_AGGREGATE_COUNT:
+        case EXPRESSION_TYPE_AGGREGATE_MIN:
+        case EXPRESSION_TYPE_AGGREGATE_MAX:
+            return (isRawIntegerType(column_type) || column_type == VALUE_TYPE_DOUBLE);
+        case EXPRESSION_TYPE_AGGREGATE_SUM:
+            // Summing doubles in a different order could change the result
+            return (isRawIntegerType(column_type) && column_type != VALUE_TYPE_TIMESTAMP);
+        default:
+            return false;
+    }
+}
+
+void BatchAggregate::init(ExpressionType agg_type, const TupleSchema *schema, int column) {
+    m_aggType = agg_type;
+    m_schema = schema;
+    m_column = column;
+    m_columnType = schema->columnType(column);
+    m_offset = static_cast<uint32_t>(schema->columnOffset(column) + TUPLE_HEADER_SIZE);
+    reset();
+}
+
+void BatchAggregate::reset() {
+    m_count = 0;
+    m_sum = 0;
+    m_haveValue = false;
+    m_best = NULL;
+    m_bestInt = 0;
+    m_bestDouble = 0;
+}
+
+template<typename T>
+void BatchAggregate::advanceInteger(const TupleBatch &batch, T nullValue) {
+    const int count = batch.size();
+    switch (m_aggType) {
+        case EXPRESSION_TYPE_AGGREGATE_COUNT:
+            for (int ii = 0; ii < count; ii++) {
+                const T raw = *reinterpret_cast<const T*>(batch.get(ii) + m_offset);
+                m_count += (raw != nullValue);
+            } // FOR
+            break;
+        case EXPRESSION_TYPE_AGGREGATE_SUM:
+            for (int ii = 0; ii < count; ii++) {
+                const T raw = *reinterpret_cast<const T*>(batch.get(ii) + m_offset);
+                if (raw == nullValue) continue;
+                const int64_t value = static_cast<int64_t>(raw);
+                if (!m_haveValue) {
+                    m_sum = value;
+                    m_haveValue = true;
+                // Once the sum hits INT64_NULL it stays NULL, just like NValue::op_add()
+                } else if (m_sum != INT64_NULL) {
+                    if ((value > 0 && m_sum > std::numeric_limits<int64_t>::max() - value) ||
+                        (value < 0 && m_sum < std::numeric_limits<int64_t>::min() - value)) {
+                        // Let NValue throw the same exception that SumAgg would have
+                        ValueFactory::getBigIntValue(m_sum).op_add(ValueFactory::getBigIntValue(value));
+                    }
+                    m_sum += value;
+                }
+            } // FOR
+            break;
+        case EXPRESSION_TYPE_AGGREGATE_MIN:
+            for (int ii = 0; ii < count; ii++) {
+                const T raw = *reinterpret_cast<const T*>(batch.get(ii) + m_offset);
+                if (raw == nullValue) continue;
+                if (m_best == NULL || static_cast<int64_t>(raw) <= m_bestInt) {
+                    m_best = batch.get(ii);
+                    m_bestInt = static_cast<int64_t>(raw);
+                }
+            } // FOR
+            break;
+        case EXPRESSION_TYPE_AGGREGATE_MAX:
+            for (int ii = 0; ii < count; ii++) {
+                const T raw = *reinterpret_cast<const T*>(batch.get(ii) + m_offset);
+                if (raw == nullValue) continue;
+                if (m_best == NULL || static_cast<int64_t>(raw) >= m_bestInt) {
+                    m_best = batch.get(ii);
+                    m_bestInt = static_cast<int64_t>(raw);
+                }
+            } // FOR
+            break;
+        default:
+            throwFatalException("Unexpected aggregate type '%d' in BatchAggregate", (int)m_aggType);
+    } // SWITCH
+}
+
+void BatchAggregate::advanceDouble(const TupleBatch &batch) {
+    const int count = batch.size();
+    switch (m_aggType) {
+        case EXPRESSION_TYPE_AGGREGATE_COUNT:
+            for (int ii = 0; ii < count; ii++) {
+                const double value = *reinterpret_cast<const double*>(batch.get(ii) + m_offset);
+                // NaN is not NULL, so this has to be the negation of NValue::isNull()
+                m_count += !(value <= DOUBLE_NULL);
+            } // FOR
+            break;
+        case EXPRESSION_TYPE_AGGREGATE_MIN:
+            for (int ii = 0; ii < count; ii++) {
+                const double value = *reinterpret_cast<const double*>(batch.get(ii) + m_offset);
+                if (value <= DOUBLE_NULL) continue;
+                if (m_best == NULL || compareRawDoubles(m_bestDouble, value) >= 0) {
+                    m_best = batch.get(ii);
+                    m_bestDouble = value;
+                }
+            } // FOR
+            break;
+        case EXPRESSION_TYPE_AGGREGATE_MAX:
+            for (int ii = 0; ii < count; ii++) {
+                const double value = *reinterpret_cast<const double*>(batch.get(ii) + m_offset);
+                if (value <= DOUBLE_NULL) continue;
+                if (m_best == NULL || compareRawDoubles(m_bestDouble, value) <= 0) {
+                    m_best = batch.get(ii);
+                    m_bestDouble = value;
+                }
+            } // FOR
+            break;
+        default:
+            throwFatalException("Unexpected aggregate type '%d' in BatchAggregate", (int)m_aggType);
+    } // SWITCH
+}
+
+void BatchAggregate::advance(const TupleBatch &batch) {
+    if (m_aggType == EXPRESSION_TYPE_AGGREGATE_COUNT_STAR) {
+        m_count += batch.size();
+        return;
+    }
+    switch (m_columnType) {
+        case VALUE_TYPE_TINYINT:
+            advanceInteger<int8_t>(batch, static_cast<int8_t>(INT8_NULL));
+            break;
+        case VALUE_TYPE_SMALLINT:
+            advanceInteger<int16_t>(batch, static_cast<int16_t>(INT16_NULL));
+            break;
+        case VALUE_TYPE_INTEGER:
+            advanceInteger<int32_t>(batch, static_cast<int32_t>(INT32_NULL));
+            break;
+        case VALUE_TYPE_BIGINT:
+        case VALUE_TYPE_TIMESTAMP:
+            advanceInteger<int64_t>(batch, static_cast<int64_t>(INT64_NULL));
+            break;
+        case VALUE_TYPE_DOUBLE:
+            advanceDouble(batch);
+            break;
+        default:
+            throwFatalException("Unexpected column type '%d' in BatchAggregate", (int)m_columnType);
+    } // SWITCH
+}
+
+NValue BatchAggregate::finalize() const {
+    switch (m_aggType) {
+        case EXPRESSION_TYPE_AGGREGATE_COUNT:
+        case EXPRESSION_TYPE_AGGREGATE_COUNT_STAR:
+            return ValueFactory::getBigIntValue(m_count);
+        case EXPRESSION_TYPE_AGGREGATE_SUM:
+            if (!m_haveValue) return ValueFactory::getNullValue();
+            return ValueFactory::getBigIntValue(m_sum);
+        case EXPRESSION_TYPE_AGGREGATE_MIN:
+        case EXPRESSION_TYPE_AGGREGATE_MAX: {
+            if (m_best == NULL) return ValueFactory::getNullValue();
+            // Pull the value out of the winning tuple so that it keeps the column's type
+            TableTuple tuple(m_schema);
+            tuple.move(const_cast<char*>(m_best));
+            return tuple.getNValue(m_column);
+        }
+        default:
+            throwFatalException("Unexpected aggregate type '%d' in BatchAggregate", (int)m_aggType);
+    } // SWITCH
+    return ValueFactory::getNullValue();
+}
+
+}
@@ -0,0 +1,239 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTORETUPLEBATCH_H
+#define HSTORETUPLEBATCH_H
+
+#include <vector>
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "common/valuevector.h"
+
+namespace voltdb {
+
+class AbstractExpression;
+class TableIterator;
+class TempTable;
+
+/**
+ * The max number of tuples that the batched executors pull out of their
+ * input table at a time
+ */
+#define TUPLE_BATCH_SIZE 1024
+
+/**
+ * A block of pointers to tuples in a table. The executors that support batch
+ * execution fill one of these from a TableIterator and then run each of their
+ * steps over the entire block instead of one tuple at a time.
+ */
+class TupleBatch {
+public:
+    TupleBatch() : m_size(0) { }
+
+    /**
+     * Pull up to TUPLE_BATCH_SIZE tuples out of the iterator.
+     * Returns the number of tuples in the batch (0 when the iterator is done)
+     */
+    int fill(TableIterator &iterator, TableTuple &scratch);
+
+    inline int size() const { return m_size; }
+    inline char* get(int idx) const { return m_tuples[idx]; }
+
+    /** Only keep the first 'size' tuples in the batch */
+    inline void truncate(int size) { if (size < m_size) m_size = size; }
+
+    /** Remove all of the tuples that do not match the given expression */
+    void filter(const AbstractExpression *predicate, TableTuple &scratch);
+
+private:
+    friend class BatchPredicate;
+    char* m_tuples[TUPLE_BATCH_SIZE];
+    int m_size;
+};
+
+/**
+ * Column-wise evaluation of a scan predicate over a TupleBatch.
+ * We pull every "column <op> constant/parameter" clause that is AND'ed
+ * together at the top of the predicate where the column is a fixed-width
+ * integer or double and evaluate each of them over the entire batch in
+ * a tight loop on the raw tuple storage. If the predicate has any other
+ * clauses, then the executor still has to evaluate the full predicate on
+ * the tuples that survive.
+ */
+class BatchPredicate {
+public:
+    BatchPredicate() : m_complete(false), m_prepared(false) { }
+
+    /**
+     * Extract the clauses that we can evaluate column-wise from the predicate.
+     * The predicate's column references must all be for the given schema.
+     */
+    void init(const AbstractExpression *predicate, const TupleSchema *schema);
+
+    /** Returns true if there is at least one clause that we can evaluate column-wise */
+    inline bool hasClauses() const { return !m_clauses.empty(); }
+
+    /** Returns true if our clauses cover the entire predicate */
+    inline bool isComplete() const { return m_complete; }
+
+    /**
+     * Evaluate the constant side of each clause for this execution.
+     * This must be called after the predicate's parameters have been substituted.
+     * Returns false if a parameter's type does not match its column, in which
+     * case the executor has to use the tuple-at-a-time path.
+     */
+    bool prepare();
+
+    /** Remove all of the tuples in the batch that fail one of our clauses */
+    void filter(TupleBatch &batch) const;
+
+private:
+    struct Clause {
+        ExpressionType m_compare;
+        bool m_flipped;
+        ValueType m_columnType;
+        uint32_t m_offset;
+        const AbstractExpression *m_value;
+        int64_t m_intValue;
+        double m_doubleValue;
+    };
+
+    bool addClause(const AbstractExpression *expr, const TupleSchema *schema);
+
+    std::vector<Clause> m_clauses;
+    bool m_complete;
+    bool m_prepared;
+};
+
+/**
+ * Column-wise evaluation of projection expressions over a TupleBatch.
+ * The output tuples for the batch are materialized in a scratch buffer one column
+ * at a time. Column references between fixed-width columns of the same type
+ * are just copied from the input tuple's storage, and everything else goes
+ * through setNValue() with either the input column's value or the result of
+ * the expression.
+ */
+class BatchProjection {
+public:
+    BatchProjection() : m_inputSchema(NULL), m_outputSchema(NULL), m_fastColumns(0) { }
+
+    void init(const std::vector<AbstractExpression*> &expressions,
+              const TupleSchema *input_schema,
+              const TupleSchema *output_schema);
+
+    /** Returns the number of output columns that are raw copies of input columns */
+    inline int getFastColumnCount() const { return m_fastColumns; }
+
+    /**
+     * Project every tuple in the batch and insert the results into the output table.
+     * The expressions' parameters must already be substituted.
+     */
+    void project(const TupleBatch &batch, TempTable *output_table);
+
+private:
+    enum ColumnMode {
+        COLUMN_COPY,        // raw copy of a fixed-width input column
+        COLUMN_TUPLE,       // getNValue() from an input column
+        COLUMN_EXPRESSION   // eval() the expression
+    };
+    struct Column {
+        ColumnMode m_mode;
+        int m_inputIndex;
+        uint32_t m_inputOffset;
+        uint32_t m_outputOffset;
+        uint32_t m_length;
+        const AbstractExpression *m_expression;
+    };
+
+    std::vector<Column> m_columns;
+    const TupleSchema *m_inputSchema;
+    const TupleSchema *m_outputSchema;
+    std::vector<char> m_buffer;
+    int m_fastColumns;
+};
+
+/**
+ * Column-wise computation of a single COUNT, COUNT(*), SUM, MIN, or MAX aggregate
+ * over TupleBatches. This is only used for aggregates without a GROUP BY.
+ * The result is exactly what the matching Agg in aggregateexecutor.hpp would produce.
+ */
+class BatchAggregate {
+public:
+    BatchAggregate() : m_aggType(EXPRESSION_TYPE_INVALID), m_columnType(VALUE_TYPE_INVALID),
+                       m_schema(NULL), m_column(-1), m_offset(0) { reset(); }
+
+    /** Returns true if the aggregate can be computed column-wise over a column of the given type */
+    static bool isSupported(ExpressionType agg_type, ValueType column_type);
+
+    void init(ExpressionType agg_type, const TupleSchema *schema, int column);
+
+    /** Clear out the running state before the next execution */
+    void reset();
+
+    void advance(const TupleBatch &batch);
+    NValue finalize() const;
+
+private:
+    template<typename T> void advanceInteger(const TupleBatch &batch, T nullValue);
+    void advanceDouble(const TupleBatch &batch);
+
+    ExpressionType m_aggType;
+    ValueType m_columnType;
+    const TupleSchema *m_schema;
+    int m_column;
+    uint32_t m_offset;
+
+    int64_t m_count;
+    int64_t m_sum;
+    bool m_haveValue;
+    const char *m_best;
+    int64_t m_bestInt;
+    double m_bestDouble;
+};
+
+}
+
+#endif
@@ -0,0 +1,295 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTORECOMPILEDPREDICATEEXPRESSION_H
+#define HSTORECOMPILEDPREDICATEEXPRESSION_H
+
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "common/valuevector.h"
+#include "common/ValuePeeker.hpp"
+
+#include "expressions/abstractexpression.h"
+
+#include <string>
+#include <sstream>
+#include <vector>
+
+namespace voltdb {
+
+// ------------------------------------------------------------------
+// Comparisons on raw values
+// These have the same semantics as the NValue comparisons for
+// fixed-width values, where NULL integers are compared as INT64_NULL.
+// ------------------------------------------------------------------
+class RawCmpEq {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l == r; }
+};
+class RawCmpNe {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l != r; }
+};
+class RawCmpLt {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l < r; }
+};
+class RawCmpGt {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l > r; }
+};
+class RawCmpLte {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l <= r; }
+};
+class RawCmpGte {
+public:
+    template<typename V> inline bool operator()(V l, V r) const { return l >= r; }
+};
+
+/**
+ * Three-way comparison of two doubles, exactly like NValue::compareDoubleValue()
+ * (so anything involving a NaN comes out as "less than")
+ */
+inline int compareRawDoubles(double lhs, double rhs) {
+    if (lhs == rhs) return 0;
+    return (lhs > rhs ? 1 : -1);
+}
+
+/** Swap the direction of a comparison so that its operands can be swapped */
+inline ExpressionType flipComparison(ExpressionType type) {
+    switch (type) {
+        case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+            return EXPRESSION_TYPE_COMPARE_GREATERTHAN;
+        case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+            return EXPRESSION_TYPE_COMPARE_LESSTHAN;
+        case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+            return EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO;
+        case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+            return EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO;
+        default:
+            return type;
+    }
+}
+
+/** Returns true if the column type is stored as a (possibly narrower) int64 */
+inline bool isRawIntegerType(ValueType type) {
+    switch (type) {
+        case VALUE_TYPE_TINYINT:
+        case VALUE_TYPE_SMALLINT:
+        case VALUE_TYPE_INTEGER:
+        case VALUE_TYPE_BIGINT:
+        case VALUE_TYPE_TIMESTAMP:
+            return true;
+        default:
+            return false;
+    }
+}
+
+// ------------------------------------------------------------------
+// CompiledClause
+// A single "column <op> constant/parameter" comparison on a fixed-width
+// column of the outer tuple. The column is always on the left.
+// ------------------------------------------------------------------
+class CompiledClause {
+public:
+    CompiledClause(uint32_t offset, const AbstractExpression *value)
+        : m_offset(offset), m_value(value) { }
+    virtual ~CompiledClause() { }
+
+    virtual bool test(const TableTuple *tuple) const = 0;
+
+    /**
+     * Grab the current value of the constant or parameter that we compare against.
+     * Returns false if its type does not match the column.
+     */
+    virtual bool load() = 0;
+
+protected:
+    inline const char* data(const TableTuple *tuple) const {
+        return (tuple->address() + m_offset);
+    }
+
+    const uint32_t m_offset;
+    const AbstractExpression *m_value;
+};
+
+template <typename T, typename C>
+class CompiledIntegerClause : public CompiledClause {
+public:
+    CompiledIntegerClause(uint32_t offset, const AbstractExpression *value, T nullValue)
+        : CompiledClause(offset, value), m_nullValue(nullValue), m_intValue(0) { }
+
+    inline bool test(const TableTuple *tuple) const {
+        const T raw = *reinterpret_cast<const T*>(data(tuple));
+        const int64_t value = (raw == m_nullValue ? INT64_NULL : static_cast<int64_t>(raw));
+        return compare(value, m_intValue);
+    }
+
+    bool load() {
+        const NValue value = m_value->eval(NULL, NULL);
+        const ValueType type = ValuePeeker::peekValueType(value);
+        if (!isRawIntegerType(type) && type != VALUE_TYPE_NULL) return false;
+        m_intValue = ValuePeeker::peekAsBigInt(value);
+        return true;
+    }
+
+private:
+    const T m_nullValue;
+    int64_t m_intValue;
+    C compare;
+};
+
+template <typename C>
+class CompiledDoubleClause : public CompiledClause {
+public:
+    CompiledDoubleClause(uint32_t offset, const AbstractExpression *value, bool flipped)
+        : CompiledClause(offset, value), m_flipped(flipped), m_doubleValue(0) { }
+
+    inline bool test(const TableTuple *tuple) const {
+        const double value = *reinterpret_cast<const double*>(data(tuple));
+        // Compare in the original order of the operands
+        const int result = (m_flipped ? -compareRawDoubles(m_doubleValue, value) :
+                                        compareRawDoubles(value, m_doubleValue));
+        return compare(result, 0);
+    }
+
+    bool load() {
+        const NValue value = m_value->eval(NULL, NULL);
+        if (ValuePeeker::peekValueType(value) != VALUE_TYPE_DOUBLE) return false;
+        m_doubleValue = ValuePeeker::peekDouble(value);
+        return true;
+    }
+
+private:
+    const bool m_flipped;
+    double m_doubleValue;
+    C compare;
+};
+
+// ------------------------------------------------------------------
+// CompiledPredicateExpression
+// A predicate whose top-level AND'ed comparisons on fixed-width columns
+// have been replaced by type-specialized CompiledClauses. Anything else
+// in the predicate is evaluated as is after all of the clauses pass.
+// This does not own the original expression tree.
+// ------------------------------------------------------------------
+class CompiledPredicateExpression : public AbstractExpression {
+public:
+    CompiledPredicateExpression(AbstractExpression *original,
+                                const std::vector<CompiledClause*> &clauses,
+                                const std::vector<const AbstractExpression*> &residuals)
+        : AbstractExpression(original->getExpressionType()),
+          m_original(original), m_clauses(clauses), m_residuals(residuals),
+          m_fallback(false)
+    {
+        this->reload();
+    }
+
+    ~CompiledPredicateExpression() {
+        for (int ii = 0, cnt = static_cast<int>(m_clauses.size()); ii < cnt; ii++) {
+            delete m_clauses[ii];
+        }
+    }
+
+    inline NValue eval(const TableTuple *tuple1, const TableTuple *tuple2) const {
+        if (m_fallback) {
+            return m_original->eval(tuple1, tuple2);
+        }
+        for (int ii = 0, cnt = static_cast<int>(m_clauses.size()); ii < cnt; ii++) {
+            if (!m_clauses[ii]->test(tuple1)) return NValue::getFalse();
+        }
+        for (int ii = 0, cnt = static_cast<int>(m_residuals.size()); ii < cnt; ii++) {
+            if (!m_residuals[ii]->eval(tuple1, tuple2).isTrue()) return NValue::getFalse();
+        }
+        return NValue::getTrue();
+    }
+
+    void substitute(const NValueArray &params) {
+        m_original->substitute(params);
+        this->reload();
+    }
+
+    bool hasParameter() const {
+        return m_original->hasParameter();
+    }
+
+    /** Returns true if the parameters' types forced us to use the original expression */
+    bool isFallback() const {
+        return m_fallback;
+    }
+
+    int getClauseCount() const {
+        return static_cast<int>(m_clauses.size());
+    }
+
+    std::string debugInfo(const std::string &spacer) const {
+        std::ostringstream buffer;
+        buffer << spacer << "CompiledPredicate[clauses=" << m_clauses.size()
+               << ", residuals=" << m_residuals.size()
+               << ", fallback=" << m_fallback << "]\n";
+        buffer << m_original->debug(spacer + "  ");
+        return (buffer.str());
+    }
+
+private:
+    void reload() {
+        m_fallback = false;
+        for (int ii = 0, cnt = static_cast<int>(m_clauses.size()); ii < cnt; ii++) {
+            if (!m_clauses[ii]->load()) {
+                m_fallback = true;
+                break;
+            }
+        }
+    }
+
+    AbstractExpression *m_original;
+    std::vector<CompiledClause*> m_clauses;
+    std::vector<const AbstractExpression*> m_residuals;
+    bool m_fallback;
+};
+
+}
+#endif
@@ -50,6 +50,8 @@
 #include "common/FatalException.hpp"
 #include "expressions/abstractexpression.h"
 #include "expressions/expressions.h"
+#include "expressions/compiledpredicateexpression.h"
+#include "common/TupleSchema.h"
 
 #include <cassert>
 #include <sstream>
@@ -386,6 +388,10 @@ tupleValueFactory(json_spirit::Object &obj, ExpressionType et,
                                     columnName.get_str());
 }
 
+AbstractExpression * tupleValueFactory(int idx) {
+    return new TupleValueExpression(idx, "", "");
+}
+
 AbstractExpression *
 conjunctionFactory(ExpressionType et, AbstractExpression *lc, AbstractExpression *rc)
 {
@@ -481,6 +487,127 @@ expressionFactory(json_spirit::Object &obj,
     return ret;
 }
 
+/** Instantiate a compiled clause for the column's storage type */
+template <typename C>
+CompiledClause*
+getCompiledClause(ValueType vt, uint32_t offset,
+                  const AbstractExpression *value, bool flipped)
+{
+    switch (vt) {
+    case (VALUE_TYPE_TINYINT):
+        return new CompiledIntegerClause<int8_t, C>(offset, value, static_cast<int8_t>(INT8_NULL));
+    case (VALUE_TYPE_SMALLINT):
+        return new CompiledIntegerClause<int16_t, C>(offset, value, static_cast<int16_t>(INT16_NULL));
+    case (VALUE_TYPE_INTEGER):
+        return new CompiledIntegerClause<int32_t, C>(offset, value, static_cast<int32_t>(INT32_NULL));
+    case (VALUE_TYPE_BIGINT):
+    case (VALUE_TYPE_TIMESTAMP):
+        return new CompiledIntegerClause<int64_t, C>(offset, value, static_cast<int64_t>(INT64_NULL));
+    case (VALUE_TYPE_DOUBLE):
+        return new CompiledDoubleClause<C>(offset, value, flipped);
+    default:
+        return NULL;
+    }
+}
+
+/** Try to compile a single comparison. Returns NULL if it does not
+ * have a shape that we support. */
+CompiledClause*
+compileClause(const AbstractExpression *expr, const TupleSchema *schema)
+{
+    ExpressionType c = expr->getExpressionType();
+    switch (c) {
+    case (EXPRESSION_TYPE_COMPARE_EQUAL):
+    case (EXPRESSION_TYPE_COMPARE_NOTEQUAL):
+    case (EXPRESSION_TYPE_COMPARE_LESSTHAN):
+    case (EXPRESSION_TYPE_COMPARE_GREATERTHAN):
+    case (EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO):
+    case (EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO):
+        break;
+    default:
+        return NULL;
+    }
+    const AbstractExpression *l = expr->getLeft();
+    const AbstractExpression *r = expr->getRight();
+    if (l == NULL || r == NULL) return NULL;
+
+    // The column always goes on the left
+    bool flipped = false;
+    if (r->getExpressionType() == EXPRESSION_TYPE_VALUE_TUPLE) {
+        std::swap(l, r);
+        c = flipComparison(c);
+        flipped = true;
+    }
+    if (l->getExpressionType() != EXPRESSION_TYPE_VALUE_TUPLE ||
+        (r->getExpressionType() != EXPRESSION_TYPE_VALUE_CONSTANT &&
+         r->getExpressionType() != EXPRESSION_TYPE_VALUE_PARAMETER)) {
+        return NULL;
+    }
+    const TupleValueExpression *tve = dynamic_cast<const TupleValueExpression*>(l);
+    if (tve == NULL || tve->getTupleIndex() != 0 ||
+        tve->getColumnId() >= schema->columnCount()) {
+        return NULL;
+    }
+    const int column = tve->getColumnId();
+    const ValueType vt = schema->columnType(column);
+    const uint32_t offset =
+        static_cast<uint32_t>(schema->columnOffset(column) + TUPLE_HEADER_SIZE);
+
+    switch (c) {
+    case (EXPRESSION_TYPE_COMPARE_EQUAL):
+        return getCompiledClause<RawCmpEq>(vt, offset, r, flipped);
+    case (EXPRESSION_TYPE_COMPARE_NOTEQUAL):
+        return getCompiledClause<RawCmpNe>(vt, offset, r, flipped);
+    case (EXPRESSION_TYPE_COMPARE_LESSTHAN):
+        return getCompiledClause<RawCmpLt>(vt, offset, r, flipped);
+    case (EXPRESSION_TYPE_COMPARE_GREATERTHAN):
+        return getCompiledClause<RawCmpGt>(vt, offset, r, flipped);
+    case (EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO):
+        return getCompiledClause<RawCmpLte>(vt, offset, r, flipped);
+    case (EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO):
+        return getCompiledClause<RawCmpGte>(vt, offset, r, flipped);
+    default:
+        return NULL;
+    }
+}
+
+AbstractExpression *
+compilePredicate(AbstractExpression *predicate, const TupleSchema *schema)
+{
+    if (predicate == NULL || schema == NULL) {
+        return NULL;
+    }
+
+    // Walk down the AND'ed conjuncts from left to right
+    std::vector<CompiledClause*> clauses;
+    std::vector<const AbstractExpression*> residuals;
+    std::vector<const AbstractExpression*> stack;
+    stack.push_back(predicate);
+    while (!stack.empty()) {
+        const AbstractExpression *expr = stack.back();
+        stack.pop_back();
+        if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND &&
+            expr->getLeft() != NULL && expr->getRight() != NULL) {
+            stack.push_back(expr->getRight());
+            stack.push_back(expr->getLeft());
+            continue;
+        }
+        CompiledClause *clause = compileClause(expr, schema);
+        if (clause != NULL) {
+            clauses.push_back(clause);
+        } else {
+            residuals.push_back(expr);
+        }
+    }
+
+    VOLT_DEBUG("Compiled %d clauses for predicate [residuals=%d]",
+               (int)clauses.size(), (int)residuals.size());
+    if (clauses.empty()) {
+        return NULL;
+    }
+    return new CompiledPredicateExpression(predicate, clauses, residuals);
+}
+
 } // namespace voltdb
 namespace expressionutil {
 
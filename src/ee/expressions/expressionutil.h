@@ -73,6 +73,17 @@ AbstractExpression *conjunctionFactory(ExpressionType, AbstractExpression*, Abst
 
 // incomparisonFactory() .. would only wrap the ctor and pass the val. vector
 
+class TupleSchema;
+
+/**
+ * Build a type-specialized evaluator for a predicate on tuples with the given schema.
+ * Every "column <op> constant/parameter" comparison on a fixed-width column that is
+ * AND'ed together at the top of the predicate is compiled into a fused clause that
+ * reads the column directly out of the tuple. Returns NULL if nothing could be compiled.
+ * The caller owns the returned expression, but the original predicate must outlive it.
+ */
+AbstractExpression *compilePredicate(AbstractExpression *predicate, const TupleSchema *schema);
+
 }
 
 namespace expressionutil {
@@ -0,0 +1,653 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef BPLUSTREE_H_
+#define BPLUSTREE_H_
+
+#include <cassert>
+#include <cstddef>
+
+namespace voltdb {
+
+/**
+ * In-memory B+Tree that maps index keys to tuple pointers.
+ *
+ * Unlike std::map, which allocates a separate node for every entry, this
+ * tree packs many keys into each node so that a lookup only has to touch
+ * a handful of cache lines per level. All of the entries are stored in the
+ * leaves, and the leaves are linked together in both directions so that
+ * range scans are just a walk across contiguous arrays.
+ *
+ * If Unique is false, then the tree can contain multiple entries with the
+ * same key. Like std::multimap, new entries for an existing key are added
+ * after the ones that are already there.
+ *
+ * <B>NOTE:</B> Any insert or erase invalidates all of the iterators.
+ */
+template<typename KeyType, typename ValueType, class KeyComparator, bool Unique>
+class BPlusTree
+{
+    /**
+     * How many bytes of keys+values we want to put in a single node.
+     * This is 8 cache lines, which is big enough to keep the tree shallow
+     * but small enough that shifting entries around on an insert is cheap.
+     */
+    static const size_t NODE_BYTES = 512;
+    static const int MIN_SLOTS = 8;
+
+public:
+    static const int LEAF_SLOTS =
+        (NODE_BYTES / (sizeof(KeyType) + sizeof(ValueType)) > MIN_SLOTS ?
+         NODE_BYTES / (sizeof(KeyType) + sizeof(ValueType)) : MIN_SLOTS);
+    static const int INNER_SLOTS =
+        (NODE_BYTES / (sizeof(KeyType) + sizeof(void*)) > MIN_SLOTS ?
+         NODE_BYTES / (sizeof(KeyType) + sizeof(void*)) : MIN_SLOTS);
+    static const int LEAF_MIN = LEAF_SLOTS / 2;
+    static const int INNER_MIN = INNER_SLOTS / 2;
+
+private:
+    struct InnerNode;
+
+    struct Node {
+        Node(bool leaf) : isLeaf(leaf), count(0), parent(NULL) {}
+        bool isLeaf;
+        int count;
+        InnerNode *parent;
+    };
+
+    struct LeafNode : public Node {
+        LeafNode() : Node(true), prev(NULL), next(NULL) {}
+        KeyType keys[LEAF_SLOTS];
+        ValueType values[LEAF_SLOTS];
+        LeafNode *prev;
+        LeafNode *next;
+    };
+
+    /**
+     * An inner node with N keys has N+1 children. Every key in children[i]
+     * is <= keys[i] and every key in children[i+1] is >= keys[i]. Both sides
+     * are inclusive so that duplicate keys can span multiple leaves.
+     */
+    struct InnerNode : public Node {
+        InnerNode() : Node(false) {}
+        KeyType keys[INNER_SLOTS];
+        Node *children[INNER_SLOTS + 1];
+    };
+
+public:
+
+    /**
+     * Position of an entry in the tree. An iterator with a NULL leaf
+     * points past either end of the tree.
+     */
+    class Iterator {
+        friend class BPlusTree;
+    public:
+        Iterator() : m_leaf(NULL), m_pos(0) {}
+
+        inline bool isEnd() const { return (m_leaf == NULL); }
+        inline const KeyType& key() const { return m_leaf->keys[m_pos]; }
+        inline const ValueType& value() const { return m_leaf->values[m_pos]; }
+
+        inline Iterator& operator++() {
+            if (++m_pos >= m_leaf->count) {
+                m_leaf = m_leaf->next;
+                m_pos = 0;
+            }
+            return *this;
+        }
+        inline Iterator& operator--() {
+            if (m_pos > 0) {
+                --m_pos;
+            } else {
+                m_leaf = m_leaf->prev;
+                m_pos = (m_leaf != NULL ? m_leaf->count - 1 : 0);
+            }
+            return *this;
+        }
+        inline bool operator==(const Iterator &other) const {
+            return (m_leaf == other.m_leaf && m_pos == other.m_pos);
+        }
+        inline bool operator!=(const Iterator &other) const {
+            return !(*this == other);
+        }
+
+    private:
+        Iterator(LeafNode *leaf, int pos) : m_leaf(leaf), m_pos(pos) {
+            // Skip over to the next leaf if we are past the end of this one
+            if (m_leaf != NULL && m_pos >= m_leaf->count) {
+                m_leaf = m_leaf->next;
+                m_pos = 0;
+            }
+        }
+        LeafNode *m_leaf;
+        int m_pos;
+    };
+
+    BPlusTree(const KeyComparator &comparator) :
+        m_root(NULL),
+        m_first(NULL),
+        m_last(NULL),
+        m_size(0),
+        m_leaves(0),
+        m_inners(0),
+        m_less(comparator)
+    { }
+
+    ~BPlusTree() {
+        clear();
+    }
+
+    inline size_t size() const { return m_size; }
+    inline bool empty() const { return (m_size == 0); }
+
+    /** Number of bytes allocated for the nodes of this tree */
+    inline size_t getMemorySize() const {
+        return (m_leaves * sizeof(LeafNode)) + (m_inners * sizeof(InnerNode));
+    }
+
+    void clear() {
+        if (m_root != NULL) freeNode(m_root);
+        m_root = NULL;
+        m_first = m_last = NULL;
+        m_size = 0;
+    }
+
+    inline Iterator begin() const { return Iterator(m_first, 0); }
+    inline Iterator end() const { return Iterator(); }
+
+    /** Iterator for the last entry in the tree (for reverse scans) */
+    inline Iterator last() const {
+        return (m_last != NULL ? Iterator(m_last, m_last->count - 1) : Iterator());
+    }
+
+    /** Returns the first entry whose key is not less than the given key */
+    Iterator lowerBound(const KeyType &key) const {
+        if (m_root == NULL) return Iterator();
+        const Node *node = m_root;
+        while (!node->isLeaf) {
+            const InnerNode *inner = static_cast<const InnerNode*>(node);
+            node = inner->children[lowerIndex(inner->keys, inner->count, key)];
+        } // WHILE
+        LeafNode *leaf = const_cast<LeafNode*>(static_cast<const LeafNode*>(node));
+        return Iterator(leaf, lowerIndex(leaf->keys, leaf->count, key));
+    }
+
+    /** Returns the first entry whose key is greater than the given key */
+    Iterator upperBound(const KeyType &key) const {
+        if (m_root == NULL) return Iterator();
+        LeafNode *leaf = findLeafUpper(key);
+        return Iterator(leaf, upperIndex(leaf->keys, leaf->count, key));
+    }
+
+    /** Returns the first entry with the given key, or end() if there isn't one */
+    Iterator find(const KeyType &key) const {
+        Iterator it = lowerBound(key);
+        if (it.isEnd() || m_less(key, it.key())) return Iterator();
+        return it;
+    }
+
+    /**
+     * Add a new entry to the tree. If this is a unique tree and the key
+     * already exists, then nothing is added and this returns false.
+     */
+    bool insert(const KeyType &key, const ValueType &value) {
+        if (m_root == NULL) {
+            LeafNode *leaf = newLeaf();
+            m_root = m_first = m_last = leaf;
+        }
+        LeafNode *leaf = findLeafUpper(key);
+        int pos = upperIndex(leaf->keys, leaf->count, key);
+
+        // The entry right before the upper bound is the largest key that is
+        // less than or equal to ours. If it's not less, then it's a duplicate.
+        if (Unique) {
+            const KeyType *prev = NULL;
+            if (pos > 0) prev = &leaf->keys[pos - 1];
+            else if (leaf->prev != NULL) prev = &leaf->prev->keys[leaf->prev->count - 1];
+            if (prev != NULL && !m_less(*prev, key)) return false;
+        }
+
+        if (leaf->count == LEAF_SLOTS) {
+            LeafNode *right = splitLeaf(leaf);
+            if (pos > leaf->count) {
+                pos -= leaf->count;
+                leaf = right;
+            }
+        }
+        insertIntoLeaf(leaf, pos, key, value);
+        ++m_size;
+        return true;
+    }
+
+    /**
+     * Remove the entry at the given position.
+     */
+    void erase(const Iterator &it) {
+        assert(!it.isEnd());
+        LeafNode *leaf = it.m_leaf;
+        for (int i = it.m_pos + 1; i < leaf->count; ++i) {
+            leaf->keys[i - 1] = leaf->keys[i];
+            leaf->values[i - 1] = leaf->values[i];
+        } // FOR
+        --leaf->count;
+        --m_size;
+
+        if (leaf == m_root) {
+            if (leaf->count == 0) clear();
+            return;
+        }
+        if (leaf->count < LEAF_MIN) rebalanceLeaf(leaf);
+    }
+
+    /**
+     * Remove the first entry with the given key. Returns false if the key
+     * does not exist.
+     */
+    bool erase(const KeyType &key) {
+        Iterator it = find(key);
+        if (it.isEnd()) return false;
+        erase(it);
+        return true;
+    }
+
+    /**
+     * Remove the entry with the given key and value. This is what we use
+     * for non-unique trees where multiple entries can have the same key.
+     */
+    bool erase(const KeyType &key, const ValueType &value) {
+        for (Iterator it = lowerBound(key); !it.isEnd() && !m_less(key, it.key()); ++it) {
+            if (it.value() == value) {
+                erase(it);
+                return true;
+            }
+        } // FOR
+        return false;
+    }
+
+private:
+
+    // ----------------------------------------------------------------------------
+    // SEARCH
+    // ----------------------------------------------------------------------------
+
+    /** First position in keys that is not less than key */
+    inline int lowerIndex(const KeyType *keys, int count, const KeyType &key) const {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >> 1;
+            if (m_less(keys[mid], key)) lo = mid + 1;
+            else hi = mid;
+        } // WHILE
+        return lo;
+    }
+
+    /** First position in keys that is greater than key */
+    inline int upperIndex(const KeyType *keys, int count, const KeyType &key) const {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >> 1;
+            if (m_less(key, keys[mid])) hi = mid;
+            else lo = mid + 1;
+        } // WHILE
+        return lo;
+    }
+
+    inline LeafNode* findLeafUpper(const KeyType &key) const {
+        Node *node = m_root;
+        while (!node->isLeaf) {
+            InnerNode *inner = static_cast<InnerNode*>(node);
+            node = inner->children[upperIndex(inner->keys, inner->count, key)];
+        } // WHILE
+        return static_cast<LeafNode*>(node);
+    }
+
+    inline int childIndex(const InnerNode *parent, const Node *child) const {
+        for (int i = 0; i <= parent->count; ++i) {
+            if (parent->children[i] == child) return i;
+        } // FOR
+        assert(false);
+        return -1;
+    }
+
+    // ----------------------------------------------------------------------------
+    // INSERT
+    // ----------------------------------------------------------------------------
+
+    inline void insertIntoLeaf(LeafNode *leaf, int pos, const KeyType &key, const ValueType &value) {
+        assert(leaf->count < LEAF_SLOTS);
+        for (int i = leaf->count; i > pos; --i) {
+            leaf->keys[i] = leaf->keys[i - 1];
+            leaf->values[i] = leaf->values[i - 1];
+        } // FOR
+        leaf->keys[pos] = key;
+        leaf->values[pos] = value;
+        ++leaf->count;
+    }
+
+    /**
+     * Move the upper half of a full leaf into a new leaf that is linked
+     * in right after it. Returns the new leaf.
+     */
+    LeafNode* splitLeaf(LeafNode *leaf) {
+        LeafNode *right = newLeaf();
+        int mid = leaf->count / 2;
+        for (int i = mid; i < leaf->count; ++i) {
+            right->keys[i - mid] = leaf->keys[i];
+            right->values[i - mid] = leaf->values[i];
+        } // FOR
+        right->count = leaf->count - mid;
+        leaf->count = mid;
+
+        right->next = leaf->next;
+        right->prev = leaf;
+        if (leaf->next != NULL) leaf->next->prev = right;
+        else m_last = right;
+        leaf->next = right;
+
+        insertIntoParent(leaf, right->keys[0], right);
+        return right;
+    }
+
+    /**
+     * Add a separator key and a new right sibling for the given node
+     * to its parent. This will split the parent if it is full.
+     */
+    void insertIntoParent(Node *left, const KeyType &key, Node *right) {
+        InnerNode *parent = left->parent;
+        if (parent == NULL) {
+            InnerNode *root = newInner();
+            root->keys[0] = key;
+            root->children[0] = left;
+            root->children[1] = right;
+            root->count = 1;
+            left->parent = right->parent = root;
+            m_root = root;
+            return;
+        }
+
+        int pos = childIndex(parent, left);
+        if (parent->count < INNER_SLOTS) {
+            for (int i = parent->count; i > pos; --i) {
+                parent->keys[i] = parent->keys[i - 1];
+                parent->children[i + 1] = parent->children[i];
+            } // FOR
+            parent->keys[pos] = key;
+            parent->children[pos + 1] = right;
+            right->parent = parent;
+            ++parent->count;
+            return;
+        }
+
+        // The parent is full, so we need to split it. We first build the
+        // full list of keys+children and then divide it between the two nodes
+        KeyType keys[INNER_SLOTS + 1];
+        Node *children[INNER_SLOTS + 2];
+        for (int i = 0, j = 0; i <= INNER_SLOTS; ++i) {
+            if (i == pos) keys[i] = key;
+            else keys[i] = parent->keys[j++];
+        } // FOR
+        for (int i = 0, j = 0; i <= INNER_SLOTS + 1; ++i) {
+            if (i == pos + 1) children[i] = right;
+            else children[i] = parent->children[j++];
+        } // FOR
+
+        const int total = INNER_SLOTS + 1;
+        const int mid = total / 2;
+        InnerNode *sibling = newInner();
+        parent->count = mid;
+        for (int i = 0; i < mid; ++i) {
+            parent->keys[i] = keys[i];
+            parent->children[i] = children[i];
+            children[i]->parent = parent;
+        } // FOR
+        parent->children[mid] = children[mid];
+        children[mid]->parent = parent;
+
+        sibling->count = total - mid - 1;
+        for (int i = 0; i < sibling->count; ++i) {
+            sibling->keys[i] = keys[mid + 1 + i];
+            sibling->children[i] = children[mid + 1 + i];
+            sibling->children[i]->parent = sibling;
+        } // FOR
+        sibling->children[sibling->count] = children[total];
+        children[total]->parent = sibling;
+
+        insertIntoParent(parent, keys[mid], sibling);
+    }
+
+    // ----------------------------------------------------------------------------
+    // DELETE
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Fix a leaf that has less than the minimum number of entries by
+     * either borrowing an entry from a sibling or merging with it.
+     */
+    void rebalanceLeaf(LeafNode *leaf) {
+        InnerNode *parent = leaf->parent;
+        int pos = childIndex(parent, leaf);
+        LeafNode *left = (pos > 0 ? static_cast<LeafNode*>(parent->children[pos - 1]) : NULL);
+        LeafNode *right = (pos < parent->count ? static_cast<LeafNode*>(parent->children[pos + 1]) : NULL);
+
+        // Borrow the last entry from our left sibling
+        if (left != NULL && left->count > LEAF_MIN) {
+            --left->count;
+            insertIntoLeaf(leaf, 0, left->keys[left->count], left->values[left->count]);
+            parent->keys[pos - 1] = leaf->keys[0];
+        }
+        // Borrow the first entry from our right sibling
+        else if (right != NULL && right->count > LEAF_MIN) {
+            insertIntoLeaf(leaf, leaf->count, right->keys[0], right->values[0]);
+            for (int i = 1; i < right->count; ++i) {
+                right->keys[i - 1] = right->keys[i];
+                right->values[i - 1] = right->values[i];
+            } // FOR
+            --right->count;
+            parent->keys[pos] = right->keys[0];
+        }
+        // Merge into our left sibling
+        else if (left != NULL) {
+            mergeLeaves(left, leaf);
+            removeFromInner(parent, pos - 1);
+        }
+        // Merge our right sibling into us
+        else {
+            assert(right != NULL);
+            mergeLeaves(leaf, right);
+            removeFromInner(parent, pos);
+        }
+    }
+
+    /** Move all of the entries of right into left and then delete right */
+    void mergeLeaves(LeafNode *left, LeafNode *right) {
+        assert(left->count + right->count <= LEAF_SLOTS);
+        for (int i = 0; i < right->count; ++i) {
+            left->keys[left->count + i] = right->keys[i];
+            left->values[left->count + i] = right->values[i];
+        } // FOR
+        left->count += right->count;
+
+        left->next = right->next;
+        if (right->next != NULL) right->next->prev = left;
+        else m_last = left;
+        delete right;
+        --m_leaves;
+    }
+
+    /**
+     * Remove the key at the given position and the child to the right
+     * of it from an inner node.
+     */
+    void removeFromInner(InnerNode *node, int pos) {
+        for (int i = pos + 1; i < node->count; ++i) {
+            node->keys[i - 1] = node->keys[i];
+            node->children[i] = node->children[i + 1];
+        } // FOR
+        --node->count;
+
+        if (node == m_root) {
+            // Shrink the tree if the root only has one child left
+            if (node->count == 0) {
+                m_root = node->children[0];
+                m_root->parent = NULL;
+                delete node;
+                --m_inners;
+            }
+            return;
+        }
+        if (node->count < INNER_MIN) rebalanceInner(node);
+    }
+
+    void rebalanceInner(InnerNode *node) {
+        InnerNode *parent = node->parent;
+        int pos = childIndex(parent, node);
+        InnerNode *left = (pos > 0 ? static_cast<InnerNode*>(parent->children[pos - 1]) : NULL);
+        InnerNode *right = (pos < parent->count ? static_cast<InnerNode*>(parent->children[pos + 1]) : NULL);
+
+        // Rotate the last child of our left sibling through the parent
+        if (left != NULL && left->count > INNER_MIN) {
+            node->children[node->count + 1] = node->children[node->count];
+            for (int i = node->count; i > 0; --i) {
+                node->keys[i] = node->keys[i - 1];
+                node->children[i] = node->children[i - 1];
+            } // FOR
+            node->keys[0] = parent->keys[pos - 1];
+            node->children[0] = left->children[left->count];
+            node->children[0]->parent = node;
+            ++node->count;
+            parent->keys[pos - 1] = left->keys[left->count - 1];
+            --left->count;
+        }
+        // Rotate the first child of our right sibling through the parent
+        else if (right != NULL && right->count > INNER_MIN) {
+            node->keys[node->count] = parent->keys[pos];
+            node->children[node->count + 1] = right->children[0];
+            node->children[node->count + 1]->parent = node;
+            ++node->count;
+            parent->keys[pos] = right->keys[0];
+            for (int i = 1; i < right->count; ++i) {
+                right->keys[i - 1] = right->keys[i];
+                right->children[i - 1] = right->children[i];
+            } // FOR
+            right->children[right->count - 1] = right->children[right->count];
+            --right->count;
+        }
+        // Merge into our left sibling
+        else if (left != NULL) {
+            mergeInners(left, parent->keys[pos - 1], node);
+            removeFromInner(parent, pos - 1);
+        }
+        // Merge our right sibling into us
+        else {
+            assert(right != NULL);
+            mergeInners(node, parent->keys[pos], right);
+            removeFromInner(parent, pos);
+        }
+    }
+
+    /**
+     * Move the separator key from the parent and all of the keys+children
+     * of right into left and then delete right
+     */
+    void mergeInners(InnerNode *left, const KeyType &separator, InnerNode *right) {
+        assert(left->count + right->count + 1 <= INNER_SLOTS);
+        left->keys[left->count] = separator;
+        for (int i = 0; i < right->count; ++i) {
+            left->keys[left->count + 1 + i] = right->keys[i];
+        } // FOR
+        for (int i = 0; i <= right->count; ++i) {
+            left->children[left->count + 1 + i] = right->children[i];
+            right->children[i]->parent = left;
+        } // FOR
+        left->count += right->count + 1;
+        delete right;
+        --m_inners;
+    }
+
+    // ----------------------------------------------------------------------------
+    // MEMORY
+    // ----------------------------------------------------------------------------
+
+    inline LeafNode* newLeaf() {
+        ++m_leaves;
+        return new LeafNode();
+    }
+
+    inline InnerNode* newInner() {
+        ++m_inners;
+        return new InnerNode();
+    }
+
+    void freeNode(Node *node) {
+        if (node->isLeaf) {
+            delete static_cast<LeafNode*>(node);
+            --m_leaves;
+        } else {
+            InnerNode *inner = static_cast<InnerNode*>(node);
+            for (int i = 0; i <= inner->count; ++i) {
+                freeNode(inner->children[i]);
+            } // FOR
+            delete inner;
+            --m_inners;
+        }
+    }
+
+    // Not copyable
+    BPlusTree(const BPlusTree&);
+    BPlusTree& operator=(const BPlusTree&);
+
+    Node *m_root;
+    LeafNode *m_first;
+    LeafNode *m_last;
+    size_t m_size;
+    size_t m_leaves;
+    size_t m_inners;
+    KeyComparator m_less;
+};
+
+}
+
+#endif // BPLUSTREE_H_
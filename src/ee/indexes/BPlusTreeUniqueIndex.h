@@ -0,0 +1,258 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef BPLUSTREEUNIQUEINDEX_H_
+#define BPLUSTREEUNIQUEINDEX_H_
+
+#include <iostream>
+#include "common/debuglog.h"
+#include "common/tabletuple.h"
+#include "indexes/tableindex.h"
+#include "indexes/BPlusTree.h"
+
+namespace voltdb {
+
+/**
+ * Unique Index implemented as a B+Tree.
+ * @see TableIndex
+ * @see BPlusTree
+ */
+template<typename KeyType, class KeyComparator, class KeyEqualityChecker>
+class BPlusTreeUniqueIndex : public TableIndex
+{
+    friend class TableIndexFactory;
+
+    typedef BPlusTree<KeyType, const void*, KeyComparator, true> TreeType;
+    typedef typename TreeType::Iterator TreeIter;
+
+public:
+
+    ~BPlusTreeUniqueIndex() {};
+
+    bool addEntry(const TableTuple* tuple)
+    {
+        m_tmp1.setFromTuple(tuple, column_indices_, m_keySchema);
+        return addEntryPrivate(tuple, m_tmp1);
+    }
+
+    bool deleteEntry(const TableTuple* tuple)
+    {
+        m_tmp1.setFromTuple(tuple, column_indices_, m_keySchema);
+        return deleteEntryPrivate(m_tmp1);
+    }
+
+    bool replaceEntry(const TableTuple* oldTupleValue,
+                      const TableTuple* newTupleValue)
+    {
+        m_tmp1.setFromTuple(oldTupleValue, column_indices_, m_keySchema);
+        m_tmp2.setFromTuple(newTupleValue, column_indices_, m_keySchema);
+        if (m_eq(m_tmp1, m_tmp2))
+        {
+            // no update is needed for this index
+            return true;
+        }
+
+        bool deleted = deleteEntryPrivate(m_tmp1);
+        bool inserted = addEntryPrivate(newTupleValue, m_tmp2);
+        --m_deletes;
+        --m_inserts;
+        ++m_updates;
+        return (deleted && inserted);
+    }
+
+    bool checkForIndexChange(const TableTuple* lhs, const TableTuple* rhs)
+    {
+        m_tmp1.setFromTuple(lhs, column_indices_, m_keySchema);
+        m_tmp2.setFromTuple(rhs, column_indices_, m_keySchema);
+        return !(m_eq(m_tmp1, m_tmp2));
+    }
+
+    bool exists(const TableTuple* values)
+    {
+        ++m_lookups;
+        m_tmp1.setFromTuple(values, column_indices_, m_keySchema);
+        return (!m_entries.find(m_tmp1).isEnd());
+    }
+
+    bool moveToKey(const TableTuple* searchKey)
+    {
+        m_tmp1.setFromKey(searchKey);
+        return moveToKey(m_tmp1);
+    }
+
+    bool moveToTuple(const TableTuple* searchTuple)
+    {
+        m_tmp1.setFromTuple(searchTuple, column_indices_, m_keySchema);
+        return moveToKey(m_tmp1);
+    }
+
+    void moveToKeyOrGreater(const TableTuple* searchKey)
+    {
+        ++m_lookups;
+        m_begin = true;
+        m_tmp1.setFromKey(searchKey);
+        m_keyIter = m_entries.lowerBound(m_tmp1);
+    }
+
+    void moveToGreaterThanKey(const TableTuple* searchKey)
+    {
+        ++m_lookups;
+        m_begin = true;
+        m_tmp1.setFromKey(searchKey);
+        m_keyIter = m_entries.upperBound(m_tmp1);
+    }
+
+    void moveToEnd(bool begin)
+    {
+        ++m_lookups;
+        m_begin = begin;
+        if (begin)
+            m_keyIter = m_entries.begin();
+        else
+            m_keyIter = m_entries.last();
+    }
+
+    TableTuple nextValue()
+    {
+        if (m_keyIter.isEnd())
+            return TableTuple();
+
+        TableTuple retval(m_tupleSchema);
+        retval.move(const_cast<void*>(m_keyIter.value()));
+        if (m_begin)
+            ++m_keyIter;
+        else
+            --m_keyIter;
+        return retval;
+    }
+
+    TableTuple nextValueAtKey()
+    {
+        TableTuple retval = m_match;
+        m_match.move(NULL);
+        return retval;
+    }
+
+    bool advanceToNextKey()
+    {
+        if (m_begin)
+            ++m_keyIter;
+        else
+            --m_keyIter;
+        if (m_keyIter.isEnd())
+        {
+            m_match.move(NULL);
+            return false;
+        }
+        m_match.move(const_cast<void*>(m_keyIter.value()));
+        return !m_match.isNullTuple();
+    }
+
+    size_t getSize() const { return m_entries.size(); }
+    std::string getTypeName() const { return "BPlusTreeUniqueIndex"; };
+    std::string debug() const
+    {
+        std::ostringstream buffer;
+        buffer << TableIndex::debug() << std::endl;
+
+        for (TreeIter i = m_entries.begin(); !i.isEnd(); ++i) {
+            TableTuple retval(m_tupleSchema);
+            retval.move(const_cast<void*>(i.value()));
+            buffer << retval.debugNoHeader() << std::endl;
+        }
+        std::string ret(buffer.str());
+        return (ret);
+    }
+protected:
+    BPlusTreeUniqueIndex(const TableIndexScheme &scheme) :
+        TableIndex(scheme),
+        m_entries(KeyComparator(m_keySchema)),
+        m_begin(true),
+        m_eq(m_keySchema)
+    {
+        m_match = TableTuple(m_tupleSchema);
+    }
+
+    inline bool addEntryPrivate(const TableTuple* tuple, const KeyType &key)
+    {
+        ++m_inserts;
+        return m_entries.insert(key, tuple->address());
+    }
+
+    inline bool deleteEntryPrivate(const KeyType &key)
+    {
+        ++m_deletes;
+        return m_entries.erase(key);
+    }
+
+    bool moveToKey(const KeyType &key)
+    {
+        ++m_lookups;
+        m_begin = true;
+        m_keyIter = m_entries.find(key);
+        if (m_keyIter.isEnd()) {
+            m_match.move(NULL);
+            return false;
+        }
+        m_match.move(const_cast<void*>(m_keyIter.value()));
+        return !m_match.isNullTuple();
+    }
+
+    TreeType m_entries;
+    KeyType m_tmp1;
+    KeyType m_tmp2;
+
+    // iteration stuff
+    bool m_begin;
+    TreeIter m_keyIter;
+    TableTuple m_match;
+
+    // comparison stuff
+    KeyEqualityChecker m_eq;
+};
+
+}
+
+#endif // BPLUSTREEUNIQUEINDEX_H_
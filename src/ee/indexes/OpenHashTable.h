@@ -0,0 +1,437 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef OPENHASHTABLE_H_
+#define OPENHASHTABLE_H_
+
+#include <cassert>
+#include <cstdlib>
+#include <stdint.h>
+#include "common/FatalException.hpp"
+
+namespace voltdb {
+
+/**
+ * Open-addressing hash table that maps index keys to tuple pointers.
+ *
+ * Every entry is stored inline in one flat array of buckets (hash + key +
+ * value), so a lookup is usually a single cache miss instead of chasing the
+ * per-entry nodes of boost::unordered_map. Collisions are resolved with
+ * Robin Hood linear probing, which keeps the probe sequences short and lets
+ * a lookup stop as soon as it reaches an entry that is closer to its home
+ * bucket than the key that we are looking for. Deletes shift the entries
+ * that follow back into the hole so that we never need tombstones.
+ *
+ * When the table gets too full we do not rehash everything at once. We
+ * allocate a table twice as big and then every insert/delete moves a small
+ * number of buckets from the old table into the new one. Until that is
+ * done, lookups check both tables. This keeps the cost of a resize spread
+ * out instead of stalling the partition on one big rehash.
+ *
+ * If Unique is false, then the table can contain multiple entries with the
+ * same key. Use find() and findNext() with a Cursor to get all of them.
+ *
+ * <B>NOTE:</B> Any insert or erase invalidates all of the cursors.
+ */
+template<typename KeyType, typename ValueType, class KeyHasher, class KeyEqualityChecker, bool Unique>
+class OpenHashTable
+{
+    /** The initial number of buckets. This must be a power of two. */
+    static const uint32_t INITIAL_CAPACITY = 64;
+
+    /**
+     * We start resizing once the table is this full (out of 100).
+     * Robin Hood probing holds up well at high load factors.
+     */
+    static const uint32_t MAX_LOAD_PERCENT = 80;
+
+    /**
+     * The number of old buckets that we move into the new table on each
+     * insert or delete while we are resizing. This has to be big enough that
+     * we will always finish before the new table fills up.
+     */
+    static const uint32_t MIGRATE_STEP = 16;
+
+    /**
+     * Buckets store the hash of their key. Zero means the bucket is empty,
+     * and the top bit marks entries in the old table that have been removed.
+     */
+    static const uint32_t EMPTY = 0;
+    static const uint32_t REMOVED = 0x80000000u;
+    static const uint32_t HASH_BITS = 0x7FFFFFFFu;
+
+    struct Bucket {
+        uint32_t hash;
+        KeyType key;
+        ValueType value;
+    };
+
+    struct Table {
+        Table() : buckets(NULL), mask(0), count(0) {}
+        Bucket *buckets;
+        uint32_t mask;
+        uint32_t count;
+
+        inline uint32_t capacity() const { return (buckets != NULL ? mask + 1 : 0); }
+        inline uint32_t probeDistance(uint32_t hash, uint32_t pos) const {
+            return (pos - (hash & HASH_BITS)) & mask;
+        }
+    };
+
+public:
+
+    /**
+     * Where we are in the search for all of the entries with a given key
+     */
+    class Cursor {
+        friend class OpenHashTable;
+    public:
+        Cursor() : m_old(false), m_pos(0), m_dist(0), m_hash(EMPTY) {}
+    private:
+        bool m_old;
+        uint32_t m_pos;
+        uint32_t m_dist;
+        uint32_t m_hash;
+    };
+
+    OpenHashTable(const KeyHasher &hasher, const KeyEqualityChecker &eq) :
+        m_migratePos(0),
+        m_hasher(hasher),
+        m_eq(eq)
+    {
+        allocate(m_active, INITIAL_CAPACITY);
+    }
+
+    ~OpenHashTable() {
+        ::free(m_active.buckets);
+        ::free(m_old.buckets);
+    }
+
+    inline size_t size() const { return (m_active.count + m_old.count); }
+    inline size_t capacity() const { return m_active.capacity(); }
+    inline bool isResizing() const { return (m_old.buckets != NULL); }
+
+    inline float loadFactor() const {
+        return (static_cast<float>(m_active.count) / static_cast<float>(m_active.capacity()));
+    }
+
+    /** Number of bytes allocated for the buckets of this table */
+    inline size_t getMemorySize() const {
+        return (static_cast<size_t>(m_active.capacity()) + m_old.capacity()) * sizeof(Bucket);
+    }
+
+    /**
+     * Add a new entry to the table. If this is a unique table and the key
+     * already exists, then nothing is added and this returns false.
+     */
+    bool insert(const KeyType &key, const ValueType &value) {
+        const uint32_t hash = hashOf(key);
+        if (Unique) {
+            Cursor cursor;
+            if (lookup(hash, key, cursor)) return false;
+        }
+        migrate();
+        if ((static_cast<uint64_t>(m_active.count) + 1) * 100 >
+            static_cast<uint64_t>(m_active.capacity()) * MAX_LOAD_PERCENT) {
+            grow();
+        }
+        place(m_active, hash, key, value);
+        return true;
+    }
+
+    /**
+     * Remove the first entry with the given key. Returns false if the key
+     * does not exist.
+     */
+    bool erase(const KeyType &key) {
+        Cursor cursor;
+        if (!lookup(hashOf(key), key, cursor)) return false;
+        remove(cursor);
+        migrate();
+        return true;
+    }
+
+    /**
+     * Remove the entry with the given key and value. This is what we use
+     * for non-unique tables where multiple entries can have the same key.
+     */
+    bool erase(const KeyType &key, const ValueType &value) {
+        Cursor cursor;
+        bool found = lookup(hashOf(key), key, cursor);
+        while (found) {
+            if (bucketAt(cursor).value == value) {
+                remove(cursor);
+                migrate();
+                return true;
+            }
+            found = lookupNext(key, cursor);
+        } // WHILE
+        return false;
+    }
+
+    /**
+     * Returns a pointer to the value of the first entry with the given key,
+     * or NULL if the key does not exist.
+     */
+    inline const ValueType* find(const KeyType &key) const {
+        Cursor cursor;
+        if (!lookup(hashOf(key), key, cursor)) return NULL;
+        return &bucketAt(cursor).value;
+    }
+
+    /**
+     * Find the first entry with the given key and remember where it was in
+     * the cursor so that we can get the rest of them with findNext()
+     */
+    inline const ValueType* find(const KeyType &key, Cursor &cursor) const {
+        if (!lookup(hashOf(key), key, cursor)) return NULL;
+        return &bucketAt(cursor).value;
+    }
+
+    /**
+     * Find the next entry with the same key after the cursor's position
+     */
+    inline const ValueType* findNext(const KeyType &key, Cursor &cursor) const {
+        if (Unique || !lookupNext(key, cursor)) return NULL;
+        return &bucketAt(cursor).value;
+    }
+
+private:
+
+    // ----------------------------------------------------------------------------
+    // LOOKUP
+    // ----------------------------------------------------------------------------
+
+    inline uint32_t hashOf(const KeyType &key) const {
+        // The hashers for the index keys do not spread sequential integers
+        // around very well, so we run it through a finalizer first.
+        uint64_t h = static_cast<uint64_t>(m_hasher(key));
+        h ^= h >> 33;
+        h *= UINT64_C(0xff51afd7ed558ccd);
+        h ^= h >> 33;
+        h *= UINT64_C(0xc4ceb9fe1a85ec53);
+        h ^= h >> 33;
+        uint32_t ret = static_cast<uint32_t>(h) & HASH_BITS;
+        return (ret == EMPTY ? 1 : ret);
+    }
+
+    inline const Bucket& bucketAt(const Cursor &cursor) const {
+        return (cursor.m_old ? m_old : m_active).buckets[cursor.m_pos];
+    }
+
+    /**
+     * Probe the given table starting at the cursor's position. Returns true
+     * if we found a matching entry, in which case the cursor is pointing at it.
+     */
+    bool probe(const Table &table, const KeyType &key, Cursor &cursor) const {
+        while (cursor.m_dist <= table.mask) {
+            const Bucket &bucket = table.buckets[cursor.m_pos];
+            if (bucket.hash == EMPTY) return false;
+            // Robin Hood invariant: if our key were here, we would have
+            // taken this bucket from an entry that is closer to its home
+            if (table.probeDistance(bucket.hash, cursor.m_pos) < cursor.m_dist) return false;
+            if (bucket.hash == cursor.m_hash && m_eq(bucket.key, key)) return true;
+            cursor.m_pos = (cursor.m_pos + 1) & table.mask;
+            ++cursor.m_dist;
+        } // WHILE
+        return false;
+    }
+
+    /**
+     * Start looking for the given key, first in the active table and
+     * then in the old table if we are in the middle of resizing
+     */
+    inline bool lookup(uint32_t hash, const KeyType &key, Cursor &cursor) const {
+        cursor.m_hash = hash;
+        cursor.m_old = false;
+        cursor.m_pos = hash & m_active.mask;
+        cursor.m_dist = 0;
+        if (probe(m_active, key, cursor)) return true;
+        return lookupOld(key, cursor);
+    }
+
+    inline bool lookupOld(const KeyType &key, Cursor &cursor) const {
+        if (m_old.buckets == NULL) return false;
+        cursor.m_old = true;
+        cursor.m_pos = cursor.m_hash & m_old.mask;
+        cursor.m_dist = 0;
+        return probe(m_old, key, cursor);
+    }
+
+    inline bool lookupNext(const KeyType &key, Cursor &cursor) const {
+        const Table &table = (cursor.m_old ? m_old : m_active);
+        cursor.m_pos = (cursor.m_pos + 1) & table.mask;
+        ++cursor.m_dist;
+        if (probe(table, key, cursor)) return true;
+        return (cursor.m_old ? false : lookupOld(key, cursor));
+    }
+
+    // ----------------------------------------------------------------------------
+    // MODIFICATION
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Robin Hood insert: whenever we come across an entry that is closer to
+     * its home bucket than we are to ours, we take its spot and then keep
+     * going to find a new place for that entry instead.
+     */
+    void place(Table &table, uint32_t hash, const KeyType &key, const ValueType &value) {
+        assert(table.count < table.capacity());
+        Bucket entry;
+        entry.hash = hash;
+        entry.key = key;
+        entry.value = value;
+
+        uint32_t pos = hash & table.mask;
+        uint32_t dist = 0;
+        while (true) {
+            Bucket &bucket = table.buckets[pos];
+            if (bucket.hash == EMPTY) {
+                bucket = entry;
+                ++table.count;
+                return;
+            }
+            uint32_t existing = table.probeDistance(bucket.hash, pos);
+            if (existing < dist) {
+                Bucket tmp = bucket;
+                bucket = entry;
+                entry = tmp;
+                dist = existing;
+            }
+            pos = (pos + 1) & table.mask;
+            ++dist;
+        } // WHILE
+    }
+
+    void remove(const Cursor &cursor) {
+        // Entries in the old table just get marked as removed so that we
+        // don't break the probe sequences of the entries that haven't moved yet
+        if (cursor.m_old) {
+            m_old.buckets[cursor.m_pos].hash |= REMOVED;
+            --m_old.count;
+            return;
+        }
+
+        // Otherwise shift back all of the entries after this one until we
+        // find an empty bucket or an entry that is already in its home bucket
+        Table &table = m_active;
+        uint32_t pos = cursor.m_pos;
+        uint32_t next = (pos + 1) & table.mask;
+        while (table.buckets[next].hash != EMPTY && table.probeDistance(table.buckets[next].hash, next) > 0) {
+            table.buckets[pos] = table.buckets[next];
+            pos = next;
+            next = (next + 1) & table.mask;
+        } // WHILE
+        table.buckets[pos].hash = EMPTY;
+        --table.count;
+    }
+
+    // ----------------------------------------------------------------------------
+    // RESIZING
+    // ----------------------------------------------------------------------------
+
+    void allocate(Table &table, uint32_t capacity) {
+        assert((capacity & (capacity - 1)) == 0);
+        // calloc gives us zeroed (i.e., empty) buckets, and for big tables the
+        // OS will hand us fresh pages without us having to touch them here
+        table.buckets = static_cast<Bucket*>(::calloc(capacity, sizeof(Bucket)));
+        if (table.buckets == NULL) {
+            throwFatalException("Failed to allocate %u buckets for hash index", capacity);
+        }
+        table.mask = capacity - 1;
+        table.count = 0;
+    }
+
+    /**
+     * Allocate a new table that is twice as big. The entries in the
+     * current table will be moved over a little bit at a time.
+     */
+    void grow() {
+        // We should never get here before the last resize finished,
+        // but if we do then we just have to finish it now
+        while (m_old.buckets != NULL) {
+            migrate();
+        } // WHILE
+        if (m_active.capacity() > (HASH_BITS >> 1)) {
+            throwFatalException("Hash index cannot grow beyond %u buckets", m_active.capacity());
+        }
+        m_old = m_active;
+        allocate(m_active, m_old.capacity() * 2);
+        m_migratePos = 0;
+    }
+
+    /**
+     * Move the next batch of entries from the old table into the active one
+     */
+    void migrate() {
+        if (m_old.buckets == NULL) return;
+        for (uint32_t i = 0; i < MIGRATE_STEP && m_migratePos <= m_old.mask && m_old.count > 0; ++i) {
+            Bucket &bucket = m_old.buckets[m_migratePos++];
+            if (bucket.hash != EMPTY && (bucket.hash & REMOVED) == 0) {
+                place(m_active, bucket.hash, bucket.key, bucket.value);
+                bucket.hash |= REMOVED;
+                --m_old.count;
+            }
+        } // FOR
+        if (m_old.count == 0) {
+            ::free(m_old.buckets);
+            m_old = Table();
+        }
+    }
+
+    // Not copyable
+    OpenHashTable(const OpenHashTable&);
+    OpenHashTable& operator=(const OpenHashTable&);
+
+    Table m_active;
+    Table m_old;
+    uint32_t m_migratePos;
+    KeyHasher m_hasher;
+    KeyEqualityChecker m_eq;
+};
+
+}
+
+#endif // OPENHASHTABLE_H_
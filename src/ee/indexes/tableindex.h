@@ -85,10 +85,10 @@ struct TableIndexScheme {
 
 /**
  * voltdb::TableIndex class represents a secondary index on a table which
- * is currently implemented as a binary tree (std::map) mapping from key value
+ * is by default implemented as a binary tree (std::map) mapping from key value
  * to tuple pointers. This might involve overhead because of memory
- * fragmentation and pointer tracking on runtime, so we might shift to B+Tree
- * later.
+ * fragmentation and pointer tracking on runtime, so indexes with the
+ * BTREE_INDEX type use a B+Tree instead (see BPlusTree).
  *
  * TableIndex receives a whole TableTuple to be added/deleted/replaced.
  * PersistentTable passes the TableTuple in TableTuple or in UndoLog to
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "stats/FragmentCacheStats.h"
+#include "stats/StatsSource.h"
+#include "common/ValueFactory.hpp"
+#include "common/tabletuple.h"
+#include <vector>
+#include <string>
+
+namespace voltdb {
+
+FragmentCacheStats::FragmentCacheStats() : voltdb::StatsSource(),
+        m_hits(0), m_misses(0), m_evictions(0),
+        m_warmFragments(0), m_fragmentLimit(0), m_retainedMemory(0), m_totalMemory(0),
+        m_lastHits(0), m_lastMisses(0), m_lastEvictions(0) {
+}
+
+void FragmentCacheStats::setCacheState(int64_t warmFragments, int64_t fragmentLimit,
+                                       int64_t retainedMemory, int64_t totalMemory) {
+    m_warmFragments = warmFragments;
+    m_fragmentLimit = fragmentLimit;
+    m_retainedMemory = retainedMemory;
+    m_totalMemory = totalMemory;
+}
+
+/**
+ * Generates the list of column names that will be in the statTable_.
+ */
+std::vector<std::string> FragmentCacheStats::generateStatsColumnNames() {
+    std::vector<std::string> columnNames = StatsSource::generateStatsColumnNames();
+    columnNames.push_back("WARM_FRAGMENTS");
+    columnNames.push_back("WARM_FRAGMENT_LIMIT");
+    columnNames.push_back("CACHE_HITS");
+    columnNames.push_back("CACHE_MISSES");
+    columnNames.push_back("CACHE_EVICTIONS");
+    columnNames.push_back("RETAINED_TEMP_TABLE_MEMORY");
+    columnNames.push_back("TOTAL_TEMP_TABLE_MEMORY");
+    return columnNames;
+}
+
+/**
+ * Update the stats tuple with the latest statistics available to this StatsSource.
+ * The hit/miss/eviction counters are deltas if this is an interval request.
+ * The cache state columns are always the current values.
+ */
+void FragmentCacheStats::updateStatsTuple(voltdb::TableTuple *tuple) {
+    int64_t hits = m_hits;
+    int64_t misses = m_misses;
+    int64_t evictions = m_evictions;
+
+    if (interval()) {
+        hits = hits - m_lastHits;
+        m_lastHits = m_hits;
+
+        misses = misses - m_lastMisses;
+        m_lastMisses = m_misses;
+
+        evictions = evictions - m_lastEvictions;
+        m_lastEvictions = m_evictions;
+    }
+
+    tuple->setNValue(StatsSource::m_columnName2Index["WARM_FRAGMENTS"],
+            ValueFactory::getBigIntValue(m_warmFragments));
+    tuple->setNValue(StatsSource::m_columnName2Index["WARM_FRAGMENT_LIMIT"],
+            ValueFactory::getBigIntValue(m_fragmentLimit));
+    tuple->setNValue(StatsSource::m_columnName2Index["CACHE_HITS"],
+            ValueFactory::getBigIntValue(hits));
+    tuple->setNValue(StatsSource::m_columnName2Index["CACHE_MISSES"],
+            ValueFactory::getBigIntValue(misses));
+    tuple->setNValue(StatsSource::m_columnName2Index["CACHE_EVICTIONS"],
+            ValueFactory::getBigIntValue(evictions));
+    tuple->setNValue(StatsSource::m_columnName2Index["RETAINED_TEMP_TABLE_MEMORY"],
+            ValueFactory::getBigIntValue(m_retainedMemory));
+    tuple->setNValue(StatsSource::m_columnName2Index["TOTAL_TEMP_TABLE_MEMORY"],
+            ValueFactory::getBigIntValue(m_totalMemory));
+}
+
+/**
+ * Same pattern as generateStatsColumnNames except the return value is used as an offset into the tuple schema instead of appending to
+ * end of a list.
+ */
+void FragmentCacheStats::populateSchema(
+        std::vector<voltdb::ValueType> &types,
+        std::vector<int32_t> &columnLengths,
+        std::vector<bool> &allowNull) {
+    StatsSource::populateSchema(types, columnLengths, allowNull);
+    for (int ii = 0; ii < 7; ii++) {
+        types.push_back(voltdb::VALUE_TYPE_BIGINT);
+        columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_BIGINT));
+        allowNull.push_back(false);
+    } // FOR
+}
+
+FragmentCacheStats::~FragmentCacheStats() {
+}
+
+}
@@ -0,0 +1,125 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB L.L.C. are licensed under the following
+ * terms and conditions:
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef FRAGMENTCACHESTATS_H_
+#define FRAGMENTCACHESTATS_H_
+
+#include "stats/StatsSource.h"
+#include "common/ids.h"
+#include <vector>
+#include <string>
+
+namespace voltdb {
+
+/**
+ * StatsSource extension for the warm plan fragment cache in the VoltDBEngine.
+ * The engine owns the cache, so it pushes its counters in here before the
+ * stats are collected.
+ */
+class FragmentCacheStats : public voltdb::StatsSource {
+public:
+    FragmentCacheStats();
+
+    /**
+     * Record a lookup of a fragment that was already warm
+     */
+    void recordHit()        { m_hits++; }
+    /**
+     * Record a lookup of a fragment that had to be warmed up
+     */
+    void recordMiss()       { m_misses++; }
+    /**
+     * Record that a fragment was pushed out of the cache
+     */
+    void recordEviction()   { m_evictions++; }
+
+    /**
+     * Update the current state of the cache.
+     * @param warmFragments number of fragments that are currently warm
+     * @param fragmentLimit maximum number of fragments that can be warm at the same time
+     * @param retainedMemory bytes held by the temp tables of the warm fragments
+     * @param totalMemory bytes held by the temp tables of all fragments
+     */
+    void setCacheState(int64_t warmFragments, int64_t fragmentLimit,
+                       int64_t retainedMemory, int64_t totalMemory);
+
+    ~FragmentCacheStats();
+
+protected:
+
+    /**
+     * Update the stats tuple with the latest statistics available to this StatsSource.
+     */
+    virtual void updateStatsTuple(voltdb::TableTuple *tuple);
+
+    /**
+     * Generates the list of column names that will be in the statTable_.
+     */
+    virtual std::vector<std::string> generateStatsColumnNames();
+
+    /**
+     * Same pattern as generateStatsColumnNames except the return value is used as an offset into the tuple schema instead of appending to
+     * end of a list.
+     */
+    virtual void populateSchema(std::vector<voltdb::ValueType> &types, std::vector<int32_t> &columnLengths, std::vector<bool> &allowNull);
+
+private:
+    int64_t m_hits;
+    int64_t m_misses;
+    int64_t m_evictions;
+
+    int64_t m_warmFragments;
+    int64_t m_fragmentLimit;
+    int64_t m_retainedMemory;
+    int64_t m_totalMemory;
+
+    int64_t m_lastHits;
+    int64_t m_lastMisses;
+    int64_t m_lastEvictions;
+};
+
+}
+
+#endif /* FRAGMENTCACHESTATS_H_ */
@@ -54,7 +54,7 @@
 
 namespace voltdb {
 
-TempTable::TempTable() : Table(TABLE_BLOCKSIZE) {
+TempTable::TempTable() : Table(TABLE_BLOCKSIZE), m_retainedBlockCount(1) {
 }
 TempTable::~TempTable() {}
 
@@ -82,6 +82,15 @@ std::string TempTable::tableType() const {
 }
 
 voltdb::TableStats* TempTable::getTableStats() { return NULL; }
+
+void TempTable::setRetainedBlockCount(uint32_t count) {
+    if (count < 1) count = 1;
+    if (count > TEMP_TABLE_MAX_RETAINED_BLOCKS) count = TEMP_TABLE_MAX_RETAINED_BLOCKS;
+    m_retainedBlockCount = count;
+    if (m_tupleCount == 0 && m_data.size() > m_retainedBlockCount) {
+        releaseBlocks(m_retainedBlockCount);
+    }
+}
 }
 
 
@@ -55,6 +55,9 @@ class TableColumn;
 class TableFactory;
 class TableStats;
 
+// upper bound on the number of blocks a TempTable keeps after deleteAllTuples
+const uint32_t TEMP_TABLE_MAX_RETAINED_BLOCKS = 8;
+
 /**
  * Represents a Temporary Table to store temporary result (final
  * result or intermediate result).  Temporary Table has no indexes,
@@ -113,9 +116,38 @@ class TempTable : public Table {
         void getNextFreeTupleInlined(TableTuple *tuple);
         voltdb::TableStats* getTableStats();
 
+        // ------------------------------------------------------------------
+        // BLOCK RETENTION
+        // ------------------------------------------------------------------
+        /**
+         * Set the number of blocks that deleteAllTuples will keep around
+         * for the next time the table is filled. A table that is reused by
+         * a frequently executed plan fragment can keep its blocks instead of
+         * freeing and re-allocating them on every invocation. The count is
+         * capped at TEMP_TABLE_MAX_RETAINED_BLOCKS and is never less than one.
+         * If the table is empty then any blocks beyond the new count are
+         * released right away.
+         */
+        void setRetainedBlockCount(uint32_t count);
+        uint32_t getRetainedBlockCount() const  { return (m_retainedBlockCount); }
+        size_t getAllocatedBlockCount() const   { return (m_data.size()); }
+        /**
+         * Returns the number of bytes in the blocks that this table is holding on to right now
+         */
+        int64_t getAllocatedBlockMemory() const;
+
     protected:
         // can not use this constructor to coerce a cast
         explicit TempTable();
+
+        /**
+         * Free blocks from the end of the table until there are at most
+         * the given number left. The table must not have any tuples
+         * stored in the blocks that are freed.
+         */
+        void releaseBlocks(size_t keep);
+
+        uint32_t m_retainedBlockCount;
 };
 
 inline void TempTable::insertTupleNonVirtualWithDeepCopy(TableTuple &source, Pool *pool) {
@@ -162,6 +194,7 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
     assert (m_tupleCount == m_usedTuples);
 
     if (m_tupleCount == 0) {
+        if (m_data.size() > m_retainedBlockCount) releaseBlocks(m_retainedBlockCount);
         return;
     }
 
@@ -179,8 +212,22 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
     m_usedTuples = 0;
 
     // make temp tables free memory allocated during fragment execution
-    // reset back to base size
-    while (m_data.size() > 1) {
+    // reset back to base size (plus whatever we were asked to hold on to)
+    releaseBlocks(m_retainedBlockCount);
+}
+
+inline int64_t TempTable::getAllocatedBlockMemory() const {
+#ifdef MEMCHECK
+    int64_t bytes = m_schema->tupleLength() + TUPLE_HEADER_SIZE;
+#else
+    int64_t bytes = m_tableAllocationTargetSize;
+#endif
+    return (bytes * static_cast<int64_t>(m_data.size()));
+}
+
+inline void TempTable::releaseBlocks(size_t keep) {
+    assert (keep > 0);
+    while (m_data.size() > keep) {
 #if defined(MEMCHECK_NOFREELIST)
         //Chunks and individual tuples storage are the same in the memcheck build so
         //when doing memcheck call delete tuple storage to delete the chunk in order
@@ -218,7 +265,8 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
 #endif
     }
 
-    assert(m_allocatedTuples == m_tuplesPerBlock);
+
+    assert(m_allocatedTuples == m_tuplesPerBlock * m_data.size());
 }
 inline void TempTable::getNextFreeTupleInlined(TableTuple *tuple) {
     // if there are no tuples free, we need to grab another chunk of memory
@@ -732,6 +732,9 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeExecu
         // count failures
         int failures = 0;
 
+        // figure out which intermediate results never need to leave the EE
+        engine->prepareLocalDependencies(batch_size, input_depIds_buffer, output_depIds_buffer);
+
         for (int i = 0; i < batch_size; ++i) {
             int cnt = serialize_in.readShort();
             if (cnt < 0) {
@@ -753,6 +756,7 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeExecu
         }
 
         // cleanup
+        engine->clearLocalDependencies();
         stringPool->purge();
 
         if (failures > 0)
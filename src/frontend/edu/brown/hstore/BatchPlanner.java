@@ -217,6 +217,7 @@ public class BatchPlanner implements Loggable {
         private long fragmentIds[];
         private int input_ids[];
         private int output_ids[];
+        private int stmt_indexes[];
 
         public PlanGraph() {
             // super(catalog_db);
@@ -393,6 +394,15 @@ public class BatchPlanner implements Loggable {
             return (this.graph.input_ids);
         }
 
+        /**
+         * Return the offset of the Statement in the batch for each PlanFragment
+         * returned by getFragmentIds()
+         * @return
+         */
+        public int[] getStatementIndexes() {
+            return (this.graph.stmt_indexes);
+        }
+
         /**
          * Get an array of sets of partition ids for this plan Note that you
          * can't rely on the
@@ -1133,11 +1143,13 @@ public class BatchPlanner implements Loggable {
         graph.fragmentIds = new long[num_vertices];
         graph.input_ids = new int[num_vertices];
         graph.output_ids = new int[num_vertices];
+        graph.stmt_indexes = new int[num_vertices];
         int i = 0;
         for (PlanVertex v : this.sorted_vertices) {
             graph.fragmentIds[i] = v.frag_id;
             graph.output_ids[i] = v.output_dependency_id;
             graph.input_ids[i] = v.input_dependency_id;
+            graph.stmt_indexes[i] = v.stmt_index;
             i += 1;
         } // FOR
 
@@ -36,6 +36,8 @@ import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.Hstoreservice.HStoreService;
 import edu.brown.hstore.Hstoreservice.InitializeRequest;
 import edu.brown.hstore.Hstoreservice.InitializeResponse;
+import edu.brown.hstore.Hstoreservice.RecoveryStatusRequest;
+import edu.brown.hstore.Hstoreservice.RecoveryStatusResponse;
 import edu.brown.hstore.Hstoreservice.SendDataRequest;
 import edu.brown.hstore.Hstoreservice.SendDataResponse;
 import edu.brown.hstore.Hstoreservice.ShutdownRequest;
@@ -135,6 +137,13 @@ public class HStoreCoordinator implements Shutdownable {
     private final EventObservable<HStoreCoordinator> ready_observable = new EventObservable<HStoreCoordinator>();
     
     private final PrefetchQueryPlanner queryPrefetchPlanner;
+    
+    /**
+     * The status of the snapshot restore and command log replay that is sent to us
+     * by the HStoreSite that is responsible for them during recovery (see CommandLogReplayer)
+     */
+    private final CountDownLatch recovery_latch = new CountDownLatch(1);
+    private volatile Status recovery_status = null;
 
     /**
      * 
@@ -515,6 +524,65 @@ public class HStoreCoordinator implements Shutdownable {
         assert(finished);
     }
     
+    /**
+     * Tell all of the other HStoreSites whether the snapshot restore and command log
+     * replay that we did during recovery was successful. This blocks until they have all acknowledged it.
+     * @param status
+     */
+    public void sendRecoveryStatus(Status status) {
+        RecoveryStatusRequest request = RecoveryStatusRequest.newBuilder()
+                                            .setSenderSite(this.local_site_id)
+                                            .setStatus(status)
+                                            .build();
+        final CountDownLatch latch = new CountDownLatch(this.channels.size()); 
+        RpcCallback<RecoveryStatusResponse> callback = new RpcCallback<RecoveryStatusResponse>() {
+            @Override
+            public void run(RecoveryStatusResponse parameter) {
+                if (debug.get())
+                    LOG.debug(String.format("Recovery status acknowledged by %s",
+                                            HStoreThreadManager.formatSiteName(parameter.getSenderSite())));
+                latch.countDown();
+            }
+        };
+        for (Integer site_id : this.channels.keySet()) {
+            assert(site_id.intValue() != this.local_site_id);
+            ProtoRpcController controller = new ProtoRpcController();
+            this.channels.get(site_id).recoveryStatus(controller, request, callback);
+        } // FOR
+        
+        if (debug.get())
+            LOG.debug(String.format("Waiting for %s recovery status acknowledgements", this.channels.size()));
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new ServerFaultException("Unexpected interruption", ex);
+        }
+    }
+    
+    /**
+     * Block until the HStoreSite that is responsible for restoring the snapshot and
+     * replaying the command logs during recovery tells us whether it was successful.
+     * @return
+     */
+    public Status waitForRecoveryStatus() {
+        try {
+            this.recovery_latch.await();
+        } catch (InterruptedException ex) {
+            throw new ServerFaultException("Unexpected interruption", ex);
+        }
+        return (this.recovery_status);
+    }
+    
+    /**
+     * Record the status of the snapshot restore that was sent to us during recovery
+     * and wake up anybody waiting for it in waitForRecoveryStatus()
+     * @param status
+     */
+    protected void updateRecoveryStatus(Status status) {
+        this.recovery_status = status;
+        this.recovery_latch.countDown();
+    }
+    
     // ----------------------------------------------------------------------------
     // MESSAGE ROUTERS
     // ----------------------------------------------------------------------------
@@ -678,6 +746,21 @@ public class HStoreCoordinator implements Shutdownable {
                                                     .build();
             done.run(response);
         }
+        
+        @Override
+        public void recoveryStatus(RpcController controller, RecoveryStatusRequest request, RpcCallback<RecoveryStatusResponse> done) {
+            if (debug.get()) 
+                LOG.debug(String.format("Received %s from HStoreSite %s [status=%s]",
+                                                 request.getClass().getSimpleName(),
+                                                 HStoreThreadManager.formatSiteName(request.getSenderSite()),
+                                                 request.getStatus()));
+            
+            updateRecoveryStatus(request.getStatus());
+            RecoveryStatusResponse response = RecoveryStatusResponse.newBuilder()
+                                                    .setSenderSite(local_site_id)
+                                                    .build();
+            done.run(response);
+        }
 
     } // END CLASS
     
@@ -49,6 +49,7 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.PeriodicWorkTimerThread;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.TransactionIdManager;
+import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Host;
@@ -62,6 +63,7 @@ import org.voltdb.exceptions.MispredictionException;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.sysprocs.GetCatalog;
 import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.EstTimeUpdater;
 import org.voltdb.utils.Pair;
@@ -91,8 +93,10 @@ import edu.brown.hstore.estimators.TPCCEstimator;
 import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.hstore.util.MapReduceHelperThread;
+import edu.brown.hstore.util.MarkovMaintenanceThread;
 import edu.brown.hstore.util.PartitionExecutorPostProcessor;
 import edu.brown.hstore.util.TxnCounter;
+import edu.brown.hstore.wal.CommandLogReplayer;
 import edu.brown.hstore.wal.CommandLogWriter;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
@@ -106,6 +110,7 @@ import edu.brown.markov.TransactionEstimator;
 import edu.brown.plannodes.PlanNodeUtil;
 import edu.brown.protorpc.NIOEventLoop;
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.StripedIntHistogram;
 import edu.brown.utils.ClassUtil;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.EventObservable;
@@ -147,9 +152,26 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     private final DBBPool buffer_pool = new DBBPool(false, false);
     
     /**
-     * Incoming request deserializer
+     * Incoming request deserializers. Each network thread gets its own
+     * so that we don't need a lock when decoding new requests.
      */
-    private final FastDeserializer incomingDeserializer = new FastDeserializer(new byte[0]);
+    private final ThreadLocal<FastDeserializer> incomingDeserializers = new ThreadLocal<FastDeserializer>() {
+        @Override
+        protected FastDeserializer initialValue() {
+            return (new FastDeserializer(new byte[0]));
+        }
+    };
+    
+    /**
+     * Each thread that sends back ClientResponses serializes them into its own buffer,
+     * so the buffer can be handed straight to the client's callback without holding a lock
+     */
+    private final ThreadLocal<FastSerializer> outgoingSerializers = new ThreadLocal<FastSerializer>() {
+        @Override
+        protected FastSerializer initialValue() {
+            return (new FastSerializer(buffer_pool));
+        }
+    };
     
     private final HStoreThreadManager threadManager;
     
@@ -177,12 +199,23 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private VoltProcedureListener voltListener;
     private final NIOEventLoop procEventLoop = new NIOEventLoop();
+    /**
+     * The event loops that handle client connections.
+     * The first one is always procEventLoop.
+     */
+    private final NIOEventLoop procConnectionLoops[];
 
     /**
      * 
      */
     private boolean ready = false;
     private CountDownLatch ready_latch;
+    
+    /**
+     * The procedure listener waits on this before it accepts any client connections,
+     * so that new txns can't interleave with the ones replayed from the command log
+     */
+    private final CountDownLatch recovery_latch = new CountDownLatch(1);
     private final EventObservable<Object> ready_observable = new EventObservable<Object>();
     
     /**
@@ -232,7 +265,17 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private final MapReduceHelperThread mr_helper;
     
+    /**
+     * Background thread that updates and recomputes our MarkovGraphs
+     */
+    private final MarkovMaintenanceThread markov_maintenance;
+    
     private final CommandLogWriter commandLogger;
+    
+    /**
+     * The previous command log that we need to replay at start-up (if any)
+     */
+    private final File replayLogFile;
 
     /**
      * AdHoc: This thread waits for AdHoc queries. 
@@ -277,9 +320,10 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     private final Collection<Integer> single_partition_sets[];
     
     /**
-     * PartitionId Offset -> FastSerializer
+     * The result that we send back for @GetCatalog requests.
+     * This is only generated the first time that somebody asks for it.
      */
-    private final FastSerializer partition_serializers[];
+    private volatile VoltTable encodedCatalog[];
     
     // ----------------------------------------------------------------------------
     // TRANSACTION ESTIMATION
@@ -311,9 +355,10 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     private HStoreSiteStatus status_monitor = null;
     
     /**
-     * The number of incoming transaction requests per partition 
+     * The number of incoming transaction requests per partition
+     * Each network thread updates its own stripe
      */
-    private final Histogram<Integer> incoming_partitions = new Histogram<Integer>();
+    private final StripedIntHistogram incoming_partitions;
     
     /**
      * How long the HStoreSite had no inflight txns
@@ -365,6 +410,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         this.executors = new PartitionExecutor[num_partitions];
         this.executor_threads = new Thread[num_partitions];
         this.single_partition_sets = new Collection[num_partitions];
+        this.incoming_partitions = new StripedIntHistogram(num_partitions);
 
         // **IMPORTANT**
         // Always clear out the CatalogUtil and BatchPlanner before we start our new HStoreSite
@@ -392,13 +438,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         this.local_partition_offsets = new int[num_partitions];
         Arrays.fill(this.local_partition_offsets, -1);
         this.local_partition_reverse = new int[num_local_partitions];
-        this.partition_serializers = new FastSerializer[num_local_partitions];
         int offset = 0;
         for (int partition : this.local_partitions) {
             this.local_partition_offsets[partition] = offset;
             this.local_partition_reverse[offset] = partition; 
             this.local_partitions_arr[offset] = partition;
-            this.partition_serializers[offset] = new FastSerializer(this.buffer_pool);
             this.single_partition_sets[partition] = Collections.singleton(partition);
             offset++;
         } // FOR
@@ -421,6 +465,13 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             this.mr_helper = null;
         }
         
+        // Markov maintenance thread
+        if (hstore_conf.site.markov_maintenance) {
+            this.markov_maintenance = new MarkovMaintenanceThread(this);
+        } else {
+            this.markov_maintenance = null;
+        }
+        
         // Distributed Transaction Queue Manager
         this.txnQueueManager = new TransactionQueueManager(this);
         
@@ -444,15 +495,18 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         // Command Logger
         if (hstore_conf.site.exec_command_logging) {
-            // It would be nice if we could come up with a unique name for this
-            // invocation of the system (like the cluster instanceId). But for now
-            // we'll just write out to our directory...
-            File logFile = new File(hstore_conf.site.exec_command_logging_directory +
-                                    File.separator +
-                                    this.getSiteName().toLowerCase() + ".log");
+            File logFile = CommandLogWriter.getLogFile(hstore_conf, this.site_id);
+            // If we're going to recover, then we need to move the previous log
+            // out of the way before the CommandLogWriter truncates it
+            if (hstore_conf.site.exec_command_logging_recovery) {
+                this.replayLogFile = CommandLogReplayer.prepareReplayFile(logFile);
+            } else {
+                this.replayLogFile = null;
+            }
             this.commandLogger = new CommandLogWriter(this, logFile);
         } else {
             this.commandLogger = null;
+            this.replayLogFile = null;
         }
 
         // AdHoc Support
@@ -467,9 +521,17 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
 
         
         // Incoming Txn Request Listener
+        int num_listeners = Math.max(1, hstore_conf.site.network_listener_threads);
+        this.procConnectionLoops = new NIOEventLoop[num_listeners];
+        this.procConnectionLoops[0] = this.procEventLoop;
+        for (int i = 1; i < num_listeners; i++) {
+            this.procConnectionLoops[i] = new NIOEventLoop();
+        } // FOR
         this.voltListener = new VoltProcedureListener(this.host_id,
                                                       this.procEventLoop,
-                                                      this);
+                                                      this.procConnectionLoops,
+                                                      this,
+                                                      hstore_conf.site.network_listener_batch_responses);
         
         if (hstore_conf.site.status_show_executor_info) {
             this.idle_time.resetOnEvent(this.startWorkload_observable);
@@ -696,6 +758,18 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     public MapReduceHelperThread getMapReduceHelper() {
         return mr_helper;
     }
+    /**
+     * Get the Markov maintenance thread (null if it is disabled)
+     */
+    public MarkovMaintenanceThread getMarkovMaintenanceThread() {
+        return (this.markov_maintenance);
+    }
+    /**
+     * Get the CommandLogWriter for this site (null if command logging is disabled) 
+     */
+    public CommandLogWriter getCommandLogWriter() {
+        return (this.commandLogger);
+    }
     
     /**
      * Get the total number of transactions inflight for all partitions 
@@ -851,6 +925,27 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             t.start();
         }
         
+        // Start the MarkovMaintenanceThread
+        // This needs to register with the TransactionEstimators before any txns start
+        if (this.markov_maintenance != null) {
+            for (int partition : this.local_partitions_arr) {
+                TransactionEstimator t_estimator = this.executors[partition].getTransactionEstimator();
+                if (t_estimator != null) this.markov_maintenance.register(t_estimator);
+            } // FOR
+            t = new Thread(this.markov_maintenance);
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(handler);
+            t.start();
+        }
+        
+        // Start the CommandLogWriter group commit thread
+        if (this.commandLogger != null && this.commandLogger.isGroupCommitEnabled()) {
+            t = new Thread(this.commandLogger);
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(handler);
+            t.start();
+        }
+        
         // Then we need to start all of the PartitionExecutor in threads
         if (d) LOG.debug("Starting PartitionExecutor threads for " + this.local_partitions_arr.length + " partitions on " + this.getSiteName());
         for (int partition : this.local_partitions_arr) {
@@ -914,7 +1009,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      * Returns true if this HStoreSite is throttling incoming transactions
      */
     protected Histogram<Integer> getIncomingPartitionHistogram() {
-        return (this.incoming_partitions);
+        return (this.incoming_partitions.getHistogram());
     }
     public ProfileMeasurement getEmptyQueueTime() {
         return (this.idle_time);
@@ -949,6 +1044,8 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         if (this.mr_helper != null)
             this.mr_helper.prepareShutdown(error);
+        if (this.markov_maintenance != null)
+            this.markov_maintenance.prepareShutdown(error);
         if (this.commandLogger != null)
             this.commandLogger.prepareShutdown(error);
         if (this.asyncCompilerWork_thread != null)
@@ -995,6 +1092,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         }
         // Tell the MapReduceHelperThread to shutdown too
         if (this.mr_helper != null) this.mr_helper.shutdown();
+        if (this.markov_maintenance != null) this.markov_maintenance.shutdown();
         if (this.commandLogger != null) this.commandLogger.shutdown();
         
         for (int p : this.local_partitions_arr) {
@@ -1008,7 +1106,9 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         // Tell all of our event loops to stop
         if (t) LOG.trace("Telling Procedure Listener event loops to exit");
-        this.procEventLoop.exitLoop();
+        for (NIOEventLoop loop : this.procConnectionLoops) {
+            loop.exitLoop();
+        } // FOR
         if (this.voltListener != null) this.voltListener.close();
         
         if (this.hstore_coordinator != null)
@@ -1030,40 +1130,75 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     // EXECUTION METHODS
     // ----------------------------------------------------------------------------
     
-    @Override
     public void procedureInvocation(byte[] serializedRequest, RpcCallback<byte[]> done) {
+        this.procedureInvocation(ByteBuffer.wrap(serializedRequest), serializedRequest, done);
+    }
+    
+    /**
+     * The request is in one of the VoltProcedureListener's pooled buffers, which
+     * will be reused as soon as we return. So we have to copy the procedure's
+     * serialized parameters out of it before the txn is queued.
+     */
+    @Override
+    public void procedureInvocation(ByteBuffer serializedRequest, RpcCallback<byte[]> done) {
+        this.procedureInvocation(serializedRequest, null, done);
+    }
+    
+    /**
+     * @param buffer The serialized request
+     * @param serializedRequest The array backing the buffer if the request is allowed to keep
+     *                          a reference to it. Null if the buffer is only valid for this call.
+     * @param done
+     */
+    private void procedureInvocation(ByteBuffer buffer, byte[] serializedRequest, RpcCallback<byte[]> done) {
         EstTimeUpdater.update(System.currentTimeMillis());
         long timestamp = (hstore_conf.site.txn_profiling ? ProfileMeasurement.getTime() : -1);
 
+        // This only decodes the header of the request. The procedure's
+        // parameters are left serialized until somebody needs them
         StoredProcedureInvocation request = null;
-        ByteBuffer buffer = ByteBuffer.wrap(serializedRequest);
-        synchronized (this) {
-            this.incomingDeserializer.setBuffer(buffer);
-            try {
-                request = this.incomingDeserializer.readObject(StoredProcedureInvocation.class);
-            } catch (Exception ex) {
-                throw new RuntimeException(ex);
-            }
-        } // SYNCH
+        ByteBuffer original = buffer.duplicate();
+        FastDeserializer fds = this.incomingDeserializers.get();
+        fds.setBuffer(buffer);
+        try {
+            request = fds.readObject(StoredProcedureInvocation.class);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        // Clients send this when they connect, so we have to answer it before we
+        // look up the procedure because older catalogs may not include it
+        if (request.getProcName().equalsIgnoreCase("@GetCatalog")) {
+            this.processGetCatalog(request, done);
+            return;
+        }
+        
+        if (serializedRequest == null) request.copyUnserializedParams();
         
-        // Extract the stuff we need to figure out whether this guy belongs at our site
-        request.buildParameterSet();
-        assert(request.getParams() != null) :
-            "The parameters object is null for new txn from client #" + request.getClientHandle();
-        final Object args[] = request.getParams().toArray(); 
         Procedure catalog_proc = this.catalog_db.getProcedures().get(request.getProcName());
         if (catalog_proc == null) {
             catalog_proc = this.catalog_db.getProcedures().getIgnoreCase(request.getProcName());
         }
         if (catalog_proc == null) throw new RuntimeException("Unknown procedure '" + request.getProcName() + "'");
         final boolean sysproc = request.isSysProc();
+        
+        // We only need to deserialize all of the txn's parameters here if we are going
+        // to use them to figure out what the txn is going to do. Otherwise we will just
+        // decode the partitioning parameters to route the txn and let the PartitionExecutor
+        // decode the rest of them when it starts executing it.
+        Object args[] = null;
+        if (sysproc || catalog_proc.getMapreduce() ||
+            (hstore_conf.site.exec_force_singlepartitioned == false && hstore_conf.site.exec_voltdb_procinfo == false)) {
+            assert(request.getParams() != null) :
+                "The parameters object is null for new txn from client #" + request.getClientHandle();
+            args = request.getParams().toArray();
+        }
         int base_partition = request.getBasePartition();
         if (d) LOG.debug(String.format("Received new stored procedure invocation request for %s [handle=%d]", catalog_proc.getName(), request.getClientHandle()));
 
         // Profiling Updates
         if (hstore_conf.site.status_show_txn_info) TxnCounter.RECEIVED.inc(request.getProcName());
         if (hstore_conf.site.exec_profiling && base_partition != -1) {
-            this.incoming_partitions.put(base_partition);
+            this.incoming_partitions.fastPut(base_partition);
         }
         
         // -------------------------------
@@ -1088,7 +1223,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         else if (hstore_conf.site.exec_force_localexecution == false) {
             if (d) LOG.debug(String.format("Using PartitionEstimator for %s request", request.getProcName()));
             try {
-                Integer p = this.p_estimator.getBasePartition(catalog_proc, args, false);
+                Object partitionArgs[] = args;
+                if (partitionArgs == null) {
+                    partitionArgs = request.getParameterPrefix(this.p_estimator.getBasePartitionParameterCount(catalog_proc));
+                }
+                Integer p = this.p_estimator.getBasePartition(catalog_proc, partitionArgs, false);
                 if (p != null) base_partition = p.intValue(); 
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
@@ -1114,6 +1253,10 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         if (this.isLocalPartition(base_partition) == false) {
             assert(request.hasBasePartition() == false) : 
                 "Trying to redirect " + catalog_proc.getName() + " transaction more than once!";
+            if (serializedRequest == null) {
+                serializedRequest = new byte[original.remaining()];
+                original.get(serializedRequest);
+            }
             this.transactionRedirect(catalog_proc, serializedRequest, base_partition, done);
             return;
         }
@@ -1297,6 +1440,43 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                          "Returning back to listen on incoming socket");
     }
     
+    /**
+     * Clients ask for the catalog so that they can route their requests themselves.
+     * We don't need a txn for this, so we'll just send it back. If the catalog
+     * that we were started with does not include the @GetCatalog sysproc, then the
+     * client gets back an error response.
+     * @param request
+     * @param done
+     */
+    private void processGetCatalog(StoredProcedureInvocation request, RpcCallback<byte[]> done) {
+        ClientResponseImpl cresponse = null;
+        if (this.catalog_db.getProcedures().getIgnoreCase(request.getProcName()) == null) {
+            if (d) LOG.debug(String.format("Rejecting %s request because it is not in the catalog [handle=%d]",
+                                           request.getProcName(), request.getClientHandle()));
+            cresponse = new ClientResponseImpl(-1, request.getClientHandle(), -1,
+                                               Status.ABORT_UNEXPECTED,
+                                               HStoreConstants.EMPTY_RESULT,
+                                               request.getProcName() + " is not supported by this catalog");
+        } else {
+            if (this.encodedCatalog == null) {
+                synchronized (this) {
+                    if (this.encodedCatalog == null) {
+                        this.encodedCatalog = new VoltTable[]{ GetCatalog.encode(this.catalog_db.getCatalog()) };
+                    }
+                } // SYNCH
+            }
+            cresponse = new ClientResponseImpl(-1, request.getClientHandle(), -1,
+                                               Status.OK, this.encodedCatalog, "");
+        }
+        FastSerializer fs = new FastSerializer();
+        try {
+            fs.writeObject(cresponse);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        done.run(fs.getBytes());
+    }
+    
     /**
      * Special handling for incoming sysproc requests
      * @param request
@@ -1996,6 +2176,27 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     // TRANSACTION FINISH/CLEANUP METHODS
     // ----------------------------------------------------------------------------
 
+    /**
+     * Write out the command log entry for the given txn if it committed and command
+     * logging is enabled. Returns true if the CommandLogWriter will send back the
+     * ClientResponse for us once the entry has been flushed to disk with group commit.
+     * Otherwise the caller still has to send it back itself.
+     * @param ts
+     * @param cresponse
+     * @return
+     */
+    public boolean logClientResponse(LocalTransaction ts, ClientResponseImpl cresponse) {
+        // The txn handle itself can still be deleted right away if the writer is holding
+        // the response because it keeps everything that it needs to send it back
+        if (hstore_conf.site.exec_command_logging && cresponse.getStatus() == Status.OK) {
+            if (this.commandLogger.appendToLog(ts, cresponse) == false) {
+                if (d) LOG.debug(String.format("%s - Holding the ClientResponse until logged to disk", ts));
+                return (true);
+            }
+        }
+        return (false);
+    }
+
     /**
      * Send back the given ClientResponse to the actual client waiting for it
      * At this point the transaction should been properly committed or aborted at
@@ -2014,13 +2215,9 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         assert(status != Status.ABORT_MISPREDICT) :
             "Trying to send back a client response for " + ts + " but the status is " + status;
         
-        if (hstore_conf.site.exec_command_logging && status == Status.OK) {
-            if (this.commandLogger.appendToLog(ts, cresponse) == false) {
-                if (d) LOG.debug(String.format("%s - Holding the ClientResponse until logged to disk", ts));
-                ts.markAsNotDeletable();    
-            }
+        if (this.logClientResponse(ts, cresponse)) {
+            return;
         }
-        
         this.sendClientResponse(cresponse,
                                 ts.getClientCallback(),
                                 ts.getInitiateTime(),
@@ -2054,25 +2251,18 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         cresponse.setClusterRoundtrip((int)(now - initiateTime));
         cresponse.setRestartCounter(restartCounter);
         
-        // So we have a bit of a problem here.
-        // It would be nice if we could use the BufferPool to get a block of memory so
-        // that we can serialize the ClientResponse out to a byte array
-        // Since we know what we're doing here, we can just free the memory back to the
-        // buffer pool once we call deleteTransaction()
-        // The problem is that we need access to the underlying array of the ByteBuffer,
-        // but we can't get that from here.
-        byte bytes[] = null;
-        int offset = this.getLocalPartitionOffset(cresponse.getBasePartition());
-        FastSerializer out = this.partition_serializers[offset]; 
-        synchronized (out) {
-            out.clear();
-            try {
-                out.writeObject(cresponse);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            bytes = out.getBytes();
-        } // SYNCH
+        // We serialize the ClientResponse into this thread's pooled buffer.
+        // If the callback can take a ByteBuffer, then we hand it the serializer's
+        // buffer directly. The callback has to copy out whatever it needs before
+        // it returns, since the buffer will get reused for this thread's next
+        // response. Otherwise we have to make a copy of the bytes for the callback to keep.
+        FastSerializer out = this.outgoingSerializers.get();
+        out.clear();
+        try {
+            out.writeObject(cresponse);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         if (d) LOG.debug(String.format("%d - Serialized ClientResponse [throttle=%s, requestCtr=%d]",
                                        cresponse.getTransactionId(),
                                        cresponse.getThrottleFlag(),
@@ -2080,7 +2270,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         // Send result back to client!
         try {
-            clientCallback.run(bytes);
+            if (clientCallback instanceof VoltProcedureListener.BufferCallback) {
+                ((VoltProcedureListener.BufferCallback)clientCallback).run(out.getBBContainer().b);
+            } else {
+                clientCallback.run(out.getBytes());
+            }
         } catch (CancelledKeyException ex) {
             // IGNORE
         }
@@ -2260,6 +2454,7 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                 // Then fire off this thread to have it do some work as it comes in 
                 Throwable error = null;
                 try {
+                    hstore_site.recovery_latch.await();
                     hstore_site.voltListener.bind(catalog_site.getProc_port());
                     hstore_site.procEventLoop.setExitOnSigInt(true);
                     hstore_site.ready_latch.countDown();
@@ -2277,6 +2472,36 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             };
         });
         
+        // ----------------------------------------------------------------------------
+        // (2) Additional Client Connection Listener Threads
+        // ----------------------------------------------------------------------------
+        for (int i = 1; i < hstore_site.procConnectionLoops.length; i++) {
+            final int id = i;
+            runnables.add(new Runnable() {
+                public void run() {
+                    final Thread self = Thread.currentThread();
+                    self.setName(HStoreThreadManager.getThreadName(hstore_site, "listen", Integer.toString(id)));
+                    if (hstore_site.getHStoreConf().site.cpu_affinity)
+                        hstore_site.getThreadManager().registerProcessingThread();
+                    
+                    Throwable error = null;
+                    try {
+                        hstore_site.ready_latch.countDown();
+                        hstore_site.procConnectionLoops[id].run();
+                    } catch (Throwable ex) {
+                        if (ex != null && ex.getMessage() != null && ex.getMessage().contains("Connection closed") == false) {
+                            error = ex;
+                        }
+                    }
+                    if (error != null && hstore_site.isShuttingDown() == false) {
+                        LOG.warn(String.format("Procedure Listener #%d is stopping! [error=%s, hstore_shutdown=%s]",
+                                               id, (error != null ? error.getMessage() : null), hstore_site.shutdown_state), error);
+                        hstore_site.hstore_coordinator.shutdownCluster(error);
+                    }
+                };
+            });
+        } // FOR
+        
         // ----------------------------------------------------------------------------
         // (5) HStoreSite Setup Thread
         // ----------------------------------------------------------------------------
@@ -2293,6 +2518,22 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
                 // of the stuff being setup yet
                 hstore_site.init();
                 
+                // Restore the database before we let the procedure listener accept
+                // any client connections. The replayed txns are submitted directly to
+                // the HStoreSite, so this doesn't need the listeners to be running.
+                if (hstore_site.getHStoreConf().site.exec_command_logging_recovery) {
+                    CommandLogReplayer replayer = new CommandLogReplayer(hstore_site, hstore_site.replayLogFile);
+                    try {
+                        int num_txns = replayer.recover();
+                        LOG.info(String.format("Finished recovery at %s [replayed=%d]", hstore_site.getSiteName(), num_txns));
+                    } catch (Throwable ex) {
+                        LOG.fatal("Failed to recover " + hstore_site.getSiteName(), ex);
+                        hstore_site.hstore_coordinator.shutdownCluster(ex);
+                        return;
+                    }
+                }
+                hstore_site.recovery_latch.countDown();
+                
                 // But then wait for all of the threads to be finished with their initializations
                 // before we tell the world that we're ready!
                 if (hstore_site.ready_latch.getCount() > 0) {
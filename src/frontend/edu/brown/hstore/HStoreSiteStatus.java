@@ -390,6 +390,11 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
             String status = String.format("%-5s [limit=%d, release=%d]%s",
                                           es_queue.size(), es_queue.getQueueMax(), es_queue.getQueueRelease(),
                                           (es_queue.isThrottled() ? " *THROTTLED*" : ""));
+            if (es_queue.isAdaptive()) {
+                status += String.format("\nserviceTime=%.3fms, delay=%.3fms, increases=%d, decreases=%d",
+                                        es_queue.getAverageServiceTime(), es_queue.getEstimatedQueueDelay(),
+                                        es_queue.getAdaptiveIncreases(), es_queue.getAdaptiveDecreases());
+            }
             m.put("Exec Queue", status);
             
             // TransactionQueueManager Info
@@ -468,8 +473,8 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
         } // FOR
         
         // Incoming Partition Distribution
-        if (hstore_site.getIncomingPartitionHistogram().isEmpty() == false) {
-            Histogram<Integer> incoming = hstore_site.getIncomingPartitionHistogram();
+        Histogram<Integer> incoming = hstore_site.getIncomingPartitionHistogram();
+        if (incoming.isEmpty() == false) {
             incoming.setDebugLabels(partitionLabels);
             m_exec.put("Incoming Txns\nBase Partitions", incoming.toString(50, 10) + "\n");
         }
@@ -512,7 +517,7 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
             if (first) header[0] = "";
             for (TxnCounter tc : cnts_to_include) {
                 if (first) header[j] = tc.toString().replace("partition", "P");
-                Long cnt = tc.getHistogram().get(proc_name);
+                Long cnt = tc.get(proc_name);
                 rows[i][j++] = (cnt != null ? cnt.toString() : "-");
             } // FOR
             first = false;
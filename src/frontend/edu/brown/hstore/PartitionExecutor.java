@@ -48,6 +48,7 @@ import java.util.BitSet;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -72,6 +73,7 @@ import org.voltdb.VoltProcedure.VoltAbortException;
 import org.voltdb.VoltSystemProcedure;
 import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.CatalogMap;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Host;
@@ -131,6 +133,7 @@ import edu.brown.hstore.util.ParameterSetArrayCache;
 import edu.brown.hstore.util.QueryCache;
 import edu.brown.hstore.util.ThrottlingQueue;
 import edu.brown.hstore.util.TransactionWorkRequestBuilder;
+import edu.brown.hstore.wal.CommandLogWriter;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.markov.EstimationThresholds;
@@ -288,6 +291,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     protected HStoreCoordinator hstore_coordinator;
     protected HStoreConf hstore_conf;
     
+    /**
+     * The CommandLogWriter for our HStoreSite, but only if it is using group commit.
+     * Committed txns only need to have their log entries buffered before we can move on
+     * to the next txn. The writer will send back the ClientResponse once it is durable.
+     */
+    private CommandLogWriter groupCommitLogger;
+    
     // ----------------------------------------------------------------------------
     // Shared VoltProcedure Data Members
     // ----------------------------------------------------------------------------
@@ -389,9 +399,21 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     private final ThrottlingQueue<VoltMessage> work_throttler;
     
     /**
-     * 
+     * Cache of query results at this partition
+     */
+    private final QueryCache queryCache;
+    
+    /**
+     * PlanFragmentId -> The relative indexes of the tables that the fragment reads from.
+     * Only contains fragments whose results we are allowed to store in the global query cache.
+     */
+    private final Map<Long, int[]> queryCacheReadFragments = new HashMap<Long, int[]>();
+    
+    /**
+     * PlanFragmentId -> The relative indexes of the tables that the fragment may modify.
+     * An empty array means that we don't know what tables the fragment may modify.
      */
-    private final QueryCache queryCache = new QueryCache(10, 10); // FIXME
+    private final Map<Long, int[]> queryCacheWriteFragments = new HashMap<Long, int[]>();
     
     // ----------------------------------------------------------------------------
     // TEMPORARY DATA COLLECTIONS
@@ -434,6 +456,11 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
      * List of PartitionIds that need to be notified that the transaction is preparing to commit
      */
     private final List<Integer> tmp_preparePartitions = new ArrayList<Integer>();
+    
+    /**
+     * Reusable list of the queued ClientResponses that we are releasing (in execution order)
+     */
+    private final LinkedList<Pair<LocalTransaction, ClientResponseImpl>> tmp_releasedResponses = new LinkedList<Pair<LocalTransaction, ClientResponseImpl>>();
     /**
      * Reusable ParameterSet array cache for WorkFragments
      */
@@ -452,6 +479,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
      */
     private final IntArrayCache tmp_inputDepIds = new IntArrayCache(10);
     
+    /**
+     * Reusable arrays for the fragments in a batch that were not in the query cache
+     */
+    private final LongArrayCache tmp_cacheMissFragmentIds = new LongArrayCache(10);
+    private final IntArrayCache tmp_cacheMissOutputDepIds = new IntArrayCache(10);
+    private final IntArrayCache tmp_cacheMissInputDepIds = new IntArrayCache(10);
+    
     // ----------------------------------------------------------------------------
     // PROFILING OBJECTS
     // ----------------------------------------------------------------------------
@@ -575,6 +609,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         this.procParameterSets = null;
         this.tmp_fragmentParams = null;
         this.tmp_transactionRequestBuilders = null;
+        this.queryCache = null;
     }
 
     /**
@@ -596,6 +631,10 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 hstore_conf.site.queue_incoming_increase,
                 hstore_conf.site.queue_incoming_increase_max
         );
+        if (hstore_conf.site.queue_incoming_adaptive) {
+            this.work_throttler.enableAdaptiveThrottling(hstore_conf.site.queue_incoming_target_latency,
+                                                         hstore_conf.site.queue_incoming_adaptive_interval);
+        }
         
         this.catalog = catalog;
         this.partition = CatalogUtil.getPartitionById(this.catalog, partitionId);
@@ -692,7 +731,54 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         int num_sites = CatalogUtil.getNumberOfSites(this.catalog);
         this.tmp_transactionRequestBuilders = new TransactionWorkRequestBuilder[num_sites];
         
-        
+        // Query Cache
+        this.queryCache = new QueryCache(hstore_conf.site.exec_query_cache_max_bytes, 10);
+        if (hstore_conf.site.exec_query_cache) this.initializeQueryCache();
+    }
+    
+    /**
+     * Figure out what tables each PlanFragment reads from and writes to so that
+     * we know what results we can store in the global query cache and
+     * what cached results need to be invalidated when a fragment is executed.
+     */
+    private void initializeQueryCache() {
+        for (Procedure catalog_proc : this.database.getProcedures()) {
+            if (catalog_proc.getSystemproc()) continue;
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                Collection<Table> tables = null;
+                try {
+                    tables = CatalogUtil.getReferencedTables(catalog_stmt);
+                } catch (Exception ex) {
+                    throw new ServerFaultException("Failed to get referenced tables for " + catalog_stmt.fullName(), ex);
+                }
+                boolean replicatedOnly = true;
+                int tableIds[] = new int[tables.size()];
+                int i = 0;
+                for (Table catalog_tbl : tables) {
+                    tableIds[i++] = catalog_tbl.getRelativeIndex();
+                    replicatedOnly = replicatedOnly && catalog_tbl.getIsreplicated();
+                } // FOR
+                
+                // We'll only cache the results of Statements that are read-only. If
+                // we don't know what tables a non-read-only Statement touches, then
+                // it gets an empty array so that it invalidates everything.
+                boolean cacheable = (catalog_stmt.getReadonly() && tableIds.length > 0 &&
+                                     (replicatedOnly || hstore_conf.site.exec_query_cache_replicated_only == false));
+                for (boolean singlePartition : new boolean[]{ true, false }) {
+                    CatalogMap<PlanFragment> fragments = (singlePartition ? catalog_stmt.getFragments() : catalog_stmt.getMs_fragments());
+                    for (PlanFragment catalog_frag : fragments) {
+                        Long fragId = Long.valueOf(catalog_frag.getId());
+                        if (catalog_stmt.getReadonly() == false) {
+                            this.queryCacheWriteFragments.put(fragId, tableIds);
+                        } else if (cacheable) {
+                            this.queryCacheReadFragments.put(fragId, tableIds);
+                        }
+                    } // FOR (fragment)
+                } // FOR
+            } // FOR (stmt)
+        } // FOR (proc)
+        if (d) LOG.debug(String.format("Initialized query cache at partition %d [cacheable=%d, writes=%d]",
+                                       this.partitionId, this.queryCacheReadFragments.size(), this.queryCacheWriteFragments.size()));
     }
     
     @SuppressWarnings("unchecked")
@@ -736,6 +822,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         this.hstore_coordinator = hstore_site.getHStoreCoordinator();
         this.thresholds = (hstore_site != null ? hstore_site.getThresholds() : null);
         
+        if (hstore_conf.site.exec_command_logging &&
+            hstore_site.getCommandLogWriter() != null &&
+            hstore_site.getCommandLogWriter().isGroupCommitEnabled()) {
+            this.groupCommitLogger = hstore_site.getCommandLogWriter();
+        }
+        
         if (hstore_conf.site.exec_profiling) {
             EventObservable<AbstractTransaction> eo = this.hstore_site.getStartWorkloadObservable();
             this.work_idle_time.resetOnEvent(eo);
@@ -760,6 +852,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         assert(this.self == null);
         this.self = Thread.currentThread();
         this.self.setName(HStoreThreadManager.getThreadName(this.hstore_site, this.partitionId));
+        this.work_queue.setConsumer(this.self);
         
         if (hstore_conf.site.cpu_affinity) {
             this.hstore_site.getThreadManager().registerEEThread(partition);
@@ -805,6 +898,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                     stop = true;
                     break;
                 }
+                long workStart = (this.work_throttler.isAdaptive() ? System.nanoTime() : 0);
                 
                 // -------------------------------
                 // Transactional Work
@@ -932,6 +1026,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 }
 
                 // Is there a better way to do this?
+                if (this.work_throttler.isAdaptive()) this.work_throttler.recordServiceTime(System.nanoTime() - workStart);
                 this.work_throttler.checkThrottling(false);
                 
                 if (hstore_conf.site.exec_profiling && this.currentTxnId != null) {
@@ -1548,6 +1643,10 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             if (t) LOG.trace("Current Transaction at partition #" + this.partitionId + "\n" + ts.debug());
         }
             
+        // The HStoreSite may not have deserialized the txn's parameters,
+        // so we'll do that now in our own thread 
+        ts.getInvocation().buildParameterSet();
+        
         ClientResponseImpl cresponse = null;
         try {
             cresponse = (ClientResponseImpl)volt_proc.call(ts, itask.getParameters()); // Blocking...
@@ -1913,6 +2012,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             // HACK: We have to set the TransactionState for sysprocs manually
             volt_proc.setTransactionState(ts);
             ts.markExecNotReadOnly(this.partitionId);
+            if (hstore_conf.site.exec_query_cache) this.queryCache.invalidateGlobalCache();
             try {
                 result = volt_proc.executePlanFragment(ts.getTransactionId(),
                                                        this.tmp_EEdependencies,
@@ -1980,6 +2080,17 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         int output_depIds[] = plan.getOutputDependencyIds();
         int input_depIds[] = plan.getInputDependencyIds();
         
+        // If there are Statements in the batch that have more than one PlanFragment,
+        // then we need to give each of those fragments its Statement's parameters
+        if (fragmentCount != parameterSets.length) {
+            int stmtIndexes[] = plan.getStatementIndexes();
+            ParameterSet fragmentParams[] = new ParameterSet[fragmentCount];
+            for (int i = 0; i < fragmentCount; i++) {
+                fragmentParams[i] = parameterSets[stmtIndexes[i]];
+            } // FOR
+            parameterSets = fragmentParams;
+        }
+        
         // Mark that we touched the local partition once for each query in the batch
         // ts.getTouchedPartitions().put(this.partitionId, plan.getBatchSize());
         
@@ -2005,7 +2116,9 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                      Arrays.toString(plan.getFragmentIds()), plan.getFragmentCount(), Arrays.toString(plan.getOutputDependencyIds()), Arrays.toString(plan.getInputDependencyIds())));
         }
         
-        // NOTE: There are no dependencies that we need to pass in because the entire batch is single-partitioned
+        // NOTE: There are no dependencies that we need to pass in because every fragment in the batch
+        // runs on this partition. The PlanFragments are sorted by Statement and then by round, so the EE
+        // will keep any intermediate results to itself and only send back one result per Statement
         DependencySet result = this.executePlanFragments(ts,
                                                          undoToken,
                                                          fragmentCount,
@@ -2018,6 +2131,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         if (t) LOG.trace("Output:\n" + result);
         
         ts.fastFinishRound(this.partitionId);
+        assert(result == null || result.dependencies.length == plan.getBatchSize()) :
+            String.format("Expected %d results for %s but got %d", plan.getBatchSize(), ts, result.dependencies.length);
         return (result != null ? result.dependencies : null);
     }
     
@@ -2092,6 +2207,51 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             ts.setSubmittedEE(this.partitionId);
         }
         
+        // Check whether we already have the results for any of these fragments
+        // in our query cache. We can only do this if every fragment in the batch is
+        // a read-only query that does not need any input dependencies.
+        // Otherwise we need to make sure that we invalidate any cached results for 
+        // the tables that the batch may write to *before* we execute it.
+        boolean cacheable = false;
+        VoltTable cachedResults[] = null;
+        int execBatchSize = batchSize;
+        long execFragmentIds[] = fragmentIds;
+        int execOutputDepIds[] = output_depIds;
+        int execInputDepIds[] = input_depIds;
+        ParameterSet execParameterSets[] = parameterSets;
+        if (hstore_conf.site.exec_query_cache) {
+            cacheable = this.prepareQueryCache(batchSize, fragmentIds, input_depIds);
+            if (cacheable) {
+                for (int i = 0; i < batchSize; i++) {
+                    VoltTable vt = this.queryCache.getGlobalCachedResult((int)fragmentIds[i], parameterSets[i]);
+                    if (vt != null) {
+                        if (cachedResults == null) cachedResults = new VoltTable[batchSize];
+                        cachedResults[i] = vt;
+                        execBatchSize--;
+                    }
+                } // FOR
+                if (cachedResults != null) {
+                    if (d) LOG.debug(String.format("%s - Found %d/%d fragment results in query cache at partition %d",
+                                                   ts, batchSize - execBatchSize, batchSize, this.partitionId));
+                    if (execBatchSize == 0) {
+                        return (new DependencySet(Arrays.copyOf(output_depIds, batchSize), cachedResults));
+                    }
+                    execFragmentIds = tmp_cacheMissFragmentIds.getArray(execBatchSize);
+                    execOutputDepIds = tmp_cacheMissOutputDepIds.getArray(execBatchSize);
+                    execInputDepIds = tmp_cacheMissInputDepIds.getArray(execBatchSize);
+                    execParameterSets = new ParameterSet[execBatchSize];
+                    for (int i = 0, j = 0; i < batchSize; i++) {
+                        if (cachedResults[i] != null) continue;
+                        execFragmentIds[j] = fragmentIds[i];
+                        execOutputDepIds[j] = output_depIds[i];
+                        execInputDepIds[j] = input_depIds[i];
+                        execParameterSets[j] = parameterSets[i];
+                        j++;
+                    } // FOR
+                }
+            }
+        }
+        
         DependencySet result = null;
         boolean needs_profiling = (hstore_conf.site.txn_profiling && ts.isExecLocal(this.partitionId));
         if (needs_profiling) ((LocalTransaction)ts).profiler.startExecEE();
@@ -2101,12 +2261,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                                            ts, Arrays.toString(fragmentIds), this.partitionId));
             
             result = this.ee.executeQueryPlanFragmentsAndGetDependencySet(
-                            fragmentIds,
-                            batchSize,
-                            input_depIds,
-                            output_depIds,
-                            parameterSets,
-                            batchSize,
+                            execFragmentIds,
+                            execBatchSize,
+                            execInputDepIds,
+                            execOutputDepIds,
+                            execParameterSets,
+                            execBatchSize,
                             txn_id.longValue(),
                             this.lastCommittedTxnId,
                             undoToken);
@@ -2137,9 +2297,59 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             }
         }
         // *********************************** DEBUG ***********************************
+        
+        // Store the new results in the query cache and then merge them
+        // with the results that we already had cached
+        if (cacheable && result != null) {
+            for (int j = 0; j < execBatchSize; j++) {
+                this.queryCache.addGlobalQueryResult((int)execFragmentIds[j],
+                                                     this.queryCacheReadFragments.get(execFragmentIds[j]),
+                                                     execParameterSets[j],
+                                                     result.dependencies[j]);
+            } // FOR
+            if (cachedResults != null) {
+                for (int i = 0, j = 0; i < batchSize; i++) {
+                    if (cachedResults[i] == null) cachedResults[i] = result.dependencies[j++];
+                } // FOR
+                result = new DependencySet(Arrays.copyOf(output_depIds, batchSize), cachedResults);
+            }
+        }
         return (result);
     }
     
+    /**
+     * Update the query cache for a batch of fragments that we are about to execute.
+     * If any fragment may modify a table, then we will invalidate the cached
+     * results that read from that table. If we don't know what tables a
+     * fragment may modify, then we will invalidate the entire cache.
+     * Fragments that are not in either of our maps are read-only queries
+     * whose results we are not allowed to cache.
+     * @param batchSize
+     * @param fragmentIds
+     * @param input_depIds
+     * @return true if every fragment in the batch can use the query cache
+     */
+    private boolean prepareQueryCache(int batchSize, long fragmentIds[], int input_depIds[]) {
+        boolean cacheable = true;
+        for (int i = 0; i < batchSize; i++) {
+            Long fragId = Long.valueOf(fragmentIds[i]);
+            if (this.queryCacheReadFragments.containsKey(fragId)) {
+                if (input_depIds[i] != HStoreConstants.NULL_DEPENDENCY_ID) cacheable = false;
+                continue;
+            }
+            cacheable = false;
+            int tableIds[] = this.queryCacheWriteFragments.get(fragId);
+            if (tableIds == null) {
+                continue;
+            } else if (tableIds.length == 0) {
+                this.queryCache.invalidateGlobalCache();
+            } else {
+                this.queryCache.markTablesWritten(tableIds);
+            }
+        } // FOR
+        return (cacheable);
+    }
+    
     /**
      * 
      * @param txn_id
@@ -2163,6 +2373,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         }
 
         ts.setSubmittedEE(this.partitionId);
+        if (hstore_conf.site.exec_query_cache) this.queryCache.markTableWritten(table.getRelativeIndex());
         ee.loadTable(table.getRelativeIndex(), data,
                      ts.getTransactionId(),
                      lastCommittedTxnId,
@@ -2262,8 +2473,9 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         if (plan.isReadOnly() == false) ts.markExecNotReadOnlyAllPartitions();
         
         // If the BatchPlan only has WorkFragments that are for this partition, then
-        // we can use the fast-path executeLocalPlan() method
-        if (plan.isSingledPartitionedAndLocal()) {
+        // we can use the fast-path executeLocalPlan() method. This includes multi-round
+        // Statements, since the EE passes their intermediate results along by itself
+        if (plan.isLocal()) {
             if  (d) LOG.debug("Executing BatchPlan directly with ExecutionSite");
             results = this.executeLocalPlan(ts, plan, batchParams);
         }
@@ -2831,6 +3043,19 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     // COMMIT + ABORT METHODS
     // ---------------------------------------------------------------
 
+    /**
+     * Returns true if the given ClientResponse will be held back by the CommandLogWriter
+     * until the txn's log entry has been flushed to disk. For these txns we want to 
+     * add their log entry to the writer's buffer from this partition's thread (rather than
+     * the post-processing threads) so that the entries are in the same order that
+     * the txns committed at this partition.
+     * @param cresponse
+     * @return
+     */
+    private boolean isDeferredClientResponse(ClientResponseImpl cresponse) {
+        return (this.groupCommitLogger != null && cresponse.getStatus() == Status.OK);
+    }
+    
     /**
      * Queue a speculatively executed transaction to send its ClientResponseImpl message
      */
@@ -2897,12 +3122,18 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 this.hstore_site.transactionRequeue(ts, status);
             }
             // Use the separate post-processor thread to send back the result
-            else if (hstore_conf.site.exec_postprocessing_thread) {
+            // If we're using group commit, then there is nothing for it to do because
+            // all we need to do is buffer the log entry (see below)
+            else if (hstore_conf.site.exec_postprocessing_thread && this.isDeferredClientResponse(cresponse) == false) {
                 if (t) LOG.trace(String.format("%s - Sending ClientResponse to post-processing thread [status=%s]",
                                                ts, cresponse.getStatus()));
                 this.hstore_site.queueClientResponse(ts, cresponse);
             }
             // Send back the result right now!
+            // If we're using group commit, then this will only add the txn's entry to the
+            // command log buffer and the CommandLogWriter will send back the result once
+            // it is durable. We can still go ahead and delete the txn and execute the next one
+            // because the writer never releases a response before the ones that came before it.
             else {
                 if (hstore_conf.site.exec_command_logging) ts.markLogEnabled();
                 this.hstore_site.sendClientResponse(ts, cresponse);
@@ -3002,6 +3233,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                     if (d) LOG.debug(String.format("%s - Aborting on partition=%d [lastTxnId=%d, undoToken=%d, submittedEE=%s]",
                                                    ts, this.partitionId, this.lastCommittedTxnId, undoToken, ts.hasSubmittedEE(this.partitionId)));
                     this.ee.undoUndoToken(undoToken);
+                    
+                    // We don't know what tables the txn modified, so we'll
+                    // have to throw out everything in the query cache
+                    if (hstore_conf.site.exec_query_cache && ts.isExecReadOnly(this.partitionId) == false) {
+                        this.queryCache.invalidateGlobalCache();
+                    }
                 }
                 if (needs_profiling) ((LocalTransaction)ts).profiler.stopPostEE();
             }
@@ -3160,8 +3397,21 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 }
             }
             
+            // Keep the responses in the order that the txns were executed
+            if (hstore_conf.site.exec_queued_response_ee_bypass) {
+                this.tmp_releasedResponses.addFirst(pair);
+            } else {
+                this.tmp_releasedResponses.addLast(pair);
+            }
+        } // WHILE
+        
+        // Now process the responses in the order that the txns were executed. This ensures
+        // that their command log entries get buffered in the same order that they committed
+        for (Pair<LocalTransaction, ClientResponseImpl> p : this.tmp_releasedResponses) {
+            ts = p.getFirst();
+            cr = p.getSecond();
             try {
-                if (hstore_conf.site.exec_postprocessing_thread) {
+                if (hstore_conf.site.exec_postprocessing_thread && this.isDeferredClientResponse(cr) == false) {
                     if (t) LOG.trace(String.format("Passing queued ClientResponse for %s to post-processing thread [status=%s]", ts, cr.getStatus()));
                     hstore_site.queueClientResponse(ts, cr);
                 } else {
@@ -3171,7 +3421,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             } catch (Throwable ex) {
                 throw new ServerFaultException("Failed to complete queued " + ts, ex);
             }
-        } // WHILE
+        } // FOR
+        this.tmp_releasedResponses.clear();
         if (d && skip_commit > 0 && hstore_conf.site.exec_queued_response_ee_bypass) {
             LOG.debug(String.format("Fast Commit EE Bypass Optimization [skipped=%d, aborted=%d]", skip_commit, aborted));
         }
@@ -1,10 +1,17 @@
 package edu.brown.hstore;
 
+import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.voltdb.messaging.FinishTaskMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
@@ -12,35 +19,290 @@ import org.voltdb.messaging.InitiateTaskMessage;
 import org.voltdb.messaging.TransactionInfoBaseMessage;
 import org.voltdb.messaging.VoltMessage;
 
-public class PartitionExecutorQueue extends PriorityBlockingQueue<VoltMessage> {
-    
-    private static final long serialVersionUID = 1L;
+/**
+ * Multi-Producer/Single-Consumer work queue for a PartitionExecutor
+ * Any thread can add messages to the queue without taking a lock. Each message is
+ * put into a slot in a fixed-size array (or into an overflow queue if the array is full).
+ * Only the PartitionExecutor's thread is allowed to remove messages: it moves
+ * everything that is in the array into its own private priority queue and then
+ * hands out messages from there using WORK_COMPARATOR.
+ * <B>NOTE:</B> poll(), peek(), take(), drainTo(), and iterator() can only be
+ * invoked by the consumer thread. This includes the methods from the Queue interface
+ * that use iterator(), like contains() and remove(Object). The first thread that
+ * calls one of them becomes the consumer unless setConsumer() was called first.
+ * Any other thread that calls them will get an IllegalStateException.
+ */
+public class PartitionExecutorQueue extends AbstractQueue<VoltMessage> {
+
+    /**
+     * The default number of slots in the lock-free array
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * How many times the consumer will check for a new message before parking
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * AtomicLong that sits on its own cache line so that the
+     * producers and the consumer don't bounce it back and forth
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7 = 7l;
+        public PaddedAtomicLong(long value) {
+            super(value);
+        }
+    }
+
+    private final AtomicReferenceArray<VoltMessage> slots;
+    private final int mask;
+
+    /**
+     * The next slot position that a producer can claim
+     */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong(0);
+
+    /**
+     * All of the slots before this position have been emptied by the consumer
+     */
+    private final PaddedAtomicLong head = new PaddedAtomicLong(0);
+
+    /**
+     * Messages that did not fit in the array
+     */
+    private final ConcurrentLinkedQueue<VoltMessage> overflow = new ConcurrentLinkedQueue<VoltMessage>();
+
+    /**
+     * The total number of messages in the queue (including the ones that
+     * the consumer has already moved into its priority queue)
+     */
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * The consumer's private priority queue. Only the consumer thread can touch this.
+     */
+    private final PriorityQueue<VoltMessage> ready = new PriorityQueue<VoltMessage>(1000, WORK_COMPARATOR);
     private final List<VoltMessage> swap = new ArrayList<VoltMessage>();
-    
+
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting = false;
+    private volatile boolean clearRequested = false;
+
     public PartitionExecutorQueue() {
-        super(10000, WORK_COMPARATOR); // FIXME
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PartitionExecutorQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<VoltMessage>(size);
+        this.mask = size - 1;
     }
-    
+
+    // ----------------------------------------------------------------------------
+    // PRODUCER METHODS
+    // ----------------------------------------------------------------------------
+
     @Override
+    public boolean offer(VoltMessage msg) {
+        assert(msg != null);
+        this.size.incrementAndGet();
+        while (true) {
+            long pos = this.tail.get();
+            if (pos - this.head.get() >= this.slots.length()) {
+                this.overflow.offer(msg);
+                break;
+            }
+            if (this.tail.compareAndSet(pos, pos + 1)) {
+                // This has to be a volatile write so that the consumer is guaranteed
+                // to see the message if it checks the queue after we check whether it is waiting
+                this.slots.set((int)(pos & this.mask), msg);
+                break;
+            }
+        } // WHILE
+        
+        if (this.consumerWaiting) {
+            Thread t = this.consumer;
+            if (t != null) LockSupport.unpark(t);
+        }
+        return (true);
+    }
+
+    @Override
+    public int size() {
+        return (this.size.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (this.size.get() == 0);
+    }
+
+    /**
+     * Remove all of the messages in the queue. If this is not invoked by the
+     * consumer thread, then the messages will get removed the next time that the
+     * consumer tries to get a message.
+     */
+    @Override
+    public void clear() {
+        Thread t = this.consumer;
+        if (t == null || t == Thread.currentThread()) {
+            this.clearNow();
+        } else {
+            this.clearRequested = true;
+            LockSupport.unpark(t);
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // CONSUMER METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Set the thread that is allowed to remove messages from this queue
+     * @param t
+     */
+    public void setConsumer(Thread t) {
+        this.consumer = t;
+    }
+
+    /**
+     * Make sure that the current thread is the consumer
+     */
+    private void checkConsumer() {
+        Thread t = this.consumer;
+        if (t == null) {
+            this.consumer = Thread.currentThread();
+        } else if (t != Thread.currentThread()) {
+            throw new IllegalStateException("Trying to read from queue in " + Thread.currentThread() +
+                                            " instead of " + t);
+        }
+    }
+
+    /**
+     * Move all of the messages that the producers have added so far
+     * into the consumer's priority queue
+     */
+    private void drainSlots() {
+        this.checkConsumer();
+        if (this.clearRequested) this.clearNow();
+
+        long pos = this.head.get();
+        VoltMessage msg = null;
+        while ((msg = this.slots.get((int)(pos & this.mask))) != null) {
+            this.slots.lazySet((int)(pos & this.mask), null);
+            this.ready.add(msg);
+            pos++;
+        } // WHILE
+        this.head.lazySet(pos);
+
+        while ((msg = this.overflow.poll()) != null) {
+            this.ready.add(msg);
+        } // WHILE
+    }
+
+    private void clearNow() {
+        this.clearRequested = false;
+        int removed = this.ready.size();
+        this.ready.clear();
+
+        long pos = this.head.get();
+        while (this.slots.get((int)(pos & this.mask)) != null) {
+            this.slots.lazySet((int)(pos & this.mask), null);
+            pos++;
+            removed++;
+        } // WHILE
+        this.head.lazySet(pos);
+        while (this.overflow.poll() != null) {
+            removed++;
+        } // WHILE
+        this.size.addAndGet(-removed);
+    }
+
+    @Override
+    public VoltMessage poll() {
+        this.drainSlots();
+        VoltMessage msg = this.ready.poll();
+        if (msg != null) this.size.decrementAndGet();
+        return (msg);
+    }
+
+    @Override
+    public VoltMessage peek() {
+        this.drainSlots();
+        return (this.ready.peek());
+    }
+
+    /**
+     * Retrieve and remove the next message from the queue, waiting if
+     * necessary until one becomes available. We will first spin for a little
+     * while before we put the thread to sleep.
+     * @return
+     * @throws InterruptedException
+     */
+    public VoltMessage take() throws InterruptedException {
+        this.checkConsumer();
+
+        VoltMessage msg = null;
+        int spins = SPIN_TRIES;
+        while ((msg = this.poll()) == null) {
+            if (spins > 0) {
+                spins--;
+                continue;
+            }
+            this.consumerWaiting = true;
+            try {
+                // Check one last time before we go to sleep
+                if ((msg = this.poll()) != null) break;
+                LockSupport.park(this);
+            } finally {
+                this.consumerWaiting = false;
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        } // WHILE
+        return (msg);
+    }
+
+    /**
+     * Remove all of the InitiateTaskMessages from the queue
+     * and add them to the given collection
+     * @param c
+     * @return
+     */
     public int drainTo(Collection<? super VoltMessage> c) {
         assert(c != null);
+        this.drainSlots();
         VoltMessage msg = null;
         int ctr = 0;
         this.swap.clear();
-        while ((msg = this.poll()) != null) {
+        while ((msg = this.ready.poll()) != null) {
             // All new transaction requests must be put in the new collection
             if (msg instanceof InitiateTaskMessage) {
                 c.add(msg);
                 ctr++;
-            // Everything else will get added back in afterwards 
+            // Everything else will get added back in afterwards
             } else {
                 this.swap.add(msg);
             }
         } // WHILE
-        if (this.swap.isEmpty() == false) this.addAll(this.swap);
+        if (this.swap.isEmpty() == false) this.ready.addAll(this.swap);
+        this.size.addAndGet(-ctr);
         return (ctr);
     }
-    
+
+    @Override
+    public Iterator<VoltMessage> iterator() {
+        this.drainSlots();
+        return (this.ready.iterator());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [size=%d]", this.getClass().getSimpleName(), this.size());
+    }
+
     private static final Comparator<VoltMessage> WORK_COMPARATOR = new Comparator<VoltMessage>() {
         @Override
         public int compare(VoltMessage msg0, VoltMessage msg1) {
@@ -55,31 +317,31 @@ public class PartitionExecutorQueue extends PriorityBlockingQueue<VoltMessage> {
 
             Class<? extends VoltMessage> class0 = msg0.getClass();
             Class<? extends VoltMessage> class1 = msg1.getClass();
-            
+
             // (3) Otherwise, always let the FinishTaskMessage go first
             boolean isFinish0 = class0.equals(FinishTaskMessage.class);
             boolean isFinish1 = class1.equals(FinishTaskMessage.class);
             if (isFinish0 && !isFinish1) return (-1);
             else if (!isFinish0 && isFinish1) return (1);
-            
+
             TransactionInfoBaseMessage txn0 = (TransactionInfoBaseMessage)msg0;
             TransactionInfoBaseMessage txn1 = (TransactionInfoBaseMessage)msg1;
-            
+
             // (1) SysProcs always go first
             if (txn0.isSysProc() != txn1.isSysProc()) {
                 if (txn0.isSysProc()) return (-1);
                 else return (1);
             }
-            
+
             // (2) If they're the same message type, go by their txnIds
             if (class0.equals(class1)) return (txn0.getTxnId().compareTo(txn1.getTxnId()));
-            
+
             // (4) Then let a FragmentTaskMessage go before anything else
             boolean isWork0 = class0.equals(FragmentTaskMessage.class);
             boolean isWork1 = class1.equals(FragmentTaskMessage.class);
             if (isWork0 && !isWork1) return (-1);
             else if (!isWork0 && isWork1) return (1);
-            
+
             // (5) They must be the same!
             assert(false) : String.format("%s <-> %s", class0, class1);
             return 0;
@@ -8,14 +8,21 @@ import java.nio.ByteOrder;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
+import org.voltdb.client.BatchedMessages;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
 import org.voltdb.utils.EstTime;
 
 import com.google.protobuf.RpcCallback;
@@ -26,24 +33,52 @@ import edu.brown.protorpc.AbstractEventHandler;
 import edu.brown.protorpc.EventLoop;
 import edu.brown.protorpc.NIOEventLoop;
 
-/** Listens and responds to Volt client stored procedure requests. */
+/**
+ * Listens and responds to Volt client stored procedure requests.
+ * New connections are accepted in the main EventLoop and then handed out round-robin
+ * to a set of connection EventLoops, each of which can be run in its own thread.
+ */
 public class VoltProcedureListener extends AbstractEventHandler {
     private static final Logger LOG = Logger.getLogger(VoltProcedureListener.class);
     
     private final int hostId;
     private final EventLoop eventLoop;
+    private final EventLoop connectionLoops[];
+    private final boolean batchResponses;
     private final Handler handler;
     private final AtomicInteger connectionId = new AtomicInteger(0);
     private ServerSocketChannel serverSocket;
     
+    /** Direct buffers shared by all of our connections for login messages and batched responses */
+    private final DBBPool bufferPool = new DBBPool(false, false);
+    
+    /** The index of the connection EventLoop that will get the next new connection */
+    private int nextConnectionLoop = 0;
     
 //    private final HStoreSite hstore_site;
 
     public VoltProcedureListener(int hostId, EventLoop eventLoop, Handler handler) {
+        this(hostId, eventLoop, new EventLoop[]{ eventLoop }, handler, false);
+    }
+    
+    /**
+     * Constructor
+     * @param hostId
+     * @param eventLoop The EventLoop that will accept new connections
+     * @param connectionLoops The EventLoops that will handle the client connections. 
+     *        This can include eventLoop. 
+     * @param handler
+     * @param batchResponses If true, then responses will be queued and written out 
+     *        together by the connection's EventLoop instead of by the thread that sent them
+     */
+    public VoltProcedureListener(int hostId, EventLoop eventLoop, EventLoop connectionLoops[], Handler handler, boolean batchResponses) {
         this.hostId = hostId;
         this.eventLoop = eventLoop;
+        this.connectionLoops = connectionLoops;
         this.handler = handler;
+        this.batchResponses = batchResponses;
         assert this.eventLoop != null;
+        assert this.connectionLoops != null && this.connectionLoops.length > 0;
         assert this.handler != null;
     }
 
@@ -58,17 +93,33 @@ public class VoltProcedureListener extends AbstractEventHandler {
         }
         assert client != null;
 
-        // wrap it in a message connection and register with event loop
-        NIOMessageConnection connection = new NIOMessageConnection(client);
+        // wrap it in a message connection and register with the next event loop
+        NIOMessageConnection connection = new NIOMessageConnection(client, this.bufferPool);
         connection.setBigEndian();
 
-        eventLoop.registerRead(client, new ClientConnectionHandler(connection));
+        final EventLoop loop = this.connectionLoops[this.nextConnectionLoop];
+        this.nextConnectionLoop = (this.nextConnectionLoop + 1) % this.connectionLoops.length;
+        final ClientConnectionHandler connectionHandler = new ClientConnectionHandler(connection, loop);
+        if (loop == this.eventLoop) {
+            loop.registerRead(client, connectionHandler);
+        } else {
+            // We can't register the channel with another loop's selector while
+            // it is blocked, so we have to let that loop register it itself
+            final SocketChannel clientChannel = client;
+            loop.runInEventThread(new Runnable() {
+                @Override
+                public void run() {
+                    loop.registerRead(clientChannel, connectionHandler);
+                }
+            });
+        }
     }
 
     // Not private so it can be used in a JUnit test. Gross, but it makes the test a bit easier
-    class ClientConnectionHandler extends AbstractEventHandler implements RpcCallback<byte[]> {
-        public ClientConnectionHandler(MessageConnection connection) {
+    class ClientConnectionHandler extends AbstractEventHandler implements RpcCallback<byte[]>, BufferCallback {
+        public ClientConnectionHandler(MessageConnection connection, EventLoop eventLoop) {
             this.connection = connection;
+            this.eventLoop = eventLoop;
         }
 
         @Override
@@ -113,17 +164,44 @@ public class VoltProcedureListener extends AbstractEventHandler {
             }
             output.flip();
 
-            // Copy to a new array for MessageConnection
-            byte[] message = new byte[output.remaining()];
-            output.get(message);
-            assert output.remaining() == 0;
-
-            boolean blocked = connection.write(message);
+            boolean blocked = connection.write(output);
             assert !blocked;
         }
 
         @Override
-        public synchronized void run(byte[] serializedResult) {
+        public void run(byte[] serializedResult) {
+            if (batchResponses || this.clientBatches) {
+                // Queue up the response and then let our EventLoop write out
+                // everything that it has for this connection at once
+                this.queueResponse(DBBPool.wrapBB(ByteBuffer.wrap(serializedResult)));
+            } else {
+                this.write(ByteBuffer.wrap(serializedResult));
+            }
+        }
+        
+        @Override
+        public void run(ByteBuffer serializedResult) {
+            if (batchResponses || this.clientBatches) {
+                // The caller is going to reuse its buffer once we return, so we
+                // have to copy the response into one of our own pooled buffers
+                BBContainer c = bufferPool.acquire(serializedResult.remaining());
+                c.b.clear();
+                c.b.put(serializedResult);
+                c.b.flip();
+                this.queueResponse(c);
+            } else {
+                this.write(serializedResult);
+            }
+        }
+        
+        private void queueResponse(BBContainer c) {
+            this.pendingResponses.add(c);
+            if (this.flushScheduled.compareAndSet(false, true)) {
+                this.eventLoop.runInEventThread(this.flusher);
+            }
+        }
+        
+        private synchronized void write(ByteBuffer serializedResult) {
             boolean blocked = true;
             try {
                 blocked = connection.write(serializedResult);
@@ -141,6 +219,82 @@ public class VoltProcedureListener extends AbstractEventHandler {
             // NOTE: It is possible for the connection to become ready for writing before we run
             // the event loop. In this case, blocked will be false, but connectionBlocked will be
             // true. This will lead to a "useless" pass around the event loop, but that is safe.
+            this.registerWriteIfBlocked(blocked);
+        }
+        
+        /**
+         * Write all of the queued responses to the connection with a single flush.
+         * This is only invoked from within our EventLoop's thread.
+         */
+        private synchronized void flushPendingResponses() {
+            // Clear the flag first so that any response that is added after
+            // we've drained the queue will schedule another flush
+            this.flushScheduled.set(false);
+            
+            boolean blocked = true;
+            try {
+                if (this.clientBatches) {
+                    this.enqueueCoalescedResponses();
+                } else {
+                    BBContainer c = null;
+                    while ((c = this.pendingResponses.poll()) != null) {
+                        try {
+                            connection.enqueue(c.b);
+                        } finally {
+                            c.discard();
+                        }
+                    } // WHILE
+                }
+                blocked = connection.tryWrite();
+            } catch (RuntimeException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    // Ignore this
+                    if (LOG.isDebugEnabled()) LOG.warn("Client connection closed unexpectedly", ex);
+                } else {
+                    throw ex;
+                }
+            }
+            this.registerWriteIfBlocked(blocked);
+        }
+        
+        /**
+         * Pack all of the queued responses into a single batch message.
+         * The client only knows how to unpack these if it sent us batches too.
+         */
+        private void enqueueCoalescedResponses() {
+            BBContainer c = null;
+            int messageBytes = 0;
+            while ((c = this.pendingResponses.poll()) != null) {
+                this.coalesced.add(c);
+                messageBytes += c.b.remaining();
+            } // WHILE
+            if (this.coalesced.isEmpty()) return;
+            
+            BBContainer out = null;
+            try {
+                if (this.coalesced.size() == 1) {
+                    connection.enqueue(this.coalesced.get(0).b);
+                } else {
+                    int size = BatchedMessages.getSerializedSize(this.coalesced.size(), messageBytes);
+                    out = bufferPool.acquire(size);
+                    out.b.clear();
+                    BatchedMessages.writeHeader(out.b, this.coalesced.size());
+                    for (BBContainer next : this.coalesced) {
+                        BatchedMessages.writeMessage(out.b, next.b);
+                    } // FOR
+                    out.b.flip();
+                    connection.enqueue(out.b);
+                }
+            } finally {
+                if (out != null) out.discard();
+                for (BBContainer next : this.coalesced) {
+                    next.discard();
+                } // FOR
+                this.coalesced.clear();
+            }
+        }
+        
+        private void registerWriteIfBlocked(boolean blocked) {
             if (blocked && !connectionBlocked) {
                 eventLoop.registerWrite(connection.getChannel(), this);
                 connectionBlocked = true;
@@ -148,7 +302,24 @@ public class VoltProcedureListener extends AbstractEventHandler {
         }
 
         private final MessageConnection connection;
+        private final EventLoop eventLoop;
         boolean connectionBlocked = false;
+        
+        private final ConcurrentLinkedQueue<BBContainer> pendingResponses = new ConcurrentLinkedQueue<BBContainer>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final List<BBContainer> coalesced = new ArrayList<BBContainer>();
+        
+        /**
+         * Set to true once this client sends us a batch of requests. From then on
+         * we will send it back batches of responses.
+         */
+        volatile boolean clientBatches = false;
+        private final Runnable flusher = new Runnable() {
+            @Override
+            public void run() {
+                flushPendingResponses();
+            }
+        };
 
         public String user = null;
         public byte[] passwordHash = null;
@@ -156,17 +327,21 @@ public class VoltProcedureListener extends AbstractEventHandler {
 
     private void read(ClientConnectionHandler eventLoopCallback) {
 //        final boolean d = LOG.isDebugEnabled();
-        byte[] request;
-        while ((request = eventLoopCallback.connection.tryRead()) != null) {
-            if (request.length == 0) {
-                // connection closed
-                LOG.debug("Connection closed");
-                eventLoopCallback.connection.close();
-                return;
-            }
-
+        BBContainer request;
+        while (true) {
             if (eventLoopCallback.user == null) {
-                ByteBuffer input = ByteBuffer.wrap(request);
+                // The login message is only needed until we've parsed it, so we
+                // can read it straight into a pooled buffer
+                BBContainer c = eventLoopCallback.connection.tryReadBuffer();
+                if (c == null) return;
+                if (c.b.remaining() == 0) {
+                    // connection closed
+                    LOG.debug("Connection closed");
+                    eventLoopCallback.connection.close();
+                    return;
+                }
+                
+                ByteBuffer input = c.b;
                 input.order(ByteOrder.BIG_ENDIAN);
                 try {
                     @SuppressWarnings("unused")
@@ -183,6 +358,8 @@ public class VoltProcedureListener extends AbstractEventHandler {
                     input.get(eventLoopCallback.passwordHash);
                 } catch (UnsupportedEncodingException e) {
                     throw new RuntimeException(e);
+                } finally {
+                    c.discard();
                 }
 
                 // write to say "okay": BIG HACK
@@ -190,12 +367,33 @@ public class VoltProcedureListener extends AbstractEventHandler {
                 return;
             }
             
+            // Requests are read into a pooled buffer too. The handler decodes
+            // everything that it needs before it returns, so we can give the
+            // buffer back right after it's done
+            request = eventLoopCallback.connection.tryReadBuffer();
+            if (request == null) return;
+            if (request.b.remaining() == 0) {
+                // connection closed
+                LOG.debug("Connection closed");
+                eventLoopCallback.connection.close();
+                return;
+            }
+            
             // Execute store procedure!
             try {
-                handler.procedureInvocation(request, eventLoopCallback);
+                if (BatchedMessages.isBatch(request.b)) {
+                    eventLoopCallback.clientBatches = true;
+                    for (ByteBuffer r : BatchedMessages.split(request.b)) {
+                        handler.procedureInvocation(r, eventLoopCallback);
+                    } // FOR
+                } else {
+                    handler.procedureInvocation(request.b, eventLoopCallback);
+                }
             } catch (Exception ex) {
                 LOG.fatal("Unexpected error when calling procedureInvocation!", ex);
                 throw new RuntimeException(ex);
+            } finally {
+                request.discard();
             }
         }
     }
@@ -208,7 +406,11 @@ public class VoltProcedureListener extends AbstractEventHandler {
 //    }
 
     public static StoredProcedureInvocation decodeRequest(byte[] bytes) {
-        final FastDeserializer fds = new FastDeserializer(ByteBuffer.wrap(bytes));
+        return decodeRequest(ByteBuffer.wrap(bytes));
+    }
+    
+    public static StoredProcedureInvocation decodeRequest(ByteBuffer buffer) {
+        final FastDeserializer fds = new FastDeserializer(buffer);
         StoredProcedureInvocation task;
         try {
             task = fds.readObject(StoredProcedureInvocation.class);
@@ -263,9 +465,24 @@ public class VoltProcedureListener extends AbstractEventHandler {
         this.serverSocket = serverSocket;
     }
 
+    /**
+     * A callback that is handed a serialized response in a buffer that is only
+     * valid for the duration of the call. This allows the sender to write the
+     * response straight out of its serialization buffer without copying it
+     * into a new byte array first.
+     */
+    public static interface BufferCallback {
+        public void run(ByteBuffer serializedResult);
+    }
+
     public static interface Handler {
         public long getInstanceId();
-        public void procedureInvocation(byte[] serializedRequest, RpcCallback<byte[]> done);
+        /**
+         * The serialized request is in one of the listener's pooled buffers, so it is only
+         * valid for the duration of the call. Anything that is needed afterwards
+         * (including the procedure's parameters) has to be decoded or copied out first.
+         */
+        public void procedureInvocation(ByteBuffer serializedRequest, RpcCallback<byte[]> done);
     }
 
     public static void main(String[] vargs) throws Exception {
@@ -276,13 +493,8 @@ public class VoltProcedureListener extends AbstractEventHandler {
             public long getInstanceId() {
                 return 0;
             }
-            public void procedureInvocation(byte[] serializedRequest, RpcCallback<byte[]> done) {
-                StoredProcedureInvocation invocation = null;
-                try {
-                    invocation = FastDeserializer.deserialize(serializedRequest, StoredProcedureInvocation.class);
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
+            public void procedureInvocation(ByteBuffer serializedRequest, RpcCallback<byte[]> done) {
+                StoredProcedureInvocation invocation = decodeRequest(serializedRequest);
                 LOG.debug("request: " + invocation.getProcName() + " " +
                         invocation.getParams().toArray().length);
                 done.run(serializeResponse(new VoltTable[0], invocation.getClientHandle()));
@@ -4,6 +4,8 @@ import org.apache.log4j.Logger;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.client.ClientResponse;
 
+import com.google.protobuf.RpcCallback;
+
 import edu.brown.hstore.HStoreSite;
 import edu.brown.hstore.Hstoreservice;
 import edu.brown.hstore.Hstoreservice.Status;
@@ -46,15 +48,25 @@ public class TransactionPrepareCallback extends AbstractTransactionCallback<byte
         assert(this.cresponse.isInitialized()) :
             "Trying to send back ClientResponse for " + ts + " before it was set!";
 
-        // Everybody returned ok, so we'll tell them all commit right now
-        this.finishTransaction(Status.OK);
-        
         // At this point all of our HStoreSites came back with an OK on the 2PC PREPARE
-        // So that means we can send back the result to the client and then 
-        // send the 2PC COMMIT message to all of our friends.
-        // We want to do this first because the transaction state could get
+        // If the CommandLogWriter is going to hold back the result until the txn's
+        // log entry is flushed with group commit, then we have to add that entry before we
+        // send the 2PC COMMIT message to all of our friends. Otherwise a txn that reads its
+        // changes at the other partitions once they commit could get logged before it.
+        if (this.hstore_site.logClientResponse(this.ts, this.cresponse)) {
+            this.finishTransaction(Status.OK);
+            return (false);
+        }
+        
+        // Otherwise everybody returned ok, so we'll tell them all commit right now and
+        // then send back the result to the client.
+        // We grab what we need from the txn first because its state could get
         // cleaned-up right away when we call HStoreCoordinator.transactionFinish()
-        this.hstore_site.sendClientResponse(this.ts, this.cresponse);
+        RpcCallback<byte[]> clientCallback = this.ts.getClientCallback();
+        long initiateTime = this.ts.getInitiateTime();
+        int restartCounter = this.ts.getRestartCounter();
+        this.finishTransaction(Status.OK);
+        this.hstore_site.sendClientResponse(this.cresponse, clientCallback, initiateTime, restartCounter);
         return (false);
     }
     
@@ -135,6 +135,23 @@ public final class HStoreConf {
         )
         public boolean cpu_affinity_one_partition_per_core;
         
+        @ConfigProperty(
+            description="The number of threads that each HStoreSite will use to handle client connections. " +
+                        "New connections are assigned to these threads in a round-robin manner.",
+            defaultInt=1,
+            experimental=true
+        )
+        public int network_listener_threads;
+        
+        @ConfigProperty(
+            description="If this parameter is enabled, then the responses for a client connection will be " +
+                        "queued and then written out together by that connection's listener thread, instead of " +
+                        "being written out one at a time by the thread that finished the transaction.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean network_listener_batch_responses;
+        
         // ----------------------------------------------------------------------------
         // Execution Options
         // ----------------------------------------------------------------------------
@@ -316,6 +333,64 @@ public final class HStoreConf {
         )
         public int exec_command_logging_group_commit;
         
+        @ConfigProperty(
+            description="The maximum amount of time in milliseconds that the command logging writer " +
+                        "thread will wait for the group commit buffer to fill up before it flushes " +
+                        "out the queued log entries to disk anyway. This is only used when " +
+                        "${site.exec_command_logging_group_commit} is greater than zero.",
+            defaultInt=10,
+            experimental=true
+        )
+        public int exec_command_logging_group_commit_timeout;
+        
+        @ConfigProperty(
+            description="The size (in MB) of each command log segment file. Each segment is " +
+                        "pre-allocated to this size when it is created. Segments that only " +
+                        "contain transactions that came before a completed snapshot are deleted.",
+            defaultInt=64,
+            experimental=true
+        )
+        public int exec_command_logging_segment_size;
+        
+        @ConfigProperty(
+            description="If this parameter is enabled, then when the cluster starts up it will " +
+                        "load the latest snapshot from ${site.exec_command_logging_recovery_snapshot_dir} " +
+                        "and then replay all of the transactions in the previous command logs " +
+                        "before it starts accepting new requests. The site with the lowest id replays " +
+                        "the logs of every site in txn id order, so ${site.exec_command_logging_directory} " +
+                        "must be shared by all of the sites.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_command_logging_recovery;
+        
+        @ConfigProperty(
+            description="The directory to search for the latest snapshot to restore before the " +
+                        "command log is replayed. If this is empty, then the command log is " +
+                        "replayed without loading a snapshot first.",
+            defaultString="",
+            experimental=true
+        )
+        public String exec_command_logging_recovery_snapshot_dir;
+        
+        @ConfigProperty(
+            description="The maximum number of single-partition transactions that can be " +
+                        "outstanding at the same time while replaying the command log.",
+            defaultInt=1000,
+            experimental=true
+        )
+        public int exec_command_logging_recovery_window;
+
+        @ConfigProperty(
+            description="If this parameter is enabled, then each group commit batch will be compressed " +
+                        "before it is written out to the command log. This reduces the number of bytes " +
+                        "written per transaction at the cost of additional CPU time in the writer thread. " +
+                        "Only used if ${site.exec_command_logging_group_commit} is greater than zero.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_command_logging_compression;
+
         @ConfigProperty(
             description="Setting this configuration parameter to true allows clients to " +
                         "issue ad hoc query requests use the @AdHoc sysproc.",
@@ -339,7 +414,36 @@ public final class HStoreConf {
             experimental=true
         )
         public boolean exec_deferrable_queries;
-        
+
+        @ConfigProperty(
+            description="If this parameter is enabled, then each PartitionExecutor will cache the results of " +
+                        "read-only queries and reuse them for later transactions that execute the same query " +
+                        "with the same parameters. A cached result is thrown out as soon as any query " +
+                        "writes to one of the tables that it read from.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_query_cache;
+
+        @ConfigProperty(
+            description="The maximum number of bytes of query results that each PartitionExecutor will keep " +
+                        "in its query cache. The least recently used results are evicted first. " +
+                        "Only used if ${site.exec_query_cache} is enabled.",
+            defaultInt=8388608,
+            experimental=true
+        )
+        public int exec_query_cache_max_bytes;
+
+        @ConfigProperty(
+            description="If this parameter is enabled, then the query cache will only store the results of " +
+                        "queries that just read from replicated tables. Otherwise, the results of any " +
+                        "read-only query will be cached. " +
+                        "Only used if ${site.exec_query_cache} is enabled.",
+            defaultBoolean=true,
+            experimental=true
+        )
+        public boolean exec_query_cache_replicated_only;
+
         // ----------------------------------------------------------------------------
         // MapReduce Options
         // ----------------------------------------------------------------------------
@@ -438,6 +542,37 @@ public final class HStoreConf {
         )
         public int queue_incoming_increase_max;
         
+        @ConfigProperty(
+            description="Enable adaptive throttling for the PartitionExecutors' incoming queues. Instead of " +
+                        "only increasing ${site.queue_incoming_max_per_partition} when the queue is empty, " +
+                        "each PartitionExecutor will measure how long it takes to process its work and then " +
+                        "adjust its queue limit so that the expected time that a transaction waits in the queue " +
+                        "stays under ${site.queue_incoming_target_latency}. The limit will never go above " +
+                        "${site.queue_incoming_increase_max} or below ${site.queue_incoming_increase}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean queue_incoming_adaptive;
+        
+        @ConfigProperty(
+            description="The target amount of time (in milliseconds) that a transaction should wait in " +
+                        "a PartitionExecutor's queue before it is executed. " +
+                        "Only used if ${site.queue_incoming_adaptive} is enabled.",
+            defaultInt=50,
+            experimental=true
+        )
+        public int queue_incoming_target_latency;
+        
+        @ConfigProperty(
+            description="How often (in milliseconds) a PartitionExecutor will recalculate its queue limit. " +
+                        "If the queueing delay stayed above ${site.queue_incoming_target_latency} for " +
+                        "this entire interval, then the limit will be decreased. " +
+                        "Only used if ${site.queue_incoming_adaptive} is enabled.",
+            defaultInt=100,
+            experimental=true
+        )
+        public int queue_incoming_adaptive_interval;
+        
         @ConfigProperty(
             description="If a transaction is rejected by an PartitionExecutor because its queue is full, then " +
                         "this parameter determines what kind of response will be sent back to the client. " +
@@ -558,7 +693,47 @@ public final class HStoreConf {
             experimental=true
         )
         public int markov_batch_caching_min;
-        
+
+        @ConfigProperty(
+            description="If this is set to true, then the TransactionEstimator and MarkovPathEstimator will use an " +
+                        "immutable array-based snapshot of each MarkovGraph when estimating paths and looking up the " +
+                        "next vertex for a query, instead of walking the graph's adjacency maps. A new transaction " +
+                        "always uses the last snapshot that was built. When a transaction finishes and the MarkovGraph " +
+                        "has changed since its snapshot was built (e.g., the transaction added vertices or edges, or " +
+                        "the Markov maintenance thread swapped in a recomputed graph), the snapshot is rebuilt by a " +
+                        "background thread.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean markov_compiled;
+
+        @ConfigProperty(
+            description="If this is set to true, then the TransactionEstimator will not update the counters of its " +
+                        "MarkovGraphs when a transaction finishes. Instead, the path of each completed transaction " +
+                        "is handed off to a background thread that updates a shadow copy of the graph, recomputes its " +
+                        "probabilities, and then swaps it in as the new live graph. Paths are dropped whenever that " +
+                        "thread cannot keep up. See edu.brown.hstore.util.MarkovMaintenanceThread",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean markov_maintenance;
+
+        @ConfigProperty(
+            description="The maximum number of completed transaction paths that can be waiting for the Markov " +
+                        "maintenance thread. Any path that arrives when the queue is full will be dropped.",
+            defaultInt=10000,
+            experimental=true
+        )
+        public int markov_maintenance_queue_size;
+
+        @ConfigProperty(
+            description="The number of completed transaction paths that the Markov maintenance thread will apply " +
+                        "to the shadow copy of a MarkovGraph before it recomputes its probabilities and swaps it in.",
+            defaultInt=500,
+            experimental=true
+        )
+        public int markov_maintenance_txn_threshold;
+
         @ConfigProperty(
             description="Enable a hack for TPC-C where we inspect the arguments of the TPC-C neworder transaction and figure " +
                         "out what partitions it needs without having to use the TransactionEstimator. This will crash the " +
@@ -1114,7 +1289,44 @@ public final class HStoreConf {
             experimental=false
         )
         public boolean txn_hints;
-        
+
+        @ConfigProperty(
+            description="If ${client.txn_hints} is enabled but the client was not given a catalog, then the " +
+                        "client will download the catalog from the first HStoreSite that it connects to using " +
+                        "the @GetCatalog sysproc. It will download it again if it finds out that a request was " +
+                        "executed at a different HStoreSite than the one that it sent it to.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean txn_hints_download;
+
+        @ConfigProperty(
+            description="If this parameter is enabled, then the client will coalesce the transaction requests " +
+                        "that it sends to each HStoreSite connection into a single network message. A batch is " +
+                        "sent once it is larger than ${client.batch_max_bytes} or after " +
+                        "${client.batch_flush_interval} microseconds, whichever comes first. The HStoreSite will " +
+                        "also coalesce the responses that it sends back on that connection.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean batch_invocations;
+
+        @ConfigProperty(
+            description="If ${client.batch_invocations} is enabled, then this is the number of bytes of " +
+                        "queued requests that will cause the client to send out a batch right away.",
+            defaultInt=16384,
+            experimental=true
+        )
+        public int batch_max_bytes;
+
+        @ConfigProperty(
+            description="If ${client.batch_invocations} is enabled, then this is the max amount of time " +
+                        "(in microseconds) that a transaction request will wait in a batch before it is sent.",
+            defaultInt=250,
+            experimental=true
+        )
+        public int batch_flush_interval;
+
         @ConfigProperty(
             description="If a node is executing multiple client processes, then the node may become overloaded if " +
                         "all the clients are started at the same time. This parameter defines the threshold for when " +
@@ -0,0 +1,280 @@
+package edu.brown.hstore.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.HStoreThreadManager;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.interfaces.Shutdownable;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.markov.TransactionEstimator;
+
+/**
+ * Background thread that keeps the MarkovGraphs used by the TransactionEstimators up-to-date.
+ * When a txn finishes, its TransactionEstimator hands off the path that it took through the
+ * live MarkovGraph. This thread applies the path to a private shadow copy of that graph. Once
+ * enough paths have been applied, the shadow copy's probabilities are recomputed and it is
+ * swapped in as the new live graph for the procedure. This means that a PartitionExecutor never
+ * has to stop and wait for a graph to be recomputed.
+ * The queue of paths is bounded, so if this thread falls behind then the paths will be dropped.
+ * @see TransactionEstimator#setMaintenanceThread(MarkovMaintenanceThread)
+ */
+public class MarkovMaintenanceThread implements Runnable, Shutdownable {
+    private static final Logger LOG = Logger.getLogger(MarkovMaintenanceThread.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * The path of a completed transaction through a live MarkovGraph
+     */
+    protected static class CompletedPath {
+        private final MarkovGraph markov;
+        private final MarkovVertex path[];
+
+        private CompletedPath(MarkovGraph markov, MarkovVertex path[]) {
+            this.markov = markov;
+            this.path = path;
+        }
+    }
+
+    /**
+     * The private copy of a live MarkovGraph that we apply new paths to
+     */
+    private static class ShadowGraph {
+        private MarkovGraph live;
+        private MarkovGraph shadow;
+        private int pending = 0;
+
+        private ShadowGraph(MarkovGraph live, MarkovGraph shadow) {
+            this.live = live;
+            this.shadow = shadow;
+        }
+    }
+
+    private final HStoreSite hstore_site;
+    private final HStoreConf hstore_conf;
+    private final BlockingQueue<CompletedPath> queue;
+    private final int txn_threshold;
+    private final List<TransactionEstimator> t_estimators = new CopyOnWriteArrayList<TransactionEstimator>();
+
+    /**
+     * Live MarkovGraph -> ShadowGraph
+     * We keep the graphs that we have swapped out in here too, so that the paths of any
+     * txns that were still using them will get applied to the right shadow copy.
+     * This is only accessed by this thread
+     */
+    private final Map<MarkovGraph, ShadowGraph> shadows = new WeakHashMap<MarkovGraph, ShadowGraph>();
+
+    private final AtomicLong processed = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong swapped = new AtomicLong(0);
+
+    private Thread self = null;
+    private boolean stop = false;
+
+    /**
+     * Constructor
+     * @param hstore_site
+     * @param queue_size - the max number of paths that can be waiting to be processed
+     * @param txn_threshold - the number of paths to apply to a graph before it is swapped
+     */
+    public MarkovMaintenanceThread(HStoreSite hstore_site, int queue_size, int txn_threshold) {
+        assert(queue_size > 0) : "Invalid queue size " + queue_size;
+        assert(txn_threshold > 0) : "Invalid txn threshold " + txn_threshold;
+        this.hstore_site = hstore_site;
+        this.hstore_conf = (hstore_site != null ? hstore_site.getHStoreConf() : HStoreConf.singleton());
+        this.queue = new ArrayBlockingQueue<CompletedPath>(queue_size);
+        this.txn_threshold = txn_threshold;
+    }
+
+    public MarkovMaintenanceThread(HStoreSite hstore_site) {
+        this(hstore_site,
+             hstore_site.getHStoreConf().site.markov_maintenance_queue_size,
+             hstore_site.getHStoreConf().site.markov_maintenance_txn_threshold);
+    }
+
+    /**
+     * Have this thread maintain the MarkovGraphs used by the given TransactionEstimator
+     * @param t_estimator
+     */
+    public void register(TransactionEstimator t_estimator) {
+        this.t_estimators.add(t_estimator);
+        t_estimator.setMaintenanceThread(this);
+    }
+
+    /**
+     * Queue the path of a completed txn for the given live MarkovGraph.
+     * The path must start at the START vertex and end at the COMMIT or ABORT vertex.
+     * Returns false if the queue is full and the path was dropped.
+     * @param markov
+     * @param path
+     * @return
+     */
+    public boolean queue(MarkovGraph markov, List<MarkovVertex> path) {
+        CompletedPath cp = new CompletedPath(markov, path.toArray(new MarkovVertex[path.size()]));
+        if (this.queue.offer(cp) == false) {
+            if (trace.get()) LOG.trace(String.format("Dropping %s path because the queue is full", markov));
+            this.dropped.incrementAndGet();
+            return (false);
+        }
+        return (true);
+    }
+
+    /**
+     * Record that a completed txn's path was not queued
+     */
+    public void drop() {
+        this.dropped.incrementAndGet();
+    }
+
+    public long getProcessedCount() {
+        return (this.processed.get());
+    }
+    public long getDroppedCount() {
+        return (this.dropped.get());
+    }
+    public long getSwapCount() {
+        return (this.swapped.get());
+    }
+    public int getQueueSize() {
+        return (this.queue.size());
+    }
+
+    @Override
+    public void run() {
+        this.self = Thread.currentThread();
+        this.self.setName(HStoreThreadManager.getThreadName(hstore_site, "markov"));
+        if (hstore_conf.site.cpu_affinity) {
+            hstore_site.getThreadManager().registerProcessingThread();
+        }
+        if (debug.get())
+            LOG.debug("Starting Markov maintenance thread");
+
+        CompletedPath cp = null;
+        while (this.self.isInterrupted() == false) {
+            try {
+                cp = this.queue.take();
+            } catch (InterruptedException ex) {
+                // Ignore!
+                break;
+            }
+            assert(cp != null);
+            this.process(cp);
+        } // WHILE
+    }
+
+    /**
+     * Process all of the paths that are currently in the queue
+     * Returns the number of paths that were processed
+     * @return
+     */
+    protected int processQueue() {
+        int ctr = 0;
+        CompletedPath cp = null;
+        while ((cp = this.queue.poll()) != null) {
+            this.process(cp);
+            ctr++;
+        } // WHILE
+        return (ctr);
+    }
+
+    /**
+     * Apply the path to the shadow copy of its live MarkovGraph, and then swap
+     * the shadow copy in if we have reached our threshold
+     * @param cp
+     */
+    protected void process(CompletedPath cp) {
+        ShadowGraph sg = this.shadows.get(cp.markov);
+        if (sg == null) {
+            sg = new ShadowGraph(cp.markov, this.copy(cp.markov));
+            this.shadows.put(cp.markov, sg);
+            if (debug.get()) LOG.debug("Created new shadow copy of " + cp.markov);
+        }
+        sg.shadow.processPath(Arrays.asList(cp.path));
+        this.processed.incrementAndGet();
+
+        if (++sg.pending >= this.txn_threshold) {
+            this.swap(sg);
+        }
+    }
+
+    /**
+     * Recompute the probabilities for the shadow copy and swap it in as the live graph.
+     * We make a new shadow copy before anybody else can get their hands on it.
+     * @param sg
+     */
+    private void swap(ShadowGraph sg) {
+        MarkovGraph next = sg.shadow;
+        next.calculateProbabilities();
+        MarkovGraph shadow = next.copy();
+
+        // Build the array-based snapshot now so that the PartitionExecutor doesn't have to
+        if (hstore_conf.site.markov_compiled) next.getCompiled();
+
+        boolean success = false;
+        for (TransactionEstimator t_estimator : this.t_estimators) {
+            success = t_estimator.swapMarkovGraph(sg.live, next) || success;
+        } // FOR
+        if (success == false) {
+            // The live graph is not being used by anybody anymore, so we
+            // don't need to keep its shadow copy around either
+            if (debug.get()) LOG.debug(String.format("Failed to swap %s. Discarding shadow copy", sg.live));
+            this.shadows.remove(sg.live);
+            return;
+        }
+        if (debug.get()) LOG.debug(String.format("Swapped new %s after %d txns [vertices=%d, edges=%d]",
+                                                 next, sg.pending, next.getVertexCount(), next.getEdgeCount()));
+        sg.live = next;
+        sg.shadow = shadow;
+        sg.pending = 0;
+        this.shadows.put(next, sg);
+        this.swapped.incrementAndGet();
+    }
+
+    /**
+     * Make a copy of a live MarkovGraph. The TransactionEstimators only add vertices and
+     * edges to a live graph while holding its lock, so we hold it too while we copy it.
+     * @param markov
+     * @return
+     */
+    private MarkovGraph copy(MarkovGraph markov) {
+        synchronized (markov) {
+            return (markov.copy());
+        } // SYNCH
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return (this.stop);
+    }
+
+    @Override
+    public void prepareShutdown(boolean error) {
+        this.queue.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        if (debug.get())
+            LOG.debug(String.format("Markov maintenance thread should be shutdown now [processed=%d, dropped=%d, swapped=%d]",
+                                    this.processed.get(), this.dropped.get(), this.swapped.get()));
+        this.stop = true;
+        if (this.self != null)
+            this.self.interrupt();
+    }
+}
@@ -1,8 +1,11 @@
 package edu.brown.hstore.util;
 
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -115,6 +118,53 @@ public class QueryCache {
         }
     } // CLASS
     
+    /**
+     * Lookup key for the global cache. We keep our own copy of the query's
+     * parameters because ParameterSets get cleared and reused.
+     */
+    private static class GlobalKey {
+        int fragmentId;
+        Object params[];
+        int hash;
+        
+        GlobalKey set(int fragmentId, Object params[]) {
+            this.fragmentId = fragmentId;
+            this.params = params;
+            this.hash = (31 * fragmentId) + Arrays.deepHashCode(params);
+            return (this);
+        }
+        @Override
+        public int hashCode() {
+            return (this.hash);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return (true);
+            if ((obj instanceof GlobalKey) == false) return (false);
+            GlobalKey other = (GlobalKey)obj;
+            return (this.hash == other.hash &&
+                    this.fragmentId == other.fragmentId &&
+                    Arrays.deepEquals(this.params, other.params));
+        }
+    } // CLASS
+    
+    /**
+     * A cached query result in the global cache. The result is stored as a
+     * private copy of the VoltTable's serialized bytes along with the write
+     * version of each table that it read from at the time that it was added.
+     */
+    private static class GlobalEntry {
+        final ByteBuffer data;
+        final int tableIds[];
+        final long tableVersions[];
+        
+        GlobalEntry(ByteBuffer data, int tableIds[], long tableVersions[]) {
+            this.data = data;
+            this.tableIds = tableIds;
+            this.tableVersions = tableVersions;
+        }
+    } // CLASS
+    
     /**
      * List<Integer> pool used by txnCache
      */
@@ -135,28 +185,187 @@ public class QueryCache {
     // INITIALIZATION
     // ----------------------------------------------------------------------------
 
-    private final Cache globalCache;
+    /**
+     * The global cache is kept in access order so that we can evict the least
+     * recently used entries when we go over our byte budget.
+     */
+    private final LinkedHashMap<GlobalKey, GlobalEntry> globalCache = new LinkedHashMap<GlobalKey, GlobalEntry>(16, 0.75f, true);
+    private final GlobalKey globalProbe = new GlobalKey();
+    private final long globalMaxBytes;
+    private long globalBytes = 0;
+    
+    /**
+     * The current write version of each table, indexed by the table's relativeIndex.
+     * A table's version is incremented every time a query may have modified it.
+     */
+    private long tableVersions[] = new long[16];
+    
+    private long globalHits = 0;
+    private long globalMisses = 0;
+    private long globalEvictions = 0;
+    private long globalInvalidations = 0;
+    
     private final Cache txnCache;
     private final IdentityHashMap<Long, List<Integer>> txnCacheXref = new IdentityHashMap<Long, List<Integer>>();
     
     /**
      * Constructor
+     * @param globalBufferSize The max number of bytes of query results to keep in the global cache
+     * @param txnBufferSize The number of entries in the transaction cache
      */
     public QueryCache(int globalBufferSize, int txnBufferSize) {
-        this.globalCache = new Cache(globalBufferSize);
+        this.globalMaxBytes = globalBufferSize;
         this.txnCache = new Cache(txnBufferSize);
     }
     
     
     // ----------------------------------------------------------------------------
-    // API
+    // GLOBAL CACHE API
     // ----------------------------------------------------------------------------
 
-    
-    public void addGlobalQueryResult(int fragmentId, ParameterSet params, VoltTable result) {
+    /**
+     * Store the result of a read-only query so that it can be reused by
+     * any later transaction that executes the same query with the same parameters.
+     * The cached result will be discarded once any of the given tables is written to.
+     * Note that this is not thread-safe and should only be invoked from 
+     * the PartitionExecutor that owns this cache.
+     * @param fragmentId
+     * @param tableIds The relative indexes of the tables that the query reads from
+     * @param params
+     * @param result
+     */
+    public void addGlobalQueryResult(int fragmentId, int tableIds[], ParameterSet params, VoltTable result) {
+        int size = result.getUnderlyingBufferSize();
+        if (size > this.globalMaxBytes) {
+            if (debug.get()) LOG.debug(String.format("Not caching result for FragmentId %d - %d bytes is larger than the cache",
+                                                     fragmentId, size));
+            return;
+        }
+        
+        // Make our own copy of the result's bytes since the EE's buffers
+        // (and the original VoltTable) may get reused 
+        ByteBuffer data = ByteBuffer.allocate(size);
+        ByteBuffer src = result.getTableDataReference();
+        src.limit(size);
+        data.put(src);
+        data.flip();
         
+        long versions[] = new long[tableIds.length];
+        for (int i = 0; i < tableIds.length; i++) {
+            versions[i] = this.getTableVersion(tableIds[i]);
+        } // FOR
+        
+        GlobalKey key = new GlobalKey().set(fragmentId, params.toArray().clone());
+        GlobalEntry entry = new GlobalEntry(data, tableIds, versions);
+        GlobalEntry old = this.globalCache.put(key, entry);
+        if (old != null) this.globalBytes -= old.data.capacity();
+        this.globalBytes += size;
+        if (debug.get()) LOG.debug(String.format("Storing global query result for FragmentId %d [size=%d] - %s",
+                                                 fragmentId, size, params));
+        
+        // Evict the least recently used entries until we're back under our limit
+        if (this.globalBytes > this.globalMaxBytes) {
+            Iterator<GlobalEntry> it = this.globalCache.values().iterator();
+            while (this.globalBytes > this.globalMaxBytes && it.hasNext()) {
+                GlobalEntry e = it.next();
+                this.globalBytes -= e.data.capacity();
+                this.globalEvictions++;
+                it.remove();
+            } // WHILE
+        }
     }
     
+    /**
+     * Return a cached result for the given query if one exists and none of
+     * the tables that it read from have been written to since it was cached. 
+     * @param fragmentId
+     * @param params
+     * @return
+     */
+    public VoltTable getGlobalCachedResult(int fragmentId, ParameterSet params) {
+        GlobalKey probe = this.globalProbe.set(fragmentId, params.toArray());
+        GlobalEntry entry = this.globalCache.get(probe);
+        if (entry != null) {
+            for (int i = 0; i < entry.tableIds.length; i++) {
+                if (this.getTableVersion(entry.tableIds[i]) != entry.tableVersions[i]) {
+                    if (trace.get()) LOG.trace(String.format("Discarding stale global query result for FragmentId %d", fragmentId));
+                    this.globalCache.remove(probe);
+                    this.globalBytes -= entry.data.capacity();
+                    this.globalInvalidations++;
+                    entry = null;
+                    break;
+                }
+            } // FOR
+        }
+        probe.params = null;
+        if (entry == null) {
+            this.globalMisses++;
+            return (null);
+        }
+        this.globalHits++;
+        return (new VoltTable(entry.data.duplicate(), true));
+    }
+    
+    /**
+     * Mark the given tables as having been modified. Any cached query results
+     * that read from them will no longer be returned.
+     * @param tableIds The relative indexes of the modified tables
+     */
+    public void markTablesWritten(int tableIds[]) {
+        for (int tableId : tableIds) {
+            this.markTableWritten(tableId);
+        } // FOR
+    }
+    
+    /**
+     * Mark a single table as having been modified.
+     * @param tableId The relative index of the modified table
+     */
+    public void markTableWritten(int tableId) {
+        if (tableId >= this.tableVersions.length) {
+            this.tableVersions = Arrays.copyOf(this.tableVersions, Math.max(tableId + 1, this.tableVersions.length * 2));
+        }
+        this.tableVersions[tableId]++;
+    }
+    
+    private long getTableVersion(int tableId) {
+        return (tableId < this.tableVersions.length ? this.tableVersions[tableId] : 0);
+    }
+    
+    /**
+     * Remove all of the entries in the global cache. This is used when we don't
+     * know what tables may have been modified (e.g., a sysproc or a rollback). 
+     */
+    public void invalidateGlobalCache() {
+        if (debug.get()) LOG.debug(String.format("Invalidating %d global query results", this.globalCache.size()));
+        this.globalInvalidations += this.globalCache.size();
+        this.globalCache.clear();
+        this.globalBytes = 0;
+    }
+    
+    public long getGlobalCacheHits() {
+        return (this.globalHits);
+    }
+    public long getGlobalCacheMisses() {
+        return (this.globalMisses);
+    }
+    public long getGlobalCacheEvictions() {
+        return (this.globalEvictions);
+    }
+    public long getGlobalCacheInvalidations() {
+        return (this.globalInvalidations);
+    }
+    public int getGlobalCacheSize() {
+        return (this.globalCache.size());
+    }
+    public long getGlobalCacheBytes() {
+        return (this.globalBytes);
+    }
+    
+    // ----------------------------------------------------------------------------
+    // TRANSACTION CACHE API
+    // ----------------------------------------------------------------------------
+    
     /**
      * Store a new cache entry for a query that is specific to a transaction
      * This cached result is not be available to other transactions
@@ -263,7 +472,11 @@ public class QueryCache {
         
         // Global Cache
         m[idx] = new LinkedHashMap<String, Object>();
-        m[idx].put("Global Cache", null);
+        m[idx].put(String.format("Global Cache[%d]", this.globalCache.size()), this.globalBytes + " bytes");
+        m[idx].put("Hits", this.globalHits);
+        m[idx].put("Misses", this.globalMisses);
+        m[idx].put("Evictions", this.globalEvictions);
+        m[idx].put("Invalidations", this.globalInvalidations);
         
         // TxnCache
         m[++idx] = new LinkedHashMap<String, Object>();
@@ -3,6 +3,7 @@ package edu.brown.hstore.util;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
@@ -23,14 +24,40 @@ public class ThrottlingQueue<E> extends EventObserver<AbstractTransaction> imple
     
     private final Queue<E> queue;
     
-    private boolean throttled;
-    private int queue_max;
-    private int queue_release;
+    // These can be read by multiple producer threads without holding a lock
+    private volatile boolean throttled;
+    private volatile int queue_max;
+    private volatile int queue_release;
     private double queue_release_factor;
     private final int queue_increase;
     private final int queue_increase_max;
     private final ProfileMeasurement throttle_time;
     private boolean allow_increase;
+    
+    // ----------------------------------------------------------------------------
+    // ADAPTIVE THROTTLING
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * How much weight a new service time measurement gets in the moving average
+     */
+    private static final double SERVICE_TIME_WEIGHT = 0.05;
+    
+    /**
+     * How much we shrink the queue limit by when the queue has been congested
+     * for an entire interval 
+     */
+    private static final double ADAPTIVE_DECREASE = 0.75;
+    
+    private boolean adaptive = false;
+    private long adaptive_target;
+    private long adaptive_interval;
+    private int adaptive_min;
+    private volatile double avg_service_time = -1;
+    private long interval_start;
+    private long interval_min_delay = Long.MAX_VALUE;
+    private int adaptive_increases = 0;
+    private int adaptive_decreases = 0;
          
 //    public static class ThrottleException extends RuntimeException {
 //        private static final long serialVersionUID = 1L;
@@ -60,6 +87,113 @@ public class ThrottlingQueue<E> extends EventObserver<AbstractTransaction> imple
 //        }
     }
 
+    /**
+     * Enable the adaptive throttling controller for this queue.
+     * The consumer of the queue must call {@link #recordServiceTime(long)} for
+     * each element that it processes. Every interval, we estimate how long an
+     * element will wait in the queue from its current size and the average
+     * service time (i.e., Little's Law). If the estimate never went below the target
+     * for the entire interval, then the queue is congested and we will cut the
+     * queue limit. Otherwise we will slowly increase the limit until it reaches
+     * the number of elements that can be processed within the target latency. 
+     * This replaces the increase-when-empty policy.
+     * @param target_latency The target queueing delay (ms)
+     * @param interval How often to recalculate the queue limit (ms)
+     */
+    public void enableAdaptiveThrottling(int target_latency, int interval) {
+        this.adaptive = true;
+        this.adaptive_target = TimeUnit.MILLISECONDS.toNanos(Math.max(1, target_latency));
+        this.adaptive_interval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, interval));
+        this.adaptive_min = Math.max(1, this.queue_increase);
+        this.interval_start = System.nanoTime();
+    }
+    
+    /**
+     * Record how long it took to process one element from this queue.
+     * This should only be called by the queue's consumer thread.
+     * @param nanoseconds
+     */
+    public void recordServiceTime(long nanoseconds) {
+        if (this.adaptive == false) return;
+        this.recordServiceTime(nanoseconds, System.nanoTime());
+    }
+    
+    /**
+     * Record how long it took to process one element at the given time (from
+     * System.nanoTime()). This lets the test cases control when an interval ends.
+     * @param nanoseconds
+     * @param now
+     */
+    void recordServiceTime(long nanoseconds, long now) {
+        if (this.adaptive == false) return;
+        
+        if (this.avg_service_time < 0) {
+            this.avg_service_time = nanoseconds;
+        } else {
+            this.avg_service_time += SERVICE_TIME_WEIGHT * (nanoseconds - this.avg_service_time);
+        }
+        long delay = (long)(this.queue.size() * this.avg_service_time);
+        if (delay < this.interval_min_delay) this.interval_min_delay = delay;
+        
+        if (now - this.interval_start >= this.adaptive_interval) {
+            this.adjustQueueMax();
+            this.interval_start = now;
+            this.interval_min_delay = Long.MAX_VALUE;
+        }
+    }
+    
+    private void adjustQueueMax() {
+        int ideal = this.queue_increase_max;
+        if (this.avg_service_time > 0) {
+            ideal = (int)Math.min(this.queue_increase_max, this.adaptive_target / this.avg_service_time);
+        }
+        ideal = Math.max(this.adaptive_min, ideal);
+        
+        int new_max = this.queue_max;
+        // CONGESTED: Multiplicative Decrease
+        if (this.interval_min_delay > this.adaptive_target) {
+            new_max = Math.max(this.adaptive_min, Math.min(ideal, (int)(this.queue_max * ADAPTIVE_DECREASE)));
+            if (new_max < this.queue_max) this.adaptive_decreases++;
+        }
+        // OK: Additive Increase
+        else if (this.queue_max < ideal) {
+            new_max = Math.min(ideal, this.queue_max + this.adaptive_min);
+            this.adaptive_increases++;
+        }
+        if (new_max != this.queue_max) {
+            if (debug.get()) LOG.debug(String.format("Adjusting queue limit from %d to %d [avgServiceTime=%.3fms, minDelay=%.3fms]",
+                                                     this.queue_max, new_max,
+                                                     this.avg_service_time / 1000000d,
+                                                     this.interval_min_delay / 1000000d));
+            this.queue_max = new_max;
+            this.queue_release = Math.max((int)(this.queue_max * this.queue_release_factor), 1);
+        }
+    }
+    
+    public boolean isAdaptive() {
+        return (this.adaptive);
+    }
+    /**
+     * Returns the average time (ms) that it takes for the consumer to process an
+     * element from this queue. Only available when adaptive throttling is enabled.
+     */
+    public double getAverageServiceTime() {
+        return (this.avg_service_time < 0 ? 0d : this.avg_service_time / 1000000d);
+    }
+    /**
+     * Returns the expected amount of time (ms) that a new element will wait in this queue.
+     * Only available when adaptive throttling is enabled.
+     */
+    public double getEstimatedQueueDelay() {
+        return (this.size() * this.getAverageServiceTime());
+    }
+    public int getAdaptiveIncreases() {
+        return (this.adaptive_increases);
+    }
+    public int getAdaptiveDecreases() {
+        return (this.adaptive_decreases);
+    }
+
     public ProfileMeasurement getThrottleTime() {
         return (this.throttle_time);
     }
@@ -91,7 +225,7 @@ public class ThrottlingQueue<E> extends EventObserver<AbstractTransaction> imple
         int size = this.queue.size();
         if (this.throttled == false) {
             if (size > this.queue_max) this.throttled = true;
-            else if (increase && size == 0) {
+            else if (increase && size == 0 && this.adaptive == false) {
                 this.queue_max = Math.min(this.queue_increase_max, (this.queue_max + this.queue_increase));
                 this.queue_release = Math.max((int)(this.queue_max * this.queue_release_factor), 1);
             }
@@ -207,6 +341,12 @@ public class ThrottlingQueue<E> extends EventObserver<AbstractTransaction> imple
 
     @Override
     public String toString() {
+        if (this.adaptive) {
+            return String.format("%s [max=%d / release=%d / serviceTime=%.3fms / target=%dms]",
+                                 this.queue.toString(),
+                                 this.queue_max, this.queue_release, this.getAverageServiceTime(),
+                                 TimeUnit.NANOSECONDS.toMillis(this.adaptive_target));
+        }
         return String.format("%s [max=%d / release=%d / increase=%d]",
                              this.queue.toString(),
                              this.queue_max, this.queue_release, this.queue_increase);
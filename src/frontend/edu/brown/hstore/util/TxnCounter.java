@@ -9,6 +9,7 @@ import java.util.TreeSet;
 import org.voltdb.catalog.Procedure;
 
 import edu.brown.statistics.Histogram;
+import edu.brown.statistics.StripedHistogram;
 import edu.brown.utils.StringUtil;
 
 public enum TxnCounter {
@@ -46,7 +47,8 @@ public enum TxnCounter {
     BLOCKED_REMOTE,
     ;
     
-    private final Histogram<String> h = new Histogram<String>();
+    /** Each thread that updates this counter gets its own stripe */
+    private final StripedHistogram<String> h = new StripedHistogram<String>();
     private final String name;
     private TxnCounter() {
         this.name = StringUtil.title(this.name().replace("_", "-"));
@@ -55,28 +57,31 @@ public enum TxnCounter {
     public String toString() {
         return (this.name);
     }
+    /**
+     * Returns a snapshot of the counts for each procedure
+     */
     public Histogram<String> getHistogram() {
-        return (this.h);
+        return (this.h.getHistogram());
     }
     public int get() {
         return ((int)this.h.getSampleCount());
     }
-    public int inc(String procName) {
+    public Long get(String procName) {
+        return (this.h.get(procName));
+    }
+    public void inc(String procName) {
         this.h.put(procName);
-        return (this.get());
     }
-    public int inc(Procedure catalog_proc) {
+    public void inc(Procedure catalog_proc) {
         this.h.put(catalog_proc.getName());
-        return (this.get());
     }
-    public int dec(Procedure catalog_proc) {
+    public void dec(Procedure catalog_proc) {
         this.h.remove(catalog_proc.getName());
-        return (this.get());
     }
     public static Set<String> getAllProcedures() {
         Set<String> ret = new TreeSet<String>();
         for (TxnCounter tc : TxnCounter.values()) {
-            ret.addAll(tc.h.values());
+            ret.addAll(tc.h.getHistogram().values());
         }
         return (ret);
     }
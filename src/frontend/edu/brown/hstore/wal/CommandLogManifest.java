@@ -0,0 +1,296 @@
+/***************************************************************************
+ *   Copyright (C) 2011 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.hstore.wal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Command Log Manifest
+ * Keeps track of the segment files that make up a command log and the range of
+ * transaction ids that were written into each of them. The segments for a log
+ * with the base path <I>X</I> are stored in <I>X.000000</I>, <I>X.000001</I>, etc.
+ * and the manifest itself is stored in <I>X.manifest</I>.
+ * @author pavlo
+ */
+public class CommandLogManifest implements Iterable<CommandLogManifest.Segment> {
+    private static final Logger LOG = Logger.getLogger(CommandLogManifest.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+    
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    
+    /**
+     * The txn id that we use for a segment that we don't know the range for yet
+     */
+    public static final long NULL_TXN_ID = -1;
+    
+    /**
+     * A single segment file of the command log
+     */
+    public class Segment {
+        private final int id;
+        private long firstTxnId = NULL_TXN_ID;
+        private long lastTxnId = NULL_TXN_ID;
+        private boolean closed = false;
+        
+        private Segment(int id) {
+            this.id = id;
+        }
+        public int getId() {
+            return (this.id);
+        }
+        public File getFile() {
+            return (getSegmentFile(basePath, this.id));
+        }
+        /**
+         * The smallest txn id written to this segment
+         */
+        public long getFirstTxnId() {
+            return (this.firstTxnId);
+        }
+        /**
+         * The largest txn id written to this segment
+         */
+        public long getLastTxnId() {
+            return (this.lastTxnId);
+        }
+        /**
+         * Returns true if the writer has moved on from this segment
+         * and nothing else will be added to it.
+         */
+        public boolean isClosed() {
+            return (this.closed);
+        }
+        protected void update(long minTxnId, long maxTxnId) {
+            if (this.firstTxnId == NULL_TXN_ID || minTxnId < this.firstTxnId) this.firstTxnId = minTxnId;
+            if (this.lastTxnId == NULL_TXN_ID || maxTxnId > this.lastTxnId) this.lastTxnId = maxTxnId;
+        }
+        @Override
+        public String toString() {
+            return String.format("Segment[%06d, txns=%d-%d, closed=%s]",
+                                 this.id, this.firstTxnId, this.lastTxnId, this.closed);
+        }
+    } // CLASS
+    
+    private final File basePath;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    
+    /**
+     * Constructor
+     * @param basePath The base path of the command log
+     */
+    public CommandLogManifest(File basePath) {
+        this.basePath = basePath;
+    }
+    
+    // ----------------------------------------------------------------------------
+    // STATIC HELPERS
+    // ----------------------------------------------------------------------------
+    
+    public static File getManifestFile(File basePath) {
+        return new File(basePath.getAbsolutePath() + MANIFEST_SUFFIX);
+    }
+    
+    public static File getSegmentFile(File basePath, int id) {
+        return new File(String.format("%s.%06d", basePath.getAbsolutePath(), id));
+    }
+    
+    /**
+     * Returns true if there is a segmented command log at the given base path
+     * @param basePath
+     * @return
+     */
+    public static boolean exists(File basePath) {
+        return (getManifestFile(basePath).exists());
+    }
+    
+    /**
+     * Load the manifest for the command log with the given base path
+     * @param basePath
+     * @return
+     */
+    public static CommandLogManifest load(File basePath) {
+        CommandLogManifest manifest = new CommandLogManifest(basePath);
+        File f = getManifestFile(basePath);
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(f));
+            try {
+                String line = null;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+                    String fields[] = line.split("\t");
+                    Segment s = manifest.new Segment(Integer.parseInt(fields[0]));
+                    s.firstTxnId = Long.parseLong(fields[1]);
+                    s.lastTxnId = Long.parseLong(fields[2]);
+                    s.closed = Boolean.parseBoolean(fields[3]);
+                    manifest.segments.add(s);
+                } // WHILE
+            } finally {
+                in.close();
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to load command log manifest " + f, ex);
+        }
+        if (debug.get()) LOG.debug(String.format("Loaded %d segments from %s", manifest.segments.size(), f));
+        return (manifest);
+    }
+    
+    /**
+     * Move all of the files for the command log at the given base path
+     * so that they are under the new base path instead.
+     * @param basePath
+     * @param newBasePath
+     * @return
+     */
+    public static boolean rename(File basePath, File newBasePath) {
+        CommandLogManifest manifest = load(basePath);
+        for (Segment s : manifest.segments) {
+            File f = s.getFile();
+            if (f.exists() && f.renameTo(getSegmentFile(newBasePath, s.getId())) == false) {
+                return (false);
+            }
+        } // FOR
+        return (getManifestFile(basePath).renameTo(getManifestFile(newBasePath)));
+    }
+    
+    // ----------------------------------------------------------------------------
+    // SEGMENTS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Add a new segment to the end of the log
+     */
+    public Segment addSegment() {
+        int id = (this.segments.isEmpty() ? 0 : this.getLastSegment().getId() + 1);
+        Segment s = new Segment(id);
+        this.segments.add(s);
+        return (s);
+    }
+    
+    public Segment getLastSegment() {
+        return (this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1));
+    }
+    
+    public List<Segment> getSegments() {
+        return (this.segments);
+    }
+    
+    @Override
+    public Iterator<Segment> iterator() {
+        return (this.segments.iterator());
+    }
+    
+    /**
+     * Mark the given segment as closed
+     * @param s
+     */
+    public void closeSegment(Segment s) {
+        s.closed = true;
+    }
+    
+    /**
+     * Remove all of the closed segments whose transactions all came before
+     * the given txn id and delete their files. 
+     * @param txnId
+     * @return The number of segments that were removed
+     */
+    public int truncate(long txnId) {
+        int ctr = 0;
+        Iterator<Segment> it = this.segments.iterator();
+        while (it.hasNext()) {
+            Segment s = it.next();
+            if (s.closed == false || s.lastTxnId >= txnId) continue;
+            if (debug.get()) LOG.debug(String.format("Deleting %s [truncateTxnId=%d]", s, txnId));
+            File f = s.getFile();
+            if (f.exists() && f.delete() == false) {
+                LOG.warn("Failed to delete command log segment " + f);
+                continue;
+            }
+            it.remove();
+            ctr++;
+        } // WHILE
+        return (ctr);
+    }
+    
+    /**
+     * Delete all of the segments and the manifest
+     */
+    public void deleteAll() {
+        for (Segment s : this.segments) {
+            s.getFile().delete();
+        } // FOR
+        this.segments.clear();
+        getManifestFile(this.basePath).delete();
+    }
+    
+    /**
+     * Write the manifest out to disk. We first write it to a temporary
+     * file and then move it into place so that we never see a partial manifest. 
+     */
+    public void save() {
+        File f = getManifestFile(this.basePath);
+        File temp = new File(f.getAbsolutePath() + ".tmp");
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : this.segments) {
+            sb.append(s.id).append("\t")
+              .append(s.firstTxnId).append("\t")
+              .append(s.lastTxnId).append("\t")
+              .append(s.closed).append("\n");
+        } // FOR
+        try {
+            FileOutputStream out = new FileOutputStream(temp, false);
+            try {
+                out.write(sb.toString().getBytes());
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to write command log manifest " + f, ex);
+        }
+        if (temp.renameTo(f) == false) {
+            throw new RuntimeException("Failed to move command log manifest into place " + f);
+        }
+        if (trace.get()) LOG.trace("Wrote command log manifest " + f + "\n" + sb);
+    }
+    
+}
@@ -6,38 +6,88 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.NotImplementedException;
 
 public class CommandLogReader implements Iterable<LogEntry> {
-    
-    final FastDeserializer fd;
+
+    /**
+     * The files that we will read entries from (in order)
+     */
+    final List<File> files = new ArrayList<File>();
     final Map<Integer, String> procedures;
-    
+
+    /**
+     * Read the command log stored at the given path. If there is a manifest
+     * for a segmented log at this path, then we will read all of its segments.
+     * @param path
+     */
     public CommandLogReader(String path) {
+        this(path, CommandLogManifest.NULL_TXN_ID);
+    }
+
+    /**
+     * Read the command log stored at the given path, but skip any of its
+     * segments that only contain transactions before the given txn id
+     * @param path
+     * @param minTxnId
+     */
+    public CommandLogReader(String path, long minTxnId) {
+        File base = new File(path);
+        if (CommandLogManifest.exists(base)) {
+            for (CommandLogManifest.Segment s : CommandLogManifest.load(base)) {
+                if (s.isClosed() && s.getLastTxnId() != CommandLogManifest.NULL_TXN_ID && s.getLastTxnId() < minTxnId) {
+                    continue;
+                }
+                this.files.add(s.getFile());
+            } // FOR
+        } else {
+            this.files.add(base);
+        }
+
+        Map<Integer, String> procedures = null;
+        if (this.files.isEmpty() == false) {
+            procedures = this.readHeader(this.open(this.files.get(0)));
+        }
+        this.procedures = (procedures != null ? procedures : new HashMap<Integer, String>());
+    }
+
+    private FastDeserializer open(File f) {
         FileChannel roChannel = null;
         ByteBuffer readonlybuffer = null;
-        File f = new File(path);
         try {
             roChannel = new RandomAccessFile(f, "r").getChannel();
             readonlybuffer = roChannel.map(FileChannel.MapMode.READ_ONLY, 0, (int)roChannel.size());
+            roChannel.close();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
         assert(readonlybuffer != null);
-        this.fd = new FastDeserializer(readonlybuffer);
-        
-        this.procedures = this.readHeader();
+        return (new FastDeserializer(readonlybuffer));
     }
-    
+
     @Override
     public Iterator<LogEntry> iterator() {
         Iterator<LogEntry> it = new Iterator<LogEntry>() {
+            private final Iterator<File> file_it = files.iterator();
+            private FastDeserializer fd;
+            private boolean compact;
             private LogEntry _next;
+            
+            /**
+             * The current block that we are reading entries from
+             * (only for the compact format)
+             */
+            private FastDeserializer block;
+            private long blockRemaining;
+            private long blockTimestamp;
+            private long prevTxnId;
             {
                 this.next();
             }
@@ -51,14 +101,62 @@ public class CommandLogReader implements Iterable<LogEntry> {
             public LogEntry next() {
                 LogEntry ret = _next;
                 _next = null;
+                while (_next == null) {
+                    if (fd == null) {
+                        if (file_it.hasNext() == false) break;
+                        fd = open(file_it.next());
+                        compact = isCompact(fd);
+                        readHeader(fd);
+                        block = null;
+                        blockRemaining = 0;
+                    }
+                    _next = (compact ? this.readCompactEntry() : this.readEntry());
+                    if (_next == null) fd = null;
+                } // WHILE
+                return (ret);
+            }
+
+            /**
+             * Read the next entry from the current file. Segments are pre-allocated
+             * and filled with zeroes, so once we hit an empty txn id we know that
+             * there is nothing left in this file.
+             */
+            private LogEntry readEntry() {
+                ByteBuffer buffer = fd.buffer();
+                if (buffer.remaining() < 8 || buffer.getLong(buffer.position()) == 0) {
+                    return (null);
+                }
                 try {
-                    _next = fd.readObject(LogEntry.class);
+                    return fd.readObject(LogEntry.class);
                 } catch (IOException ex) {
                     throw new RuntimeException("Failed to deserialize LogEntry!", ex);
                 } catch (BufferUnderflowException ex) {
-                    _next = null;
+                    return (null);
+                }
+            }
+
+            /**
+             * Read the next entry from the current block in the file. If we have
+             * read all of the entries in the block, then we will move on to the next one.
+             * A block that is incomplete or fails its checksum was only partially
+             * written out before we crashed, so we treat it as the end of the log.
+             */
+            private LogEntry readCompactEntry() {
+                try {
+                    while (blockRemaining == 0) {
+                        block = CommandLogUtil.readBlock(fd.buffer());
+                        if (block == null) return (null);
+                        blockRemaining = CommandLogUtil.readVarLong(block);
+                        blockTimestamp = block.readLong();
+                        prevTxnId = 0;
+                    } // WHILE
+                    LogEntry entry = new LogEntry().readCompact(block, prevTxnId, blockTimestamp);
+                    prevTxnId = entry.getTransactionId().longValue();
+                    blockRemaining--;
+                    return (entry);
+                } catch (IOException ex) {
+                    throw new RuntimeException("Failed to deserialize LogEntry!", ex);
                 }
-                return (ret);
             }
 
             @Override
@@ -67,32 +165,51 @@ public class CommandLogReader implements Iterable<LogEntry> {
             }
         };
         return (it);
-        
-        // TODO: We need to figure out how we want to read these entries
-        // back in. I suppose we could just make a new LocalTransaction
-        // entry each time. What we really should do is recreate
-        // the StoredProcedureInvocation and then pass that into
-        // the HStoreSite so that we can replay the transaction
-        // 
-        // So maybe we want to make this a StoredProcedure Invocation iterator?
     }
-    
+
+    /**
+     * Return the name of the Procedure for the given procedure id that was
+     * stored in this log's header
+     * @param procId
+     * @return
+     */
+    public String getProcedureName(int procId) {
+        return (this.procedures.get(procId));
+    }
+
+    /**
+     * Returns true if the log file was written using the compact
+     * block format (see CommandLogUtil)
+     */
+    protected boolean isCompact(FastDeserializer fd) {
+        ByteBuffer buffer = fd.buffer();
+        return (buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == CommandLogUtil.MAGIC);
+    }
+
     /**
-     * 
+     * Read the procedure id to name mapping from the header of the log file
      * @return
      */
-    protected Map<Integer, String> readHeader() {
+    protected Map<Integer, String> readHeader(FastDeserializer fd) {
         Map<Integer, String> procedures = new HashMap<Integer, String>();
-        
+
         try {
+            if (this.isCompact(fd)) {
+                fd.readInt(); // MAGIC
+                byte version = fd.readByte();
+                if (version != CommandLogUtil.VERSION) {
+                    throw new IOException("Unsupported WAL log version " + version);
+                }
+                fd.readByte(); // FLAGS
+            }
             int num_procs = fd.readInt();
-            
+
             for (int i = 0; i < num_procs; i++)
                 procedures.put(new Integer(fd.readInt()), fd.readString());
         } catch (IOException ex) {
             throw new RuntimeException("Failed to read WAL log header!", ex);
         }
-        
+
         return (procedures);
     }
 }
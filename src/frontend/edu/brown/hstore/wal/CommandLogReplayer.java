@@ -0,0 +1,504 @@
+/***************************************************************************
+ *   Copyright (C) 2011 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.hstore.wal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Site;
+import org.voltdb.exceptions.ServerFaultException;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.utils.Pair;
+
+import com.google.protobuf.RpcCallback;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.hstore.HStoreCoordinator;
+import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.Hstoreservice.Status;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Command Log Replayer
+ * Restores the database from the latest snapshot and then re-executes all of
+ * the transactions from the previous command logs that came after it.
+ * Everything is done by the site with the lowest site id (the "restore site"), since
+ * @SnapshotRestore already loads the data for the entire cluster and each txn is only
+ * logged by the site that it was committed at. The restore site merges the previous
+ * command logs of all of the sites by txn id and submits the entries through the regular
+ * HStoreSite.procedureInvocation() path so that they are routed to their base partitions.
+ * <B>Ordering:</B> Each log is in the order that its txns committed at that site, and the
+ * merge always takes the entry with the lowest txn id from the front of the logs. Thus
+ * every site sees the multi-partition txns in the same order. Single-partition transactions
+ * are allowed to run in parallel (up to ${site.exec_command_logging_recovery_window}
+ * at a time), while multi-partition transactions act as a barrier: we wait for everything
+ * before them to finish, execute them by themselves, and then continue.
+ * The other sites just wait until the restore site tells them that it is done.
+ * <B>NOTE:</B> The restore site must be able to read every site's command log, so
+ * ${site.exec_command_logging_directory} has to be shared by all of the sites.
+ * @author pavlo
+ */
+public class CommandLogReplayer {
+    private static final Logger LOG = Logger.getLogger(CommandLogReplayer.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+    
+    /**
+     * The suffix that is added to an existing command log file when
+     * the HStoreSite starts up so that we can replay it later on
+     */
+    public static final String REPLAY_SUFFIX = ".replay";
+    
+    private final HStoreSite hstore_site;
+    private final HStoreConf hstore_conf;
+    private final File logFile;
+    private final int window;
+    
+    /**
+     * Permits for the number of replayed txns that are allowed to be outstanding
+     */
+    private final Semaphore outstanding;
+    
+    private final AtomicInteger failed = new AtomicInteger(0);
+    private long nextClientHandle = 0;
+    
+    /**
+     * The next entry to replay from one of the command logs
+     */
+    private static class LogCursor implements Comparable<LogCursor> {
+        private final File file;
+        private final CommandLogReader reader;
+        private final Iterator<LogEntry> it;
+        private LogEntry entry;
+        
+        public LogCursor(File file, CommandLogReader reader) {
+            this.file = file;
+            this.reader = reader;
+            this.it = reader.iterator();
+        }
+        public boolean advance() {
+            this.entry = (this.it.hasNext() ? this.it.next() : null);
+            return (this.entry != null);
+        }
+        @Override
+        public int compareTo(LogCursor other) {
+            return (this.entry.getTransactionId().compareTo(other.entry.getTransactionId()));
+        }
+    }
+    
+    /**
+     * Callback for each replayed txn. This releases the permit that
+     * the txn acquired when it was submitted.
+     */
+    private class ReplayCallback implements RpcCallback<byte[]> {
+        private final String procName;
+        private final int permits;
+        
+        public ReplayCallback(String procName, int permits) {
+            this.procName = procName;
+            this.permits = permits;
+        }
+        @Override
+        public void run(byte[] parameter) {
+            try {
+                FastDeserializer fds = new FastDeserializer(parameter);
+                ClientResponseImpl cresponse = fds.readObject(ClientResponseImpl.class);
+                if (cresponse.getStatus() != Status.OK) {
+                    LOG.warn(String.format("Replayed %s transaction did not commit [status=%s]\n%s",
+                                           this.procName, cresponse.getStatus(), cresponse.getStatusString()));
+                    failed.incrementAndGet();
+                }
+            } catch (IOException ex) {
+                LOG.error("Failed to deserialize ClientResponse for replayed " + this.procName + " transaction", ex);
+                failed.incrementAndGet();
+            } finally {
+                outstanding.release(this.permits);
+            }
+        }
+    }
+    
+    /**
+     * Constructor
+     * @param hstore_site
+     * @param logFile The previous command log file to replay
+     */
+    public CommandLogReplayer(HStoreSite hstore_site, File logFile) {
+        this.hstore_site = hstore_site;
+        this.hstore_conf = hstore_site.getHStoreConf();
+        this.logFile = logFile;
+        this.window = Math.max(1, hstore_conf.site.exec_command_logging_recovery_window);
+        this.outstanding = new Semaphore(this.window);
+    }
+    
+    /**
+     * Returns the file that the given command log is moved to until it is replayed
+     * @param logFile
+     * @return
+     */
+    public static File getReplayFile(File logFile) {
+        return new File(logFile.getAbsolutePath() + REPLAY_SUFFIX);
+    }
+    
+    /**
+     * Returns true if there is a command log at the given path 
+     * @param logFile
+     * @return
+     */
+    private static boolean exists(File logFile) {
+        return (logFile.exists() || CommandLogManifest.exists(logFile));
+    }
+    
+    /**
+     * Returns true if the command log at the given path has at least one entry in it.
+     * A log that we can't read is assumed to have entries so that we never throw it away. 
+     * @param logFile
+     * @return
+     */
+    private static boolean hasEntries(File logFile) {
+        if (CommandLogManifest.exists(logFile) == false) {
+            if (logFile.exists() == false || logFile.length() == 0) return (false);
+        }
+        try {
+            return (new CommandLogReader(logFile.getAbsolutePath()).iterator().hasNext());
+        } catch (RuntimeException ex) {
+            LOG.warn("Failed to read command log " + logFile, ex);
+            return (true);
+        }
+    }
+    
+    /**
+     * Move the command log that was left by the previous invocation of the HStoreSite out
+     * of the way so that the new CommandLogWriter does not overwrite it.
+     * Returns the file that should be replayed, or null if there is nothing to replay.
+     * If we crashed before the last replay finished, then the old replay file is still there.
+     * The current log can't be replayed after it because it already has some of the
+     * replayed txns in it, so we refuse to start unless it is empty.
+     * @param logFile
+     * @return
+     */
+    public static File prepareReplayFile(File logFile) {
+        File replayFile = getReplayFile(logFile);
+        if (exists(replayFile)) {
+            if (hasEntries(logFile)) {
+                String message = String.format("Found unfinished command log replay file %s but %s also " +
+                                               "has transactions in it. Refusing to start so that neither " +
+                                               "one is overwritten", replayFile, logFile);
+                throw new RuntimeException(message);
+            }
+            LOG.warn(String.format("Found unfinished command log replay file %s. Replaying it again", replayFile));
+            return (replayFile);
+        }
+        if (CommandLogManifest.exists(logFile)) {
+            if (CommandLogManifest.rename(logFile, replayFile) == false) {
+                String message = String.format("Failed to move command log segments %s to %s", logFile, replayFile);
+                throw new RuntimeException(message);
+            }
+            return (replayFile);
+        }
+        if (logFile.exists() == false) {
+            return (null);
+        }
+        if (logFile.renameTo(replayFile) == false) {
+            String message = String.format("Failed to move command log %s to %s", logFile, replayFile);
+            throw new RuntimeException(message);
+        }
+        return (replayFile);
+    }
+    
+    /**
+     * Execute the full recovery process. This is a blocking call.
+     * The HStoreSite responsible for restoring the snapshot replays all of the
+     * command logs once @SnapshotRestore is finished, and then tells all of the
+     * other sites whether it was successful. If it failed, or if a site's own
+     * command log was not replayed, then that site throws a ServerFaultException
+     * instead of accepting new requests.
+     * @return The number of transactions that were replayed
+     */
+    public int recover() {
+        long snapshotTxnId = CommandLogManifest.NULL_TXN_ID;
+        Pair<Long, String> snapshot = null;
+        String snapshotDir = hstore_conf.site.exec_command_logging_recovery_snapshot_dir;
+        if (snapshotDir != null && snapshotDir.isEmpty() == false) {
+            snapshot = findLatestSnapshot(new File(snapshotDir));
+            if (snapshot == null) {
+                LOG.warn("Unable to find a valid snapshot in " + snapshotDir);
+            } else {
+                snapshotTxnId = snapshot.getFirst();
+            }
+        }
+        
+        HStoreCoordinator hstore_coordinator = hstore_site.getHStoreCoordinator();
+        Status status = Status.OK;
+        int ctr = 0;
+        if (this.isRestoreSite()) {
+            if (snapshot != null) status = this.restoreSnapshot(snapshotDir, snapshot.getSecond());
+            if (status == Status.OK) {
+                List<File> replayFiles = this.getReplayFiles();
+                try {
+                    ctr = this.replay(replayFiles, snapshotTxnId);
+                } catch (RuntimeException ex) {
+                    hstore_coordinator.sendRecoveryStatus(Status.ABORT_UNEXPECTED);
+                    throw ex;
+                }
+                // Keep the logs around if any of the txns did not commit so that
+                // we can figure out what went wrong before trying again
+                if (this.failed.get() > 0) {
+                    status = Status.ABORT_UNEXPECTED;
+                } else {
+                    for (File f : replayFiles) {
+                        if (CommandLogManifest.exists(f)) CommandLogManifest.load(f).deleteAll();
+                        else f.delete();
+                    } // FOR
+                }
+            }
+            hstore_coordinator.sendRecoveryStatus(status);
+        } else {
+            if (debug.get()) LOG.debug("Waiting for the restore site to finish recovering the database");
+            status = hstore_coordinator.waitForRecoveryStatus();
+        }
+        if (status != Status.OK) {
+            String message = String.format("Unable to recover %s because the restore site failed [status=%s]",
+                                           hstore_site.getSiteName(), status);
+            throw new ServerFaultException(message, (Throwable)null);
+        }
+        // The restore site only replays the logs that it can see, so if ours is
+        // still here then the database is missing all of our committed txns
+        if (this.isRestoreSite() == false && this.logFile != null && exists(this.logFile)) {
+            String message = String.format("Unable to recover %s because the restore site did not replay " +
+                                           "the command log %s. Make sure that it can read the command logs " +
+                                           "of every site", hstore_site.getSiteName(), this.logFile);
+            throw new ServerFaultException(message, (Throwable)null);
+        }
+        return (ctr);
+    }
+    
+    /**
+     * Returns the previous command logs of all of the sites in the cluster that need
+     * to be replayed. These were moved out of the way by each site in prepareReplayFile()
+     * when it started up. 
+     */
+    private List<File> getReplayFiles() {
+        List<File> replayFiles = new ArrayList<File>();
+        for (Site catalog_site : CatalogUtil.getAllSites(hstore_site.getSite())) {
+            File replayFile = null;
+            if (catalog_site.getId() == hstore_site.getSiteId()) {
+                replayFile = this.logFile;
+            } else {
+                replayFile = getReplayFile(CommandLogWriter.getLogFile(hstore_conf, catalog_site.getId()));
+            }
+            if (replayFile != null && exists(replayFile)) replayFiles.add(replayFile);
+        } // FOR
+        return (replayFiles);
+    }
+    
+    /**
+     * Returns true if this HStoreSite is responsible for restoring the snapshot 
+     */
+    private boolean isRestoreSite() {
+        for (Site catalog_site : CatalogUtil.getAllSites(hstore_site.getSite())) {
+            if (catalog_site.getId() < hstore_site.getSiteId()) return (false);
+        } // FOR
+        return (true);
+    }
+    
+    /**
+     * Find the most recent complete snapshot in the given directory
+     * @param directory
+     * @return A pair of the id of the txn that created the snapshot and its nonce 
+     */
+    protected static Pair<Long, String> findLatestSnapshot(File directory) {
+        TreeMap<Long, SnapshotUtil.Snapshot> snapshots = new TreeMap<Long, SnapshotUtil.Snapshot>();
+        SnapshotUtil.retrieveSnapshotFiles(directory, snapshots, new SnapshotUtil.SnapshotFilter(), 0, false);
+        for (Map.Entry<Long, SnapshotUtil.Snapshot> e : snapshots.descendingMap().entrySet()) {
+            SnapshotUtil.Snapshot s = e.getValue();
+            if (s.m_digests.isEmpty()) continue;
+            if (SnapshotUtil.generateSnapshotReport(e.getKey(), s).getFirst() == false) {
+                if (debug.get()) LOG.debug("Skipping invalid snapshot " + s.m_digests.get(0));
+                continue;
+            }
+            File digest = s.m_digests.get(0);
+            Long txnId = null;
+            try {
+                txnId = SnapshotUtil.retrieveSnapshotTxnId(digest);
+            } catch (Exception ex) {
+                LOG.warn("Failed to read snapshot digest " + digest, ex);
+            }
+            // We can't tell which logged txns are already in the snapshot without its txn id 
+            if (txnId == null) {
+                LOG.warn("Skipping snapshot " + digest + " because its digest does not have the snapshot's txn id");
+                continue;
+            }
+            String name = digest.getName();
+            return Pair.of(txnId, name.substring(0, name.length() - ".digest".length()));
+        } // FOR
+        return (null);
+    }
+    
+    /**
+     * Invoke @SnapshotRestore and block until it finishes. The restore is only
+     * considered successful if the txn committed and none of the tables
+     * reported a FAILURE in their results.
+     * @param path
+     * @param nonce
+     * @return The status of the restore
+     */
+    protected Status restoreSnapshot(String path, String nonce) {
+        LOG.info(String.format("Restoring snapshot '%s' from %s", nonce, path));
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<ClientResponseImpl> result = new AtomicReference<ClientResponseImpl>();
+        this.invoke("@SnapshotRestore", new Object[]{ path, nonce, 0l }, new RpcCallback<byte[]>() {
+            @Override
+            public void run(byte[] parameter) {
+                try {
+                    FastDeserializer fds = new FastDeserializer(parameter);
+                    result.set(fds.readObject(ClientResponseImpl.class));
+                } catch (IOException ex) {
+                    LOG.error("Failed to deserialize ClientResponse for @SnapshotRestore", ex);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new ServerFaultException("Interrupted while waiting for snapshot restore", ex);
+        }
+        
+        ClientResponseImpl cresponse = result.get();
+        if (cresponse == null) {
+            return (Status.ABORT_UNEXPECTED);
+        }
+        else if (cresponse.getStatus() != Status.OK) {
+            LOG.error(String.format("Failed to restore snapshot '%s' [status=%s]\n%s",
+                                    nonce, cresponse.getStatus(), cresponse.getStatusString()));
+            return (cresponse.getStatus());
+        }
+        for (VoltTable vt : cresponse.getResults()) {
+            if (vt.hasColumn("RESULT") == false) continue;
+            vt.resetRowPosition();
+            while (vt.advanceRow()) {
+                if (vt.getString("RESULT").equals("FAILURE")) {
+                    LOG.error(String.format("Failed to restore snapshot '%s'\n%s", nonce, vt));
+                    return (Status.ABORT_UNEXPECTED);
+                }
+            } // WHILE
+        } // FOR
+        return (Status.OK);
+    }
+    
+    /**
+     * Replay all of the entries in the given command logs that came after the given snapshot txn.
+     * The entries are streamed straight from the logs and merged by their txn ids, so the
+     * multi-partition txns are re-executed in the same order at every site.
+     * @param replayFiles
+     * @param snapshotTxnId The id of the txn that created the snapshot that was restored,
+     *                      or NULL_TXN_ID if there was no snapshot
+     * @return
+     */
+    protected int replay(List<File> replayFiles, long snapshotTxnId) {
+        // Skip any segments that came entirely before the snapshot. This is the
+        // same cutoff that CommandLogWriter.truncate() uses
+        PriorityQueue<LogCursor> cursors = new PriorityQueue<LogCursor>();
+        for (File f : replayFiles) {
+            LOG.info(String.format("Replaying transactions from %s", f));
+            LogCursor cursor = new LogCursor(f, new CommandLogReader(f.getAbsolutePath(), snapshotTxnId));
+            if (cursor.advance()) cursors.add(cursor);
+        } // FOR
+        
+        int ctr = 0;
+        while (cursors.isEmpty() == false) {
+            LogCursor cursor = cursors.poll();
+            LogEntry entry = cursor.entry;
+            String procName = cursor.reader.getProcedureName(entry.getProcedureId());
+            File file = cursor.file;
+            if (cursor.advance()) cursors.add(cursor);
+            
+            long txnId = entry.getTransactionId().longValue();
+            if (txnId <= snapshotTxnId) continue;
+            
+            Procedure catalog_proc = hstore_site.getDatabase().getProcedures().getIgnoreCase(procName);
+            if (catalog_proc == null) {
+                String message = "Unknown procedure '" + procName + "' in command log " + file;
+                throw new ServerFaultException(message, entry.getTransactionId());
+            }
+            
+            // Multi-partition txns have to wait for everything before them to
+            // finish and then nothing else can go until they're done
+            int permits = (catalog_proc.getSinglepartition() ? 1 : this.window);
+            this.outstanding.acquireUninterruptibly(permits);
+            if (trace.get()) LOG.trace(String.format("Replaying txn #%d %s [permits=%d]",
+                                                     entry.getTransactionId(), procName, permits));
+            this.invoke(catalog_proc.getName(), entry.getProcedureParams().toArray(),
+                        new ReplayCallback(procName, permits));
+            ctr++;
+        } // WHILE
+        
+        // Wait for all of the txns to finish
+        this.outstanding.acquireUninterruptibly(this.window);
+        this.outstanding.release(this.window);
+        
+        if (this.failed.get() > 0) {
+            LOG.warn(String.format("%d out of %d replayed transactions did not commit", this.failed.get(), ctr));
+        } else if (debug.get()) {
+            LOG.debug(String.format("Finished replaying %d transactions", ctr));
+        }
+        return (ctr);
+    }
+    
+    private void invoke(String procName, Object params[], RpcCallback<byte[]> callback) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation(this.nextClientHandle++, procName, params);
+        byte serialized[] = null;
+        try {
+            serialized = FastSerializer.serialize(invocation);
+        } catch (IOException ex) {
+            throw new ServerFaultException("Failed to serialize " + procName + " invocation for replay", ex);
+        }
+        hstore_site.procedureInvocation(serialized, callback);
+    }
+}
@@ -0,0 +1,286 @@
+/***************************************************************************
+ *   Copyright (C) 2011 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.hstore.wal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltType;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+import org.voltdb.utils.CompressionService;
+import org.voltdb.utils.DBBPool;
+
+/**
+ * Helper methods for the compact binary command log format.
+ * <B>Log Segment Layout:</B>
+ * <pre>
+ * [MAGIC:int][VERSION:byte][FLAGS:byte][NUM_PROCS:int]([PROC_ID:int][PROC_NAME:string])*
+ * ([LENGTH:int][CRC32:int][COMPRESSED:byte][PAYLOAD:byte*LENGTH])*
+ * </pre>
+ * The block payload (after decompression) is
+ * <pre>
+ * [NUM_ENTRIES:varint][TIMESTAMP:long]([TXN_ID_DELTA:zigzag][PROC_ID:varint][PARAMS])*
+ * </pre>
+ * A block with a length of zero marks the end of the data in a pre-allocated segment.
+ */
+public abstract class CommandLogUtil {
+
+    /**
+     * The first four bytes of every segment written in the compact format ("HLOG").
+     * Segments without this value were written using the original format where each
+     * entry is a serialized LogEntry.
+     */
+    public static final int MAGIC = 0x484C4F47;
+    public static final byte VERSION = 1;
+
+    public static final byte FLAG_COMPRESSION = 0x01;
+
+    /**
+     * [LENGTH:int][CRC32:int][COMPRESSED:byte]
+     */
+    public static final int BLOCK_HEADER_SIZE = 9;
+
+    /**
+     * Parameter tag for any value that we do not have a compact encoding for.
+     * It is followed by a single-element ParameterSet.
+     */
+    private static final byte ENCODED_PARAMETER = -100;
+
+    // ----------------------------------------------------------------------------
+    // VARINTS
+    // ----------------------------------------------------------------------------
+
+    public static void writeVarLong(FastSerializer out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        } // WHILE
+        out.writeByte((int)value);
+    }
+
+    public static long readVarLong(FastDeserializer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (value);
+        } // FOR
+        throw new IOException("Malformed varint in command log");
+    }
+
+    /**
+     * ZigZag encoding so that small negative numbers also take up few bytes
+     */
+    public static void writeSignedVarLong(FastSerializer out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(FastDeserializer in) throws IOException {
+        long value = readVarLong(in);
+        return ((value >>> 1) ^ -(value & 1));
+    }
+
+    // ----------------------------------------------------------------------------
+    // PARAMETERS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write out the given ParameterSet using variable-length integers and
+     * length-prefixed strings. Anything that is not a simple scalar is written
+     * using the regular ParameterSet serialization.
+     * @param out
+     * @param params
+     * @throws IOException
+     */
+    public static void writeParameters(FastSerializer out, ParameterSet params) throws IOException {
+        Object values[] = params.toArray();
+        writeVarLong(out, values.length);
+        for (Object obj : values) {
+            if (obj == null) {
+                out.writeByte(VoltType.NULL.getValue());
+            } else if (obj instanceof Long) {
+                out.writeByte(VoltType.BIGINT.getValue());
+                writeSignedVarLong(out, ((Long)obj).longValue());
+            } else if (obj instanceof Integer) {
+                out.writeByte(VoltType.INTEGER.getValue());
+                writeSignedVarLong(out, ((Integer)obj).intValue());
+            } else if (obj instanceof Short) {
+                out.writeByte(VoltType.SMALLINT.getValue());
+                writeSignedVarLong(out, ((Short)obj).shortValue());
+            } else if (obj instanceof Byte) {
+                out.writeByte(VoltType.TINYINT.getValue());
+                out.writeByte(((Byte)obj).byteValue());
+            } else if (obj instanceof Double) {
+                out.writeByte(VoltType.FLOAT.getValue());
+                out.writeDouble(((Double)obj).doubleValue());
+            } else if (obj instanceof String) {
+                byte bytes[] = ((String)obj).getBytes("UTF-8");
+                out.writeByte(VoltType.STRING.getValue());
+                writeVarLong(out, bytes.length);
+                out.write(bytes);
+            } else {
+                out.writeByte(ENCODED_PARAMETER);
+                out.writeObject(new ParameterSet().setParameters(new Object[]{ obj }));
+            }
+        } // FOR
+    }
+
+    public static ParameterSet readParameters(FastDeserializer in) throws IOException {
+        Object values[] = new Object[(int)readVarLong(in)];
+        for (int i = 0; i < values.length; i++) {
+            byte tag = in.readByte();
+            if (tag == ENCODED_PARAMETER) {
+                values[i] = in.readObject(ParameterSet.class).toArray()[0];
+                continue;
+            }
+            switch (VoltType.get(tag)) {
+                case NULL:
+                    values[i] = null;
+                    break;
+                case BIGINT:
+                    values[i] = Long.valueOf(readSignedVarLong(in));
+                    break;
+                case INTEGER:
+                    values[i] = Integer.valueOf((int)readSignedVarLong(in));
+                    break;
+                case SMALLINT:
+                    values[i] = Short.valueOf((short)readSignedVarLong(in));
+                    break;
+                case TINYINT:
+                    values[i] = Byte.valueOf(in.readByte());
+                    break;
+                case FLOAT:
+                    values[i] = Double.valueOf(in.readDouble());
+                    break;
+                case STRING: {
+                    byte bytes[] = new byte[(int)readVarLong(in)];
+                    in.readFully(bytes);
+                    values[i] = new String(bytes, "UTF-8");
+                    break;
+                }
+                default:
+                    throw new IOException("Unexpected parameter type " + tag + " in command log");
+            } // SWITCH
+        } // FOR
+        return (new ParameterSet().setParameters(values));
+    }
+
+    // ----------------------------------------------------------------------------
+    // BLOCKS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Compute the CRC32 of the remaining bytes in the given buffer without
+     * changing its position. We use the native implementation in the EE
+     * for direct buffers if it is available.
+     * @param b
+     * @return
+     */
+    public static int crc32(ByteBuffer b) {
+        if (b.isDirect() && VoltDB.getLoadLibVOLTDB()) {
+            try {
+                return DBBPool.getBufferCRC32(b, b.position(), b.remaining());
+            } catch (UnsatisfiedLinkError ex) {
+                // The EE library was not loaded, so just fall through
+            }
+        }
+        CRC32 crc = new CRC32();
+        if (b.hasArray()) {
+            crc.update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        } else {
+            byte bytes[] = new byte[b.remaining()];
+            b.duplicate().get(bytes);
+            crc.update(bytes);
+        }
+        return ((int)crc.getValue());
+    }
+
+    /**
+     * Compress the remaining bytes in the given buffer
+     * @param b
+     * @return
+     * @throws IOException
+     */
+    public static byte[] compress(ByteBuffer b) throws IOException {
+        if (b.isDirect()) {
+            return (CompressionService.compressBuffer(b.duplicate()));
+        } else if (b.hasArray()) {
+            return (CompressionService.compressBytes(b.array(), b.arrayOffset() + b.position(), b.remaining()));
+        }
+        byte bytes[] = new byte[b.remaining()];
+        b.duplicate().get(bytes);
+        return (CompressionService.compressBytes(bytes));
+    }
+
+    /**
+     * Build the header for a block with the given payload
+     * @param header The buffer to write the header into (will be cleared and flipped)
+     * @param payload
+     * @param compressed
+     */
+    public static void writeBlockHeader(ByteBuffer header, ByteBuffer payload, boolean compressed) {
+        header.clear();
+        header.putInt(payload.remaining());
+        header.putInt(crc32(payload));
+        header.put(compressed ? (byte)1 : (byte)0);
+        header.flip();
+    }
+
+    /**
+     * Read the next block out of the given log buffer and return a deserializer
+     * for its uncompressed payload. Returns null if there are no more blocks
+     * or if the next block is incomplete or does not match its checksum (which
+     * means that we crashed while writing it out).
+     * @param buffer
+     * @return
+     * @throws IOException
+     */
+    public static FastDeserializer readBlock(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < BLOCK_HEADER_SIZE) return (null);
+        int length = buffer.getInt(buffer.position());
+        if (length <= 0 || length > buffer.remaining() - BLOCK_HEADER_SIZE) return (null);
+
+        int crc = buffer.getInt(buffer.position() + 4);
+        boolean compressed = (buffer.get(buffer.position() + 8) != 0);
+        buffer.position(buffer.position() + BLOCK_HEADER_SIZE);
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        if (crc32(payload) != crc) return (null);
+        buffer.position(buffer.position() + length);
+
+        if (compressed) {
+            byte bytes[] = new byte[length];
+            payload.get(bytes);
+            return (new FastDeserializer(CompressionService.decompressBytes(bytes)));
+        }
+        return (new FastDeserializer(payload));
+    }
+
+}
@@ -26,22 +26,34 @@
 package edu.brown.hstore.wal;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.exceptions.ServerFaultException;
 import org.voltdb.messaging.FastSerializer;
-import org.voltdb.utils.DBBPool.BBContainer;
+import org.voltdb.utils.EstTime;
 
 import com.google.protobuf.RpcCallback;
 
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.HStoreThreadManager;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.dtxn.LocalTransaction;
 import edu.brown.hstore.interfaces.Shutdownable;
@@ -50,10 +62,18 @@ import edu.brown.logging.LoggerUtil.LoggerBoolean;
 
 /**
  * Transaction Command Log Writer
+ * <B>NOTE:</B> When group commit is enabled, the PartitionExecutors only
+ * queue up their entries in a shared ring buffer. The separate writer
+ * thread (see {@link #run()}) is responsible for writing out all of the queued
+ * entries with a single write + fsync and then sending back the ClientResponses.
+ * Entries are always flushed in the order that they were added to the buffer,
+ * so a txn's ClientResponse is never sent before the responses of txns that
+ * were committed before it (and whose results it may have read).
+ * Entries are written out in blocks using the compact format described in CommandLogUtil.
  * @author mkirsch
  * @author pavlo
  */
-public class CommandLogWriter implements Shutdownable {
+public class CommandLogWriter implements Runnable, Shutdownable {
     private static final Logger LOG = Logger.getLogger(CommandLogWriter.class);
     private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
     private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
@@ -92,72 +112,168 @@ public class CommandLogWriter implements Shutdownable {
     
     /**
      * Circular Buffer of Log Entries
+     * Multiple threads can add entries to the buffer without locking (each one
+     * claims a sequence number and then publishes its slot when it is done), but
+     * only the writer thread is allowed to consume them.
      */
     protected class EntryBuffer {
+        private final WriterLogEntry buffer[];
         
         /**
-        * Circular Atomic Integer for EntryBuffer
-        */
-        protected class CircularAtomicInteger {
-            private final AtomicInteger ai;
-            private final int limit;
-            
-            public CircularAtomicInteger(int lim) {
-                limit = lim;
-                ai = new AtomicInteger(0);
-            }
-            public int getAndIncrementCircular() { //Modified AtomicInteger.getAndIncrement() to be circular around the buffer length
-                for (;;) {
-                    int current = ai.get();
-                    int next = (current + 1) % limit;//EntryBuffer.buffer.length;
-                    if (ai.compareAndSet(current, next))
-                        return current;
-                }
-            }
-        } // CLASS
+         * The next sequence number to give out to a producer
+         */
+        private final AtomicLong claimed = new AtomicLong(0);
+        
+        /**
+         * For each slot, the sequence number of the last entry that
+         * was written into it. A slot can only be read by the writer thread
+         * once the sequence number that it is expecting shows up here.
+         */
+        private final AtomicLongArray published;
         
-        private WriterLogEntry buffer[];
-        private CircularAtomicInteger idx;
+        /**
+         * All of the entries before this sequence number have been
+         * written to disk and can be reused.
+         */
+        private volatile long released = 0;
         
         public EntryBuffer(int size) {
             this.buffer = new WriterLogEntry[size];
+            this.published = new AtomicLongArray(size);
             for (int i = 0; i < size; i++) {
                 this.buffer[i] = new WriterLogEntry();
+                this.published.set(i, -1);
             } // FOR
-            idx = new CircularAtomicInteger(size);
         }
         public LogEntry next(LocalTransaction ts, ClientResponseImpl cresponse) {
-            WriterLogEntry e = this.buffer[this.idx.getAndIncrementCircular()];
-            return e.init(ts, cresponse);
+            long seq = this.claimed.getAndIncrement();
+            
+            // If the buffer is full, then we have to wait for the writer
+            // thread to catch up with us
+            while (seq - this.released >= this.buffer.length) {
+                if (writerThread != null) LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(WAIT_FULL_NANOS);
+            } // WHILE
+            
+            int idx = (int)(seq % this.buffer.length);
+            LogEntry e = this.buffer[idx].init(ts, cresponse);
+            this.published.lazySet(idx, seq);
+            return (e);
         }
-        public boolean isFlushReady() {
-            return (this.buffer[this.buffer.length - 1].isInitialized());
+        /**
+         * Returns the sequence number of the first entry after the given
+         * sequence number that has not been published yet.
+         */
+        protected long getPublishedLimit(long start) {
+            long seq = start;
+            while (seq - start < this.buffer.length &&
+                   this.published.get((int)(seq % this.buffer.length)) == seq) {
+                seq++;
+            } // WHILE
+            return (seq);
         }
-        public void flushCleanup() {
-            for (int i = 0; i < this.buffer.length; i++)
-                this.buffer[i].finish();
+        protected WriterLogEntry get(long seq) {
+            return (this.buffer[(int)(seq % this.buffer.length)]);
+        }
+        protected void release(long limit) {
+            for (long seq = this.released; seq < limit; seq++) {
+                this.get(seq).finish();
+            } // FOR
+            this.released = limit;
         }
     } // CLASS
     
+    /**
+     * How long a producer will sleep when its EntryBuffer is full
+     */
+    private static final long WAIT_FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    
+    /**
+     * The size of the zeroed buffer that we use to pre-allocate segments
+     */
+    private static final int PREALLOCATE_CHUNK_SIZE = 1048576;
     
     final HStoreSite hstore_site;
     final HStoreConf hstore_conf;
     final File outputFile;
-    final FileChannel fstream;
     final int group_commit_size;
+    final long group_commit_timeout;
+    final long segment_size;
+    final boolean compression;
+    
+    /**
+     * The manifest of all the segments in our log
+     */
+    final CommandLogManifest manifest;
+    
+    /**
+     * The segment that we are currently writing into and its file
+     */
+    private CommandLogManifest.Segment segment;
+    private FileChannel fstream;
+    
+    /**
+     * The file for the segment that comes after the current one. It is
+     * pre-allocated by a background thread so that rotating segments never has
+     * to wait for the zeroes to be written out.
+     */
+    private final ExecutorService preallocator;
+    private File nextSegmentFile;
+    private Future<FileChannel> nextSegment;
+    
+    /**
+     * The serialized log header that we write at the beginning of each segment
+     */
+    private final byte header[];
     
     /**
-     * The log entry buffers (one per partition) 
+     * The header for the block that we are currently writing out
      */
-    final EntryBuffer entries[];
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(CommandLogUtil.BLOCK_HEADER_SIZE);
+    private final ByteBuffer blockBuffers[] = new ByteBuffer[2];
+    
+    /**
+     * The log entry buffer that is shared by all of the partitions 
+     */
+    final EntryBuffer entries;
     
     /**
      * Fast serializers (one per partition)
      */
     final FastSerializer serializers[];
     
+    /**
+     * The FastSerializer used by the writer thread for each group commit batch
+     */
+    final FastSerializer groupSerializer;
+    
+    /**
+     * The reusable LogEntry for when group commit is disabled
+     */
+    private final LogEntry syncEntry = new LogEntry();
+    
+    /**
+     * The total number of entries in the EntryBuffer that
+     * have not been written out yet 
+     */
+    final AtomicInteger pending = new AtomicInteger(0);
+    
+    /**
+     * Makes sure that only one group commit batch is in flight at a time.
+     * We don't use this writer's monitor for that because we don't want to hold it
+     * while we send back the ClientResponses (truncate() and shutdown() need it).
+     */
+    private final Object groupCommitLock = new Object();
+    
+    private volatile Thread writerThread = null;
+    private volatile boolean stop = false;
+    private long groupCommitCounter = 0;
+    private long groupCommitEntries = 0;
+    
     /**
      * Constructor
+     * The log is written out to segment files that start with the given output file
+     * path (see CommandLogManifest). Any previous log at that path is removed.
      * @param catalog_db
      * @param path
      */
@@ -166,74 +282,143 @@ public class CommandLogWriter implements Shutdownable {
         this.hstore_conf = hstore_site.getHStoreConf();
         this.outputFile = outputFile;
         this.group_commit_size = Math.max(1, hstore_conf.site.exec_command_logging_group_commit); //Group commit threshold, or 1 if group commit is turned off
+        this.group_commit_timeout = TimeUnit.MILLISECONDS.toNanos(Math.max(1, hstore_conf.site.exec_command_logging_group_commit_timeout));
+        this.segment_size = Math.max(1, hstore_conf.site.exec_command_logging_segment_size) * 1048576l;
+        this.compression = (hstore_conf.site.exec_command_logging_compression && this.isGroupCommitEnabled());
         
-        FileOutputStream f = null;
-        try {
-            // TODO: is there a more standard way to do this?
-            // TODO: update to use directory rather than files?
-            this.outputFile.getParentFile().mkdirs();
-            this.outputFile.createNewFile();
-            f = new FileOutputStream(this.outputFile, false);
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
+        this.outputFile.getAbsoluteFile().getParentFile().mkdirs();
+        if (CommandLogManifest.exists(this.outputFile)) {
+            LOG.warn("Removing previous command log " + this.outputFile);
+            CommandLogManifest.load(this.outputFile).deleteAll();
         }
-        this.fstream = f.getChannel();
+        this.manifest = new CommandLogManifest(this.outputFile);
+        this.header = this.serializeHeader();
         
-        // Make one entry buffer per partition
+        // The entry buffer has to be big enough to hold a full group commit batch while
+        // the writer thread is still flushing out the previous one
         int num_partitions = CatalogUtil.getNumberOfPartitions(hstore_site.getDatabase());
-        this.entries = new EntryBuffer[num_partitions];
+        int num_local = 0;
         this.serializers = new FastSerializer[num_partitions];
         for (int partition = 0; partition < num_partitions; partition++) {
             if (hstore_site.isLocalPartition(partition)) {
-                this.entries[partition] = new EntryBuffer(group_commit_size);
                 this.serializers[partition] = new FastSerializer(hstore_site.getBufferPool());
+                num_local++;
             }
         } // FOR
+        this.entries = new EntryBuffer(Math.max(group_commit_size, num_local) * 2);
+        this.groupSerializer = new FastSerializer(hstore_site.getBufferPool());
         
-        // Write out a header to the file 
-        this.writeHeader();
+        this.preallocator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, HStoreThreadManager.getThreadName(CommandLogWriter.this.hstore_site, "WAL", "prealloc"));
+                t.setDaemon(true);
+                return (t);
+            }
+        });
+        
+        // Start our first segment 
+        this.openSegment();
+    }
+    
+    /**
+     * Returns true if this writer is queuing up entries for group commit
+     * and therefore needs to have its writer thread started.
+     */
+    public boolean isGroupCommitEnabled() {
+        return (hstore_conf.site.exec_command_logging_group_commit > 0);
     }
     
+    /**
+     * Returns the path of the command log that the given site writes out to.
+     * It would be nice if we could come up with a unique name for this
+     * invocation of the system (like the cluster instanceId). But for now
+     * we'll just write out to our directory...
+     * @param hstore_conf
+     * @param site_id
+     * @return
+     */
+    public static File getLogFile(HStoreConf hstore_conf, int site_id) {
+        return new File(hstore_conf.site.exec_command_logging_directory +
+                        File.separator +
+                        HStoreThreadManager.getThreadName(site_id, null).toLowerCase() + ".log");
+    }
+    
+    // ----------------------------------------------------------------------------
+    // WRITER THREAD
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Group commit writer thread
+     * We will block until either we have enough entries queued up in our buffers
+     * or until the group commit timeout has passed. Then we write all of
+     * the entries out at once. 
+     */
+    @Override
+    public void run() {
+        this.writerThread = Thread.currentThread();
+        this.writerThread.setName(HStoreThreadManager.getThreadName(hstore_site, "WAL"));
+        if (hstore_conf.site.cpu_affinity) {
+            hstore_site.getThreadManager().registerProcessingThread();
+        }
+        if (debug.get()) LOG.debug(String.format("Starting command log writer thread [groupCommit=%d, timeout=%dms]",
+                                                 this.group_commit_size, hstore_conf.site.exec_command_logging_group_commit_timeout));
+        
+        while (this.stop == false) {
+            if (this.pending.get() < this.group_commit_size) {
+                LockSupport.parkNanos(this.group_commit_timeout);
+            }
+            if (this.pending.get() > 0) this.groupCommit();
+        } // WHILE
+        
+        if (debug.get()) LOG.debug(String.format("Command log writer thread stopped [flushes=%d, entries=%d]",
+                                                 this.groupCommitCounter, this.groupCommitEntries));
+    }
 
     @Override
     public void prepareShutdown(boolean error) {
-        // TODO: If we're using group commit, flush out
-        // all the queued entries. We should not get any more
+        // Flush out all the queued entries. We should not get any more
         // transaction entries after this point
-        for (int i = 0; i < this.entries.length; i++)
-          this.groupCommit(this.entries[i]);
+        if (this.isGroupCommitEnabled()) this.groupCommit();
     }
 
     @Override
     public void shutdown() {
-        if (debug.get()) LOG.debug("Closing WAL file");
-        try {
-            this.fstream.close();
-        } catch (IOException ex) {
-            String message = "Failed to close WAL file";
-            throw new ServerFaultException(message, ex);
+        if (this.isGroupCommitEnabled()) {
+            this.stop = true;
+            if (this.writerThread != null) LockSupport.unpark(this.writerThread);
+            this.groupCommit();
         }
         
+        if (debug.get()) LOG.debug("Closing WAL file");
+        synchronized (this) {
+            try {
+                this.fstream.force(true);
+                this.fstream.close();
+            } catch (IOException ex) {
+                String message = "Failed to close WAL file";
+                throw new ServerFaultException(message, ex);
+            }
+            this.manifest.save();
+            this.discardNextSegment();
+        } // SYNCH
+        this.preallocator.shutdown();
     }
 
     @Override
     public boolean isShuttingDown() {
-        // TODO Auto-generated method stub
-        return false;
+        return (this.stop);
     }
     
-    public boolean writeHeader() {
-        if (debug.get()) LOG.debug("Writing out WAL header");
-        FastSerializer fs = null;
-        for (int i = 0; i < this.serializers.length; i++) { //Get the first available serializer
-            if (this.serializers[i] != null) {
-              fs = this.serializers[i];
-              break;
-            }
-        }
-        assert(fs != null);
+    /**
+     * Serialize the log header that maps procedure ids to names
+     */
+    private byte[] serializeHeader() {
+        FastSerializer fs = new FastSerializer();
         try {
-            fs.clear();
+            fs.writeInt(CommandLogUtil.MAGIC);
+            fs.writeByte(CommandLogUtil.VERSION);
+            fs.writeByte(this.compression ? CommandLogUtil.FLAG_COMPRESSION : 0);
             fs.writeInt(hstore_site.getDatabase().getProcedures().size());
             
             for (Procedure catalog_proc : hstore_site.getDatabase().getProcedures()) {
@@ -241,49 +426,249 @@ public class CommandLogWriter implements Shutdownable {
                 fs.writeInt(procId);
                 fs.writeString(catalog_proc.getName());
             } // FOR
-            
-            BBContainer b = fs.getBBContainer();
-            fstream.write(b.b.asReadOnlyBuffer());
-            fstream.force(true);
         } catch (Exception e) {
-            String message = "Failed to write log headers";
+            String message = "Failed to serialize log headers";
             throw new ServerFaultException(message, e);
         }
+        return (fs.getBytes());
+    }
+    
+    // ----------------------------------------------------------------------------
+    // SEGMENTS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Create the given segment file, pre-allocate it, and write out the log header.
+     * The segment is filled with zeroes up to its full size so that our writes
+     * never have to extend the file (and therefore we only need to sync the data
+     * and not the file's metadata). The returned channel is positioned right
+     * after the header.
+     * @param f
+     */
+    private FileChannel preallocateSegment(File f) throws IOException {
+        if (debug.get()) LOG.debug(String.format("Pre-allocating WAL segment %s [size=%d]", f, this.segment_size));
+        FileChannel channel = new RandomAccessFile(f, "rw").getChannel();
+        try {
+            ByteBuffer zeroes = ByteBuffer.allocateDirect(PREALLOCATE_CHUNK_SIZE);
+            long position = 0;
+            while (position < this.segment_size) {
+                zeroes.clear();
+                if (this.segment_size - position < zeroes.capacity()) {
+                    zeroes.limit((int)(this.segment_size - position));
+                }
+                position += channel.write(zeroes, position);
+            } // WHILE
+            // Throw away anything that was left behind in this file by a previous run 
+            channel.truncate(this.segment_size);
+            channel.position(0);
+            channel.write(ByteBuffer.wrap(this.header));
+            channel.force(true);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return (channel);
+    }
+    
+    /**
+     * Start the next segment in the log. If the background thread has already
+     * pre-allocated its file, then all we have to do is swap in its channel.
+     * Otherwise we will pre-allocate it ourselves. Either way we then kick off the
+     * pre-allocation of the segment that will come after this one. 
+     */
+    private void openSegment() {
+        this.segment = this.manifest.addSegment();
+        File f = this.segment.getFile();
+        if (debug.get()) LOG.debug(String.format("Opening new WAL segment %s", f));
+        try {
+            if (this.nextSegment != null && f.equals(this.nextSegmentFile)) {
+                this.fstream = this.nextSegment.get();
+            } else {
+                this.discardNextSegment();
+                this.fstream = this.preallocateSegment(f);
+            }
+        } catch (Exception ex) {
+            String message = "Failed to create WAL segment " + f;
+            throw new ServerFaultException(message, ex);
+        } finally {
+            this.nextSegment = null;
+            this.nextSegmentFile = null;
+        }
+        this.manifest.save();
         
-        return (true);
+        final File next = CommandLogManifest.getSegmentFile(this.outputFile, this.segment.getId() + 1);
+        this.nextSegmentFile = next;
+        this.nextSegment = this.preallocator.submit(new Callable<FileChannel>() {
+            @Override
+            public FileChannel call() throws Exception {
+                return (preallocateSegment(next));
+            }
+        });
     }
     
-    public void groupCommit(EntryBuffer buffer) {
-        // XXX: Once we have a single thread that writes out this buffer, we won't
-        // have to worry about locking here because we know that no other thread
-        // will be trying to write to the log file that same time that we are.
-        synchronized (this) {
+    /**
+     * Close and remove the segment file that was pre-allocated for
+     * the next segment (if there is one). 
+     */
+    private void discardNextSegment() {
+        if (this.nextSegment == null) return;
+        try {
+            this.nextSegment.get().close();
+        } catch (ExecutionException ex) {
+            // There is nothing to close if it failed to pre-allocate it 
+        } catch (Exception ex) {
+            LOG.warn("Failed to close pre-allocated WAL segment " + this.nextSegmentFile, ex);
+        }
+        if (this.nextSegmentFile.exists() && this.nextSegmentFile.delete() == false) {
+            LOG.warn("Failed to delete pre-allocated WAL segment " + this.nextSegmentFile);
+        }
+        this.nextSegment = null;
+        this.nextSegmentFile = null;
+    }
+    
+    /**
+     * Close out the current segment and move on to the next one
+     */
+    private void rotateSegment() throws IOException {
+        if (debug.get()) LOG.debug(String.format("Rotating WAL segment %s", this.segment));
+        this.fstream.force(true);
+        this.fstream.close();
+        this.manifest.closeSegment(this.segment);
+        this.openSegment();
+    }
+    
+    /**
+     * Write out the given block payload (along with its header) to the current
+     * segment and sync it to disk. If the block will not fit in the current segment,
+     * then we will rotate to a new one first.
+     * @param payload
+     * @param compressed Whether the payload has been compressed 
+     * @param minTxnId The smallest txn id in the block
+     * @param maxTxnId The largest txn id in the block
+     */
+    private void write(ByteBuffer payload, boolean compressed, long minTxnId, long maxTxnId) throws IOException {
+        long position = this.fstream.position();
+        if (position + CommandLogUtil.BLOCK_HEADER_SIZE + payload.remaining() > this.segment_size &&
+            position > this.header.length) {
+            this.rotateSegment();
+        }
+        CommandLogUtil.writeBlockHeader(this.blockHeader, payload, compressed);
+        this.blockBuffers[0] = this.blockHeader;
+        this.blockBuffers[1] = payload;
+        while (payload.hasRemaining()) {
+            this.fstream.write(this.blockBuffers);
+        } // WHILE
+        this.blockBuffers[1] = null;
+        // The segment was pre-allocated, so we only need to sync the data
+        // unless this write went past the end of the file 
+        this.fstream.force(this.fstream.position() > this.segment_size);
+        this.segment.update(minTxnId, maxTxnId);
+    }
+    
+    /**
+     * Remove all of the segments that only contain transactions that 
+     * came before the given txn id. This is invoked once a snapshot
+     * that was taken by that txn has been completed on every host.
+     * @param txnId
+     * @return The number of segments that were deleted
+     */
+    public synchronized int truncate(long txnId) {
+        int ctr = this.manifest.truncate(txnId);
+        if (ctr > 0) {
+            this.manifest.save();
+            LOG.info(String.format("Removed %d WAL segments before txn #%d", ctr, txnId));
+        }
+        return (ctr);
+    }
+    
+    public CommandLogManifest getManifest() {
+        return (this.manifest);
+    }
+    
+    // ----------------------------------------------------------------------------
+    // LOGGING
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Write out all of the entries that are currently queued in the EntryBuffer
+     * using a single write and a single fsync, then send back the ClientResponses
+     * for all of the transactions in the batch.
+     * The batch is always a contiguous run of entries starting at the oldest one 
+     * that is not durable yet. That means that if a txn's entry is in the batch, then
+     * so is every entry that was added before it. We only hold this writer's monitor
+     * while the batch is written out and synced; the ClientResponses are sent after
+     * we have released it. 
+     * This should only be invoked by the writer thread (or during shutdown)
+     */
+    protected void groupCommit() {
+        synchronized (this.groupCommitLock) {
+            FastSerializer fs = this.groupSerializer;
+            EntryBuffer buffer = this.entries;
+            long minTxnId = Long.MAX_VALUE;
+            long maxTxnId = Long.MIN_VALUE;
+            
+            // Figure out what entries are going to be in this batch
+            long start = buffer.released;
+            long limit = buffer.getPublishedLimit(start);
+            int total = (int)(limit - start);
+            if (total == 0) return;
+            
+            ByteBuffer payload = null;
+            boolean compressed = false;
+            fs.clear();
             try {
-                fstream.force(true);
-                            
-                //TODO: NOW CALLBACK WITH ALL OF THE LOCALTRANSACTIONS
-                //...
-                //...
-                for (WriterLogEntry entry : buffer.buffer) {
-                    hstore_site.sendClientResponse(entry.cresponse,
-                                                   entry.clientCallback,
-                                                   entry.initiateTime,
-                                                   entry.restartCounter);
-                                                   
+                CommandLogUtil.writeVarLong(fs, total);
+                fs.writeLong(EstTime.currentTimeMillis());
+                long prevTxnId = 0;
+                for (long seq = start; seq < limit; seq++) {
+                    WriterLogEntry entry = buffer.get(seq);
+                    long txnId = entry.getTransactionId().longValue();
+                    if (txnId < minTxnId) minTxnId = txnId;
+                    if (txnId > maxTxnId) maxTxnId = txnId;
+                    entry.writeCompact(fs, prevTxnId);
+                    prevTxnId = txnId;
+                } // FOR
+                
+                payload = fs.getBBContainer().b.duplicate();
+                if (this.compression) {
+                    byte bytes[] = CommandLogUtil.compress(payload);
+                    // Don't bother if it didn't actually make the batch smaller
+                    if (bytes.length < payload.remaining()) {
+                        payload = ByteBuffer.wrap(bytes);
+                        compressed = true;
+                    }
                 }
-            
-                buffer.flushCleanup();
+                if (trace.get()) LOG.trace(String.format("Writing out %d log entries [bytes=%d, compressed=%s]",
+                                                         total, payload.remaining(), compressed));
+                synchronized (this) {
+                    this.write(payload, compressed, minTxnId, maxTxnId);
+                } // SYNCH
             } catch (Exception e) {
-                String message = "Failed to group commit for buffer";
+                String message = "Failed to group commit " + total + " log entries";
                 throw new ServerFaultException(message, e);
             }
+            
+            // Everything is durable now, so we can blast out the client responses
+            for (long seq = start; seq < limit; seq++) {
+                WriterLogEntry entry = buffer.get(seq);
+                hstore_site.sendClientResponse(entry.cresponse,
+                                               entry.clientCallback,
+                                               entry.initiateTime,
+                                               entry.restartCounter);
+            } // FOR
+            buffer.release(limit);
+            this.pending.addAndGet(-total);
+            this.groupCommitCounter++;
+            this.groupCommitEntries += total;
         } // SYNCH
     }
     
     /**
      * Write a completed transaction handle out to the WAL file
      * Returns true if the entry has been successfully written to disk and
-     * it is safe for the HStoreSite to send out the ClientResponse
+     * it is safe for the HStoreSite to send out the ClientResponse. If this
+     * returns false, then the writer thread will send out the ClientResponse
+     * once the entry's group commit batch has been flushed.
      * @param ts
      * @return
      */
@@ -291,60 +676,38 @@ public class CommandLogWriter implements Shutdownable {
         if (debug.get()) LOG.debug(ts + " - Writing out WAL entry for committed transaction");
         
         int basePartition = ts.getBasePartition();
-        EntryBuffer buffer = this.entries[basePartition];
-        assert(buffer != null) :
-            "Unexpected log entry buffer for partition " + basePartition;
-        LogEntry entry = buffer.next(ts, cresponse);
-        assert(entry != null);
-        FastSerializer fs = this.serializers[basePartition];
-        assert(fs != null);
         
-        // TODO: We are going to want to use group commit to queue up
-        // a bunch of entries using the buffers and then push them all out
-        // when we have enough.
-        if (hstore_conf.site.exec_command_logging_group_commit > 0) {
-            
-        }
-        else {
-            
+        // GROUP COMMIT
+        // Just queue up the entry and let the writer thread deal with it
+        if (this.isGroupCommitEnabled()) {
+            this.entries.next(ts, cresponse);
+            if (this.pending.incrementAndGet() >= this.group_commit_size && this.writerThread != null) {
+                LockSupport.unpark(this.writerThread);
+            }
+            return (false);
         }
         
-        
-        // TODO: Once we have group commit, then we need a way to pass back
-        // a flag to the HStoreSite from this method that tells it to not send out
-        // the ClientResponse until we say it's ok. Then we need some other callback
-        // where we can blast out the client responses all at once.
-        
-        // TODO: I think that we don't want to actually serialize the object here, because
-        //        we won't be able to control whether the JVM writes out the buffer all of sudden.
-        //        We should just 
-        //       
-        //        We can do that when we do the 
-        
+        // NO GROUP COMMIT
+        // Write the entry out right now
+        FastSerializer fs = this.serializers[basePartition];
+        assert(fs != null);
         synchronized (this) {
             try {
                 fs.clear();
-                fs.writeObject(entry);
-                BBContainer b = fs.getBBContainer();
-                fstream.write(b.b.asReadOnlyBuffer());
-                
-                if (hstore_conf.site.exec_command_logging_group_commit > 0) { //GROUP COMMIT
-                    if (buffer.isFlushReady()) {
-                        this.groupCommit(buffer);
-                        return true;
-                    } else {
-                        return false;
-                    }
-                } else {
-                  fstream.force(true);
-                }
+                CommandLogUtil.writeVarLong(fs, 1);
+                fs.writeLong(EstTime.currentTimeMillis());
+                this.syncEntry.init(ts).writeCompact(fs, 0);
+                long txnId = ts.getTransactionId().longValue();
+                this.write(fs.getBBContainer().b.duplicate(), false, txnId, txnId);
             } catch (Exception e) {
                 String message = "Failed to write log entry for " + ts.toString();
                 throw new ServerFaultException(message, e, ts.getTransactionId());
+            } finally {
+                this.syncEntry.finish();
             }
         } // SYNCH
         
         return true;
     }
     
-}    
+}
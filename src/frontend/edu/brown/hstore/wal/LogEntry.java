@@ -25,6 +25,22 @@ public class LogEntry implements FastSerializable, Poolable {
         return (this);
     }
     
+    public Long getTransactionId() {
+        return (this.txnId);
+    }
+    
+    public long getTimestamp() {
+        return (this.timestamp);
+    }
+    
+    public int getProcedureId() {
+        return (this.procId);
+    }
+    
+    public ParameterSet getProcedureParams() {
+        return (this.procParams);
+    }
+    
     @Override
     public boolean isInitialized() {
         return (this.txnId != null);
@@ -63,4 +79,31 @@ public class LogEntry implements FastSerializable, Poolable {
         
         //throw new RuntimeException("txnId : " + txnId + " timestamp : " + EstTime.currentTimeMillis() + " procId : " + procId + " procParams : " + procParams.toString());
     }
+    
+    /**
+     * Write this entry out in the compact block format (see CommandLogUtil).
+     * The txn id is stored as the difference from the previous entry in the block
+     * and the timestamp is stored once for the whole block.
+     * @param out
+     * @param prevTxnId The txn id of the previous entry in the block (or zero)
+     */
+    public void writeCompact(FastSerializer out, long prevTxnId) throws IOException {
+        CommandLogUtil.writeSignedVarLong(out, this.txnId.longValue() - prevTxnId);
+        CommandLogUtil.writeVarLong(out, this.procId);
+        CommandLogUtil.writeParameters(out, this.procParams);
+    }
+    
+    /**
+     * Read this entry from the compact block format (see CommandLogUtil)
+     * @param in
+     * @param prevTxnId The txn id of the previous entry in the block (or zero)
+     * @param timestamp The timestamp of the block that this entry is in
+     */
+    public LogEntry readCompact(FastDeserializer in, long prevTxnId, long timestamp) throws IOException {
+        this.txnId = Long.valueOf(prevTxnId + CommandLogUtil.readSignedVarLong(in));
+        this.timestamp = timestamp;
+        this.procId = (int)CommandLogUtil.readVarLong(in);
+        this.procParams = CommandLogUtil.readParameters(in);
+        return (this);
+    }
 } // CLASS
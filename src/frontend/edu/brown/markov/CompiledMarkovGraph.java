@@ -0,0 +1,352 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Immutable array-based snapshot of a MarkovGraph that is used on the hot path
+ * of the TransactionEstimator. Every vertex is assigned a dense offset and the
+ * outbound edges are stored in compressed sparse row form, where the edges for
+ * vertex <i>v</i> are the range [edge_offsets[v], edge_offsets[v+1]) sorted in
+ * the same order as the MarkovEdge comparator (i.e., highest probability first).
+ * Partition sets are stored as bitmasks so that the vertex equality check does
+ * not need to compare Set&lt;Integer&gt; objects.
+ * <B>NOTE:</B> A snapshot is never modified after it is built. Use
+ * MarkovGraph.getCompiled() to get a snapshot that reflects the current graph,
+ * or MarkovGraph.getLastCompiled() on the hot path where a stale one is good enough.
+ * @see MarkovGraph#getCompiled()
+ * @see MarkovGraph#getLastCompiled()
+ */
+public class CompiledMarkovGraph {
+    private static final Logger LOG = Logger.getLogger(CompiledMarkovGraph.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    // ----------------------------------------------------------------------------
+    // DATA MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final MarkovGraph markov;
+
+    /** The MarkovGraph modification counter when this snapshot was built */
+    private final int version;
+
+    /** The number of longs needed to store a partition bitmask */
+    private final int num_words;
+
+    private final Map<MarkovVertex, Integer> vertex_offsets;
+
+    // Vertices
+    private final MarkovVertex vertices[];
+    private final Statement statements[];
+    private final int query_indexes[];
+    private final boolean query_vertices[];
+    private final int partitions[][];
+    private final long partition_masks[];
+    private final long past_masks[];
+    private final float abort_probabilities[];
+    private final int start;
+
+    // Edges
+    private final int edge_offsets[];
+    private final int edge_dests[];
+    private final float edge_probabilities[];
+    private final MarkovEdge edges[];
+
+    // ----------------------------------------------------------------------------
+    // CONSTRUCTOR
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Build a new snapshot of the given MarkovGraph. The caller is responsible
+     * for making sure that the graph is not modified while this is running.
+     * @param markov
+     * @param version
+     */
+    protected CompiledMarkovGraph(MarkovGraph markov, int version) {
+        this.markov = markov;
+        this.version = version;
+        this.num_words = getNumWords(CatalogUtil.getNumberOfPartitions(markov.getDatabase()));
+
+        Collection<MarkovVertex> all_vertices = markov.getVertices();
+        int num_vertices = all_vertices.size();
+        this.vertex_offsets = new HashMap<MarkovVertex, Integer>(num_vertices * 2);
+        this.vertices = new MarkovVertex[num_vertices];
+        this.statements = new Statement[num_vertices];
+        this.query_indexes = new int[num_vertices];
+        this.query_vertices = new boolean[num_vertices];
+        this.partitions = new int[num_vertices][];
+        this.partition_masks = new long[num_vertices * this.num_words];
+        this.past_masks = new long[num_vertices * this.num_words];
+        this.abort_probabilities = new float[num_vertices];
+
+        int offset = 0;
+        for (MarkovVertex v : all_vertices) {
+            this.vertices[offset] = v;
+            this.vertex_offsets.put(v, offset);
+            this.statements[offset] = v.getCatalogItem();
+            this.query_indexes[offset] = v.getQueryInstanceIndex();
+            this.query_vertices[offset] = v.isQueryVertex();
+            this.partitions[offset] = toArray(v.getPartitions());
+            setBits(this.partition_masks, offset * this.num_words, this.num_words, v.getPartitions());
+            setBits(this.past_masks, offset * this.num_words, this.num_words, v.getPastPartitions());
+            this.abort_probabilities[offset] = v.getAbortProbability();
+            offset++;
+        } // FOR
+        MarkovVertex start_v = markov.getStartVertex();
+        this.start = (start_v != null ? this.vertex_offsets.get(start_v).intValue() : -1);
+
+        // Lay out the edges for each vertex in sorted order so that
+        // the first matching edge is always the most likely one
+        this.edge_offsets = new int[num_vertices + 1];
+        List<MarkovEdge> all_edges = new ArrayList<MarkovEdge>();
+        for (offset = 0; offset < num_vertices; offset++) {
+            this.edge_offsets[offset] = all_edges.size();
+            Collection<MarkovEdge> out_edges = markov.getOutEdges(this.vertices[offset]);
+            if (out_edges == null || out_edges.isEmpty()) continue;
+            List<MarkovEdge> sorted = new ArrayList<MarkovEdge>(out_edges);
+            Collections.sort(sorted);
+            all_edges.addAll(sorted);
+        } // FOR
+        this.edge_offsets[num_vertices] = all_edges.size();
+
+        int num_edges = all_edges.size();
+        this.edges = all_edges.toArray(new MarkovEdge[num_edges]);
+        this.edge_dests = new int[num_edges];
+        this.edge_probabilities = new float[num_edges];
+        for (int e = 0; e < num_edges; e++) {
+            this.edge_dests[e] = this.vertex_offsets.get(markov.getDest(this.edges[e])).intValue();
+            this.edge_probabilities[e] = this.edges[e].getProbability();
+        } // FOR
+
+        if (debug.get()) LOG.debug(String.format("Compiled %s [version=%d, vertices=%d, edges=%d]",
+                                                 markov, version, num_vertices, num_edges));
+    }
+
+    // ----------------------------------------------------------------------------
+    // DATA MEMBER METHODS
+    // ----------------------------------------------------------------------------
+
+    public MarkovGraph getMarkovGraph() {
+        return (this.markov);
+    }
+    public int getVersion() {
+        return (this.version);
+    }
+    public int getVertexCount() {
+        return (this.vertices.length);
+    }
+    public int getEdgeCount() {
+        return (this.edges.length);
+    }
+    /**
+     * Return the number of longs needed for a partition bitmask
+     * that can be passed into this snapshot
+     */
+    public int getNumWords() {
+        return (this.num_words);
+    }
+
+    /**
+     * Return the offset of the given vertex in this snapshot.
+     * Returns -1 if the vertex was added to the graph after the snapshot was built
+     * @param v
+     * @return
+     */
+    public int getVertexOffset(MarkovVertex v) {
+        Integer offset = this.vertex_offsets.get(v);
+        return (offset != null ? offset.intValue() : -1);
+    }
+    public int getStartOffset() {
+        return (this.start);
+    }
+    public MarkovVertex getVertex(int v) {
+        return (this.vertices[v]);
+    }
+    public Statement getStatement(int v) {
+        return (this.statements[v]);
+    }
+    public int getQueryInstanceIndex(int v) {
+        return (this.query_indexes[v]);
+    }
+    public boolean isQueryVertex(int v) {
+        return (this.query_vertices[v]);
+    }
+    /**
+     * Return the sorted partition ids touched by the query at the given vertex
+     * @param v
+     * @return
+     */
+    public int[] getPartitions(int v) {
+        return (this.partitions[v]);
+    }
+    public float getAbortProbability(int v) {
+        return (this.abort_probabilities[v]);
+    }
+
+    /**
+     * The first outbound edge offset for the given vertex
+     * @param v
+     * @return
+     */
+    public int getEdgeStart(int v) {
+        return (this.edge_offsets[v]);
+    }
+    /**
+     * The outbound edge offset after the last edge for the given vertex
+     * @param v
+     * @return
+     */
+    public int getEdgeEnd(int v) {
+        return (this.edge_offsets[v+1]);
+    }
+    public MarkovEdge getEdge(int e) {
+        return (this.edges[e]);
+    }
+    public int getEdgeDest(int e) {
+        return (this.edge_dests[e]);
+    }
+    public float getEdgeProbability(int e) {
+        return (this.edge_probabilities[e]);
+    }
+
+    // ----------------------------------------------------------------------------
+    // LOOKUP METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Array-based version of MarkovVertex.isEqual()
+     * @param v
+     * @param catalog_stmt
+     * @param queryInstanceIndex
+     * @param partitions - bitmask of the partitions that the query touches
+     * @param past_partitions - bitmask of the partitions that the txn has touched in the past
+     * @return
+     * @see MarkovVertex#isEqual(Statement, Collection, Collection, int)
+     */
+    public boolean isEqual(int v, Statement catalog_stmt, int queryInstanceIndex, long partitions[], long past_partitions[]) {
+        if (this.query_indexes[v] != queryInstanceIndex) return (false);
+        if (this.statements[v] != catalog_stmt && catalog_stmt.equals(this.statements[v]) == false) return (false);
+        int base = v * this.num_words;
+        for (int i = 0; i < this.num_words; i++) {
+            if (this.partition_masks[base + i] != partitions[i]) return (false);
+        } // FOR
+        if (MarkovGraph.USE_PAST_PARTITIONS) {
+            for (int i = 0; i < this.num_words; i++) {
+                if (this.past_masks[base + i] != past_partitions[i]) return (false);
+            } // FOR
+        }
+        return (true);
+    }
+
+    /**
+     * Return the offset of the outbound edge from the given vertex whose destination
+     * matches the given query information. Returns -1 if there is no such edge.
+     * @param v
+     * @param catalog_stmt
+     * @param queryInstanceIndex
+     * @param partitions - bitmask of the partitions that the query touches
+     * @param past_partitions - bitmask of the partitions that the txn has touched in the past
+     * @return
+     */
+    public int findEdge(int v, Statement catalog_stmt, int queryInstanceIndex, long partitions[], long past_partitions[]) {
+        int end = this.edge_offsets[v+1];
+        for (int e = this.edge_offsets[v]; e < end; e++) {
+            if (this.isEqual(this.edge_dests[e], catalog_stmt, queryInstanceIndex, partitions, past_partitions)) {
+                return (e);
+            }
+        } // FOR
+        return (-1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s<%s, version=%d>", this.getClass().getSimpleName(), this.markov, this.version);
+    }
+
+    // ----------------------------------------------------------------------------
+    // BITMASK METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the number of longs needed to store a bitmask for the given number of partitions
+     * @param num_partitions
+     * @return
+     */
+    public static int getNumWords(int num_partitions) {
+        return (Math.max(1, (num_partitions + 63) >>> 6));
+    }
+
+    /**
+     * Clear the given bitmask and then set the bits for the given partitions
+     * @param mask
+     * @param partitions
+     */
+    public static void setBits(long mask[], Collection<Integer> partitions) {
+        setBits(mask, 0, mask.length, partitions);
+    }
+
+    private static void setBits(long mask[], int base, int num_words, Collection<Integer> partitions) {
+        for (int i = 0; i < num_words; i++) {
+            mask[base + i] = 0;
+        } // FOR
+        for (Integer p : partitions) {
+            mask[base + (p.intValue() >>> 6)] |= (1l << p.intValue());
+        } // FOR
+    }
+
+    /**
+     * Set the bits for the given partitions without clearing the bitmask first
+     * @param mask
+     * @param partitions
+     */
+    public static void addBits(long mask[], int partitions[]) {
+        for (int p : partitions) {
+            mask[p >>> 6] |= (1l << p);
+        } // FOR
+    }
+
+    /**
+     * Returns true if the bit for the given partition is set
+     * @param mask
+     * @param partition
+     * @return
+     */
+    public static boolean isSet(long mask[], int partition) {
+        return ((mask[partition >>> 6] & (1l << partition)) != 0);
+    }
+
+    /**
+     * Set the bit for the given partition
+     * @param mask
+     * @param partition
+     */
+    public static void set(long mask[], int partition) {
+        mask[partition >>> 6] |= (1l << partition);
+    }
+
+    private static int[] toArray(Collection<Integer> partitions) {
+        int ret[] = new int[partitions.size()];
+        int i = 0;
+        for (Integer p : partitions) {
+            ret[i++] = p.intValue();
+        } // FOR
+        Arrays.sort(ret);
+        return (ret);
+    }
+}
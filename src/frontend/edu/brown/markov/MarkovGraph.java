@@ -9,6 +9,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections15.keyvalue.MultiKey;
@@ -39,6 +43,7 @@ import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.ProjectType;
 import edu.brown.workload.QueryTrace;
 import edu.brown.workload.TransactionTrace;
+import edu.uci.ics.jung.graph.util.EdgeType;
 
 /**
  * Markov Model Graph
@@ -71,6 +76,18 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
      */
     public static final int MIN_HITS_FOR_NO_ABORT = 5;
     
+    /**
+     * The background thread that rebuilds the compiled snapshots of graphs that have changed
+     */
+    private static final ExecutorService compiler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "MarkovCompiler");
+            t.setDaemon(true);
+            return (t);
+        }
+    });
+    
     // ----------------------------------------------------------------------------
     // INSTANCE DATA MEMBERS
     // ----------------------------------------------------------------------------
@@ -85,6 +102,12 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     private transient double xact_accuracy = 1.0;
     /** How many times have we recomputed the probabilities for this graph */
     private transient int recompute_count = 0;
+    /** Incremented every time the vertices, edges, or probabilities of this graph change */
+    private transient final AtomicInteger version = new AtomicInteger(0);
+    /** The last array-based snapshot of this graph */
+    private transient volatile CompiledMarkovGraph compiled = null;
+    /** Set while a rebuild of the compiled snapshot is waiting for the background thread */
+    private transient final AtomicBoolean compile_queued = new AtomicBoolean(false);
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -268,6 +291,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         synchronized (v) {
             ret = super.addVertex(v);
             if (ret) {
+                this.version.incrementAndGet();
                 if (v.isQueryVertex()) {
                     Set<MarkovVertex> stmt_vertices = this.cache_stmtVertices.get(v.getCatalogItem());
                     if (stmt_vertices == null) {
@@ -286,6 +310,25 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         return (ret);
     }
 
+    @Override
+    public boolean addEdge(MarkovEdge e, edu.uci.ics.jung.graph.util.Pair<? extends MarkovVertex> endpoints, EdgeType edgeType) {
+        boolean ret = super.addEdge(e, endpoints, edgeType);
+        if (ret) this.version.incrementAndGet();
+        return (ret);
+    }
+    @Override
+    public boolean removeVertex(MarkovVertex v) {
+        boolean ret = super.removeVertex(v);
+        if (ret) this.version.incrementAndGet();
+        return (ret);
+    }
+    @Override
+    public boolean removeEdge(MarkovEdge e) {
+        boolean ret = super.removeEdge(e);
+        if (ret) this.version.incrementAndGet();
+        return (ret);
+    }
+
     /**
      * For the given Vertex type, return the special vertex
      * @param vtype - the Vertex type (cannot be a regular query)
@@ -361,6 +404,20 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         return null;
     }
     
+    /**
+     * Get the vertex in this graph that matches the given vertex from another
+     * MarkovGraph for the same procedure
+     * @param v
+     * @return null if this graph does not have a matching vertex
+     */
+    public MarkovVertex getVertex(MarkovVertex v) {
+        if (v.isQueryVertex() == false) {
+            return (this.getSpecialVertex(v.getType()));
+        }
+        Statement catalog_stmt = v.getCatalogItem();
+        return (this.getVertex(catalog_stmt, v.getPartitions(), v.getPastPartitions(), v.getQueryInstanceIndex()));
+    }
+    
     /**
      * Return an immutable list of all the partition ids in our catalog
      * @return
@@ -383,6 +440,71 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         return edges;
     }
     
+    // ----------------------------------------------------------------------------
+    // COMPILED SNAPSHOT METHODS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Return an immutable array-based snapshot of this graph for the TransactionEstimator.
+     * If the graph was modified since the last snapshot was built, then a new one
+     * will be compiled before returning. 
+     * @return
+     */
+    public CompiledMarkovGraph getCompiled() {
+        CompiledMarkovGraph ret = this.compiled;
+        if (ret == null || ret.getVersion() != this.version.get()) {
+            synchronized (this) {
+                ret = this.compiled;
+                int current = this.version.get();
+                if (ret == null || ret.getVersion() != current) {
+                    ret = new CompiledMarkovGraph(this, current);
+                    this.compiled = ret;
+                }
+            } // SYNCH
+        }
+        return (ret);
+    }
+    
+    /**
+     * Return the last array-based snapshot of this graph without checking whether
+     * the graph was modified since it was built. The snapshot may be missing vertices
+     * or edges that were added afterwards, so callers must be able to fall back to
+     * the graph itself. This only compiles a new snapshot if one does not exist yet.
+     * @return
+     */
+    public CompiledMarkovGraph getLastCompiled() {
+        CompiledMarkovGraph ret = this.compiled;
+        if (ret == null) ret = this.getCompiled();
+        return (ret);
+    }
+    
+    /**
+     * Rebuild the array-based snapshot of this graph in a background thread if the graph
+     * was modified since the last snapshot was built. Only one rebuild is queued for a graph
+     * at a time. In the meantime, getLastCompiled() keeps returning the old snapshot.
+     */
+    public void compileInBackground() {
+        if (this.isCompiled() || this.compile_queued.compareAndSet(false, true) == false) return;
+        compiler.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Clear the flag first so that any change that happens while we
+                // are compiling will queue up another rebuild
+                compile_queued.set(false);
+                getCompiled();
+            }
+        });
+    }
+    
+    /**
+     * Returns true if the last snapshot of this graph is still current
+     * @return
+     */
+    public boolean isCompiled() {
+        CompiledMarkovGraph ret = this.compiled;
+        return (ret != null && ret.getVersion() == this.version.get());
+    }
+    
     // ----------------------------------------------------------------------------
     // STATISTICAL MODEL METHODS
     // ----------------------------------------------------------------------------
@@ -414,6 +536,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         this.calculateVertexProbabilities();
         
         this.recompute_count++;
+        this.version.incrementAndGet();
     }
 
     /**
@@ -665,7 +788,50 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         this.xact_count++;
         return (path);
     }
-    
+
+    /**
+     * Apply the path of a completed transaction to this graph. The path may come from
+     * a different MarkovGraph for the same procedure, so each of its vertices is mapped to
+     * the matching vertex in this graph (creating it if necessary). The instance hit counters
+     * for every vertex and edge along the path are incremented so that they will be
+     * folded into the totals the next time that calculateProbabilities() is called.
+     * <B>NOTE:</B> The path must contain every vertex that the txn visited, starting
+     * with the START vertex and ending with either the COMMIT or ABORT vertex
+     * @param path
+     * @return the vertices in this graph that the path was mapped to
+     */
+    public List<MarkovVertex> processPath(List<MarkovVertex> path) {
+        assert(path.isEmpty() == false);
+        assert(path.get(0).getType() == MarkovVertex.Type.START) : "Invalid path start " + path.get(0);
+        final List<MarkovVertex> ret = new ArrayList<MarkovVertex>(path.size());
+
+        MarkovVertex previous = null;
+        for (MarkovVertex v : path) {
+            MarkovVertex next = null;
+            if (v.isQueryVertex()) {
+                Statement catalog_stmt = v.getCatalogItem();
+                next = this.getVertex(catalog_stmt, v.getPartitions(), v.getPastPartitions(), v.getQueryInstanceIndex());
+                if (next == null) {
+                    next = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, v.getQueryInstanceIndex(), v.getPartitions(), v.getPastPartitions());
+                    this.addVertex(next);
+                }
+            } else {
+                next = this.getSpecialVertex(v.getType());
+            }
+            assert(next != null) : "Failed to map " + v + " into " + this;
+
+            if (previous != null) {
+                MarkovEdge e = this.addToEdge(previous, next);
+                assert(e != null);
+                e.incrementInstanceHits();
+            }
+            next.incrementInstanceHits();
+            ret.add(next);
+            previous = next;
+        } // FOR
+        return (ret);
+    }
+
     // ----------------------------------------------------------------------------
     // UTILITY METHODS
     // ----------------------------------------------------------------------------
@@ -684,6 +850,38 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         }
     }
     
+    /**
+     * Make a deep copy of this graph. Every vertex and edge is duplicated along with
+     * its counters and probabilities, so the new graph can be updated and recomputed
+     * without affecting this one. The caller is responsible for making sure that
+     * this graph is not modified while it is being copied. For a live graph, that
+     * means holding its lock, since that is what the TransactionEstimator holds
+     * when it adds new vertices and edges.
+     * @return
+     */
+    public MarkovGraph copy() {
+        MarkovGraph clone = new MarkovGraph(this.catalog_proc);
+        Map<MarkovVertex, MarkovVertex> xref = new HashMap<MarkovVertex, MarkovVertex>();
+        for (MarkovVertex v : this.getVertices()) {
+            MarkovVertex clone_v = new MarkovVertex(v);
+            clone_v.totalhits = v.totalhits;
+            clone_v.instancehits = v.instancehits;
+            clone_v.execution_time = v.execution_time;
+            clone.addVertex(clone_v);
+            xref.put(v, clone_v);
+        } // FOR
+        for (MarkovEdge e : this.getEdges()) {
+            MarkovEdge clone_e = new MarkovEdge(clone, e.totalhits, e.probability);
+            clone_e.instancehits = e.instancehits;
+            clone.addEdge(clone_e, xref.get(this.getSource(e)), xref.get(this.getDest(e)));
+        } // FOR
+        clone.xact_count = this.xact_count;
+        clone.xact_mispredict = this.xact_mispredict;
+        clone.xact_accuracy = this.xact_accuracy;
+        clone.recompute_count = this.recompute_count;
+        return (clone);
+    }
+
     /**
      * 
      * @return The number of xacts used to make this MarkovGraph
@@ -117,6 +117,21 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
      */
     private transient boolean cached = false;
 
+    /**
+     * The array-based snapshot of the MarkovGraph that we are traversing.
+     * This will be null if HStoreConf.site.markov_compiled is disabled
+     */
+    private CompiledMarkovGraph compiled;
+    
+    /**
+     * The offset of the last vertex that we selected in the compiled graph
+     */
+    private int compiled_offset = -1;
+    
+    private final long touched_mask[];
+    private final long read_mask[];
+    private final long write_mask[];
+
     // ----------------------------------------------------------------------------
     // TEMPORARY TRAVERSAL MEMBERS
     // ----------------------------------------------------------------------------
@@ -135,6 +150,12 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     
     private final transient Map<Statement, Object[]> stmt_param_arrays = new HashMap<Statement, Object[]>();
     
+    private final transient long past_mask[];
+    
+    private final transient long stmt_mask[];
+    
+    private transient boolean candidate_offsets[] = new boolean[16];
+    
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
     // ----------------------------------------------------------------------------
@@ -151,6 +172,13 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         for (int p = 0; p < this.num_partitions; p++) {
             this.all_partitions.add(p);
         } // FOR
+        
+        int num_words = CompiledMarkovGraph.getNumWords(this.num_partitions);
+        this.touched_mask = new long[num_words];
+        this.read_mask = new long[num_words];
+        this.write_mask = new long[num_words];
+        this.past_mask = new long[num_words];
+        this.stmt_mask = new long[num_words];
     }
     
     /**
@@ -165,6 +193,13 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.num_partitions = CatalogUtil.getNumberOfPartitions(markov.getDatabase());
         this.estimate = new MarkovEstimate(this.num_partitions);
         this.all_partitions = CatalogUtil.getAllPartitionIds(markov.getDatabase());
+        
+        int num_words = CompiledMarkovGraph.getNumWords(this.num_partitions);
+        this.touched_mask = new long[num_words];
+        this.read_mask = new long[num_words];
+        this.write_mask = new long[num_words];
+        this.past_mask = new long[num_words];
+        this.stmt_mask = new long[num_words];
 
         this.init(markov, t_estimator, base_partition, args);
     }
@@ -186,6 +221,13 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.correlations = this.t_estimator.getCorrelations();
         this.base_partition = base_partition;
         this.args = args;
+        // Use whatever snapshot was built last. Rebuilding it here would walk the entire
+        // graph at the start of every txn that comes after a change. The TransactionEstimator
+        // queues up a rebuild in the background when a txn that changed the graph finishes
+        if (HStoreConf.singleton().site.markov_compiled) {
+            this.compiled = markov.getLastCompiled();
+            this.compiled_offset = this.compiled.getStartOffset();
+        }
         
         assert(this.t_estimator.getCorrelations() != null);
         assert(this.base_partition >= 0);
@@ -222,6 +264,13 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.write_partitions.clear();
         this.past_partitions.clear();
         this.forced_vertices.clear();
+        
+        this.compiled = null;
+        this.compiled_offset = -1;
+        Arrays.fill(this.touched_mask, 0);
+        Arrays.fill(this.read_mask, 0);
+        Arrays.fill(this.write_mask, 0);
+        Arrays.fill(this.past_mask, 0);
     }
     
     public void setCached(boolean val) {
@@ -299,6 +348,113 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 //        return (arr);
 //    }
     
+    /**
+     * Map the ProcParameters of the current txn to the StmtParameters of the given Statement
+     * using our ParameterMappings, and then use the PartitionEstimator to figure out what partitions
+     * the query will touch. The partitions are stored in stmt_partitions.
+     * Returns false if we were unable to estimate the partitions for this Statement. If the
+     * PartitionEstimator failed, then this will also stop the traversal.
+     * @param catalog_stmt
+     * @param catalog_stmt_index
+     * @return
+     */
+    private boolean estimateStatementPartitions(Statement catalog_stmt, int catalog_stmt_index) {
+        // Get the correlation objects (if any) for next
+        // This is the only way we can predict what partitions we will touch
+        SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
+        if (param_correlations == null) {
+            if (t) {
+                LOG.warn("No parameter correlations for " + catalog_stmt.fullName() + "#" + catalog_stmt_index);
+                LOG.trace(this.correlations.debug(catalog_stmt));
+            }
+            return (false);
+        }
+        
+        // Go through the StmtParameters and map values from ProcParameters
+        StmtParameter stmt_params[] = this.getStatementParams(catalog_stmt);
+        Object stmt_args[] = new Object[stmt_params.length]; // this.getStatementParamsArray(catalog_stmt);
+        boolean stmt_args_set = false;
+        for (int i = 0; i < stmt_args.length; i++) {
+            StmtParameter catalog_stmt_param = stmt_params[i];
+            assert(catalog_stmt_param != null);
+            if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+            
+            SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
+            if (correlations == null || correlations.isEmpty()) {
+                if (t) LOG.trace("No parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true) + " from " + catalog_stmt.fullName() + "#" + catalog_stmt_index);
+                continue;
+            }
+            if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+    
+            // Special Case:
+            // If the number of possible Statements we could execute next is greater than one,
+            // then we need to prune our list by removing those Statements who have a StmtParameter
+            // that are correlated to a ProcParameter that doesn't exist (such as referencing an
+            // array element that is greater than the size of that current array)
+            // TODO: For now we are just going always pick the first Correlation 
+            // that comes back. Is there any choice that we would need to make in order
+            // to have a better prediction about what the transaction might do?
+            if (correlations.size() > 1) {
+                if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+                if (t) {
+                    int ctr = 0;
+                    for (ParameterMapping c : correlations) {
+                        LOG.trace("[" + (ctr++) + "] Correlation: " + c);
+                    } // FOR
+                }
+            }
+            for (ParameterMapping c : correlations) {
+                if (t) LOG.trace("Correlation: " + c);
+                ProcParameter catalog_proc_param = c.getProcParameter();
+                if (catalog_proc_param.getIsarray()) {
+                    Object proc_inner_args[] = (Object[])args[c.getProcParameter().getIndex()];
+                    if (t) LOG.trace(CatalogUtil.getDisplayName(c.getProcParameter(), true) + " is an array: " + Arrays.toString(proc_inner_args));
+                    
+                    // TODO: If this Correlation references an array element that is not available for this
+                    // current transaction, should we just skip this correlation or skip the entire query?
+                    if (proc_inner_args.length <= c.getProcParameterIndex()) {
+                        if (t) LOG.trace("Unable to map parameters: " +
+                                             "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
+                                             "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
+                        continue;
+                    }
+                    stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
+                    stmt_args_set = true;
+                    if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + "[" + c.getProcParameterIndex() + "] to " +
+                                         CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
+                } else {
+                    stmt_args[i] = args[c.getProcParameter().getIndex()];
+                    stmt_args_set = true;
+                    if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + " to " +
+                                         CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]"); 
+                }
+                break;
+            } // FOR (Correlation)
+        } // FOR (StmtParameter)
+            
+        // If we set any of the stmt_args in the previous step, then we can throw it
+        // to our good old friend the PartitionEstimator and see whether we can figure
+        // things out for this Statement
+        if (stmt_args_set) {
+            if (t) LOG.trace("Mapped StmtParameters: " + Arrays.toString(stmt_args));
+            this.stmt_partitions.clear();
+            try {
+                this.p_estimator.getAllPartitions(this.stmt_partitions, catalog_stmt, stmt_args, this.base_partition);
+            } catch (Exception ex) {
+                String msg = "Failed to calculate partitions for " + catalog_stmt + " using parameters " + Arrays.toString(stmt_args);
+                LOG.error(msg, ex);
+                this.stop();
+                return (false);
+            }
+            if (t) LOG.trace("Estimated Partitions for " + catalog_stmt + ": " + this.stmt_partitions);
+            return (this.stmt_partitions.isEmpty() == false);
+        }
+        
+        // Without any stmt_args, there's nothing we can do here...
+        if (t) LOG.trace("No stmt_args for " + catalog_stmt.fullName() + "#" + catalog_stmt_index + ". Skipping...");
+        return (false);
+    }
+    
     /**
      * This is the main part of where we figure out the path that this transaction will take
      */
@@ -306,6 +462,10 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
 //        if (element.isAbortVertex() || element.isCommitVertex()) {
 //            return;
 //        }
+        if (this.compiled != null) {
+            this.populate_children_compiled(children, element);
+            return;
+        }
         
         // Initialize temporary data
         this.candidates.clear();
@@ -364,121 +524,31 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             Integer catalog_stmt_index = pair.getSecond();
             if (t) LOG.trace("Examining " + pair);
             
-            // Get the correlation objects (if any) for next
-            // This is the only way we can predict what partitions we will touch
-            SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
-            if (param_correlations == null) {
-                if (t) {
-                    LOG.warn("No parameter correlations for " + pair);
-                    LOG.trace(this.correlations.debug(catalog_stmt));
-                }
+            if (this.estimateStatementPartitions(catalog_stmt, catalog_stmt_index) == false) {
+                if (this.isStopped()) return;
                 continue;
             }
             
-            // Go through the StmtParameters and map values from ProcParameters
-            StmtParameter stmt_params[] = this.getStatementParams(catalog_stmt);
-            Object stmt_args[] = new Object[stmt_params.length]; // this.getStatementParamsArray(catalog_stmt);
-            boolean stmt_args_set = false;
-            for (int i = 0; i < stmt_args.length; i++) {
-                StmtParameter catalog_stmt_param = stmt_params[i];
-                assert(catalog_stmt_param != null);
-                if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-                
-                SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
-                if (correlations == null || correlations.isEmpty()) {
-                    if (t) LOG.trace("No parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true) + " from " + pair);
-                    continue;
-                }
-                if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-        
-                // Special Case:
-                // If the number of possible Statements we could execute next is greater than one,
-                // then we need to prune our list by removing those Statements who have a StmtParameter
-                // that are correlated to a ProcParameter that doesn't exist (such as referencing an
-                // array element that is greater than the size of that current array)
-                // TODO: For now we are just going always pick the first Correlation 
-                // that comes back. Is there any choice that we would need to make in order
-                // to have a better prediction about what the transaction might do?
-                if (correlations.size() > 1) {
-                    if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-                    if (t) {
-                        int ctr = 0;
-                        for (ParameterMapping c : correlations) {
-                            LOG.trace("[" + (ctr++) + "] Correlation: " + c);
-                        } // FOR
+            // Now for this given list of partitions, find a Vertex in our next set
+            // that has the same partitions
+            this.candidate_edge = null;
+            for (MarkovVertex next : next_vertices) {
+                if (next.isEqual(catalog_stmt, this.stmt_partitions, this.past_partitions, catalog_stmt_index)) {
+                    // BINGO!!!
+                    assert(this.candidate_edge == null);
+                    try {
+                        this.candidate_edge = markov.findEdge(element, next);
+                    } catch (NullPointerException ex) {
+                        continue;
                     }
-                }
-                for (ParameterMapping c : correlations) {
-                    if (t) LOG.trace("Correlation: " + c);
-                    ProcParameter catalog_proc_param = c.getProcParameter();
-                    if (catalog_proc_param.getIsarray()) {
-                        Object proc_inner_args[] = (Object[])args[c.getProcParameter().getIndex()];
-                        if (t) LOG.trace(CatalogUtil.getDisplayName(c.getProcParameter(), true) + " is an array: " + Arrays.toString(proc_inner_args));
-                        
-                        // TODO: If this Correlation references an array element that is not available for this
-                        // current transaction, should we just skip this correlation or skip the entire query?
-                        if (proc_inner_args.length <= c.getProcParameterIndex()) {
-                            if (t) LOG.trace("Unable to map parameters: " +
-                                                 "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
-                                                 "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
-                            continue;
-                        }
-                        stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + "[" + c.getProcParameterIndex() + "] to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
-                    } else {
-                        stmt_args[i] = args[c.getProcParameter().getIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + " to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]"); 
-                    }
-                    break;
-                } // FOR (Correlation)
-            } // FOR (StmtParameter)
-                
-            // If we set any of the stmt_args in the previous step, then we can throw it
-            // to our good old friend the PartitionEstimator and see whether we can figure
-            // things out for this Statement
-            if (stmt_args_set) {
-                if (t) LOG.trace("Mapped StmtParameters: " + Arrays.toString(stmt_args));
-                this.stmt_partitions.clear();
-                try {
-                    this.p_estimator.getAllPartitions(this.stmt_partitions, catalog_stmt, stmt_args, this.base_partition);
-                } catch (Exception ex) {
-                    String msg = "Failed to calculate partitions for " + catalog_stmt + " using parameters " + Arrays.toString(stmt_args);
-                    LOG.error(msg, ex);
-                    this.stop();
-                    return;
-                }
-                if (t) LOG.trace("Estimated Partitions for " + catalog_stmt + ": " + this.stmt_partitions);
-                
-                // Now for this given list of partitions, find a Vertex in our next set
-                // that has the same partitions
-                if (this.stmt_partitions != null && !this.stmt_partitions.isEmpty()) {
-                    this.candidate_edge = null;
-                    for (MarkovVertex next : next_vertices) {
-                        if (next.isEqual(catalog_stmt, this.stmt_partitions, this.past_partitions, catalog_stmt_index)) {
-                            // BINGO!!!
-                            assert(this.candidate_edge == null);
-                            try {
-                                this.candidate_edge = markov.findEdge(element, next);
-                            } catch (NullPointerException ex) {
-                                continue;
-                            }
-                            assert(this.candidate_edge != null);
+                    assert(this.candidate_edge != null);
 
-                            this.candidates.add(this.candidate_edge);
-                            if (t) LOG.trace("Found candidate edge to " + next + " [" + this.candidate_edge + "]");
-                            break; // ???
-                        }
-                    } // FOR (Vertex
-                    if (candidate_edge == null && t) LOG.trace("Failed to find candidate edge from " + element + " to " + pair);
+                    this.candidates.add(this.candidate_edge);
+                    if (t) LOG.trace("Found candidate edge to " + next + " [" + this.candidate_edge + "]");
+                    break; // ???
                 }
-            // Without any stmt_args, there's nothing we can do here...
-            } else {
-                if (t) LOG.trace("No stmt_args for " + pair + ". Skipping...");
-            } // IF
+            } // FOR (Vertex
+            if (candidate_edge == null && t) LOG.trace("Failed to find candidate edge from " + element + " to " + pair);
         } // FOR
         
         // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set, then we'll just
@@ -593,6 +663,190 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         }
     }
     
+    /**
+     * Array-based version of populate_children() that uses the CompiledMarkovGraph
+     * for the successor lookups and the partition comparisons. The outbound edges in the
+     * compiled graph are already sorted by their probability, so the first candidate edge
+     * that we find is the one that we will take.
+     */
+    private void populate_children_compiled(Children<MarkovVertex> children, MarkovVertex element) {
+        final CompiledMarkovGraph compiled = this.compiled;
+        int offset = this.compiled_offset;
+        if (offset < 0 || compiled.getVertex(offset) != element) {
+            offset = compiled.getVertexOffset(element);
+            if (offset < 0) {
+                if (t) LOG.trace("No compiled vertex exists for " + element + ". Stopping...");
+                this.stop();
+                return;
+            }
+        }
+        CompiledMarkovGraph.addBits(this.past_mask, compiled.getPartitions(offset));
+        if (t) LOG.trace("Current Vertex: " + element);
+        
+        Statement cur_catalog_stmt = compiled.getStatement(offset);
+        int cur_catalog_stmt_index = compiled.getQueryInstanceIndex(offset);
+        int e_start = compiled.getEdgeStart(offset);
+        int e_end = compiled.getEdgeEnd(offset);
+        int num_edges = e_end - e_start;
+        if (this.candidate_offsets.length < num_edges) {
+            this.candidate_offsets = new boolean[num_edges * 2];
+        } else {
+            Arrays.fill(this.candidate_offsets, 0, num_edges, false);
+        }
+        int num_candidates = 0;
+        
+        // The COMMIT/ABORT vertices are always candidates. For each unique Statement+StatementInstanceIndex
+        // pair, figure out which partitions the query will go to and then find the matching vertex
+        for (int e = e_start; e < e_end; e++) {
+            int next = compiled.getEdgeDest(e);
+            if (compiled.isQueryVertex(next) == false) {
+                this.candidate_offsets[e - e_start] = true;
+                num_candidates++;
+                continue;
+            }
+            Statement catalog_stmt = compiled.getStatement(next);
+            int catalog_stmt_index = compiled.getQueryInstanceIndex(next);
+            
+            // Sanity Check: If this vertex is the same Statement as the current vertex,
+            // then its instance counter must be greater than the current vertex's counter
+            assert(catalog_stmt.equals(cur_catalog_stmt) == false || catalog_stmt_index > cur_catalog_stmt_index) :
+                String.format("%s[#%d] > %s[#%d]",
+                              catalog_stmt.fullName(), catalog_stmt_index,
+                              cur_catalog_stmt.fullName(), cur_catalog_stmt_index);
+            
+            // Skip this pair if we already examined it for an earlier edge
+            boolean seen = false;
+            for (int prev_e = e_start; prev_e < e; prev_e++) {
+                int prev = compiled.getEdgeDest(prev_e);
+                if (compiled.isQueryVertex(prev) &&
+                    compiled.getQueryInstanceIndex(prev) == catalog_stmt_index &&
+                    compiled.getStatement(prev) == catalog_stmt) {
+                    seen = true;
+                    break;
+                }
+            } // FOR
+            if (seen) continue;
+            
+            if (t) LOG.trace(String.format("Examining %s #%d", catalog_stmt.fullName(), catalog_stmt_index));
+            if (this.estimateStatementPartitions(catalog_stmt, catalog_stmt_index) == false) {
+                if (this.isStopped()) return;
+                continue;
+            }
+            CompiledMarkovGraph.setBits(this.stmt_mask, this.stmt_partitions);
+            
+            // Now for this given list of partitions, find a vertex in our next set
+            // that has the same partitions. Any earlier edge would have been seen above.
+            int found = -1;
+            for (int next_e = e; next_e < e_end; next_e++) {
+                if (compiled.isEqual(compiled.getEdgeDest(next_e), catalog_stmt, catalog_stmt_index, this.stmt_mask, this.past_mask)) {
+                    found = next_e;
+                    break;
+                }
+            } // FOR
+            if (found >= 0) {
+                if (this.candidate_offsets[found - e_start] == false) {
+                    this.candidate_offsets[found - e_start] = true;
+                    num_candidates++;
+                }
+                if (t) LOG.trace("Found candidate edge to " + compiled.getVertex(compiled.getEdgeDest(found)) + " [" + compiled.getEdge(found) + "]");
+            } else if (t) {
+                LOG.trace(String.format("Failed to find candidate edge from %s to %s #%d", element, catalog_stmt.fullName(), catalog_stmt_index));
+            }
+        } // FOR
+        
+        // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set, then we'll just
+        // grab all of the edges from our currect vertex
+        boolean was_forced = false;
+        if (num_candidates == 0 && this.force_traversal) {
+            if (t) LOG.trace("No candidate edges were found. Force travesal flag is set, so taking all");
+            Arrays.fill(this.candidate_offsets, 0, num_edges, true);
+            num_candidates = num_edges;
+            was_forced = true;
+        }
+        if (num_candidates == 0) {
+            if (t) LOG.trace("No matching children found. We have to stop...");
+            return;
+        }
+        
+        // Our confidence is based on the total sum of the probabilities for all of the
+        // edges that we could have taken in comparison to the one that we did take
+        int next_e = -1;
+        double total_probability = 0.0;
+        for (int e = e_start; e < e_end; e++) {
+            if (this.candidate_offsets[e - e_start] == false) continue;
+            if (next_e < 0) next_e = e;
+            total_probability += compiled.getEdgeProbability(e);
+        } // FOR
+        int next_offset = compiled.getEdgeDest(next_e);
+        MarkovVertex next_vertex = compiled.getVertex(next_offset);
+        children.addAfter(next_vertex);
+        this.compiled_offset = next_offset;
+        if (was_forced) this.forced_vertices.add(next_vertex);
+        if (d) {
+            LOG.debug("CANDIDATES:");
+            for (int e = e_start, i = 0; e < e_end; e++) {
+                if (this.candidate_offsets[e - e_start] == false) continue;
+                MarkovVertex v = compiled.getVertex(compiled.getEdgeDest(e));
+                LOG.debug(String.format("  [%d] %s  --[%s]--> %s%s",
+                                        i++, element, compiled.getEdge(e), v, (e == next_e ? " <== SELECTED" : "")));
+            } // FOR
+        }
+        this.confidence *= compiled.getEdgeProbability(next_e) / total_probability;
+        
+        // Update our list of partitions touched by this transaction
+        float inverse_prob = 1.0f - this.confidence;
+        boolean is_read = (compiled.getStatement(next_offset).getQuerytype() == QueryType.SELECT.getValue());
+        for (int p : compiled.getPartitions(next_offset)) {
+            // READ
+            if (is_read) {
+                if (CompiledMarkovGraph.isSet(this.read_mask, p) == false) {
+                    if (t) LOG.trace(String.format("First time partition %d is read from! Setting read-only probability to %.03f", p, this.confidence));
+                    this.estimate.setReadOnlyProbability(p, this.confidence);
+                    if (CompiledMarkovGraph.isSet(this.touched_mask, p) == false) {
+                        this.estimate.setDoneProbability(p, inverse_prob);
+                    }
+                    CompiledMarkovGraph.set(this.read_mask, p);
+                    this.read_partitions.add(p);
+                }
+            // WRITE
+            } else {
+                if (CompiledMarkovGraph.isSet(this.write_mask, p) == false) {
+                    if (t) LOG.trace(String.format("First time partition %d is written to! Setting write probability to %.03f", p, this.confidence));
+                    this.estimate.setReadOnlyProbability(p, inverse_prob);
+                    this.estimate.setWriteProbability(p, this.confidence);
+                    if (CompiledMarkovGraph.isSet(this.touched_mask, p) == false) {
+                        this.estimate.setDoneProbability(p, inverse_prob);
+                    }
+                    CompiledMarkovGraph.set(this.write_mask, p);
+                    this.write_partitions.add(p);
+                }
+            }
+            this.estimate.incrementTouchedCounter(p);
+            if (CompiledMarkovGraph.isSet(this.touched_mask, p) == false) {
+                CompiledMarkovGraph.set(this.touched_mask, p);
+                this.touched_partitions.add(p);
+            }
+        } // FOR
+        
+        // If this is the first time that the path touched more than one partition, then we need to set the single-partition
+        // probability to be the confidence coefficient thus far
+        if (this.touched_partitions.size() > 1 && this.estimate.isSingleSitedProbabilitySet() == false) {
+            if (t) LOG.trace("Setting the single-partition probability to current confidence [" + this.confidence + "]");
+            this.estimate.setSingleSitedProbability(inverse_prob);
+        }
+        
+        // Keep track of the highest abort probability that we've seen thus far
+        if (compiled.isQueryVertex(next_offset) && compiled.getAbortProbability(next_offset) > this.greatest_abort) {
+            this.greatest_abort = compiled.getAbortProbability(next_offset);
+        }
+        
+        if (d) {
+            LOG.debug("TOTAL:    " + total_probability);
+            LOG.debug("SELECTED: " + next_vertex + " [confidence=" + this.confidence + "]");
+            LOG.debug(StringUtil.repeat("-", 100));
+        }
+    }
+    
     @Override
     protected void callback(MarkovVertex element) {
         if (element.isQueryVertex() == false) {
@@ -26,6 +26,7 @@ import edu.brown.graphs.GraphvizExport;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.hstore.dtxn.AbstractTransaction;
 import edu.brown.hstore.interfaces.Loggable;
+import edu.brown.hstore.util.MarkovMaintenanceThread;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.mappings.ParameterMappingsSet;
@@ -84,10 +85,16 @@ public class TransactionEstimator implements Loggable {
     /**
      * We can maintain a cache of the last successful MarkovPathEstimator per MarkovGraph
      */
-    private final Map<MarkovGraph, MarkovPathEstimator> cached_estimators = new HashMap<MarkovGraph, MarkovPathEstimator>();
+    private final Map<MarkovGraph, MarkovPathEstimator> cached_estimators = new ConcurrentHashMap<MarkovGraph, MarkovPathEstimator>();
     
     private transient boolean enable_recomputes = false;
     
+    /**
+     * If this is set, then the counters for our MarkovGraphs are updated
+     * and recomputed in the background by this thread instead of inline
+     */
+    private transient MarkovMaintenanceThread maintenance = null;
+    
     // ----------------------------------------------------------------------------
     // TRANSACTION STATE
     // ----------------------------------------------------------------------------
@@ -112,8 +119,12 @@ public class TransactionEstimator implements Loggable {
         private int num_estimates;
         
         private transient MarkovVertex current;
+        /** Set to true if the txn jumped over vertices in its actual path using the batch end cache */
+        private transient boolean skipped_vertices = false;
         private transient final Set<Integer> cache_past_partitions = new TreeSet<Integer>();
         private transient final Set<Integer> cache_last_partitions = new TreeSet<Integer>();
+        private transient final long compiled_partitions[];
+        private transient final long compiled_touched[];
         
         /**
          * State Factory
@@ -139,6 +150,8 @@ public class TransactionEstimator implements Loggable {
          */
         private State(int num_partitions) {
             this.num_partitions = num_partitions;
+            this.compiled_partitions = new long[CompiledMarkovGraph.getNumWords(num_partitions)];
+            this.compiled_touched = new long[this.compiled_partitions.length];
         }
         
         public void init(long txn_id, int base_partition, MarkovGraph markov, MarkovPathEstimator initial_estimator, long start_time) {
@@ -189,6 +202,7 @@ public class TransactionEstimator implements Loggable {
             this.touched_partitions.clear();
             this.query_instance_cnts.clear();
             this.current = null;
+            this.skipped_vertices = false;
             this.initial_estimator = null;
             this.initial_estimate = null;
         }
@@ -378,6 +392,38 @@ public class TransactionEstimator implements Loggable {
        this.enable_recomputes = true;
     }
     
+    /**
+     * Use the given thread to maintain the MarkovGraphs for this TransactionEstimator
+     * in the background. The counters for the graphs will no longer be updated
+     * when transactions finish, and they will never be recomputed inline.
+     * @param maintenance
+     */
+    public void setMaintenanceThread(MarkovMaintenanceThread maintenance) {
+        this.maintenance = maintenance;
+    }
+    
+    public MarkovMaintenanceThread getMaintenanceThread() {
+        return (this.maintenance);
+    }
+    
+    /**
+     * Replace the live MarkovGraph with a new graph for the same procedure.
+     * New transactions will use the new graph, while any transactions that are
+     * already running will continue to use the old one until they finish.
+     * Returns false if the old graph is not stored in our MarkovGraphsContainer
+     * (e.g., because it is shared with another TransactionEstimator that already swapped it)
+     * @param orig_markov
+     * @param new_markov
+     * @return
+     */
+    public boolean swapMarkovGraph(MarkovGraph orig_markov, MarkovGraph new_markov) {
+        boolean ret = (this.markovs != null && this.markovs.replace(orig_markov, new_markov));
+        this.cached_estimators.remove(orig_markov);
+        if (d && ret) LOG.debug(String.format("Swapped in new %s [orig=%d, new=%d]",
+                                              new_markov, orig_markov.hashCode(), new_markov.hashCode()));
+        return (ret);
+    }
+    
     public ParameterMappingsSet getCorrelations() {
         return this.correlations;
     }
@@ -610,6 +656,7 @@ public class TransactionEstimator implements Loggable {
                 
                 // Update the state information
                 state.setCurrent(next_v, next_e);
+                state.skipped_vertices = true;
                 state.touched_partitions.addAll(state.cache_last_partitions);
                 state.touched_partitions.addAll(state.cache_past_partitions);
 //                batch_cache_success.incrementAndGet();
@@ -640,7 +687,7 @@ public class TransactionEstimator implements Loggable {
         
         // Once the workload shifts we detect it and trigger this method. Recomputes
         // the graph with the data we collected with the current workload method.
-        if (this.enable_recomputes && markov.shouldRecompute(this.txn_count.get(), RECOMPUTE_TOLERANCE)) {
+        if (this.enable_recomputes && this.maintenance == null && markov.shouldRecompute(this.txn_count.get(), RECOMPUTE_TOLERANCE)) {
             markov.calculateProbabilities();
         }
         return (estimate);
@@ -708,11 +755,33 @@ public class TransactionEstimator implements Loggable {
             // Update counters
             // We want to update the counters for the entire path right here so that
             // nobody gets incomplete numbers if they recompute probabilities
-            for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
-            for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
+            // If we have a maintenance thread, then it will do this on its own copy of the graph
+            if (this.maintenance == null) {
+                for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
+                for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
+            }
             next_v.addInstanceTime(txn_id, s.getExecutionTimeOffset(timestamp));
         } // SYNCH
         
+        // If this txn added new vertices or edges, then the graph's version has changed and
+        // its array-based snapshot is stale. We don't want to rebuild it while holding the
+        // graph's lock, so we'll let the background thread do it. The MarkovPathEstimators for the
+        // next txns will just use the last snapshot without checking whether it is current
+        if (hstore_conf.site.markov_compiled && g.isCompiled() == false) {
+            if (t) LOG.trace(String.format("Queuing rebuild of compiled snapshot of %s after txn #%d", g, txn_id));
+            g.compileInBackground();
+        }
+        
+        // Hand the path off to the maintenance thread. We can't use the path if the
+        // txn skipped over vertices using the batch end cache, so we'll just drop it
+        if (this.maintenance != null) {
+            if (s.skipped_vertices == false) {
+                this.maintenance.queue(g, s.actual_path);
+            } else {
+                this.maintenance.drop();
+            }
+        }
+        
         // Store this as the last accurate MarkovPathEstimator for this graph
         if (hstore_conf.site.markov_path_caching && this.cached_estimators.containsKey(s.markov) == false && s.initial_estimate.isValid()) {
             synchronized (this.cached_estimators) {
@@ -754,35 +823,62 @@ public class TransactionEstimator implements Loggable {
         assert(current != null);
         MarkovVertex next_v = null;
         MarkovEdge next_e = null;
+        
+        // Check the array-based snapshot of the graph first. We don't force it to be rebuilt
+        // here because the snapshot may be stale while the graph is still learning new vertices.
+        // If the vertex that we need is not in there, then we fall back to searching the graph directly
+        if (hstore_conf.site.markov_compiled) {
+            CompiledMarkovGraph compiled = markov.getLastCompiled();
+            int offset = compiled.getVertexOffset(current);
+            if (offset >= 0) {
+                CompiledMarkovGraph.setBits(state.compiled_partitions, partitions);
+                CompiledMarkovGraph.setBits(state.compiled_touched, state.touched_partitions);
+                int e = compiled.findEdge(offset, catalog_stmt, queryInstanceIndex, state.compiled_partitions, state.compiled_touched);
+                if (e >= 0) {
+                    next_v = compiled.getVertex(compiled.getEdgeDest(e));
+                    next_e = compiled.getEdge(e);
+                    if (t) LOG.trace("Found next vertex " + next_v + " in compiled graph for Txn #" + state.txn_id);
+                }
+            }
+        }
 
         // Synchronize on the single vertex so that it's more fine-grained than the entire graph
-        synchronized (current) {
-            Collection<MarkovEdge> edges = markov.getOutEdges(current); 
-            if (t) LOG.trace("Examining " + edges.size() + " edges from " + current + " for Txn #" + state.txn_id);
-            for (MarkovEdge e : edges) {
-                MarkovVertex v = markov.getDest(e);
-                if (v.isEqual(catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex)) {
-                    if (t) LOG.trace("Found next vertex " + v + " for Txn #" + state.txn_id);
-                    next_v = v;
+        if (next_v == null) {
+            synchronized (current) {
+                MarkovEdge e = this.findNextEdge(markov, current, catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex);
+                if (e != null) {
+                    if (t) LOG.trace("Found next vertex " + markov.getDest(e) + " for Txn #" + state.txn_id);
+                    next_v = markov.getDest(e);
                     next_e = e;
-                    break;
                 }
-            } // FOR
+            } // SYNCH
+        }
         
-            // If we fail to find the next vertex, that means we have to dynamically create a new 
-            // one. The graph is self-managed, so we don't need to worry about whether 
-            // we need to recompute probabilities.
-            if (next_v == null) {
-                next_v = new MarkovVertex(catalog_stmt,
-                                    MarkovVertex.Type.QUERY,
-                                    queryInstanceIndex,
-                                    partitions,
-                                    state.touched_partitions);
-                markov.addVertex(next_v);
-                next_e = markov.addToEdge(current, next_v);
-                if (t) LOG.trace("Created new edge/vertex from " + state.getCurrent() + " for Txn #" + state.txn_id);
-            }
-        } // SYNCH
+        // If we fail to find the next vertex, that means we have to dynamically create a new 
+        // one. The graph is self-managed, so we don't need to worry about whether 
+        // we need to recompute probabilities. Anything that changes the structure of the graph
+        // has to hold the graph's lock so that the MarkovMaintenanceThread can copy it safely.
+        // We always take the graph's lock before the vertex's, so we have to look again in
+        // case somebody else added the vertex in the meantime
+        if (next_v == null) {
+            synchronized (markov) {
+                synchronized (current) {
+                    next_e = this.findNextEdge(markov, current, catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex);
+                    if (next_e != null) {
+                        next_v = markov.getDest(next_e);
+                    } else {
+                        next_v = new MarkovVertex(catalog_stmt,
+                                            MarkovVertex.Type.QUERY,
+                                            queryInstanceIndex,
+                                            partitions,
+                                            state.touched_partitions);
+                        markov.addVertex(next_v);
+                        next_e = markov.addToEdge(current, next_v);
+                        if (t) LOG.trace("Created new edge/vertex from " + state.getCurrent() + " for Txn #" + state.txn_id);
+                    }
+                } // SYNCH
+            } // SYNCH
+        }
 
         // Update the counters and other info for the next vertex and edge
         next_v.addInstanceTime(state.txn_id, state.getExecutionTimeOffset());
@@ -797,6 +893,30 @@ public class TransactionEstimator implements Loggable {
     // HELPER METHODS
     // ----------------------------------------------------------------------------
     
+    /**
+     * Return the edge from the current vertex to the vertex for the given query,
+     * or null if the graph does not have one yet. The caller must hold the current vertex's lock
+     * @param markov
+     * @param current
+     * @param catalog_stmt
+     * @param partitions
+     * @param touched_partitions
+     * @param queryInstanceIndex
+     * @return
+     */
+    private MarkovEdge findNextEdge(MarkovGraph markov, MarkovVertex current, Statement catalog_stmt,
+                                    Collection<Integer> partitions, Collection<Integer> touched_partitions, int queryInstanceIndex) {
+        Collection<MarkovEdge> edges = markov.getOutEdges(current); 
+        if (t) LOG.trace("Examining " + edges.size() + " edges from " + current);
+        for (MarkovEdge e : edges) {
+            MarkovVertex v = markov.getDest(e);
+            if (v.isEqual(catalog_stmt, partitions, touched_partitions, queryInstanceIndex)) {
+                return (e);
+            }
+        } // FOR
+        return (null);
+    }
+    
     @SuppressWarnings("unchecked")
     public State processTransactionTrace(TransactionTrace txn_trace) throws Exception {
         long txn_id = txn_trace.getTransactionId();
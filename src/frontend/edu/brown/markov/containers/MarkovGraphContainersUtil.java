@@ -367,6 +367,12 @@ public abstract class MarkovGraphContainersUtil {
         LOG.info(String.format("Loading in MarkovGraphContainers from '%s' [procedures=%s, ids=%s]",
                                file.getName(), (procedures == null ? "*ALL*" : CatalogUtil.debug(procedures)), (ids == null ? "*ALL*" : ids)));
         
+        // Binary files are memory-mapped and their graphs are only deserialized when they are needed
+        if (MarkovGraphsBinaryFile.isBinaryFile(file)) {
+            if (debug.get()) LOG.debug(String.format("'%s' is a binary MarkovGraphsContainer file", file.getName()));
+            return (new MarkovGraphsBinaryFile(catalog_db, file).load(procedures, ids));
+        }
+        
         try {
             // File Format: One PartitionId per line, each with its own MarkovGraphsContainer 
             BufferedReader in = FileUtil.getReader(file);
@@ -0,0 +1,465 @@
+package edu.brown.markov.containers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.utils.Pair;
+
+import edu.brown.catalog.CatalogKey;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovUtil;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.ClassUtil;
+
+/**
+ * Compact binary file format for MarkovGraphsContainers. The file starts with an index
+ * of every MarkovGraph that it contains, followed by the serialized graphs. At start-up
+ * we only read the index and memory-map the rest of the file. Each graph is not
+ * deserialized until the first time that somebody asks its MarkovGraphsContainer for it.
+ * <PRE>
+ * File Format:
+ *   int MAGIC, int VERSION, int NUM_CONTAINERS
+ *   For each container:
+ *     int ID, string CLASSNAME, int NUM_GRAPHS
+ *     For each graph: int GRAPH_ID, string PROCEDURE_KEY, long OFFSET, int LENGTH
+ *   For each graph (OFFSET is relative to the end of the index):
+ *     int GRAPH_ID, int NUM_VERTICES, VERTEX[], int NUM_EDGES, EDGE[]
+ *   VERTEX: byte TYPE, string STATEMENT, int COUNTER, int TOTALHITS, long EXECUTION_TIME,
+ *           int[] PARTITIONS, int[] PAST_PARTITIONS, float[][] PROBABILITIES
+ *   EDGE:   int SOURCE, int DEST, int TOTALHITS, float PROBABILITY
+ * </PRE>
+ * The GRAPH_ID in the index is the id that the graph is stored under inside of its
+ * container, which is not always the same as the container's id (e.g., TPCCMarkovGraphsContainer).
+ * All strings are stored as an int length followed by their UTF-8 bytes. All arrays
+ * are stored as an int length followed by their elements.
+ * Use the main() method to convert a JSON MarkovGraphsContainer file into this format.
+ * @see MarkovGraphContainersUtil#load(Database, String, Collection, Collection)
+ */
+public class MarkovGraphsBinaryFile {
+    private static final Logger LOG = Logger.getLogger(MarkovGraphsBinaryFile.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /** "HMKV" */
+    public static final int MAGIC = 0x484D4B56;
+    public static final int VERSION = 1;
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * The location of a single serialized MarkovGraph in the file
+     */
+    public static class Entry {
+        private final int id;
+        private final Procedure catalog_proc;
+        private final long offset;
+        private final int length;
+
+        private Entry(int id, Procedure catalog_proc, long offset, int length) {
+            this.id = id;
+            this.catalog_proc = catalog_proc;
+            this.offset = offset;
+            this.length = length;
+        }
+        public int getId() {
+            return (this.id);
+        }
+        public Procedure getProcedure() {
+            return (this.catalog_proc);
+        }
+        @Override
+        public String toString() {
+            return String.format("%s[id=%d, offset=%d, length=%d]", this.catalog_proc.getName(), this.id, this.offset, this.length);
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // DATA MEMBERS
+    // ----------------------------------------------------------------------------
+
+    private final Database catalog_db;
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int data_start;
+
+    /** Container Id -> Container ClassName */
+    private final Map<Integer, String> container_classes = new HashMap<Integer, String>();
+    /** Container Id -> Entries */
+    private final Map<Integer, List<Entry>> entries = new HashMap<Integer, List<Entry>>();
+
+    // ----------------------------------------------------------------------------
+    // CONSTRUCTOR
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Memory-map the given file and read in its index
+     * @param catalog_db
+     * @param file
+     * @throws IOException
+     */
+    public MarkovGraphsBinaryFile(Database catalog_db, File file) throws IOException {
+        this.catalog_db = catalog_db;
+        this.file = file;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The MarkovGraphsContainer file '" + file + "' is too large to be memory-mapped");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            this.buffer = mapped.asReadOnlyBuffer();
+        } finally {
+            raf.close();
+        }
+
+        ByteBuffer buf = this.buffer.duplicate();
+        int magic = buf.getInt();
+        if (magic != MAGIC) {
+            throw new IOException("The file '" + file + "' is not a binary MarkovGraphsContainer file");
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported MarkovGraphsContainer file version %d in '%s'", version, file));
+        }
+        int num_containers = buf.getInt();
+        for (int i = 0; i < num_containers; i++) {
+            Integer id = Integer.valueOf(buf.getInt());
+            this.container_classes.put(id, readString(buf));
+            int num_graphs = buf.getInt();
+            List<Entry> id_entries = new ArrayList<Entry>(num_graphs);
+            for (int j = 0; j < num_graphs; j++) {
+                int inner_id = buf.getInt();
+                String proc_key = readString(buf);
+                long offset = buf.getLong();
+                int length = buf.getInt();
+                Procedure catalog_proc = CatalogKey.getFromKey(catalog_db, proc_key, Procedure.class);
+                if (catalog_proc == null) {
+                    throw new IOException(String.format("Invalid Procedure '%s' in MarkovGraphsContainer file '%s'", proc_key, file));
+                }
+                id_entries.add(new Entry(inner_id, catalog_proc, offset, length));
+            } // FOR
+            this.entries.put(id, id_entries);
+        } // FOR
+        this.data_start = buf.position();
+        if (debug.get()) LOG.debug(String.format("Opened %s with %d containers [size=%d, index=%d]",
+                                                 file, num_containers, this.buffer.capacity(), this.data_start));
+    }
+
+    // ----------------------------------------------------------------------------
+    // LOAD METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given file is in our binary format
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryFile(File file) {
+        if (file.isFile() == false || file.length() < 4) return (false);
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return (in.readInt() == MAGIC);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return (false);
+        }
+    }
+
+    public File getFile() {
+        return (this.file);
+    }
+
+    public Collection<Integer> getContainerIds() {
+        return (this.entries.keySet());
+    }
+
+    /**
+     * Create the MarkovGraphsContainers for the graphs in this file. None of the
+     * graphs are deserialized here. Each one will be materialized by its container
+     * the first time that it is needed.
+     * @param procedures - the procedures to include (null for all)
+     * @param ids - the container ids to include (null for all)
+     * @return
+     */
+    public Map<Integer, MarkovGraphsContainer> load(Collection<Procedure> procedures, Collection<Integer> ids) {
+        final Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
+        for (Integer id : this.entries.keySet()) {
+            // Same rules as MarkovGraphContainersUtil.load()
+            if (id.equals(MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID) == false && ids != null && ids.contains(id) == false) {
+                continue;
+            }
+            String className = this.container_classes.get(id);
+            MarkovGraphsContainer markovs = ClassUtil.newInstance(className, new Object[]{procedures},
+                                                                             new Class<?>[]{Collection.class});
+            assert(markovs != null);
+            for (Entry entry : this.entries.get(id)) {
+                if (procedures != null && procedures.contains(entry.catalog_proc) == false) continue;
+                markovs.addUnloaded(this, entry);
+            } // FOR
+            if (debug.get()) LOG.debug(String.format("Created %s for id %d [unloaded=%d]",
+                                                     markovs.getClass().getSimpleName(), id, this.entries.get(id).size()));
+            ret.put(id, markovs);
+        } // FOR
+        return (ret);
+    }
+
+    /**
+     * Deserialize the MarkovGraph at the given location in this file
+     * @param entry
+     * @return
+     */
+    public MarkovGraph materialize(Entry entry) {
+        if (debug.get()) LOG.debug("Materializing MarkovGraph " + entry);
+        ByteBuffer buf = this.buffer.duplicate();
+        buf.position(this.data_start + (int)entry.offset);
+        buf.limit(buf.position() + entry.length);
+
+        Procedure catalog_proc = entry.catalog_proc;
+        MarkovGraph markov = new MarkovGraph(catalog_proc);
+        markov.setGraphId(buf.getInt());
+
+        MarkovVertex.Type vtypes[] = MarkovVertex.Type.values();
+        int num_vertices = buf.getInt();
+        MarkovVertex vertices[] = new MarkovVertex[num_vertices];
+        for (int i = 0; i < num_vertices; i++) {
+            MarkovVertex.Type vtype = vtypes[buf.get()];
+            String stmt_name = readString(buf);
+            int counter = buf.getInt();
+            int totalhits = buf.getInt();
+            long execution_time = buf.getLong();
+            List<Integer> partitions = readIntegers(buf);
+            List<Integer> past_partitions = readIntegers(buf);
+
+            Statement catalog_stmt = null;
+            if (vtype == MarkovVertex.Type.QUERY) {
+                catalog_stmt = catalog_proc.getStatements().get(stmt_name);
+                if (catalog_stmt == null) {
+                    throw new RuntimeException(String.format("Invalid Statement '%s' for %s in MarkovGraphsContainer file '%s'",
+                                                             stmt_name, catalog_proc.getName(), this.file));
+                }
+            } else {
+                catalog_stmt = MarkovUtil.getSpecialStatement(this.catalog_db, vtype);
+            }
+            MarkovVertex v = new MarkovVertex(catalog_stmt, vtype, counter, partitions, past_partitions);
+            v.totalhits = totalhits;
+            v.execution_time = execution_time;
+            int num_probabilities = buf.getInt();
+            for (int p = 0; p < num_probabilities; p++) {
+                float values[] = new float[buf.getInt()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = buf.getFloat();
+                } // FOR
+                v.probabilities[p] = values;
+            } // FOR
+            markov.addVertex(v);
+            vertices[i] = v;
+        } // FOR
+
+        int num_edges = buf.getInt();
+        for (int i = 0; i < num_edges; i++) {
+            MarkovVertex v0 = vertices[buf.getInt()];
+            MarkovVertex v1 = vertices[buf.getInt()];
+            int totalhits = buf.getInt();
+            float probability = buf.getFloat();
+            markov.addEdge(new MarkovEdge(markov, totalhits, probability), v0, v1);
+        } // FOR
+        assert(buf.remaining() == 0) : "Unexpected trailing bytes for " + entry;
+        markov.buildCache();
+        if (trace.get()) LOG.trace(String.format("Materialized %s [vertices=%d, edges=%d]", markov, num_vertices, num_edges));
+        return (markov);
+    }
+
+    // ----------------------------------------------------------------------------
+    // SAVE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write out the given MarkovGraphsContainers to a file in our binary format
+     * @param markovs
+     * @param output_path
+     * @throws IOException
+     */
+    public static void save(Map<Integer, ? extends MarkovGraphsContainer> markovs, String output_path) throws IOException {
+        LOG.info("Writing out binary MarkovGraphsContainers to '" + output_path + "'");
+
+        // Serialize all of the graphs first so that we know where they will be in the file
+        SortedSet<Integer> sorted = new TreeSet<Integer>(markovs.keySet());
+        ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream graph_bytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(index_bytes);
+        DataOutputStream graphs = new DataOutputStream(graph_bytes);
+
+        index.writeInt(MAGIC);
+        index.writeInt(VERSION);
+        index.writeInt(sorted.size());
+        for (Integer id : sorted) {
+            MarkovGraphsContainer container = markovs.get(id);
+            assert(container != null) : "Null MarkovGraphsContainer for id #" + id;
+
+            // Grab all the graphs for this id
+            List<Pair<Integer, MarkovGraph>> id_graphs = new ArrayList<Pair<Integer, MarkovGraph>>();
+            for (Integer inner_id : container.keySet()) {
+                for (MarkovGraph markov : container.getAll(inner_id).values()) {
+                    id_graphs.add(Pair.of(inner_id, markov));
+                } // FOR
+            } // FOR
+
+            index.writeInt(id.intValue());
+            writeString(index, container.getClass().getCanonicalName());
+            index.writeInt(id_graphs.size());
+            for (Pair<Integer, MarkovGraph> p : id_graphs) {
+                MarkovGraph markov = p.getSecond();
+                int offset = graphs.size();
+                writeGraph(graphs, markov);
+                index.writeInt(p.getFirst().intValue());
+                writeString(index, CatalogKey.createKey(markov.getProcedure()));
+                index.writeLong(offset);
+                index.writeInt(graphs.size() - offset);
+            } // FOR
+            if (debug.get()) LOG.debug(String.format("Serialized %d graphs for id %d", id_graphs.size(), id));
+        } // FOR
+        index.flush();
+        graphs.flush();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output_path)));
+        try {
+            index_bytes.writeTo(out);
+            graph_bytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (debug.get()) LOG.debug(String.format("Binary MarkovGraphsContainers were written out to '%s' [index=%d, graphs=%d]",
+                                                 output_path, index_bytes.size(), graph_bytes.size()));
+    }
+
+    private static void writeGraph(DataOutputStream out, MarkovGraph markov) throws IOException {
+        // Ignore any vertices with no totalhits (see MarkovGraph.toJSON())
+        List<MarkovVertex> vertices = new ArrayList<MarkovVertex>();
+        Map<MarkovVertex, Integer> offsets = new HashMap<MarkovVertex, Integer>();
+        for (MarkovVertex v : markov.getVertices()) {
+            if (v.isQueryVertex() && (v.instancehits == 0 && v.totalhits == 0)) continue;
+            offsets.put(v, vertices.size());
+            vertices.add(v);
+        } // FOR
+        List<MarkovEdge> edges = new ArrayList<MarkovEdge>();
+        for (MarkovEdge e : markov.getEdges()) {
+            if (offsets.containsKey(markov.getSource(e)) && offsets.containsKey(markov.getDest(e))) {
+                edges.add(e);
+            }
+        } // FOR
+
+        out.writeInt(markov.getGraphId());
+        out.writeInt(vertices.size());
+        for (MarkovVertex v : vertices) {
+            out.writeByte(v.getType().ordinal());
+            writeString(out, v.getCatalogItem().getName());
+            out.writeInt(v.getQueryInstanceIndex());
+            out.writeInt(v.totalhits);
+            out.writeLong(v.getExecutionTime());
+            writeIntegers(out, v.getPartitions());
+            writeIntegers(out, v.getPastPartitions());
+            out.writeInt(v.probabilities.length);
+            for (float values[] : v.probabilities) {
+                out.writeInt(values.length);
+                for (float value : values) {
+                    out.writeFloat(value);
+                } // FOR
+            } // FOR
+        } // FOR
+        out.writeInt(edges.size());
+        for (MarkovEdge e : edges) {
+            out.writeInt(offsets.get(markov.getSource(e)).intValue());
+            out.writeInt(offsets.get(markov.getDest(e)).intValue());
+            out.writeInt(e.totalhits);
+            out.writeFloat(e.probability);
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // UTILITY METHODS
+    // ----------------------------------------------------------------------------
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte bytes[] = s.getBytes(CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    private static String readString(ByteBuffer buf) {
+        byte bytes[] = new byte[buf.getInt()];
+        buf.get(bytes);
+        try {
+            return (new String(bytes, CHARSET));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    private static void writeIntegers(DataOutputStream out, Collection<Integer> values) throws IOException {
+        out.writeInt(values.size());
+        for (Integer value : values) {
+            out.writeInt(value.intValue());
+        } // FOR
+    }
+    private static List<Integer> readIntegers(ByteBuffer buf) {
+        int size = buf.getInt();
+        List<Integer> ret = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(Integer.valueOf(buf.getInt()));
+        } // FOR
+        return (ret);
+    }
+
+    /**
+     * Convert a MarkovGraphsContainer file from JSON into our binary format.
+     * If the input file is already in the binary format, then it is converted back to JSON.
+     * @param vargs
+     * @throws Exception
+     */
+    public static void main(String vargs[]) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG,
+                     ArgumentsParser.PARAM_MARKOV,
+                     ArgumentsParser.PARAM_MARKOV_OUTPUT);
+        String input_path = args.getParam(ArgumentsParser.PARAM_MARKOV);
+        String output_path = args.getParam(ArgumentsParser.PARAM_MARKOV_OUTPUT);
+
+        Map<Integer, MarkovGraphsContainer> markovs = MarkovGraphContainersUtil.load(args.catalog_db, input_path, null, null);
+        if (isBinaryFile(new File(input_path))) {
+            MarkovGraphContainersUtil.save(markovs, output_path);
+        } else {
+            MarkovGraphsBinaryFile.save(markovs, output_path);
+        }
+        LOG.info(String.format("Converted %d MarkovGraphsContainers from '%s' to '%s'", markovs.size(), input_path, output_path));
+    }
+}
@@ -67,6 +67,13 @@ public class MarkovGraphsContainer implements JSONSerializable {
      */
     private final Set<Procedure> load_procedures;
     
+    /**
+     * The graphs in a binary MarkovGraphsContainer file that have not been deserialized yet
+     * <Id> -> <Procedure> -> <Entry>
+     */
+    private transient MarkovGraphsBinaryFile binary_file;
+    private transient Map<Integer, Map<Procedure, MarkovGraphsBinaryFile.Entry>> unloaded;
+    
     // -----------------------------------------------------------------
     // Constructors
     // -----------------------------------------------------------------
@@ -115,11 +122,16 @@ public class MarkovGraphsContainer implements JSONSerializable {
     
     public void clear() {
         this.markovs.clear();
+        if (this.unloaded != null) this.unloaded.clear();
     }
     
     public MarkovGraph get(Integer id, Procedure catalog_proc) {
         Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
-        return (inner != null ? inner.get(catalog_proc) : null);
+        MarkovGraph markov = (inner != null ? inner.get(catalog_proc) : null);
+        if (markov == null && this.unloaded != null) {
+            markov = this.materialize(id, catalog_proc);
+        }
+        return (markov);
     }
     
     /**
@@ -172,6 +184,111 @@ public class MarkovGraphsContainer implements JSONSerializable {
         inner.put(markov.getProcedure(), markov);
     }
     
+    // -----------------------------------------------------------------
+    // LAZY LOADING METHODS
+    // -----------------------------------------------------------------
+    
+    /**
+     * Register a MarkovGraph in a binary file that will be deserialized
+     * the first time that somebody asks for it
+     * @param binary_file
+     * @param entry
+     */
+    protected synchronized void addUnloaded(MarkovGraphsBinaryFile binary_file, MarkovGraphsBinaryFile.Entry entry) {
+        assert(this.binary_file == null || this.binary_file == binary_file);
+        this.binary_file = binary_file;
+        if (this.unloaded == null) {
+            this.unloaded = new ConcurrentHashMap<Integer, Map<Procedure, MarkovGraphsBinaryFile.Entry>>();
+        }
+        Integer id = Integer.valueOf(entry.getId());
+        Map<Procedure, MarkovGraphsBinaryFile.Entry> inner = this.unloaded.get(id);
+        if (inner == null) {
+            inner = new ConcurrentHashMap<Procedure, MarkovGraphsBinaryFile.Entry>();
+            this.unloaded.put(id, inner);
+        }
+        inner.put(entry.getProcedure(), entry);
+    }
+    
+    /**
+     * Returns the number of graphs that have not been deserialized yet
+     * @return
+     */
+    public int getUnloadedCount() {
+        int ctr = 0;
+        if (this.unloaded != null) {
+            for (Map<Procedure, MarkovGraphsBinaryFile.Entry> inner : this.unloaded.values()) {
+                ctr += inner.size();
+            } // FOR
+        }
+        return (ctr);
+    }
+    
+    /**
+     * Deserialize the MarkovGraph for the given id/procedure pair from our binary file
+     * Returns null if the file does not have a graph for this pair
+     * @param id
+     * @param catalog_proc
+     * @return
+     */
+    private MarkovGraph materialize(Integer id, Procedure catalog_proc) {
+        Map<Procedure, MarkovGraphsBinaryFile.Entry> entries = this.unloaded.get(id);
+        if (entries == null || entries.containsKey(catalog_proc) == false) {
+            // Somebody else may have just loaded it
+            Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
+            return (inner != null ? inner.get(catalog_proc) : null);
+        }
+        MarkovGraph markov = null;
+        synchronized (this) {
+            Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
+            markov = (inner != null ? inner.get(catalog_proc) : null);
+            if (markov == null) {
+                MarkovGraphsBinaryFile.Entry entry = entries.get(catalog_proc);
+                assert(entry != null);
+                markov = this.binary_file.materialize(entry);
+                this.put(id, markov);
+                entries.remove(catalog_proc);
+                if (entries.isEmpty()) this.unloaded.remove(id);
+            }
+        } // SYNCH
+        return (markov);
+    }
+    
+    /**
+     * Deserialize all of the MarkovGraphs from our binary file that have not been loaded yet
+     */
+    public void materializeAll() {
+        if (this.unloaded == null || this.unloaded.isEmpty()) return;
+        for (Integer id : new ArrayList<Integer>(this.unloaded.keySet())) {
+            Map<Procedure, MarkovGraphsBinaryFile.Entry> entries = this.unloaded.get(id);
+            if (entries == null) continue;
+            for (Procedure catalog_proc : new ArrayList<Procedure>(entries.keySet())) {
+                this.materialize(id, catalog_proc);
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * Replace the given MarkovGraph with a new graph for the same procedure.
+     * Transactions that look up the procedure's graph afterwards will get the new one.
+     * Returns false if the old graph is no longer stored in this container
+     * @param orig_markov
+     * @param new_markov
+     * @return
+     */
+    public boolean replace(MarkovGraph orig_markov, MarkovGraph new_markov) {
+        assert(orig_markov.getProcedure().equals(new_markov.getProcedure()));
+        Procedure catalog_proc = orig_markov.getProcedure();
+        synchronized (this.markovs) {
+            for (Map<Procedure, MarkovGraph> inner : this.markovs.values()) {
+                if (inner.get(catalog_proc) == orig_markov) {
+                    inner.put(catalog_proc, new_markov);
+                    return (true);
+                }
+            } // FOR
+        } // SYNCH
+        return (false);
+    }
+
     /**
      * 
      * @param txn_id
@@ -196,6 +313,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * Invoke MarkovGraph.calculateProbabilities() for all of the graphs stored within this container 
      */
     public void calculateProbabilities() {
+        this.materializeAll();
         for (Map<Procedure, MarkovGraph> inner : this.markovs.values()) {
             for (Entry<Procedure, MarkovGraph> e : inner.entrySet()) {
                 MarkovGraph m = e.getValue();
@@ -217,10 +335,12 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     protected Map<Procedure, MarkovGraph> getAll(Integer id) {
+        this.materializeAll();
         return (this.markovs.get(id));
     }
     
     public Map<Integer, MarkovGraph> getAll(Procedure catalog_proc) {
+        this.materializeAll();
         Map<Integer, MarkovGraph> ret = new HashMap<Integer, MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             MarkovGraph m = this.markovs.get(id).get(catalog_proc);
@@ -234,6 +354,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * @return
      */
     public Set<MarkovGraph> getAll() {
+        this.materializeAll();
         Set<MarkovGraph> ret = new HashSet<MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             Map<Procedure, MarkovGraph> m = this.markovs.get(id);
@@ -243,18 +364,22 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     public void copy(MarkovGraphsContainer other) {
+        other.materializeAll();
         this.markovs.putAll(other.markovs);
     }
     
     public Set<Integer> keySet() {
+        this.materializeAll();
         return this.markovs.keySet();
     }
     
     public Set<Entry<Integer, Map<Procedure, MarkovGraph>>> entrySet() {
+        this.materializeAll();
         return this.markovs.entrySet();
     }
     
     public int size() {
+        this.materializeAll();
         return (this.markovs.size());
     }
     
@@ -306,6 +431,8 @@ public class MarkovGraphsContainer implements JSONSerializable {
 
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
+        this.materializeAll();
+        
         // CLASSNAME
         stringer.key(Members.CLASSNAME.name()).value(this.getClass().getCanonicalName());
         
@@ -24,21 +24,41 @@ THE SOFTWARE.
 
 package edu.brown.net;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 
+import org.voltdb.utils.DBBPool.BBContainer;
+
 /** Sends and receives blocks of bytes with a non-blocking interface. This interface does not use
 checked exceptions. It re-throws any exceptions wrapped in a RuntimeException. */
 public interface MessageConnection {
     /** Returns a message if one is available. */
     public byte[] tryRead();
 
+    /** Returns a message if one is available, without copying it into a new array. The returned
+    container is owned by the caller, who must discard() it once the message has been consumed.
+    A container with an empty buffer means the connection was closed. */
+    public BBContainer tryReadBuffer();
+
     /** Writes message to the channel. If the underlying channel would block, this will require
     future calls to tryWrite() when it becomes available again. See register().
     @return true if the write blocks and more data needs to be written. */
     public boolean write(byte[] message);
 
+    /** Writes the remaining bytes of message to the channel. The message is copied before this
+    returns, so the caller may immediately reuse or discard the buffer.
+    @return true if the write blocks and more data needs to be written. */
+    public boolean write(ByteBuffer message);
+
+    /** Buffers message to be written to the channel, but does not attempt to write it. This
+    allows multiple messages to be sent with a single call to tryWrite(). */
+    public void enqueue(byte[] message);
+
+    /** Buffers the remaining bytes of message to be written to the channel. */
+    public void enqueue(ByteBuffer message);
+
     /** Attempts to write any buffered data out the connection.
     @return true if the write blocks and more data needs to be written. */
     public boolean tryWrite();
@@ -31,10 +31,20 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
+
 /** Sends and receives blocks of bytes. */
 public class NIOMessageConnection implements MessageConnection {
     public NIOMessageConnection(SocketChannel channel) {
+        this(channel, null);
+    }
+
+    /** @param pool allocates the buffers returned by tryReadBuffer(). If null, each message is
+    read into a new heap buffer. */
+    public NIOMessageConnection(SocketChannel channel, DBBPool pool) {
         this.channel = channel;
+        this.pool = pool;
         try {
             channel.socket().setTcpNoDelay(true);
             channel.configureBlocking(false);
@@ -47,12 +57,47 @@ public class NIOMessageConnection implements MessageConnection {
 
     /** Returns a message if one is available. */
     public byte[] tryRead() {
+        int length = tryReadLength();
+        // connection closed
+        if (length == -1) return new byte[0];
+        // Insufficient bytes
+        if (length == 0) return null;
+
+        byte[] result = new byte[length];
+        read.getBytes(result);
+        nextLength = 0;
+        return result;
+    }
+
+    /** Returns a message if one is available, copied straight out of the socket buffers into a
+    buffer acquired from the pool. The caller owns the container and must discard() it. */
+    public BBContainer tryReadBuffer() {
+        int length = tryReadLength();
+        // connection closed
+        if (length == -1) return DBBPool.wrapBB(ByteBuffer.allocate(0));
+        // Insufficient bytes
+        if (length == 0) return null;
+
+        BBContainer result = (pool != null ? pool.acquire(length) :
+                                             DBBPool.wrapBB(ByteBuffer.allocate(length)));
+        result.b.clear();
+        result.b.limit(length);
+        read.getBytes(result.b);
+        result.b.flip();
+        nextLength = 0;
+        return result;
+    }
+
+    /** Reads the length prefix and waits for the entire message to be buffered.
+     * @return the length of the next message, 0 if it is not complete, or -1 if the connection
+     * was closed. */
+    private int tryReadLength() {
         if (nextLength == 0) {
             int lengthBytes = read.tryRead(Integer.SIZE/8);
             // connection closed
-            if (lengthBytes == -1) return new byte[0];
+            if (lengthBytes == -1) return -1;
             // Insufficient bytes
-            if (lengthBytes < Integer.SIZE/8) return null;
+            if (lengthBytes < Integer.SIZE/8) return 0;
 
             if (bigEndian) {
                 nextLength = read.getIntBigEndian();
@@ -65,39 +110,73 @@ public class NIOMessageConnection implements MessageConnection {
 
         int messageBytes = read.tryRead(nextLength);
         // connection closed
-        if (messageBytes == -1) return new byte[0];
-        if (messageBytes < nextLength) return null;
-
-        byte[] result = new byte[nextLength];
-        read.getBytes(result);
-        nextLength = 0;
-        return result;
+        if (messageBytes == -1) return -1;
+        if (messageBytes < nextLength) return 0;
+        return nextLength;
     }
 
     /** Writes message to the channel.
      * @return true if the entire message was written. */
     public boolean write(byte[] message) {
+        enqueue(message);
+        return tryWrite();
+    }
+
+    /** Writes the remaining bytes of message to the channel. The buffer can be reused (or
+    returned to its pool) as soon as this returns.
+     * @return true if the write blocks and more data needs to be written. */
+    public boolean write(ByteBuffer message) {
+        enqueue(message);
+        return tryWrite();
+    }
+
+    /** Buffers message without attempting to write it to the channel. */
+    public void enqueue(byte[] message) {
         if (message.length == 0) {
             throw new IllegalArgumentException("message.length == 0: messages must contain data");
         }
+        enqueueLength(message.length);
+        rawEnqueue(message);
+    }
 
+    /** Buffers the remaining bytes of message without attempting to write it to the channel.
+    The position of message is advanced to its limit. */
+    public void enqueue(ByteBuffer message) {
+        if (message.remaining() == 0) {
+            throw new IllegalArgumentException("message.remaining() == 0: messages must contain data");
+        }
+        enqueueLength(message.remaining());
+        while (message.hasRemaining()) {
+            ByteBuffer writeBuffer = write.getNext();
+            if (message.remaining() <= writeBuffer.remaining()) {
+                writeBuffer.put(message);
+            } else {
+                int oldLimit = message.limit();
+                message.limit(message.position() + writeBuffer.remaining());
+                writeBuffer.put(message);
+                message.limit(oldLimit);
+            }
+        } // WHILE
+    }
+
+    private void enqueueLength(int length) {
         ByteBuffer writeBuffer = write.getNext();
         // copy the size
         if (writeBuffer.remaining() >= Integer.SIZE/8) {
-            writeBuffer.putInt(message.length);
+            writeBuffer.putInt(length);
         } else {
             // need to split the write
             byte[] intbytes = new byte[4];
             if (bigEndian) {
-                intbytes[0] = (byte)((message.length >> 24) & 0xff);
-                intbytes[1] = (byte)((message.length >> 16) & 0xff);
-                intbytes[2] = (byte)((message.length >> 8) & 0xff);
-                intbytes[3] = (byte)(message.length & 0xff);
+                intbytes[0] = (byte)((length >> 24) & 0xff);
+                intbytes[1] = (byte)((length >> 16) & 0xff);
+                intbytes[2] = (byte)((length >> 8) & 0xff);
+                intbytes[3] = (byte)(length & 0xff);
             } else {
-                intbytes[0] = (byte)(message.length & 0xff);
-                intbytes[1] = (byte)((message.length >> 8) & 0xff);
-                intbytes[2] = (byte)((message.length >> 16) & 0xff);
-                intbytes[3] = (byte)((message.length >> 24) & 0xff);
+                intbytes[0] = (byte)(length & 0xff);
+                intbytes[1] = (byte)((length >> 8) & 0xff);
+                intbytes[2] = (byte)((length >> 16) & 0xff);
+                intbytes[3] = (byte)((length >> 24) & 0xff);
             }
 
             int written = writeBuffer.remaining();
@@ -108,14 +187,17 @@ public class NIOMessageConnection implements MessageConnection {
             writeBuffer = write.getNext();
             writeBuffer.put(intbytes, written, 4 - written);
         }
-
-        return rawWrite(message);
     }
 
     /** Writes message directly to the connection, without prepending a length. Useful for
     communicating with other protocols. */
     // TODO: Add this to MessageConnection? Make an non-blocking stream interface?
     public boolean rawWrite(byte[] message) {
+        rawEnqueue(message);
+        return tryWrite();
+    }
+
+    private void rawEnqueue(byte[] message) {
         // Copy the message
         int offset = 0;
         while (offset < message.length) {
@@ -127,8 +209,6 @@ public class NIOMessageConnection implements MessageConnection {
             writeBuffer.put(message, offset, bytesToWrite);
             offset += bytesToWrite;
         }
-
-        return tryWrite();
     }
 
     /** @return true if the write blocks and more data may be written. */
@@ -164,6 +244,7 @@ public class NIOMessageConnection implements MessageConnection {
     }
 
     private final SocketChannel channel;
+    private final DBBPool pool;
     private final NIOReadStream read;
     private final NIOWriteStream write;
     private int nextLength = 0;
@@ -43,27 +43,59 @@ public class NIOReadStream {
     }
 
     public int getInt() {
-        // TODO: Optimize?
-        byte[] intbytes = new byte[4];
-        getBytes(intbytes);
-        int output = (((int)intbytes[0]) & 0xff);
-        output |= (((int)intbytes[1]) & 0xff) << 8;
-        output |= (((int)intbytes[2]) & 0xff) << 16;
-        output |= (((int)intbytes[3]) & 0xff) << 24;
+        int output = getByte() & 0xff;
+        output |= (getByte() & 0xff) << 8;
+        output |= (getByte() & 0xff) << 16;
+        output |= (getByte() & 0xff) << 24;
         return output;
     }
 
     public int getIntBigEndian() {
-        // TODO: Optimize?
-        byte[] intbytes = new byte[4];
-        getBytes(intbytes);
-        int output = (((int)intbytes[0]) & 0xff) << 24;
-        output |= (((int) intbytes[1]) & 0xff) << 16; 
-        output |= (((int) intbytes[2]) & 0xff) << 8; 
-        output |= (((int) intbytes[3]) & 0xff); 
+        int output = (getByte() & 0xff) << 24;
+        output |= (getByte() & 0xff) << 16;
+        output |= (getByte() & 0xff) << 8;
+        output |= (getByte() & 0xff);
         return output;
     }
 
+    /** Reads a single byte without allocating a temporary array. */
+    private byte getByte() {
+        if (totalAvailable < 1) {
+            throw new IllegalStateException("Requested 1 byte; only have "
+                    + totalAvailable + " bytes; call tryRead() first");
+        }
+        ByteBuffer first = buffers.getReadBuffer();
+        assert first.remaining() > 0;
+        totalAvailable -= 1;
+        return first.get();
+    }
+
+    /** Copies output.remaining() bytes into output, advancing its position. This avoids an
+    intermediate byte[] when the destination is a pooled (possibly direct) buffer. */
+    public void getBytes(ByteBuffer output) {
+        int length = output.remaining();
+        if (totalAvailable < length) {
+            throw new IllegalStateException("Requested " + length + " bytes; only have "
+                    + totalAvailable + " bytes; call tryRead() first");
+        }
+
+        while (output.hasRemaining()) {
+            ByteBuffer first = buffers.getReadBuffer();
+            assert first.remaining() > 0;
+
+            // Copy bytes from first into output without touching the heap
+            if (first.remaining() <= output.remaining()) {
+                output.put(first);
+            } else {
+                int oldLimit = first.limit();
+                first.limit(first.position() + output.remaining());
+                output.put(first);
+                first.limit(oldLimit);
+            }
+        }
+        totalAvailable -= length;
+    }
+
     public void getBytes(byte[] output) {
         getBytes(output, 0, output.length);
     }
@@ -44,6 +44,37 @@ public class FastIntHistogram extends Histogram<Integer> {
         }
     }
 
+    /**
+     * Increment the count for the given value without boxing it or grabbing a lock.
+     * This is only safe if the histogram is confined to a single thread.
+     * @param value
+     */
+    public void fastPut(int value) {
+        if (this.histogram[value] == -1) {
+            this.histogram[value] = 1;
+            this.value_count++;
+        } else {
+            this.histogram[value]++;
+        }
+        this.num_samples++;
+    }
+
+    /**
+     * Add the given count for the value without boxing it or grabbing a lock.
+     * This is only safe if the histogram is confined to a single thread.
+     * @param value
+     * @param count
+     */
+    public void fastPut(int value, long count) {
+        if (this.histogram[value] == -1) {
+            this.histogram[value] = count;
+            this.value_count++;
+        } else {
+            this.histogram[value] += count;
+        }
+        this.num_samples += count;
+    }
+
     @Override
     public synchronized void put(Integer value) {
         int idx = value.intValue();
@@ -84,7 +115,10 @@ public class FastIntHistogram extends Histogram<Integer> {
     public synchronized void putHistogram(Histogram<Integer> other) {
         if (other instanceof FastIntHistogram) {
             FastIntHistogram fast = (FastIntHistogram) other;
-            // FIXME
+            assert(fast.histogram.length <= this.histogram.length);
+            for (int i = 0; i < fast.histogram.length; i++) {
+                if (fast.histogram[i] != -1) this.fastPut(i, fast.histogram[i]);
+            } // FOR
         } else {
             for (Integer v : other.values()) {
                 this.put(v, other.get(v));
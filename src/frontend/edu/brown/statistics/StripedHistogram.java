@@ -0,0 +1,176 @@
+package edu.brown.statistics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A Histogram that can be updated by multiple threads at the same time without
+ * them fighting over a single lock. Every thread that updates the histogram gets its
+ * own private Histogram stripe, and the stripes are only merged together when
+ * somebody wants to read the totals. This is meant for profiling counters that
+ * get updated all the time but only get read every once in a while.
+ * @param <X>
+ */
+public class StripedHistogram<X> {
+
+    /**
+     * All of the stripes that have been created so far
+     */
+    private final List<Histogram<X>> stripes = new CopyOnWriteArrayList<Histogram<X>>();
+
+    /**
+     * The stripe for the current thread
+     */
+    private final ThreadLocal<Histogram<X>> local = new ThreadLocal<Histogram<X>>() {
+        @Override
+        protected Histogram<X> initialValue() {
+            Histogram<X> stripe = StripedHistogram.this.createStripe();
+            StripedHistogram.this.stripes.add(stripe);
+            return (stripe);
+        }
+    };
+
+    /**
+     * Create a new Histogram for a thread's stripe
+     * @return
+     */
+    protected Histogram<X> createStripe() {
+        return (new Histogram<X>());
+    }
+
+    /**
+     * Return the current thread's stripe
+     * @return
+     */
+    protected final Histogram<X> getStripe() {
+        return (this.local.get());
+    }
+
+    /**
+     * Return all of the stripes for this histogram
+     * @return
+     */
+    protected final Collection<Histogram<X>> getStripes() {
+        return (this.stripes);
+    }
+
+    // ----------------------------------------------------------------------------
+    // UPDATE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Increment the number of occurrences of the given value by one
+     * @param value
+     */
+    public void put(X value) {
+        this.local.get().put(value);
+    }
+
+    /**
+     * Increment the number of occurrences of the given value by the given count
+     * @param value
+     * @param count
+     */
+    public void put(X value, long count) {
+        this.local.get().put(value, count);
+    }
+
+    /**
+     * Decrement the number of occurrences of the given value by one.
+     * The value may have been added by a different thread, so we have to go find
+     * a stripe that still has it
+     * @param value
+     */
+    public void remove(X value) {
+        Histogram<X> stripe = this.local.get();
+        if (stripe.get(value, 0) <= 0) {
+            for (Histogram<X> other : this.stripes) {
+                if (other.get(value, 0) > 0) {
+                    stripe = other;
+                    break;
+                }
+            } // FOR
+        }
+        synchronized (stripe) {
+            if (stripe.get(value, 0) > 0) stripe.remove(value, 1);
+        } // SYNCH
+    }
+
+    /**
+     * Reset all of the stripes
+     */
+    public void clear() {
+        for (Histogram<X> stripe : this.stripes) {
+            stripe.clear();
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // READ METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Get the total number of samples entered into the histogram by all threads
+     * @return
+     */
+    public int getSampleCount() {
+        int total = 0;
+        for (Histogram<X> stripe : this.stripes) {
+            total += stripe.getSampleCount();
+        } // FOR
+        return (total);
+    }
+
+    /**
+     * Returns true if no thread has entered a value into the histogram
+     * @return
+     */
+    public boolean isEmpty() {
+        for (Histogram<X> stripe : this.stripes) {
+            if (stripe.isEmpty() == false) return (false);
+        } // FOR
+        return (true);
+    }
+
+    /**
+     * Returns the total count for the given value from all threads
+     * If the value was never entered into the histogram, then the count will be null
+     * @param value
+     * @return
+     */
+    public Long get(X value) {
+        Long total = null;
+        for (Histogram<X> stripe : this.stripes) {
+            Long cnt = null;
+            synchronized (stripe) {
+                cnt = stripe.get(value);
+            } // SYNCH
+            if (cnt != null) total = (total == null ? cnt : total + cnt);
+        } // FOR
+        return (total);
+    }
+
+    /**
+     * Merge all of the stripes into a new Histogram.
+     * The returned histogram is a snapshot and will not be updated.
+     * @return
+     */
+    public Histogram<X> getHistogram() {
+        Histogram<X> merged = new Histogram<X>();
+        for (Histogram<X> stripe : this.stripes) {
+            synchronized (stripe) {
+                for (X value : stripe.values()) {
+                    long cnt = stripe.get(value, 0);
+                    if (cnt > 0) merged.put(value, cnt);
+                } // FOR
+            } // SYNCH
+        } // FOR
+        return (merged);
+    }
+
+    @Override
+    public String toString() {
+        return (this.getHistogram().toString());
+    }
+}
@@ -0,0 +1,142 @@
+package edu.brown.statistics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * StripedHistogram for small non-negative integers (e.g., partition ids).
+ * Each thread's stripe is a FastIntHistogram, so updating it does not need to box
+ * the value or grab a lock.
+ */
+public class StripedIntHistogram extends StripedHistogram<Integer> {
+
+    private final int size;
+
+    /**
+     * The number of times that each thread removed each value.
+     * FastIntHistogram uses -1 to mark an empty slot, so we can't let a stripe's
+     * count go negative. We keep the removals off to the side and subtract
+     * them when we merge everything together.
+     */
+    private final List<long[]> removed_stripes = new CopyOnWriteArrayList<long[]>();
+    private final ThreadLocal<long[]> removed = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            long stripe[] = new long[StripedIntHistogram.this.size];
+            StripedIntHistogram.this.removed_stripes.add(stripe);
+            return (stripe);
+        }
+    };
+
+    /**
+     * Constructor
+     * @param size - the number of values that the histogram can hold [0, size)
+     */
+    public StripedIntHistogram(int size) {
+        this.size = size;
+    }
+
+    @Override
+    protected Histogram<Integer> createStripe() {
+        return (new FastIntHistogram(this.size));
+    }
+
+    /**
+     * Increment the number of occurrences of the given value by one
+     * @param value
+     */
+    public void fastPut(int value) {
+        ((FastIntHistogram)this.getStripe()).fastPut(value);
+    }
+
+    /**
+     * Increment the number of occurrences of the given value by the given count
+     * @param value
+     * @param count
+     */
+    public void fastPut(int value, long count) {
+        ((FastIntHistogram)this.getStripe()).fastPut(value, count);
+    }
+
+    /**
+     * Decrement the number of occurrences of the given value by one.
+     * The value may have been added by a different thread, so we only
+     * record the removal in this thread's stripe of removals.
+     * @param value
+     */
+    @Override
+    public void remove(Integer value) {
+        this.removed.get()[value.intValue()]++;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (long stripe[] : this.removed_stripes) {
+            for (int i = 0; i < stripe.length; i++) {
+                stripe[i] = 0;
+            } // FOR
+        } // FOR
+    }
+
+    @Override
+    public int getSampleCount() {
+        long total = super.getSampleCount();
+        for (long stripe[] : this.removed_stripes) {
+            for (int i = 0; i < stripe.length; i++) {
+                total -= stripe[i];
+            } // FOR
+        } // FOR
+        return ((int)total);
+    }
+
+    @Override
+    public Long get(Integer value) {
+        long total = 0;
+        boolean found = false;
+        int idx = value.intValue();
+        for (Histogram<Integer> stripe : this.getStripes()) {
+            long cnt = ((FastIntHistogram)stripe).fastGet(idx);
+            if (cnt != -1) {
+                total += cnt;
+                found = true;
+            }
+        } // FOR
+        if (found == false) return (null);
+        for (long stripe[] : this.removed_stripes) {
+            total -= stripe[idx];
+        } // FOR
+        return (total);
+    }
+
+    @Override
+    public Histogram<Integer> getHistogram() {
+        long totals[] = this.merge();
+        Histogram<Integer> merged = new Histogram<Integer>();
+        for (int i = 0; i < totals.length; i++) {
+            if (totals[i] > 0) merged.put(i, totals[i]);
+        } // FOR
+        return (merged);
+    }
+
+    /**
+     * Add up the counts for each value from all of the stripes
+     * and then take out everything that was removed
+     * @return
+     */
+    private long[] merge() {
+        long totals[] = new long[this.size];
+        for (Histogram<Integer> stripe : this.getStripes()) {
+            long values[] = ((FastIntHistogram)stripe).fastValues();
+            for (int i = 0; i < totals.length; i++) {
+                if (values[i] != -1) totals[i] += values[i];
+            } // FOR
+        } // FOR
+        for (long stripe[] : this.removed_stripes) {
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] -= stripe[i];
+            } // FOR
+        } // FOR
+        return (totals);
+    }
+}
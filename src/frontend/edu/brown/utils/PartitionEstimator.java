@@ -819,6 +819,29 @@ public class PartitionEstimator {
         return (this.getBasePartition(catalog_proc, invocation.getParams().toArray(), false));
     }
 
+    /**
+     * Returns the number of leading parameters of the given Procedure that are
+     * needed by getBasePartition() to calculate its base partition. This allows
+     * callers to avoid deserializing all of a txn's parameters just to route it.
+     * Returns zero if the Procedure does not have a partitioning parameter.
+     * 
+     * @param catalog_proc
+     * @return
+     */
+    public int getBasePartitionParameterCount(Procedure catalog_proc) {
+        ProcParameter catalog_param = this.cache_procPartitionParameters.get(catalog_proc);
+        if (catalog_param == null || catalog_param instanceof NullProcParameter || catalog_param instanceof RandomProcParameter) {
+            return (0);
+        } else if (catalog_param instanceof MultiProcParameter) {
+            int count = 0;
+            for (ProcParameter inner : (MultiProcParameter) catalog_param) {
+                count = Math.max(count, inner.getIndex() + 1);
+            } // FOR
+            return (count);
+        }
+        return (catalog_param.getIndex() + 1);
+    }
+
     /**
      * Returns the target partition for a stored procedure + parameters
      * 
@@ -39,6 +39,12 @@ import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 
 /**
+ * A ProfileMeasurement is meant to be started and stopped by a single thread
+ * (e.g., a PartitionExecutor or a txn's TransactionProfile), so none of the
+ * start/stop methods grab a lock. Other threads can read the totals without
+ * blocking the owner, but they may see slightly stale values. If you need
+ * totals from multiple threads, give each thread its own ProfileMeasurement
+ * and merge them on read with {@link #appendTime(ProfileMeasurement)}.
  * @author pavlo
  */
 public class ProfileMeasurement implements JSONSerializable {
@@ -63,7 +69,11 @@ public class ProfileMeasurement implements JSONSerializable {
      */
     private transient Long think_marker;
 
-    private transient boolean reset = false;
+    /**
+     * Set when this ProfileMeasurement is reset by another thread while it was
+     * started, so that the owner throws away the time of its current invocation
+     */
+    private transient volatile boolean reset = false;
 
     private transient EventObservable<ProfileMeasurement> start_observable;
     private transient EventObservable<ProfileMeasurement> stop_observable;
@@ -100,7 +110,7 @@ public class ProfileMeasurement implements JSONSerializable {
     // UTILITY METHODS
     // ----------------------------------------------------------------------------
 
-    public synchronized void reset() {
+    public void reset() {
         if (this.think_marker != null) {
             this.reset = true;
         }
@@ -196,7 +206,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * @return this
      */
 
-    public synchronized ProfileMeasurement start(long timestamp) {
+    public ProfileMeasurement start(long timestamp) {
         assert (this.think_marker == null) : String.format("Trying to start %s before it was stopped!", this.type);
         if (debug.get())
             LOG.debug(String.format("START %s", this));
@@ -232,7 +242,7 @@ public class ProfileMeasurement implements JSONSerializable {
      * 
      * @return this
      */
-    public synchronized ProfileMeasurement stop(long timestamp) {
+    public ProfileMeasurement stop(long timestamp) {
         if (this.reset) {
             this.reset = false;
             this.think_marker = null;
@@ -321,10 +331,8 @@ public class ProfileMeasurement implements JSONSerializable {
     public static void start(boolean ignore_started, ProfileMeasurement... to_start) {
         long time = ProfileMeasurement.getTime();
         for (ProfileMeasurement pm : to_start) {
-            synchronized (pm) {
-                if (ignore_started == false || (ignore_started && pm.isStarted() == false))
-                    pm.start(time);
-            } // SYNCH
+            if (ignore_started == false || (ignore_started && pm.isStarted() == false))
+                pm.start(time);
         } // FOR
     }
 
@@ -348,10 +356,8 @@ public class ProfileMeasurement implements JSONSerializable {
     public static void stop(boolean ignore_stopped, ProfileMeasurement... to_stop) {
         long time = ProfileMeasurement.getTime();
         for (ProfileMeasurement pm : to_stop) {
-            synchronized (pm) {
-                if (ignore_stopped == false || (ignore_stopped && pm.isStopped() == false))
-                    pm.stop(time);
-            } // SYNCH
+            if (ignore_stopped == false || (ignore_stopped && pm.isStopped() == false))
+                pm.stop(time);
         } // FOR
     }
 
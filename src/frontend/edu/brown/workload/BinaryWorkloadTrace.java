@@ -0,0 +1,482 @@
+package edu.brown.workload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.types.TimestampType;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.FileUtil;
+
+/**
+ * Compact binary format for workload trace files.
+ * The file starts with a small header followed by one record per TransactionTrace.
+ * Unlike the JSON format, the parameters and output are written with their
+ * Java types so we don't have to look up their VoltTypes in the catalog or
+ * parse strings when we read them back in.
+ * <B>File Layout:</B>
+ * <pre>
+ * HEADER: [MAGIC:int][VERSION:int]
+ * RECORD: [TXN_RECORD:byte][TXN_ID:long][ELEMENT][NUM_QUERIES:int]
+ *         ([BATCH_ID:int][ELEMENT])*
+ * ELEMENT: [NAME:string][START:long?][STOP:long?][ABORTED:boolean][WEIGHT:short]
+ *          [PARAMS:value[]][OUTPUT]
+ * </pre>
+ * If the file name ends with ".gz", then the records are compressed.
+ * @see WorkloadStreamIterator
+ */
+public abstract class BinaryWorkloadTrace {
+    private static final Logger LOG = Logger.getLogger(BinaryWorkloadTrace.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /** "HWKT" */
+    public static final int MAGIC = 0x48574B54;
+    public static final int VERSION = 1;
+
+    protected static final byte TXN_RECORD = 1;
+
+    // Value Type Tags
+    private static final byte TAG_NULL      = 0;
+    private static final byte TAG_BYTE      = 1;
+    private static final byte TAG_SHORT     = 2;
+    private static final byte TAG_INTEGER   = 3;
+    private static final byte TAG_LONG      = 4;
+    private static final byte TAG_DOUBLE    = 5;
+    private static final byte TAG_STRING    = 6;
+    private static final byte TAG_TIMESTAMP = 7;
+    private static final byte TAG_DECIMAL   = 8;
+    private static final byte TAG_BOOLEAN   = 9;
+    private static final byte TAG_ARRAY     = 10;
+
+    private static final String CHARSET = "UTF-8";
+
+    // ----------------------------------------------------------------------------
+    // FILE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given file is a binary workload trace
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryFile(File file) {
+        if (file.exists() == false || file.length() < 8) return (false);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(openInputStream(file));
+            return (in.readInt() == MAGIC);
+        } catch (IOException ex) {
+            return (false);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ex) { }
+        }
+    }
+
+    /**
+     * Open the given binary workload trace file and read in its header.
+     * The returned stream will be positioned at the first record.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static DataInputStream openReader(File file) throws IOException {
+        DataInputStream in = new DataInputStream(openInputStream(file));
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            in.close();
+            throw new IOException(String.format("'%s' is not a binary workload trace file", file));
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            in.close();
+            throw new IOException(String.format("Unsupported binary workload trace version %d in '%s'", version, file));
+        }
+        return (in);
+    }
+
+    /**
+     * Create a new binary workload trace file and write out its header
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static DataOutputStream openWriter(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) out = new GZIPOutputStream(out);
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        return (dos);
+    }
+
+    private static InputStream openInputStream(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) in = new GZIPInputStream(in);
+        return (new BufferedInputStream(in));
+    }
+
+    // ----------------------------------------------------------------------------
+    // SERIALIZATION METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write a TransactionTrace record
+     * @param out
+     * @param txn_trace
+     * @throws IOException
+     */
+    public static void writeTransaction(DataOutput out, TransactionTrace txn_trace) throws IOException {
+        out.writeByte(TXN_RECORD);
+        out.writeLong(txn_trace.txn_id);
+        writeElement(out, txn_trace);
+        out.writeInt(txn_trace.getQueryCount());
+        for (QueryTrace query_trace : txn_trace.getQueries()) {
+            out.writeInt(query_trace.getBatchId());
+            writeElement(out, query_trace);
+        } // FOR
+    }
+
+    /**
+     * Read the next TransactionTrace record.
+     * Returns null if there are no more records in the input.
+     * @param in
+     * @param catalog_db
+     * @return
+     * @throws IOException
+     */
+    public static TransactionTrace readTransaction(DataInput in, Database catalog_db) throws IOException {
+        byte type;
+        try {
+            type = in.readByte();
+        } catch (EOFException ex) {
+            return (null);
+        }
+        if (type != TXN_RECORD) {
+            throw new IOException("Unexpected binary workload record type " + type);
+        }
+
+        long txn_id = in.readLong();
+        String proc_name = readString(in);
+        Procedure catalog_proc = catalog_db.getProcedures().get(proc_name);
+        if (catalog_proc == null) {
+            throw new IOException(String.format("Unexpected procedure '%s' for txn #%d", proc_name, txn_id));
+        }
+        TransactionTrace txn_trace = new TransactionTrace(txn_id, catalog_proc, null);
+        readElement(in, txn_trace);
+
+        int num_queries = in.readInt();
+        for (int i = 0; i < num_queries; i++) {
+            int batch_id = in.readInt();
+            QueryTrace query_trace = new QueryTrace(readString(in), null, batch_id);
+            readElement(in, query_trace);
+            txn_trace.addQuery(query_trace);
+        } // FOR
+        if (trace.get()) LOG.trace(String.format("Read %s with %d queries", txn_trace, num_queries));
+        return (txn_trace);
+    }
+
+    /**
+     * Write everything for an element, starting with its catalog name
+     */
+    private static void writeElement(DataOutput out, AbstractTraceElement<?> element) throws IOException {
+        // Note that we need to use the raw catalog_item_name for QueryTraces
+        // because getCatalogItemName() strips off the parent procedure
+        writeString(out, element.catalog_item_name);
+        writeNullableLong(out, element.start_timestamp);
+        writeNullableLong(out, element.stop_timestamp);
+        out.writeBoolean(element.aborted);
+        out.writeShort(element.weight);
+        writeValue(out, element.params);
+
+        // OUTPUT
+        Object output[][][] = element.output;
+        if (output == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(output.length);
+        for (int i = 0; i < output.length; i++) {
+            VoltType types[] = (element.output_types != null ? element.output_types[i] : null);
+            if (types == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(types.length);
+                for (VoltType vt : types) {
+                    out.writeByte((vt == null ? VoltType.NULL : vt).getValue());
+                } // FOR
+            }
+            if (output[i] == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(output[i].length);
+                for (Object row[] : output[i]) {
+                    writeValue(out, row);
+                } // FOR
+            }
+        } // FOR
+    }
+
+    /**
+     * Read in everything for an element after its catalog name
+     */
+    private static void readElement(DataInput in, AbstractTraceElement<?> element) throws IOException {
+        element.start_timestamp = readNullableLong(in);
+        element.stop_timestamp = readNullableLong(in);
+        element.aborted = in.readBoolean();
+        element.weight = in.readShort();
+        element.params = (Object[])readValue(in);
+
+        // OUTPUT
+        int num_tables = in.readInt();
+        if (num_tables < 0) return;
+        element.output = new Object[num_tables][][];
+        element.output_types = new VoltType[num_tables][];
+        for (int i = 0; i < num_tables; i++) {
+            int num_types = in.readInt();
+            if (num_types >= 0) {
+                element.output_types[i] = new VoltType[num_types];
+                for (int j = 0; j < num_types; j++) {
+                    element.output_types[i][j] = VoltType.get(in.readByte());
+                } // FOR
+            }
+            int num_rows = in.readInt();
+            if (num_rows >= 0) {
+                element.output[i] = new Object[num_rows][];
+                for (int j = 0; j < num_rows; j++) {
+                    element.output[i][j] = (Object[])readValue(in);
+                } // FOR
+            }
+        } // FOR
+    }
+
+    /**
+     * Write a parameter or output value with its type
+     * Primitive arrays are written out the same way as Object arrays
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    protected static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(((Long)value).longValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt(((Integer)value).intValue());
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String)value);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number)value).doubleValue());
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort(((Short)value).shortValue());
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(((Byte)value).byteValue());
+        } else if (value instanceof TimestampType) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(((TimestampType)value).getTime());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TAG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(((Boolean)value).booleanValue());
+        } else if (value instanceof Object[]) {
+            Object arr[] = (Object[])value;
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(arr.length);
+            for (Object inner : arr) {
+                writeValue(out, inner);
+            } // FOR
+        } else if (value instanceof long[]) {
+            long arr[] = (long[])value;
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(arr.length);
+            for (long inner : arr) {
+                out.writeByte(TAG_LONG);
+                out.writeLong(inner);
+            } // FOR
+        } else if (value instanceof int[]) {
+            int arr[] = (int[])value;
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(arr.length);
+            for (int inner : arr) {
+                out.writeByte(TAG_INTEGER);
+                out.writeInt(inner);
+            } // FOR
+        } else if (value instanceof short[]) {
+            short arr[] = (short[])value;
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(arr.length);
+            for (short inner : arr) {
+                out.writeByte(TAG_SHORT);
+                out.writeShort(inner);
+            } // FOR
+        } else if (value instanceof byte[]) {
+            byte arr[] = (byte[])value;
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(arr.length);
+            for (byte inner : arr) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte(inner);
+            } // FOR
+        } else {
+            throw new IOException("Unsupported workload trace value type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Read a value written by writeValue()
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    protected static Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return (null);
+            case TAG_LONG:
+                return (Long.valueOf(in.readLong()));
+            case TAG_INTEGER:
+                return (Integer.valueOf(in.readInt()));
+            case TAG_STRING:
+                return (readString(in));
+            case TAG_DOUBLE:
+                return (Double.valueOf(in.readDouble()));
+            case TAG_SHORT:
+                return (Short.valueOf(in.readShort()));
+            case TAG_BYTE:
+                return (Byte.valueOf(in.readByte()));
+            case TAG_TIMESTAMP:
+                return (new TimestampType(in.readLong()));
+            case TAG_DECIMAL:
+                return (new BigDecimal(readString(in)));
+            case TAG_BOOLEAN:
+                return (Boolean.valueOf(in.readBoolean()));
+            case TAG_ARRAY: {
+                Object arr[] = new Object[in.readInt()];
+                for (int i = 0; i < arr.length; i++) {
+                    arr[i] = readValue(in);
+                } // FOR
+                return (arr);
+            }
+            default:
+                throw new IOException("Unexpected workload trace value tag " + tag);
+        } // SWITCH
+    }
+
+    private static void writeNullableLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeLong(value.longValue());
+    }
+
+    private static Long readNullableLong(DataInput in) throws IOException {
+        return (in.readBoolean() ? Long.valueOf(in.readLong()) : null);
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte bytes[] = s.getBytes(CHARSET);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte bytes[] = new byte[in.readInt()];
+        in.readFully(bytes);
+        return (new String(bytes, CHARSET));
+    }
+
+    // ----------------------------------------------------------------------------
+    // CONVERSION METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Convert a JSON workload trace file into a binary workload trace file
+     * (or vice versa if the input file is already binary). The traces are streamed
+     * from the input to the output, so this never holds the entire workload in memory.
+     * @param catalog_db
+     * @param input
+     * @param output
+     * @return the number of transactions that were converted
+     * @throws Exception
+     */
+    public static int convert(Database catalog_db, File input, File output) throws Exception {
+        boolean to_binary = (isBinaryFile(input) == false);
+        LOG.info(String.format("Converting %s workload trace '%s' to %s '%s'",
+                               (to_binary ? "JSON" : "binary"), input.getName(),
+                               (to_binary ? "binary" : "JSON"), output.getName()));
+
+        WorkloadStreamIterator it = new WorkloadStreamIterator(input, catalog_db);
+        int ctr = 0;
+        try {
+            if (to_binary) {
+                DataOutputStream out = openWriter(output);
+                while (it.hasNext()) {
+                    writeTransaction(out, it.next());
+                    ctr++;
+                } // WHILE
+                out.close();
+            } else {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+                byte newline[] = "\n".getBytes();
+                while (it.hasNext()) {
+                    out.write(it.next().toJSONString(catalog_db).getBytes());
+                    out.write(newline);
+                    ctr++;
+                } // WHILE
+                out.close();
+            }
+        } finally {
+            it.close();
+        }
+        LOG.info(String.format("Converted %d txns from '%s' [input=%d bytes, output=%d bytes]",
+                               ctr, input.getName(), input.length(), output.length()));
+        return (ctr);
+    }
+
+    /**
+     * Usage: catalog.jar=... workload.output=... INPUT_WORKLOAD
+     * @param vargs
+     * @throws Exception
+     */
+    public static void main(String vargs[]) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG, ArgumentsParser.PARAM_WORKLOAD_OUTPUT);
+        assert(args.getOptParamCount() > 0) : "Missing input workload trace file";
+
+        File input = new File(args.getOptParam(0));
+        File output = new File(args.getParam(ArgumentsParser.PARAM_WORKLOAD_OUTPUT));
+        FileUtil.makeDirIfNotExists(output.getAbsoluteFile().getParent());
+        convert(args.catalog_db, input, output);
+    }
+}
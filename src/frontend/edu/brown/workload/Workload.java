@@ -28,6 +28,7 @@ package edu.brown.workload;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -133,6 +134,14 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
     // Transaction Start Timestamp Ranges
     protected transient Long min_start_timestamp;
     protected transient Long max_start_timestamp;
+    
+    // Streaming Workloads
+    // If the stream_path is set, then we don't keep any of the TransactionTraces in memory.
+    // We read them from the file every time that somebody iterates over the workload.
+    private transient File stream_path;
+    private transient Database stream_catalog_db;
+    private transient Filter stream_filter;
+    private transient int stream_txn_ctr = 0;
 
     // ----------------------------------------------------------
     // THREADS
@@ -350,6 +359,27 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
         this.input_path = new File(input_path);
         long start = System.currentTimeMillis();
         
+        // Binary trace files are cheap enough to decode that we don't need
+        // the multi-threaded JSON loader
+        if (BinaryWorkloadTrace.isBinaryFile(this.input_path)) {
+            WorkloadStreamIterator it = new WorkloadStreamIterator(this.input_path, catalog_db, filter);
+            int query_ctr = 0;
+            try {
+                while (it.hasNext()) {
+                    TransactionTrace txn_trace = it.next();
+                    query_ctr += txn_trace.getQueryCount();
+                    this.addTransaction(txn_trace.getCatalogItem(catalog_db), txn_trace, true);
+                } // WHILE
+            } finally {
+                it.close();
+            }
+            VerifyWorkload.verify(catalog_db, this);
+            long stop = System.currentTimeMillis();
+            LOG.info(String.format("Loaded %d txns / %d queries from binary trace '%s' in %.1f seconds",
+                                   this.xact_trace.size(), query_ctr, this.input_path.getName(), (stop - start) / 1000d));
+            return;
+        }
+        
         // HACK: Throw out traces unless they have the procedures that we're looking for
         Pattern temp_pattern = null;
         if (filter != null) {
@@ -409,6 +439,69 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
     
 
     
+    /**
+     * Open a workload trace file (JSON or binary) without loading the TransactionTraces
+     * into memory. We make one pass over the file to compute the summary information
+     * for the workload (e.g., the procedure histogram and the timestamp ranges), and then
+     * every iterator will read the TransactionTraces from the file again.
+     * The given Filter is applied every time that we read the file.
+     * Iterators over a streaming Workload should not be used at the same time because
+     * they share the Filter.
+     * @param input_path
+     * @param catalog_db
+     * @param filter
+     * @throws Exception
+     */
+    public void stream(String input_path, Database catalog_db, Filter filter) throws Exception {
+        assert(this.xact_trace.isEmpty()) : "Trying to stream a workload into a non-empty Workload";
+        if (debug.get()) LOG.debug("Streaming workload trace from file '" + input_path + "'");
+        this.input_path = new File(input_path);
+        this.stream_path = this.input_path;
+        this.stream_catalog_db = catalog_db;
+        this.stream_filter = filter;
+        this.stream_txn_ctr = 0;
+        long start = System.currentTimeMillis();
+        
+        WorkloadStreamIterator it = this.streamIterator(null);
+        try {
+            while (it.hasNext()) {
+                TransactionTrace txn_trace = it.next();
+                this.updateSummary(CatalogKey.createKey(txn_trace.getCatalogItem(catalog_db)), txn_trace);
+                this.stream_txn_ctr++;
+            } // WHILE
+        } finally {
+            it.close();
+        }
+        
+        long stop = System.currentTimeMillis();
+        LOG.info(String.format("Opened streaming workload with %d txns / %d queries from '%s' in %.1f seconds",
+                               this.stream_txn_ctr, this.query_ctr, this.input_path.getName(), (stop - start) / 1000d));
+    }
+    
+    /**
+     * Returns true if the TransactionTraces for this Workload are read from
+     * its trace file every time instead of being kept in memory
+     * @return
+     */
+    public boolean isStreaming() {
+        return (this.stream_path != null);
+    }
+    
+    /**
+     * Create a new iterator that reads the TransactionTraces from the streaming workload's file
+     * @param filter
+     * @return
+     */
+    private WorkloadStreamIterator streamIterator(Filter filter) {
+        assert(this.stream_path != null);
+        if (this.stream_filter != null) this.stream_filter.reset();
+        try {
+            return (new WorkloadStreamIterator(this.stream_path, this.stream_catalog_db, this.stream_filter, filter));
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to open workload trace file '" + this.stream_path + "'", ex);
+        }
+    }
+    
     // ----------------------------------------------------------
     // ITERATORS METHODS
     // ----------------------------------------------------------
@@ -426,10 +519,12 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
      */
     @Override
     public Iterator<TransactionTrace> iterator() {
+        if (this.stream_path != null) return (this.streamIterator(null));
         return (new Workload.WorkloadIterator());
     }
 
     public Iterator<TransactionTrace> iterator(Filter filter) {
+        if (this.stream_path != null) return (this.streamIterator(filter));
         return (new Workload.WorkloadIterator(filter));
     }
     
@@ -484,6 +579,7 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
      * @return
      */
     public int getTransactionCount() {
+        if (this.stream_path != null) return (this.stream_txn_ctr);
         return (this.xact_trace.size());
     }
     
@@ -630,6 +726,15 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
             this.proc_xact_xref.put(proc_key, new ArrayList<TransactionTrace>());
         }
         this.proc_xact_xref.get(proc_key).add(txn_trace);
+        this.updateSummary(proc_key, txn_trace);
+    }
+    
+    /**
+     * Update the procedure histogram, timestamp ranges, and query counter for a new txn
+     * @param proc_key
+     * @param txn_trace
+     */
+    private void updateSummary(String proc_key, TransactionTrace txn_trace) {
         this.proc_histogram.put(proc_key);
         
         if (this.min_start_timestamp == null || this.min_start_timestamp > txn_trace.getStartTimestamp()) {
@@ -643,27 +748,64 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
     
     /**
      * Returns an ordered collection of all the transactions
+     * If this is a streaming workload, then the collection will read the 
+     * transactions from the trace file every time it is iterated over
      * @return
      */
     public Collection<TransactionTrace> getTransactions() {
+        if (this.stream_path != null) {
+            return (new AbstractCollection<TransactionTrace>() {
+                @Override
+                public Iterator<TransactionTrace> iterator() {
+                    return (Workload.this.iterator());
+                }
+                @Override
+                public int size() {
+                    return (Workload.this.stream_txn_ctr);
+                }
+            });
+        }
         return (this.xact_trace.values());
     }
     
     /**
      * Return the proper TransactionTrace object for the given txn_id
+     * For streaming workloads, this has to scan the trace file
      * @param txn_id
      * @return
      */
     public TransactionTrace getTransaction(long txn_id) { 
+        if (this.stream_path != null) {
+            WorkloadStreamIterator it = this.streamIterator(null);
+            try {
+                while (it.hasNext()) {
+                    TransactionTrace txn_trace = it.next();
+                    if (txn_trace.getTransactionId() == txn_id) return (txn_trace);
+                } // WHILE
+            } finally {
+                it.close();
+            }
+            return (null);
+        }
         return this.xact_trace.get(txn_id);
     }
     
     /**
      * For a given Procedure catalog object, return all the transaction traces for it
+     * For streaming workloads, this has to scan the trace file and the returned
+     * traces will be held in memory
      * @param catalog_proc
      * @return
      */
     public List<TransactionTrace> getTraces(Procedure catalog_proc) {
+        if (this.stream_path != null) {
+            List<TransactionTrace> traces = new ArrayList<TransactionTrace>();
+            WorkloadStreamIterator it = this.streamIterator(new ProcedureNameFilter(false).include(catalog_proc.getName()));
+            while (it.hasNext()) {
+                traces.add(it.next());
+            } // WHILE
+            return (traces);
+        }
         String proc_key = CatalogKey.createKey(catalog_proc);
         if (this.proc_xact_xref.containsKey(proc_key)) {
             return (this.proc_xact_xref.get(proc_key));
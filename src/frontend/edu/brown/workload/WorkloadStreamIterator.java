@@ -0,0 +1,197 @@
+package edu.brown.workload;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.voltdb.catalog.Database;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.FileUtil;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.Filter.FilterResult;
+
+/**
+ * Iterator that reads TransactionTraces one at a time from a workload trace file
+ * (either JSON or binary) without loading the entire workload into memory.
+ * The given Filters are applied to each trace in order. If any of them return
+ * HALT, then the iterator stops and closes the file.
+ * @see BinaryWorkloadTrace
+ */
+public class WorkloadStreamIterator implements Iterator<TransactionTrace>, Closeable {
+    private static final Logger LOG = Logger.getLogger(WorkloadStreamIterator.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    private final File input_path;
+    private final Database catalog_db;
+    private final Filter filters[];
+
+    /** Only one of these will be set, depending on the file format */
+    private DataInputStream binary_in;
+    private BufferedReader json_in;
+
+    private TransactionTrace peek;
+    private boolean closed = false;
+    private int line_ctr = 0;
+    private int read_ctr = 0;
+    private int skip_ctr = 0;
+
+    /**
+     * Constructor
+     * @param input_path
+     * @param catalog_db
+     * @param filters - the Filters to apply to each TransactionTrace (may be null)
+     * @throws IOException
+     */
+    public WorkloadStreamIterator(File input_path, Database catalog_db, Filter...filters) throws IOException {
+        this.input_path = input_path;
+        this.catalog_db = catalog_db;
+        this.filters = filters;
+        if (BinaryWorkloadTrace.isBinaryFile(input_path)) {
+            this.binary_in = BinaryWorkloadTrace.openReader(input_path);
+        } else {
+            this.json_in = FileUtil.getReader(input_path);
+        }
+        if (debug.get()) LOG.debug(String.format("Streaming %s workload trace from '%s'",
+                                                 (this.binary_in != null ? "binary" : "JSON"), input_path));
+    }
+
+    /**
+     * Returns true if the trace file is in the binary format
+     * @return
+     */
+    public boolean isBinary() {
+        return (this.binary_in != null);
+    }
+
+    /**
+     * Returns the number of TransactionTraces that we have read from the file so far
+     * This includes any that were skipped by the Filters
+     * @return
+     */
+    public int getReadCount() {
+        return (this.read_ctr);
+    }
+
+    /**
+     * Returns the number of TransactionTraces that were skipped by the Filters
+     * @return
+     */
+    public int getSkipCount() {
+        return (this.skip_ctr);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.peek == null && this.closed == false) {
+            try {
+                this.peek = this.fetch();
+            } catch (Exception ex) {
+                this.close();
+                throw new RuntimeException("Failed to read next TransactionTrace from '" + this.input_path + "'", ex);
+            }
+            if (this.peek == null) this.close();
+        }
+        return (this.peek != null);
+    }
+
+    @Override
+    public TransactionTrace next() {
+        if (this.hasNext() == false) throw new NoSuchElementException();
+        TransactionTrace next = this.peek;
+        this.peek = null;
+        return (next);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) return;
+        this.closed = true;
+        try {
+            if (this.binary_in != null) this.binary_in.close();
+            if (this.json_in != null) this.json_in.close();
+        } catch (IOException ex) {
+            LOG.warn("Failed to close workload trace file '" + this.input_path + "'", ex);
+        }
+        if (debug.get()) LOG.debug(String.format("Finished streaming '%s' [read=%d, skipped=%d]",
+                                                 this.input_path.getName(), this.read_ctr, this.skip_ctr));
+    }
+
+    /**
+     * Read in TransactionTraces until we find one that passes all of our Filters
+     * Returns null if there are no more traces or a Filter told us to halt
+     * @return
+     * @throws Exception
+     */
+    private TransactionTrace fetch() throws Exception {
+        while (true) {
+            TransactionTrace txn_trace = (this.binary_in != null ? this.readBinary() : this.readJSON());
+            if (txn_trace == null) return (null);
+            this.read_ctr++;
+
+            FilterResult result = FilterResult.ALLOW;
+            for (Filter filter : this.filters) {
+                if (filter == null) continue;
+                result = filter.apply(txn_trace);
+                if (result != FilterResult.ALLOW) break;
+            } // FOR
+            if (trace.get()) LOG.trace(txn_trace + " Filter Result: " + result);
+
+            if (result == FilterResult.HALT) {
+                if (debug.get()) LOG.debug("Got HALT response from filter! Stopping stream");
+                return (null);
+            } else if (result == FilterResult.SKIP) {
+                this.skip_ctr++;
+                continue;
+            }
+            return (txn_trace);
+        } // WHILE
+    }
+
+    private TransactionTrace readBinary() throws IOException {
+        return (BinaryWorkloadTrace.readTransaction(this.binary_in, this.catalog_db));
+    }
+
+    private TransactionTrace readJSON() throws IOException {
+        String line = null;
+        while ((line = this.json_in.readLine()) != null) {
+            this.line_ctr++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            JSONObject jsonObject = null;
+            try {
+                jsonObject = new JSONObject(line);
+            } catch (JSONException ex) {
+                LOG.warn(String.format("Ignoring invalid TransactionTrace on line %d of '%s'", this.line_ctr, this.input_path));
+                continue;
+            }
+            if (jsonObject.has(TransactionTrace.Members.TXN_ID.name()) == false) {
+                throw new IOException("Unexpected serialization line in workload trace file '" + this.input_path.getAbsolutePath() + "'");
+            }
+            try {
+                return (TransactionTrace.loadFromJSONObject(jsonObject, this.catalog_db));
+            } catch (JSONException ex) {
+                throw new IOException("Error on line " + this.line_ctr + " of workload trace file '" + this.input_path.getAbsolutePath() + "'", ex);
+            }
+        } // WHILE
+        return (null);
+    }
+}
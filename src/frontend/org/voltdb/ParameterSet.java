@@ -110,6 +110,22 @@ public class ParameterSet implements FastSerializable {
         return retval;
     }
 
+    /**
+     * Read the first count parameters out of an unserialized parameter buffer
+     * without deserializing the rest of them. If the buffer contains fewer
+     * than count parameters, then the remaining elements will be null. 
+     */
+    static Object[] getParameterPrefix(int count, ByteBuffer unserializedParams) throws IOException {
+        FastDeserializer in = new FastDeserializer(unserializedParams);
+        int paramLen = in.readShort();
+        Object retval[] = new Object[count];
+        for (int i = 0, cnt = Math.min(count, paramLen); i < cnt; ++i) {
+            retval[i] = readOneParameter(in);
+        }
+        unserializedParams.rewind();
+        return retval;
+    }
+
     @Override
     public void readExternal(FastDeserializer in) throws IOException {
         int paramLen = in.readShort();
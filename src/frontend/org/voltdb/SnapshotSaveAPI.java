@@ -148,6 +148,7 @@ public class SnapshotSaveAPI
 
                 SnapshotUtil.recordSnapshotTableList(
                         startTime,
+                        context.getCurrentTxnId().longValue(),
                         file_path,
                         file_nonce,
                         tables);
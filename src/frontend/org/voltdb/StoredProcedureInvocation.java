@@ -98,7 +98,12 @@ public class StoredProcedureInvocation implements FastSerializable {
         return procName;
     }
 
+    /**
+     * Returns the ParameterSet for this invocation. If the parameters have
+     * not been deserialized yet, then they will be deserialized now.
+     */
     public ParameterSet getParams() {
+        if (params == null && unserializedParams != null) buildParameterSet();
         return params;
     }
 
@@ -151,6 +156,38 @@ public class StoredProcedureInvocation implements FastSerializable {
         }
     }
 
+    /**
+     * Copy the serialized parameters out of the buffer that this invocation
+     * was read from so that they can still be deserialized after the caller
+     * reuses that buffer.
+     */
+    public void copyUnserializedParams() {
+        if (unserializedParams != null) {
+            ByteBuffer copy = ByteBuffer.allocate(unserializedParams.remaining());
+            copy.put(unserializedParams.duplicate());
+            copy.flip();
+            unserializedParams = copy;
+        }
+    }
+
+    /**
+     * Returns the first count parameters of this invocation without having
+     * to deserialize the entire ParameterSet. This is used to figure out
+     * where to route a new request before we know which thread will execute it.
+     * @param count
+     */
+    public Object[] getParameterPrefix(int count) {
+        if (params != null || unserializedParams == null) {
+            return getParams().toArray();
+        }
+        try {
+            return ParameterSet.getParameterPrefix(count, unserializedParams);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("Invalid ParameterSet in Stored Procedure Invocation.", ex);
+        }
+    }
+
     /** Read into an unserialized parameter buffer to extract a single parameter */
     Object getParameterAtIndex(int partitionIndex) {
         try {
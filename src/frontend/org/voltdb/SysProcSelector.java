@@ -23,5 +23,6 @@ public enum SysProcSelector {
     PARTITIONCOUNT,
     IOSTATS,
     MANAGEMENT, //Returns pretty much everything
-    SNAPSHOTSTATUS
+    SNAPSHOTSTATUS,
+    PLANFRAGMENT      // warm plan fragment cache in the EE
 }
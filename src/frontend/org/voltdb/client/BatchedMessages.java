@@ -0,0 +1,127 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility methods for frames that carry more than one StoredProcedureInvocation
+ * or ClientResponse. A batch frame looks like this:
+ * <pre>
+ * [byte BATCH_MARKER][int count]([int length][length bytes])*
+ * </pre>
+ * A serialized StoredProcedureInvocation always starts with its sysproc flag (0 or 1)
+ * and a serialized ClientResponse always starts with its version byte (0), so the
+ * marker lets the receiver tell a batch apart from a single message without any
+ * other change to the wire protocol.
+ */
+public abstract class BatchedMessages {
+
+    public static final byte BATCH_MARKER = (byte)0x7F;
+    
+    /** The number of bytes in the marker plus the message count */
+    public static final int HEADER_SIZE = 1 + 4;
+    
+    /**
+     * Returns true if the message starting at the buffer's current position is a batch
+     * @param buffer
+     * @return
+     */
+    public static boolean isBatch(ByteBuffer buffer) {
+        return (buffer.remaining() > 0 && buffer.get(buffer.position()) == BATCH_MARKER);
+    }
+    
+    /**
+     * Returns true if the serialized message is a batch
+     * @param message
+     * @return
+     */
+    public static boolean isBatch(byte message[]) {
+        return (message.length > 0 && message[0] == BATCH_MARKER);
+    }
+    
+    /**
+     * Returns the number of bytes needed to store a batch frame (without the
+     * leading frame length) for the given number of messages 
+     * @param count
+     * @param messageBytes The sum of the sizes of all of the messages
+     * @return
+     */
+    public static int getSerializedSize(int count, int messageBytes) {
+        return (HEADER_SIZE + (count * 4) + messageBytes);
+    }
+    
+    /**
+     * Write the batch header for the given number of messages
+     * @param out
+     * @param count
+     */
+    public static void writeHeader(ByteBuffer out, int count) {
+        assert(count > 0);
+        out.put(BATCH_MARKER);
+        out.putInt(count);
+    }
+    
+    /**
+     * Write the remaining bytes of the given message into the batch, prefixed
+     * by its length. The message's position will be advanced to its limit.
+     * @param out
+     * @param message
+     */
+    public static void writeMessage(ByteBuffer out, ByteBuffer message) {
+        out.putInt(message.remaining());
+        out.put(message);
+    }
+    
+    /**
+     * Split a batch frame into slices for each of its messages. The slices share
+     * the frame's content, so they are only valid as long as the frame is.
+     * The frame's position will be advanced to its limit. 
+     * @param frame
+     * @return
+     */
+    public static ByteBuffer[] split(ByteBuffer frame) {
+        assert(isBatch(frame));
+        frame.get(); // skip marker
+        int count = frame.getInt();
+        ByteBuffer messages[] = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            int length = frame.getInt();
+            ByteBuffer message = frame.slice();
+            message.limit(length);
+            messages[i] = message;
+            frame.position(frame.position() + length);
+        } // FOR
+        return (messages);
+    }
+    
+    /**
+     * Copy each of the messages in a batch frame into its own array
+     * @param frame
+     * @return
+     */
+    public static byte[][] unpack(byte frame[]) {
+        ByteBuffer messages[] = split(ByteBuffer.wrap(frame));
+        byte result[][] = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            result[i] = new byte[messages[i].remaining()];
+            messages[i].get(result[i]);
+        } // FOR
+        return (result);
+    }
+}
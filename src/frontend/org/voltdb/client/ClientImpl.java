@@ -20,6 +20,7 @@ package org.voltdb.client;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
@@ -27,6 +28,7 @@ import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.catalog.Catalog;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.sysprocs.GetCatalog;
 import org.voltdb.utils.DBBPool.BBContainer;
 
 import edu.brown.catalog.CatalogUtil;
@@ -68,9 +70,31 @@ final class ClientImpl implements Client {
     /**
      * If we have a catalog, then we'll enable client-side hints
      */
-    private Catalog m_catalog;
-    private PartitionEstimator m_pEstimator;
-    private int m_partitionSiteXref[];
+    private volatile Routing m_routing;
+    
+    /**
+     * Everything that we need to figure out which site to send an invocation to.
+     * This is swapped out as a whole whenever we get a new catalog.
+     */
+    private static class Routing {
+        final Catalog catalog;
+        final PartitionEstimator p_estimator;
+        final int partitionSiteXref[];
+        
+        Routing(Catalog catalog) {
+            this.catalog = catalog;
+            this.p_estimator = new PartitionEstimator(CatalogUtil.getDatabase(catalog));
+            this.partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(catalog);
+        }
+    }
+    
+    /** Whether we are allowed to download the catalog from the cluster */
+    private final boolean m_downloadCatalog;
+    private final AtomicBoolean m_downloadingCatalog = new AtomicBoolean(false);
+    private long m_lastCatalogDownload = 0;
+    
+    /** The min amount of time (in ms) between catalog downloads triggered by misrouted requests */
+    private static final long CATALOG_REFRESH_INTERVAL = 5000;
     private final HStoreConf m_hstoreConf;
     private final ProfileMeasurement m_queueTime = new ProfileMeasurement("queue");
     
@@ -119,18 +143,27 @@ final class ClientImpl implements Client {
         m_backpressureWait = m_hstoreConf.client.throttle_backoff;
         
         if (catalog != null && m_hstoreConf.client.txn_hints) {
-            m_catalog = catalog;
-            m_pEstimator = new PartitionEstimator(CatalogUtil.getDatabase(m_catalog));
-            m_partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(m_catalog);
+            m_routing = new Routing(catalog);
         }
+        m_downloadCatalog = (m_hstoreConf.client.txn_hints && m_hstoreConf.client.txn_hints_download);
         
         m_distributer = new Distributer(
                 expectedOutgoingMessageSize,
                 maxArenaSizes,
                 heavyweight,
                 statsSettings,
-                m_backpressureWait);
+                m_backpressureWait,
+                (m_hstoreConf.client.batch_invocations ? m_hstoreConf.client.batch_max_bytes : -1),
+                m_hstoreConf.client.batch_flush_interval);
         m_distributer.addClientStatusListener(new CSL());
+        if (m_downloadCatalog) {
+            m_distributer.setRoutingListener(new Distributer.RoutingListener() {
+                @Override
+                public void misrouted(int partition) {
+                    refreshCatalog();
+                }
+            });
+        }
     }
 
      /**
@@ -150,6 +183,105 @@ final class ClientImpl implements Client {
         final String subProgram = (program == null) ? "" : program;
         final String subPassword = (password == null) ? "" : password;
         m_distributer.createConnection(site_id, host, port, subProgram, subPassword);
+        
+        if (m_routing == null && m_downloadCatalog) {
+            this.downloadCatalog();
+        }
+        Routing routing = m_routing;
+        if (routing != null) {
+            m_distributer.updateSiteXref(routing.catalog);
+        }
+    }
+    
+    /**
+     * Synchronously download the catalog from the cluster so that we can
+     * send invocations directly to the site with their base partition.
+     * If this fails, then we'll just keep going without client-side hints.
+     */
+    private void downloadCatalog() {
+        if (m_downloadingCatalog.compareAndSet(false, true) == false) return;
+        try {
+            ClientResponse cresponse = this.callProcedure("@GetCatalog");
+            this.setCatalog(GetCatalog.decode(cresponse.getResults()[0]));
+        } catch (Exception ex) {
+            LOG.warn("Failed to download catalog from cluster. Client-side transaction routing is disabled", ex);
+        } finally {
+            m_downloadingCatalog.set(false);
+        }
+    }
+    
+    /**
+     * Asynchronously download a new copy of the catalog. This is invoked by the 
+     * Distributer when it finds out that a request was executed at a different 
+     * site than the one that we sent it to.
+     */
+    private void refreshCatalog() {
+        synchronized (m_downloadingCatalog) {
+            long now = System.currentTimeMillis();
+            if (now - m_lastCatalogDownload < CATALOG_REFRESH_INTERVAL) return;
+            if (m_downloadingCatalog.compareAndSet(false, true) == false) return;
+            m_lastCatalogDownload = now;
+        } // SYNCH
+        if (debug.get()) LOG.debug("Refreshing catalog after misrouted request");
+        
+        ProcedureCallback callback = new ProcedureCallback() {
+            @Override
+            public void clientCallback(ClientResponse cresponse) {
+                try {
+                    if (cresponse.getStatus() == Hstoreservice.Status.OK) {
+                        setCatalog(GetCatalog.decode(cresponse.getResults()[0]));
+                    } else {
+                        LOG.warn("Failed to refresh catalog from cluster: " + cresponse.getStatusString());
+                    }
+                } finally {
+                    m_downloadingCatalog.set(false);
+                }
+            }
+        };
+        // We can't block here because we are most likely running in the network thread
+        StoredProcedureInvocation invocation =
+            new StoredProcedureInvocation(m_handle.getAndIncrement(), "@GetCatalog");
+        try {
+            if (m_distributer.queue(invocation, callback, m_expectedOutgoingMessageSize, true, null) == false) {
+                m_downloadingCatalog.set(false);
+            }
+        } catch (NoConnectionsException ex) {
+            m_downloadingCatalog.set(false);
+        }
+    }
+    
+    private void setCatalog(Catalog catalog) {
+        Routing routing = new Routing(catalog);
+        m_distributer.updateSiteXref(catalog);
+        m_routing = routing;
+        synchronized (m_downloadingCatalog) {
+            m_lastCatalogDownload = System.currentTimeMillis();
+        } // SYNCH
+        if (debug.get()) LOG.debug(String.format("Enabled client-side routing for %d partitions",
+                                                 routing.partitionSiteXref.length));
+    }
+    
+    /**
+     * Figure out the base partition for the given invocation and embed it in
+     * the request. Returns the id of the site that has that partition, or null
+     * if we don't know where it should go.
+     */
+    private Integer routeInvocation(StoredProcedureInvocation invocation) {
+        Routing routing = m_routing;
+        String procName = invocation.getProcName();
+        if (routing == null || procName.startsWith("@")) return (null);
+        
+        Integer site_id = null;
+        try {
+            Integer partition = routing.p_estimator.getBasePartition(invocation);
+            if (partition != null) {
+                site_id = routing.partitionSiteXref[partition.intValue()];
+                invocation.setBasePartition(partition.intValue());
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
+        }
+        return (site_id);
     }
     
     /**
@@ -171,18 +303,7 @@ final class ClientImpl implements Client {
         final StoredProcedureInvocation invocation =
               new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (m_catalog != null && procName.startsWith("@") == false) {
-            try {
-                Integer partition = m_pEstimator.getBasePartition(invocation);
-                if (partition != null) {
-                    site_id = m_partitionSiteXref[partition.intValue()];
-                    invocation.setBasePartition(partition.intValue());
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-            }
-        }
+        Integer site_id = this.routeInvocation(invocation);
         
         long start = ProfileMeasurement.getTime();
         m_distributer.queue(
@@ -255,18 +376,7 @@ final class ClientImpl implements Client {
         StoredProcedureInvocation invocation =
             new StoredProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
 
-        Integer site_id = null;
-        if (m_catalog != null && procName.startsWith("@") == false) {
-            try {
-                Integer partition = m_pEstimator.getBasePartition(invocation);
-                if (partition != null) {
-                    site_id = m_partitionSiteXref[partition.intValue()];
-                    invocation.setBasePartition(partition.intValue());
-                }
-            } catch (Exception ex) {
-                throw new RuntimeException("Failed to estimate base partition for new invocation of '" + procName + "'", ex);
-            }
-        }
+        Integer site_id = this.routeInvocation(invocation);
         
         if (m_blockingQueue) {
             long start = ProfileMeasurement.getTime();
@@ -27,7 +27,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
@@ -36,6 +40,8 @@ import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Site;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializable;
 import org.voltdb.messaging.FastSerializer;
@@ -47,6 +53,7 @@ import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.DBBPool.BBContainer;
 import org.voltdb.utils.Pair;
 
+import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.HStoreThreadManager;
 import edu.brown.hstore.Hstoreservice;
 import edu.brown.logging.LoggerUtil;
@@ -72,7 +79,7 @@ class Distributer {
     private final ArrayList<NodeConnection> m_connections = new ArrayList<NodeConnection>();
     
     /** SiteId -> NodeConnection */
-    private final Map<Integer, Collection<NodeConnection>> m_connectionSiteXref = new HashMap<Integer, Collection<NodeConnection>>();
+    private final Map<Integer, Collection<NodeConnection>> m_connectionSiteXref = new ConcurrentHashMap<Integer, Collection<NodeConnection>>();
 
     private final ArrayList<ClientStatusListener> m_listeners = new ArrayList<ClientStatusListener>();
 
@@ -89,6 +96,19 @@ class Distributer {
     private final boolean m_useMultipleThreads;
     
     private final int m_backpressureWait;
+    
+    /**
+     * If greater than zero, then invocations are coalesced per connection
+     * and sent once they reach this many bytes.
+     */
+    private final int m_batchMaxBytes;
+    
+    /** How long (in microseconds) an invocation may wait in a batch */ 
+    private final int m_batchFlushInterval;
+    
+    /** Sends out any partial batches every m_batchFlushInterval */
+    private final Thread m_batchFlusher;
+    private volatile boolean m_isShutdown = false;
 
     private final String m_hostname;
 
@@ -98,6 +118,22 @@ class Distributer {
     private Object m_clusterInstanceId[];
 
     private final ClientStatsLoader m_statsLoader;
+    
+    /**
+     * PartitionId -> SiteId
+     * This is only available once the client has a catalog.
+     */
+    private volatile int m_partitionSiteXref[];
+    
+    /**
+     * Told when a response comes back from a partition that is not at the
+     * site of the connection that we sent its request to.
+     */
+    private RoutingListener m_routingListener;
+    
+    interface RoutingListener {
+        public void misrouted(int partition);
+    }
     private String m_buildString;
 
     private static class ProcedureStats {
@@ -197,6 +233,9 @@ class Distributer {
         private Connection m_connection;
         private String m_hostname;
         private int m_port;
+        
+        /** The id of the site at the other end of this connection (-1 if unknown) */
+        private int m_siteId = -1;
         private boolean m_isConnected = true;
         private final AtomicBoolean m_hasBackPressure = new AtomicBoolean(false);
         private long m_hasBackPressureTimestamp = -1;
@@ -210,6 +249,11 @@ class Distributer {
         private long m_lastInvocationAborts = 0;
         private long m_invocationErrors = 0;
         private long m_lastInvocationErrors = 0;
+        private final AtomicLong m_invocationsMisrouted = new AtomicLong(0);
+        
+        /** Serialized invocations waiting to be sent in the next batch */
+        private List<BBContainer> m_batch = new ArrayList<BBContainer>();
+        private int m_batchBytes = 0;
 
         public NodeConnection(long ids[]) {
             m_callbacks = new HashMap<Long, CallbackValues>();
@@ -222,31 +266,108 @@ class Distributer {
             return (String.format("NodeConnection[id=%d, host=%s, port=%d]", m_hostId, m_hostname, m_port));
         }
 
+        /**
+         * Register the callback for a new invocation on this connection.
+         * Must be called while holding this connection's lock.
+         * @return false if the connection was lost, in which case the callback has already been told so
+         */
+        private boolean registerCallback(long now, long handle, String name, ProcedureCallback callback) {
+            if (!m_isConnected) {
+                final ClientResponse r = new ClientResponseImpl(-1, -1, -1, Hstoreservice.Status.ABORT_CONNECTION_LOST,
+                        new VoltTable[0], "Connection to database host (" + m_hostname +
+                        ") was lost before a response was received");
+                callback.clientCallback(r);
+                return (false);
+            }
+            m_callbacks.put(handle, new CallbackValues(now, callback, name));
+            return (true);
+        }
+
         public void createWork(long now, long handle, String name, BBContainer c, ProcedureCallback callback) {
             synchronized (this) {
-                if (!m_isConnected) {
-                    final ClientResponse r = new ClientResponseImpl(-1, -1, -1, Hstoreservice.Status.ABORT_CONNECTION_LOST,
-                            new VoltTable[0], "Connection to database host (" + m_hostname +
-                            ") was lost before a response was received");
-                    callback.clientCallback(r);
+                if (this.registerCallback(now, handle, name, callback) == false) {
                     c.discard();
                     return;
                 }
-                m_callbacks.put(handle, new CallbackValues(now, callback, name));
             }
             m_connection.writeStream().enqueue(c);
         }
+        
+        /**
+         * Add an invocation (already framed by FastSerializer.writeObjectForMessaging())
+         * to this connection's next batch. If the batch is now large enough, it is sent out right away.
+         * Batches are written to the stream while holding this connection's lock so that
+         * they go out in the same order that their invocations were added.
+         */
+        public void createBatchedWork(long now, long handle, String name, BBContainer c, ProcedureCallback callback) {
+            boolean started = false;
+            synchronized (this) {
+                if (this.registerCallback(now, handle, name, callback) == false) {
+                    c.discard();
+                    return;
+                }
+                started = m_batch.isEmpty();
+                m_batch.add(c);
+                m_batchBytes += c.b.remaining();
+                if (m_batchBytes >= m_batchMaxBytes) {
+                    this.sendBatch(this.swapBatch());
+                    started = false;
+                }
+            } // SYNCH
+            // Wake up the flusher so that this new batch doesn't wait forever
+            if (started) LockSupport.unpark(m_batchFlusher);
+        }
+        
+        /**
+         * Send out whatever invocations are waiting in this connection's batch
+         */
+        public void flushBatch() {
+            synchronized (this) {
+                if (m_batch.isEmpty()) return;
+                this.sendBatch(this.swapBatch());
+            } // SYNCH
+        }
+        
+        private List<BBContainer> swapBatch() {
+            List<BBContainer> pending = m_batch;
+            m_batch = new ArrayList<BBContainer>(pending.size());
+            m_batchBytes = 0;
+            return (pending);
+        }
+        
+        private void sendBatch(List<BBContainer> pending) {
+            // A single invocation doesn't need to be wrapped
+            if (pending.size() == 1) {
+                m_connection.writeStream().enqueue(pending.get(0));
+                return;
+            }
+            
+            // Each of the containers already has its length in front of it,
+            // so we just need to stick the batch header in front of them all
+            int messageBytes = 0;
+            for (BBContainer c : pending) {
+                messageBytes += c.b.remaining();
+            } // FOR
+            int size = BatchedMessages.HEADER_SIZE + messageBytes;
+            BBContainer out = m_pool.acquire(4 + size);
+            out.b.clear();
+            out.b.putInt(size);
+            BatchedMessages.writeHeader(out.b, pending.size());
+            for (BBContainer c : pending) {
+                out.b.put(c.b);
+                c.discard();
+            } // FOR
+            out.b.flip();
+            if (trace.get()) 
+                LOG.trace(String.format("Sending batch of %d invocations [bytes=%d] to %s", pending.size(), size, this));
+            m_connection.writeStream().enqueue(out);
+        }
 
         public void createWork(long now, long handle, String name, FastSerializable f, ProcedureCallback callback) {
             synchronized (this) {
-                if (!m_isConnected) {
-                    final ClientResponse r = new ClientResponseImpl(-1, -1, -1, Hstoreservice.Status.ABORT_CONNECTION_LOST,
-                            new VoltTable[0], "Connection to database host (" + m_hostname +
-                            ") was lost before a response was received");
-                    callback.clientCallback(r);
+                if (this.registerCallback(now, handle, name, callback) == false) {
                     return;
                 }
-                m_callbacks.put(handle, new CallbackValues(now, callback, name));
             }
             m_connection.writeStream().enqueue(f);
         }
@@ -268,6 +389,16 @@ class Distributer {
 
         @Override
         public void handleMessage(ByteBuffer buf, Connection c) {
+            if (BatchedMessages.isBatch(buf)) {
+                for (ByteBuffer message : BatchedMessages.split(buf)) {
+                    this.handleResponse(message);
+                } // FOR
+            } else {
+                this.handleResponse(buf);
+            }
+        }
+        
+        private void handleResponse(ByteBuffer buf) {
             ClientResponseImpl response = null;
             FastDeserializer fds = new FastDeserializer(buf);
             try {
@@ -322,6 +453,7 @@ class Distributer {
                         m1.put("Error Invocations", m_invocationErrors);
                         m1.put("Abort Invocations", m_invocationAborts);
                         m1.put("Throttled Invocations", m_invocationsThrottled);
+                        m1.put("Misrouted Invocations", m_invocationsMisrouted.get());
                         LOG.debug("ClientResponse Information:\n" + StringUtil.formatMaps(m0, m1));
                     }
                     
@@ -348,6 +480,21 @@ class Distributer {
             } // SYNCH
 
             if (stuff != null) {
+                // Check whether the txn was sent somewhere else after it got to the site
+                // We only count it as misrouted if we have a connection to the site that
+                // owns the partition. Otherwise there was nowhere better to send it and
+                // downloading the catalog again will not change that
+                final int xref[] = m_partitionSiteXref;
+                final int partition = response.getBasePartition();
+                if (xref != null && m_siteId != -1 && partition >= 0 && partition < xref.length &&
+                    xref[partition] != m_siteId && m_connectionSiteXref.containsKey(xref[partition])) {
+                    m_invocationsMisrouted.incrementAndGet();
+                    if (debug.get()) LOG.debug(String.format("%s request was executed at partition %d but it was sent to %s",
+                                                             stuff.name, partition, this));
+                    final RoutingListener listener = m_routingListener;
+                    if (listener != null) listener.misrouted(partition);
+                }
+                
                 if (status == Hstoreservice.Status.ABORT_USER || status == Hstoreservice.Status.ABORT_GRACEFUL) {
                     m_invocationAborts++;
                     abort = true;
@@ -412,12 +559,35 @@ class Distributer {
                 //Prevent queueing of new work to this connection
                 synchronized (Distributer.this) {
                     m_connections.remove(this);
+                    // Stop routing to this connection. We swap in a new set instead of
+                    // modifying the old one because queue() reads it without a lock
+                    if (m_siteId != -1) {
+                        synchronized (m_connectionSiteXref) {
+                            Collection<NodeConnection> nc = m_connectionSiteXref.get(m_siteId);
+                            if (nc != null && nc.contains(this)) {
+                                nc = new HashSet<NodeConnection>(nc);
+                                nc.remove(this);
+                                if (nc.isEmpty()) {
+                                    m_connectionSiteXref.remove(m_siteId);
+                                } else {
+                                    m_connectionSiteXref.put(m_siteId, nc);
+                                }
+                            }
+                        } // SYNCH
+                    }
                     //Notify listeners that a connection has been lost
                     for (ClientStatusListener s : m_listeners) {
                         s.connectionLost(m_hostname, m_connections.size());
                     }
                 }
                 m_isConnected = false;
+                
+                // Throw away anything that was waiting to be sent
+                for (BBContainer pending : m_batch) {
+                    pending.discard();
+                } // FOR
+                m_batch.clear();
+                m_batchBytes = 0;
 
                 //Invoke callbacks for all queued invocations with a failure response
                 final ClientResponse r =
@@ -504,7 +674,69 @@ class Distributer {
         }
     }
 
+    void setRoutingListener(RoutingListener listener) {
+        m_routingListener = listener;
+    }
+    
+    /**
+     * Use the given catalog to figure out which site each of our connections 
+     * is talking to so that invocations can be sent directly to the site that
+     * has their base partition. The HStoreSite tells us its host id when we connect,
+     * and each site on that host listens on its own port.
+     * @param catalog
+     */
+    synchronized void updateSiteXref(Catalog catalog) {
+        Collection<Site> sites = CatalogUtil.getAllSites(catalog);
+        for (NodeConnection cxn : m_connections) {
+            if (cxn.m_siteId != -1) continue;
+            for (Site catalog_site : sites) {
+                if (catalog_site.getHost().getId() != cxn.m_hostId ||
+                    catalog_site.getProc_port() != cxn.m_port) continue;
+                
+                cxn.m_siteId = catalog_site.getId();
+                if (debug.get())
+                    LOG.debug(String.format("Mapped %s to Site %s", cxn, HStoreThreadManager.formatSiteName(cxn.m_siteId)));
+                this.addSiteConnection(cxn.m_siteId, cxn);
+                break;
+            } // FOR
+        } // FOR
+        m_partitionSiteXref = CatalogUtil.getPartitionSiteXrefArray(catalog);
+    }
+    
+    /**
+     * Start routing requests for the given site to this connection. We swap in
+     * a new set instead of modifying the old one because queue() reads it without a lock
+     * @param site_id
+     * @param cxn
+     */
+    private void addSiteConnection(int site_id, NodeConnection cxn) {
+        synchronized (m_connectionSiteXref) {
+            Collection<NodeConnection> nc = m_connectionSiteXref.get(site_id);
+            if (nc == null) {
+                nc = new HashSet<NodeConnection>();
+            } else {
+                nc = new HashSet<NodeConnection>(nc);
+            }
+            nc.add(cxn);
+            m_connectionSiteXref.put(site_id, nc);
+        } // SYNCH
+    }
+    
+    /**
+     * Send out any invocations waiting in each connection's batch
+     */
+    void flushBatches() {
+        NodeConnection connections[] = null;
+        synchronized (this) {
+            connections = m_connections.toArray(new NodeConnection[m_connections.size()]);
+        } // SYNCH
+        for (NodeConnection cxn : connections) {
+            cxn.flushBatch();
+        } // FOR
+    }
+    
     void drain() throws NoConnectionsException {
+        if (m_batchMaxBytes > 0) this.flushBatches();
         boolean more;
         do {
             more = false;
@@ -543,6 +775,27 @@ class Distributer {
             boolean useMultipleThreads,
             StatsUploaderSettings statsSettings,
             int backpressureWait) {
+        this(expectedOutgoingMessageSize, arenaSizes, useMultipleThreads, statsSettings, backpressureWait, -1, -1);
+    }
+    
+    /**
+     * Constructor
+     * @param expectedOutgoingMessageSize
+     * @param arenaSizes
+     * @param useMultipleThreads
+     * @param statsSettings
+     * @param backpressureWait
+     * @param batchMaxBytes If greater than zero, then invocations will be sent in batches of at most this many bytes
+     * @param batchFlushInterval The max time (in microseconds) that an invocation will wait in a batch
+     */
+    Distributer(
+            int expectedOutgoingMessageSize,
+            int arenaSizes[],
+            boolean useMultipleThreads,
+            StatsUploaderSettings statsSettings,
+            int backpressureWait,
+            int batchMaxBytes,
+            int batchFlushInterval) {
         if (statsSettings != null) {
             m_statsLoader = new ClientStatsLoader(statsSettings, this);
         } else {
@@ -550,6 +803,8 @@ class Distributer {
         }
         m_useMultipleThreads = useMultipleThreads;
         m_backpressureWait = backpressureWait;
+        m_batchMaxBytes = batchMaxBytes;
+        m_batchFlushInterval = batchFlushInterval;
         m_network = new VoltNetwork( useMultipleThreads, true, 3);
         m_expectedOutgoingMessageSize = expectedOutgoingMessageSize;
         m_network.start();
@@ -562,9 +817,31 @@ class Distributer {
         }
         m_hostname = hostname;
         
+        if (m_batchMaxBytes > 0) {
+            assert(m_batchFlushInterval > 0);
+            final long intervalNanos = m_batchFlushInterval * 1000l;
+            m_batchFlusher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (m_isShutdown == false) {
+                        // Sleep until a connection starts a new batch, then give
+                        // it up to the flush interval to fill before sending it out
+                        LockSupport.park();
+                        if (m_isShutdown) break;
+                        LockSupport.parkNanos(intervalNanos);
+                        flushBatches();
+                    } // WHILE
+                }
+            }, "BatchFlusher");
+            m_batchFlusher.setDaemon(true);
+            m_batchFlusher.start();
+        } else {
+            m_batchFlusher = null;
+        }
+        
         if (debug.get())
-            LOG.debug(String.format("Created new Distributer for %s [multiThread=%s, backpressureWait=%d]",
-                                    m_hostname, m_useMultipleThreads, m_backpressureWait));
+            LOG.debug(String.format("Created new Distributer for %s [multiThread=%s, backpressureWait=%d, batchMaxBytes=%d]",
+                                    m_hostname, m_useMultipleThreads, m_backpressureWait, m_batchMaxBytes));
 
 //        new Thread() {
 //            @Override
@@ -656,16 +933,10 @@ class Distributer {
         NodeConnection cxn = new NodeConnection(numbers);
         m_connections.add(cxn);
         if (site_id != null) {
+            cxn.m_siteId = site_id.intValue();
             if (debug.get())
                 LOG.debug(String.format("Created connection for Site %s: %s", HStoreThreadManager.formatSiteName(site_id), cxn));
-            synchronized (m_connectionSiteXref) {
-                Collection<NodeConnection> nc = m_connectionSiteXref.get(site_id);
-                if (nc == null) {
-                    nc = new HashSet<NodeConnection>();
-                    m_connectionSiteXref.put(site_id, nc);
-                }
-                nc.add(cxn);    
-            } // SYNCH
+            this.addSiteConnection(site_id.intValue(), cxn);
         }
         
         Connection c = m_network.registerChannel(aChannel, cxn);
@@ -714,8 +985,9 @@ class Distributer {
         if (totalConnections == 0) {
             throw new NoConnectionsException("No connections.");
         }
-        if (site_id != null && m_connectionSiteXref.containsKey(site_id)) {
-             cxn = CollectionUtil.random(m_connectionSiteXref.get(site_id));
+        final Collection<NodeConnection> site_cxns = (site_id != null ? m_connectionSiteXref.get(site_id) : null);
+        if (site_cxns != null) {
+             cxn = CollectionUtil.random(site_cxns);
 //            cxn = CollectionUtil.first(m_connectionSiteXref.get(site_id));
             if (cxn == null) {
                 LOG.warn("No direct connection to " + HStoreThreadManager.formatSiteName(site_id));
@@ -764,17 +1036,13 @@ class Distributer {
          * createWork synchronizes on an individual connection which allows for more concurrency
          */
         if (cxn != null) {
-            if (m_useMultipleThreads) {
+            if (m_batchMaxBytes > 0) {
+                BBContainer c = this.serialize(invocation, expectedSerializedSize);
+                cxn.createBatchedWork(now, invocation.getClientHandle(), invocation.getProcName(), c, cb);
+            } else if (m_useMultipleThreads) {
                 cxn.createWork(now, invocation.getClientHandle(), invocation.getProcName(), invocation, cb);
             } else {
-                final FastSerializer fs = new FastSerializer(m_pool, expectedSerializedSize);
-                BBContainer c = null;
-                try {
-                    c = fs.writeObjectForMessaging(invocation);
-                } catch (IOException e) {
-                    fs.getBBContainer().discard();
-                    throw new RuntimeException(e);
-                }
+                BBContainer c = this.serialize(invocation, expectedSerializedSize);
                 cxn.createWork(now, invocation.getClientHandle(), invocation.getProcName(), c, cb);
             }
 //            final String invocationName = invocation.getProcName();
@@ -794,6 +1062,21 @@ class Distributer {
         return !backpressure;
     }
 
+    /**
+     * Serialize the invocation into a length-prefixed message from our buffer pool
+     * @param invocation
+     * @param expectedSerializedSize
+     */
+    private BBContainer serialize(StoredProcedureInvocation invocation, int expectedSerializedSize) {
+        final FastSerializer fs = new FastSerializer(m_pool, expectedSerializedSize);
+        try {
+            return (fs.writeObjectForMessaging(invocation));
+        } catch (IOException e) {
+            fs.getBBContainer().discard();
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -803,6 +1086,11 @@ class Distributer {
         if (m_statsLoader != null) {
             m_statsLoader.stop();
         }
+        m_isShutdown = true;
+        if (m_batchFlusher != null) {
+            LockSupport.unpark(m_batchFlusher);
+            m_batchFlusher.join();
+        }
         m_network.shutdown();
         synchronized (this) {
             m_pool.clear();
@@ -148,6 +148,7 @@ public abstract class StatementCompiler {
         PlanNodeList node_list = null;
         
         QueryPlanner planner = new QueryPlanner(catalog.getClusters().get("cluster"), db, hsql, estimates, true, false);
+        planner.setEnableHashJoins(compiler.m_enableHashJoins);
 
         Throwable first_exception = null;
         for (boolean _singleSited : new boolean[]{ true, false }) {
@@ -85,6 +85,7 @@ import org.voltdb.sysprocs.AdHoc;
 import org.voltdb.sysprocs.DatabaseDump;
 import org.voltdb.sysprocs.ExecutorStatus;
 import org.voltdb.sysprocs.GarbageCollection;
+import org.voltdb.sysprocs.GetCatalog;
 import org.voltdb.sysprocs.LoadMultipartitionTable;
 import org.voltdb.sysprocs.NoOp;
 import org.voltdb.sysprocs.RecomputeMarkovs;
@@ -152,6 +153,7 @@ public class VoltCompiler {
     DatabaseEstimates m_estimates = new DatabaseEstimates();
 
     boolean m_enableVerticalPartitionOptimizations = false;
+    boolean m_enableHashJoins = false;
     VerticalPartitionPlanner m_verticalPartitionPlanner;
     
     
@@ -546,6 +548,14 @@ public class VoltCompiler {
     public void enableVerticalPartitionOptimizations() {
         m_enableVerticalPartitionOptimizations = true;
     }
+    
+    /**
+     * Plan equi-joins that don't have a usable index as hash joins
+     * instead of nested loop joins. This is still experimental.
+     */
+    public void enableHashJoins() {
+        m_enableHashJoins = true;
+    }
 
     void compileXMLRootNode(ProjectType project) throws VoltCompilerException {
         m_catalog = new Catalog();
@@ -1227,6 +1237,7 @@ public class VoltCompiler {
             {AdHoc.class,                           false,      false},
             {GarbageCollection.class,               true,       true},
             {ExecutorStatus.class,                  true,       false},
+            {GetCatalog.class,                      true,       false},
             {SnapshotSave.class,                    false,      false},
             {SnapshotRestore.class,                 false,      false},
             {SnapshotStatus.class,                  false,      false},
@@ -243,6 +243,7 @@ public class VoltProjectBuilder {
     List<String> m_elAuthUsers;       // authorized users
     List<String> m_elAuthGroups;      // authorized groups
     private boolean m_verticalPartitionOptimizations = true;
+    private boolean m_hashJoins = false;
 
     BackendTarget m_target = BackendTarget.NATIVE_EE_JNI;
     PrintStream m_compilerDebugPrintStream = null;
@@ -608,6 +609,10 @@ public class VoltProjectBuilder {
     public void setEnableVerticalPartitionOptimizations(boolean val) { 
         m_verticalPartitionOptimizations = val;
     }
+    
+    public void setEnableHashJoins(boolean val) {
+        m_hashJoins = val;
+    }
 
     public void setSecurityEnabled(final boolean enabled) {
         m_securityEnabled = enabled;
@@ -671,6 +676,7 @@ public class VoltProjectBuilder {
     {
         VoltCompiler compiler = new VoltCompiler();
         if (m_verticalPartitionOptimizations) compiler.enableVerticalPartitionOptimizations();
+        if (m_hashJoins) compiler.enableHashJoins();
         return compile(compiler, jarPath, sitesPerHost, hostCount, replication,
                        leaderAddress);
     }
@@ -394,13 +394,15 @@ public class ExecutionEngineJNI extends ExecutionEngine {
              // deserializer.readBuffer(totalSize);
             
             // At this point we don't know how many dependencies we expect to get back from our fragments.
-            // We're just going to assume that each PlanFragment generated one and only one output dependency
+            // Each PlanFragment generates at most one output dependency. If a fragment's output
+            // was consumed by a later fragment in the same batch, then the EE kept it to itself
+            // and we won't get anything back for it.
             VoltTable results[] = new VoltTable[numFragmentIds];
             int dependencies[] = new int[numFragmentIds];
             int dep_ctr = 0;
             for (int i = 0; i < numFragmentIds; ++i) {
                 int numDependencies = fullBacking.getInt(); // number of dependencies for this frag
-                assert(numDependencies == 1) :
+                assert(numDependencies <= 1) :
                     "Unexpected multiple output dependencies from PlanFragment #" + planFragmentIds[i];
                 
                 // PAVLO: Since we can't pass the dependency ids using nativeExecuteQueryPlanFragmentsAndGetResults(),
@@ -408,10 +410,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                 // that the frags were executed in the order that we passed to the EE and that we
                 // can just use the list of output_depIds that we have 
                 for (int ii = 0; ii < numDependencies; ++ii) {
-                    assert(dep_ctr < output_depIds.length) : 
-                        "Trying to get depId #" + dep_ctr + ": " + Arrays.toString(output_depIds);
+                    assert(i < output_depIds.length) : 
+                        "Trying to get depId #" + i + ": " + Arrays.toString(output_depIds);
                     fullBacking.getInt(); // IGNORE 
-                    int depid = output_depIds[dep_ctr];
+                    int depid = output_depIds[i];
                     assert(depid >= 0);
                     
                     int tableSize = fullBacking.getInt();
@@ -428,6 +430,12 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     dep_ctr++;
                 } // FOR
             } // FOR
+            if (dep_ctr < numFragmentIds) {
+                if (d) LOG.debug(String.format("%d - %d intermediate dependencies were kept in the EE",
+                                               txnId, numFragmentIds - dep_ctr));
+                results = Arrays.copyOf(results, dep_ctr);
+                dependencies = Arrays.copyOf(dependencies, dep_ctr);
+            }
             
             return (new DependencySet(dependencies, results));
         } catch (Throwable ex) {
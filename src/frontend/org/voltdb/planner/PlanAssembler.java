@@ -117,6 +117,9 @@ public class PlanAssembler {
     /** The number of partitions (fetched from the cluster info) */
     final int m_partitionCount;
 
+    /** Can equi-joins without a usable index be planned as hash joins? */
+    boolean m_enableHashJoins = false;
+
     /**
      * Used to generate the table-touching parts of a plan. All join-order and
      * access path selection stuff is done by the SelectSubPlanAssember.
@@ -242,7 +245,7 @@ public class PlanAssembler {
             subAssembler =
                 new SelectSubPlanAssembler(m_context, m_catalogDb,
                                            parsedStmt, singlePartition,
-                                           m_partitionCount);
+                                           m_partitionCount, m_enableHashJoins);
         } else {
             // check that no modification happens to views
             if (tableListIncludesView(parsedStmt.tableList)) {
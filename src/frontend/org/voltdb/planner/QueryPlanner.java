@@ -86,6 +86,15 @@ public class QueryPlanner {
         m_quietPlanner = suppressDebugOutput;
     }
 
+    /**
+     * Allow the planner to use a hash join instead of a nested loop join when
+     * two tables are joined on an equality clause without a usable index.
+     * @param enableHashJoins
+     */
+    public void setEnableHashJoins(boolean enableHashJoins) {
+        m_assembler.m_enableHashJoins = enableHashJoins;
+    }
+
     /**
      * Get the best plan for the SQL statement given, assuming the given costModel.
      *
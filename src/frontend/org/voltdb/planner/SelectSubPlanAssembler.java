@@ -27,11 +27,14 @@ import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Table;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
 import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
 import org.voltdb.plannodes.ReceivePlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 
 /**
@@ -51,16 +54,21 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     ArrayDeque<Table[]> m_joinOrders = new ArrayDeque<Table[]>();
 
+    /** Can we use a hash join for equi-joins that don't have a usable index? */
+    final boolean m_enableHashJoins;
+
     /**
      *
      * @param db The catalog's Database object.
      * @param parsedStmt The parsed and dissected statement object describing the sql to execute.
      * @param singlePartition Does this statement access one or multiple partitions?
+     * @param enableHashJoins Can we use a hash join instead of a nested loop?
      */
     SelectSubPlanAssembler(PlannerContext context, Database db, AbstractParsedStmt parsedStmt,
-                           boolean singlePartition, int partitionCount)
+                           boolean singlePartition, int partitionCount, boolean enableHashJoins)
     {
         super(context, db, parsedStmt, singlePartition, partitionCount);
+        m_enableHashJoins = enableHashJoins;
         queueAllJoinOrders();
     }
 
@@ -291,7 +299,15 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
             retval = nlijNode;
         }
         else {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
+            // If there is no index that we can use but the tables are joined on
+            // an equality clause, then we can use a hash join instead of a nested loop
+            // This is still experimental, so it has to be turned on when the project is compiled
+            NestLoopPlanNode nljNode = null;
+            if (m_enableHashJoins && hasEquiJoinClause(joinOrder[0], joinClauses)) {
+                nljNode = new HashJoinPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
+            } else {
+                nljNode = new NestLoopPlanNode(m_context, PlanAssembler.getNextPlanNodeId());
+            }
             if ((joinClauses != null) && (joinClauses.size() > 0))
                 nljNode.setPredicate(ExpressionUtil.combine(joinClauses));
             nljNode.setJoinType(JoinType.LEFT);
@@ -316,6 +332,33 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return retval;
     }
 
+    /**
+     * Returns true if one of the join clauses is an equality between a column from the
+     * given table and a column from another table. The EE can use these clauses as the
+     * keys for a HashJoinPlanNode.
+     *
+     * @param table The table that is being joined with the rest of the join order.
+     * @param joinClauses The clauses that join this table to the others.
+     * @return true if a hash join can be used for this join.
+     */
+    private static boolean hasEquiJoinClause(Table table, List<AbstractExpression> joinClauses) {
+        if (joinClauses == null)
+            return false;
+        for (AbstractExpression expr : joinClauses) {
+            if (expr.getExpressionType() != ExpressionType.COMPARE_EQUAL)
+                continue;
+            if (!(expr.getLeft() instanceof TupleValueExpression) ||
+                !(expr.getRight() instanceof TupleValueExpression))
+                continue;
+            String leftTable = ((TupleValueExpression) expr.getLeft()).getTableName();
+            String rightTable = ((TupleValueExpression) expr.getRight()).getTableName();
+            if (leftTable.equals(rightTable) == false &&
+                (leftTable.equals(table.getTypeName()) || rightTable.equals(table.getTypeName())))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * For each table in the list, compute the set of all valid access paths that will get
      * tuples that match the right predicate (assuming there is a predicate).
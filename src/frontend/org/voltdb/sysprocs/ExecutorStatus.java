@@ -39,6 +39,10 @@ public class ExecutorStatus extends VoltSystemProcedure {
         new ColumnInfo("CURRENT_DTXN",  VoltType.BIGINT),
         new ColumnInfo("LAST_EXECUTED", VoltType.BIGINT),
         new ColumnInfo("LAST_COMMITTED", VoltType.BIGINT),
+        new ColumnInfo("QUEUE_LIMIT",   VoltType.INTEGER),
+        new ColumnInfo("QUEUE_RELEASE", VoltType.INTEGER),
+        new ColumnInfo("QUEUE_THROTTLED", VoltType.INTEGER),
+        new ColumnInfo("SERVICE_TIME",  VoltType.FLOAT),
         new ColumnInfo("CREATED", VoltType.TIMESTAMP),
     };
     
@@ -62,7 +66,7 @@ public class ExecutorStatus extends VoltSystemProcedure {
         VoltTable vt = new VoltTable(nodeResultsColumns);
         for (Integer p : hstore_site.getLocalPartitionIdArray()) {
             PartitionExecutor es = hstore_site.getPartitionExecutor(p.intValue());
-            ThrottlingQueue<?> es_queue = this.executor.getThrottlingQueue();
+            ThrottlingQueue<?> es_queue = es.getThrottlingQueue();
                 
             Long currentTxnId = es.getCurrentTxnId();
             Long currentDtxnId = es.getCurrentDtxnId();
@@ -79,6 +83,10 @@ public class ExecutorStatus extends VoltSystemProcedure {
                       (currentDtxnId != null ? currentDtxnId.longValue() : VoltType.NULL_BIGINT),
                       (lastExecuted != null  ? lastExecuted.longValue()  : VoltType.NULL_BIGINT),
                       (lastCommitted != null ? lastCommitted.longValue() : VoltType.NULL_BIGINT),
+                      es_queue.getQueueMax(),
+                      es_queue.getQueueRelease(),
+                      (es_queue.isThrottled() ? 1 : 0),
+                      (es_queue.isAdaptive() ? es_queue.getAverageServiceTime() : VoltType.NULL_FLOAT),
                       new TimestampType());
         } // FOR
         
@@ -0,0 +1,76 @@
+package org.voltdb.sysprocs;
+
+import java.util.List;
+import java.util.Map;
+
+import org.voltdb.DependencySet;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcInfo;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.utils.Encoder;
+
+import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
+
+/** 
+ * Returns the cluster's catalog so that a client can figure out the base partition
+ * of its transaction requests and send them straight to the HStoreSite that
+ * has that partition. The HStoreSite answers this request itself without
+ * having to start a transaction. 
+ */
+@ProcInfo(singlePartition = true)
+public class GetCatalog extends VoltSystemProcedure {
+
+    public static final ColumnInfo resultsColumns[] = {
+        new ColumnInfo("CATALOG", VoltType.STRING),
+    };
+    
+    /**
+     * The encoded catalog is split across multiple rows so that each
+     * value stays well under VoltType.MAX_VALUE_LENGTH
+     */
+    private static final int CHUNK_SIZE = VoltType.MAX_VALUE_LENGTH / 2;
+    
+    @Override
+    public DependencySet executePlanFragment(long txnId, Map<Integer, List<VoltTable>> dependencies, int fragmentId, ParameterSet params, SystemProcedureExecutionContext context) {
+        assert(false) : "Unexpected invocation of " + this.getClass().getSimpleName() + ".executePlanFragment()";
+        return null;
+    }
+    
+    public VoltTable[] run() {
+        return new VoltTable[]{ encode(this.database.getCatalog()) };
+    }
+    
+    /**
+     * Compress the serialized catalog into a VoltTable
+     * @param catalog
+     * @return
+     */
+    public static VoltTable encode(Catalog catalog) {
+        String encoded = Encoder.compressAndBase64Encode(catalog.serialize());
+        VoltTable vt = new VoltTable(resultsColumns);
+        for (int offset = 0; offset < encoded.length(); offset += CHUNK_SIZE) {
+            vt.addRow(encoded.substring(offset, Math.min(encoded.length(), offset + CHUNK_SIZE)));
+        } // FOR
+        return (vt);
+    }
+    
+    /**
+     * Rebuild the catalog from the VoltTable generated by encode()
+     * @param vt
+     * @return
+     */
+    public static Catalog decode(VoltTable vt) {
+        StringBuilder sb = new StringBuilder();
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            sb.append(vt.getString(0));
+        } // WHILE
+        Catalog catalog = new Catalog();
+        catalog.execute(Encoder.decodeBase64AndDecompress(sb.toString()));
+        return (catalog);
+    }
+}
@@ -33,6 +33,7 @@ import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.hstore.PartitionExecutor;
 import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
+import edu.brown.hstore.wal.CommandLogWriter;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.PartitionEstimator;
 
@@ -49,6 +50,10 @@ public class SnapshotSave extends VoltSystemProcedure
         SysProcFragmentId.PF_createSnapshotTargets | DtxnConstants.MULTIPARTITION_DEPENDENCY;
     private static final int DEP_createSnapshotTargetsResults = (int)
         SysProcFragmentId.PF_createSnapshotTargetsResults;
+    private static final int DEP_truncateCommandLog = (int)
+        SysProcFragmentId.PF_truncateCommandLog | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    private static final int DEP_truncateCommandLogResults = (int)
+        SysProcFragmentId.PF_truncateCommandLogResults;
 
     public static final ColumnInfo nodeResultsColumns[] =
         new ColumnInfo[] {
@@ -68,6 +73,12 @@ public class SnapshotSave extends VoltSystemProcedure
                           new ColumnInfo("ERR_MSG", VoltType.STRING)
     };
 
+    private static final ColumnInfo truncateResultsColumns[] =
+        new ColumnInfo[] {
+                          new ColumnInfo(CNAME_SITE_ID, CTYPE_ID),
+                          new ColumnInfo("SEGMENTS_REMOVED", VoltType.INTEGER)
+    };
+
     public static final VoltTable constructNodeResultsTable()
     {
         return new VoltTable(nodeResultsColumns);
@@ -87,6 +98,8 @@ public class SnapshotSave extends VoltSystemProcedure
         site.registerPlanFragment(SysProcFragmentId.PF_saveTestResults, this);
         site.registerPlanFragment(SysProcFragmentId.PF_createSnapshotTargets, this);
         site.registerPlanFragment(SysProcFragmentId.PF_createSnapshotTargetsResults, this);
+        site.registerPlanFragment(SysProcFragmentId.PF_truncateCommandLog, this);
+        site.registerPlanFragment(SysProcFragmentId.PF_truncateCommandLogResults, this);
     }
 
     @Override
@@ -128,6 +141,29 @@ public class SnapshotSave extends VoltSystemProcedure
         {
             return createSnapshotTargetsResults(dependencies);
         }
+        else if (fragmentId == SysProcFragmentId.PF_truncateCommandLog)
+        {
+            // The snapshot has everything that came before this txn,
+            // so we can throw away that part of the command log
+            int removed = 0;
+            CommandLogWriter commandLogger = hstore_site.getCommandLogWriter();
+            if (commandLogger != null) {
+                removed = commandLogger.truncate(txn_id);
+            }
+            VoltTable result = new VoltTable(truncateResultsColumns);
+            result.addRow(context.getSite().getId(), removed);
+            return new DependencySet(DEP_truncateCommandLog, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_truncateCommandLogResults)
+        {
+            VoltTable result = new VoltTable(truncateResultsColumns);
+            for (VoltTable table : dependencies.get(DEP_truncateCommandLog)) {
+                while (table.advanceRow()) {
+                    result.add(table);
+                }
+            }
+            return new DependencySet(DEP_truncateCommandLogResults, result);
+        }
         assert (false);
         return null;
     }
@@ -302,12 +338,73 @@ public class SnapshotSave extends VoltSystemProcedure
 
         results = performSnapshotCreationWork( path, nonce, startTime, (byte)block);
 
+        // We only know that the snapshot is complete on every host if we blocked
+        // until it was written out. Otherwise the command logs are kept until the
+        // next blocking snapshot succeeds.
+        if (hstore_site.getCommandLogWriter() != null) {
+            if (block != 0 && isSnapshotSuccessful(results)) {
+                VoltTable truncated[] = performCommandLogTruncationWork();
+                LOG.info("performCommandLogTruncationWork Results:\n" + truncated[0]);
+            } else {
+                LOG.info("Not truncating the command logs after snapshot " + nonce +
+                         " [block=" + block + "]");
+            }
+        }
+
         final long finishTime = System.currentTimeMillis();
         final long duration = finishTime - startTime;
         LOG.info("Snapshot initiation took " + duration + " milliseconds");
         return results;
     }
 
+    /**
+     * Returns true if none of the sites reported a FAILURE for the snapshot
+     * @param results
+     */
+    private static boolean isSnapshotSuccessful(VoltTable results[]) {
+        boolean success = true;
+        for (VoltTable vt : results) {
+            vt.resetRowPosition();
+            while (vt.advanceRow()) {
+                if (vt.getString("RESULT").equals("FAILURE")) {
+                    success = false;
+                }
+            }
+            vt.resetRowPosition();
+        }
+        return success;
+    }
+
+    private final VoltTable[] performCommandLogTruncationWork()
+    {
+        // Send a request to the first partition at each HStoreSite
+        final int num_sites = CatalogUtil.getNumberOfSites(this.database);
+        SynthesizedPlanFragment[] pfs = new SynthesizedPlanFragment[num_sites + 1];
+
+        int i = 0;
+        for (Site catalog_site : CatalogUtil.getAllSites(this.database)) {
+            Partition catalog_part = CollectionUtil.first(catalog_site.getPartitions());
+            pfs[i] = new SynthesizedPlanFragment();
+            pfs[i].fragmentId = SysProcFragmentId.PF_truncateCommandLog;
+            pfs[i].outputDependencyIds = new int[]{ DEP_truncateCommandLog };
+            pfs[i].inputDependencyIds = new int[] {};
+            pfs[i].multipartition = true;
+            pfs[i].destPartitionId = catalog_part.getId();
+            pfs[i].parameters = new ParameterSet();
+            i++;
+        }
+
+        // This fragment aggregates the number of segments that each site removed
+        pfs[i] = new SynthesizedPlanFragment();
+        pfs[i].fragmentId = SysProcFragmentId.PF_truncateCommandLogResults;
+        pfs[i].outputDependencyIds = new int[]{ DEP_truncateCommandLogResults };
+        pfs[i].inputDependencyIds = new int[] { DEP_truncateCommandLog };
+        pfs[i].multipartition = false;
+        pfs[i].parameters = new ParameterSet();
+
+        return executeSysProcPlanFragments(pfs, DEP_truncateCommandLogResults);
+    }
+
     private final VoltTable[] performSaveFeasibilityWork(String filePath,
                                                          String fileNonce)
     {
@@ -69,6 +69,14 @@ public class SysProcFragmentId
     * Aggregate the results of snapshot quiesce
     */
     public static final int PF_snapshotSaveQuiesceResults = 45;
+    /*
+    * Truncate each site's command log once the snapshot is complete on every host
+    */
+    public static final int PF_truncateCommandLog = 46;
+    /*
+    * Aggregate the results of the command log truncation
+    */
+    public static final int PF_truncateCommandLogResults = 47;
 
     // @LoadMultipartitionTable
     public static final int PF_loadDistribute = 50;
@@ -52,9 +52,11 @@ import edu.brown.hstore.PartitionExecutor.SystemProcedureExecutionContext;
 public class SnapshotUtil {
 
     /**
-     * Create a digest for a snapshot containing the time of the snapshot and the list of tables included.
-     * The first item in the comma separated list is the time in milliseconds as a string.
+     * Create a digest for a snapshot containing the time of the snapshot, the id of the
+     * txn that created it, and the list of tables included. The first item in the comma
+     * separated list is the time in milliseconds and the txn id, separated by a colon.
      * @param snapshotTime
+     * @param txnId
      * @param path
      * @param nonce
      * @param tables
@@ -63,6 +65,7 @@ public class SnapshotUtil {
     public static void
         recordSnapshotTableList(
             long snapshotTime,
+            long txnId,
             String path,
             String nonce,
             List<Table> tables) throws IOException {
@@ -75,6 +78,8 @@ public class SnapshotUtil {
         FileOutputStream fos = new FileOutputStream(f);
         StringWriter sw = new StringWriter();
         sw.append(Long.toString(snapshotTime));
+        sw.append(':');
+        sw.append(Long.toString(txnId));
         if (!tables.isEmpty()) {
             sw.append(',');
         }
@@ -114,10 +119,26 @@ public class SnapshotUtil {
         String tableNames[] = tableList.split(",");
         String actualTableNames[] = new String[tableNames.length - 1];
         System.arraycopy( tableNames, 1, actualTableNames, 0, tableNames.length - 1);
-        return Pair.of(Long.valueOf(tableNames[0]),
+        String timeAndTxnId[] = tableNames[0].split(":");
+        return Pair.of(Long.valueOf(timeAndTxnId[0]),
                        java.util.Arrays.asList(actualTableNames));
     }
 
+    /**
+     * Retrieve the id of the txn that created the snapshot from its digest.
+     * Returns null if the digest was written before we started recording it.
+     * @param f
+     * @throws Exception
+     */
+    public static Long retrieveSnapshotTxnId(File f) throws Exception {
+        String tableList = CRCCheck(f);
+        String timeAndTxnId[] = tableList.split(",")[0].split(":");
+        if (timeAndTxnId.length < 2) {
+            return null;
+        }
+        return Long.valueOf(timeAndTxnId[1]);
+    }
+
     /**
      * Check if the CRC of the snapshot file matches the digest.
      * @param f The snapshot file object
@@ -29,7 +29,8 @@ public enum IndexType {
     BALANCED_TREE   (1),
     HASH_TABLE      (2),
     ARRAY           (3),
-    BTREE           (4);
+    BTREE           (4),
+    OPEN_HASH       (5);
 
     IndexType(int val) {
         assert (this.ordinal() == val) :
@@ -82,6 +83,9 @@ public enum IndexType {
         case ARRAY:
             return "_ARRAY";
         case BTREE:
+            return "_BTREE";
+        case OPEN_HASH:
+            return "_OPENHASH";
         case HASH_TABLE:
             return "";
         }
@@ -12316,6 +12316,626 @@ public final class Hstoreservice {
     // @@protoc_insertion_point(class_scope:edu.brown.hstore.TimeSyncResponse)
   }
   
+  public static final class RecoveryStatusRequest extends
+      com.google.protobuf.GeneratedMessage {
+    // Use RecoveryStatusRequest.newBuilder() to construct.
+    private RecoveryStatusRequest() {
+      initFields();
+    }
+    private RecoveryStatusRequest(boolean noInit) {}
+    
+    private static final RecoveryStatusRequest defaultInstance;
+    public static RecoveryStatusRequest getDefaultInstance() {
+      return defaultInstance;
+    }
+    
+    public RecoveryStatusRequest getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+    
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return edu.brown.hstore.Hstoreservice.internal_static_edu_brown_hstore_RecoveryStatusRequest_descriptor;
+    }
+    
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return edu.brown.hstore.Hstoreservice.internal_static_edu_brown_hstore_RecoveryStatusRequest_fieldAccessorTable;
+    }
+    
+    // required int32 sender_site = 1;
+    public static final int SENDER_SITE_FIELD_NUMBER = 1;
+    private boolean hasSenderSite;
+    private int senderSite_ = 0;
+    public boolean hasSenderSite() { return hasSenderSite; }
+    public int getSenderSite() { return senderSite_; }
+    
+    // required .edu.brown.hstore.Status status = 2;
+    public static final int STATUS_FIELD_NUMBER = 2;
+    private boolean hasStatus;
+    private edu.brown.hstore.Hstoreservice.Status status_;
+    public boolean hasStatus() { return hasStatus; }
+    public edu.brown.hstore.Hstoreservice.Status getStatus() { return status_; }
+    
+    private void initFields() {
+      status_ = edu.brown.hstore.Hstoreservice.Status.OK;
+    }
+    public final boolean isInitialized() {
+      if (!hasSenderSite) return false;
+      if (!hasStatus) return false;
+      return true;
+    }
+    
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      if (hasSenderSite()) {
+        output.writeInt32(1, getSenderSite());
+      }
+      if (hasStatus()) {
+        output.writeEnum(2, getStatus().getNumber());
+      }
+      getUnknownFields().writeTo(output);
+    }
+    
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+    
+      size = 0;
+      if (hasSenderSite()) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(1, getSenderSite());
+      }
+      if (hasStatus()) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeEnumSize(2, getStatus().getNumber());
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+    
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusRequest parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(edu.brown.hstore.Hstoreservice.RecoveryStatusRequest prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+    
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder> {
+      private edu.brown.hstore.Hstoreservice.RecoveryStatusRequest result;
+      
+      // Construct using edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.newBuilder()
+      private Builder() {}
+      
+      private static Builder create() {
+        Builder builder = new Builder();
+        builder.result = new edu.brown.hstore.Hstoreservice.RecoveryStatusRequest();
+        return builder;
+      }
+      
+      protected edu.brown.hstore.Hstoreservice.RecoveryStatusRequest internalGetResult() {
+        return result;
+      }
+      
+      public Builder clear() {
+        if (result == null) {
+          throw new IllegalStateException(
+            "Cannot call clear() after build().");
+        }
+        result = new edu.brown.hstore.Hstoreservice.RecoveryStatusRequest();
+        return this;
+      }
+      
+      public Builder clone() {
+        return create().mergeFrom(result);
+      }
+      
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.getDescriptor();
+      }
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusRequest getDefaultInstanceForType() {
+        return edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.getDefaultInstance();
+      }
+      
+      public boolean isInitialized() {
+        return result.isInitialized();
+      }
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusRequest build() {
+        if (result != null && !isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return buildPartial();
+      }
+      
+      private edu.brown.hstore.Hstoreservice.RecoveryStatusRequest buildParsed()
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        if (!isInitialized()) {
+          throw newUninitializedMessageException(
+            result).asInvalidProtocolBufferException();
+        }
+        return buildPartial();
+      }
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusRequest buildPartial() {
+        if (result == null) {
+          throw new IllegalStateException(
+            "build() has already been called on this Builder.");
+        }
+        edu.brown.hstore.Hstoreservice.RecoveryStatusRequest returnMe = result;
+        result = null;
+        return returnMe;
+      }
+      
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof edu.brown.hstore.Hstoreservice.RecoveryStatusRequest) {
+          return mergeFrom((edu.brown.hstore.Hstoreservice.RecoveryStatusRequest)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+      
+      public Builder mergeFrom(edu.brown.hstore.Hstoreservice.RecoveryStatusRequest other) {
+        if (other == edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.getDefaultInstance()) return this;
+        if (other.hasSenderSite()) {
+          setSenderSite(other.getSenderSite());
+        }
+        if (other.hasStatus()) {
+          setStatus(other.getStatus());
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+      
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder(
+            this.getUnknownFields());
+        while (true) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              this.setUnknownFields(unknownFields.build());
+              return this;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                this.setUnknownFields(unknownFields.build());
+                return this;
+              }
+              break;
+            }
+            case 8: {
+              setSenderSite(input.readInt32());
+              break;
+            }
+            case 16: {
+              int rawValue = input.readEnum();
+              edu.brown.hstore.Hstoreservice.Status value = edu.brown.hstore.Hstoreservice.Status.valueOf(rawValue);
+              if (value == null) {
+                unknownFields.mergeVarintField(2, rawValue);
+              } else {
+                setStatus(value);
+              }
+              break;
+            }
+          }
+        }
+      }
+      
+      
+      // required int32 sender_site = 1;
+      public boolean hasSenderSite() {
+        return result.hasSenderSite();
+      }
+      public int getSenderSite() {
+        return result.getSenderSite();
+      }
+      public Builder setSenderSite(int value) {
+        result.hasSenderSite = true;
+        result.senderSite_ = value;
+        return this;
+      }
+      public Builder clearSenderSite() {
+        result.hasSenderSite = false;
+        result.senderSite_ = 0;
+        return this;
+      }
+      
+      // required .edu.brown.hstore.Status status = 2;
+      public boolean hasStatus() {
+        return result.hasStatus();
+      }
+      public edu.brown.hstore.Hstoreservice.Status getStatus() {
+        return result.getStatus();
+      }
+      public Builder setStatus(edu.brown.hstore.Hstoreservice.Status value) {
+        if (value == null) {
+          throw new NullPointerException();
+        }
+        result.hasStatus = true;
+        result.status_ = value;
+        return this;
+      }
+      public Builder clearStatus() {
+        result.hasStatus = false;
+        result.status_ = edu.brown.hstore.Hstoreservice.Status.OK;
+        return this;
+      }
+      
+      // @@protoc_insertion_point(builder_scope:edu.brown.hstore.RecoveryStatusRequest)
+    }
+    
+    static {
+      defaultInstance = new RecoveryStatusRequest(true);
+      edu.brown.hstore.Hstoreservice.internalForceInit();
+      defaultInstance.initFields();
+    }
+    
+    // @@protoc_insertion_point(class_scope:edu.brown.hstore.RecoveryStatusRequest)
+  }
+  
+  public static final class RecoveryStatusResponse extends
+      com.google.protobuf.GeneratedMessage {
+    // Use RecoveryStatusResponse.newBuilder() to construct.
+    private RecoveryStatusResponse() {
+      initFields();
+    }
+    private RecoveryStatusResponse(boolean noInit) {}
+    
+    private static final RecoveryStatusResponse defaultInstance;
+    public static RecoveryStatusResponse getDefaultInstance() {
+      return defaultInstance;
+    }
+    
+    public RecoveryStatusResponse getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+    
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return edu.brown.hstore.Hstoreservice.internal_static_edu_brown_hstore_RecoveryStatusResponse_descriptor;
+    }
+    
+    protected com.google.protobuf.GeneratedMessage.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return edu.brown.hstore.Hstoreservice.internal_static_edu_brown_hstore_RecoveryStatusResponse_fieldAccessorTable;
+    }
+    
+    // required int32 sender_site = 1;
+    public static final int SENDER_SITE_FIELD_NUMBER = 1;
+    private boolean hasSenderSite;
+    private int senderSite_ = 0;
+    public boolean hasSenderSite() { return hasSenderSite; }
+    public int getSenderSite() { return senderSite_; }
+    
+    private void initFields() {
+    }
+    public final boolean isInitialized() {
+      if (!hasSenderSite) return false;
+      return true;
+    }
+    
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      getSerializedSize();
+      if (hasSenderSite()) {
+        output.writeInt32(1, getSenderSite());
+      }
+      getUnknownFields().writeTo(output);
+    }
+    
+    private int memoizedSerializedSize = -1;
+    public int getSerializedSize() {
+      int size = memoizedSerializedSize;
+      if (size != -1) return size;
+    
+      size = 0;
+      if (hasSenderSite()) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(1, getSenderSite());
+      }
+      size += getUnknownFields().getSerializedSize();
+      memoizedSerializedSize = size;
+      return size;
+    }
+    
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return newBuilder().mergeFrom(data, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      Builder builder = newBuilder();
+      if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+        return builder.buildParsed();
+      } else {
+        return null;
+      }
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input).buildParsed();
+    }
+    public static edu.brown.hstore.Hstoreservice.RecoveryStatusResponse parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return newBuilder().mergeFrom(input, extensionRegistry)
+               .buildParsed();
+    }
+    
+    public static Builder newBuilder() { return Builder.create(); }
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder(edu.brown.hstore.Hstoreservice.RecoveryStatusResponse prototype) {
+      return newBuilder().mergeFrom(prototype);
+    }
+    public Builder toBuilder() { return newBuilder(this); }
+    
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessage.Builder<Builder> {
+      private edu.brown.hstore.Hstoreservice.RecoveryStatusResponse result;
+      
+      // Construct using edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.newBuilder()
+      private Builder() {}
+      
+      private static Builder create() {
+        Builder builder = new Builder();
+        builder.result = new edu.brown.hstore.Hstoreservice.RecoveryStatusResponse();
+        return builder;
+      }
+      
+      protected edu.brown.hstore.Hstoreservice.RecoveryStatusResponse internalGetResult() {
+        return result;
+      }
+      
+      public Builder clear() {
+        if (result == null) {
+          throw new IllegalStateException(
+            "Cannot call clear() after build().");
+        }
+        result = new edu.brown.hstore.Hstoreservice.RecoveryStatusResponse();
+        return this;
+      }
+      
+      public Builder clone() {
+        return create().mergeFrom(result);
+      }
+      
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDescriptor();
+      }
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusResponse getDefaultInstanceForType() {
+        return edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance();
+      }
+      
+      public boolean isInitialized() {
+        return result.isInitialized();
+      }
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusResponse build() {
+        if (result != null && !isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return buildPartial();
+      }
+      
+      private edu.brown.hstore.Hstoreservice.RecoveryStatusResponse buildParsed()
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        if (!isInitialized()) {
+          throw newUninitializedMessageException(
+            result).asInvalidProtocolBufferException();
+        }
+        return buildPartial();
+      }
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusResponse buildPartial() {
+        if (result == null) {
+          throw new IllegalStateException(
+            "build() has already been called on this Builder.");
+        }
+        edu.brown.hstore.Hstoreservice.RecoveryStatusResponse returnMe = result;
+        result = null;
+        return returnMe;
+      }
+      
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof edu.brown.hstore.Hstoreservice.RecoveryStatusResponse) {
+          return mergeFrom((edu.brown.hstore.Hstoreservice.RecoveryStatusResponse)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+      
+      public Builder mergeFrom(edu.brown.hstore.Hstoreservice.RecoveryStatusResponse other) {
+        if (other == edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance()) return this;
+        if (other.hasSenderSite()) {
+          setSenderSite(other.getSenderSite());
+        }
+        this.mergeUnknownFields(other.getUnknownFields());
+        return this;
+      }
+      
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder(
+            this.getUnknownFields());
+        while (true) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              this.setUnknownFields(unknownFields.build());
+              return this;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                this.setUnknownFields(unknownFields.build());
+                return this;
+              }
+              break;
+            }
+            case 8: {
+              setSenderSite(input.readInt32());
+              break;
+            }
+          }
+        }
+      }
+      
+      
+      // required int32 sender_site = 1;
+      public boolean hasSenderSite() {
+        return result.hasSenderSite();
+      }
+      public int getSenderSite() {
+        return result.getSenderSite();
+      }
+      public Builder setSenderSite(int value) {
+        result.hasSenderSite = true;
+        result.senderSite_ = value;
+        return this;
+      }
+      public Builder clearSenderSite() {
+        result.hasSenderSite = false;
+        result.senderSite_ = 0;
+        return this;
+      }
+      
+      // @@protoc_insertion_point(builder_scope:edu.brown.hstore.RecoveryStatusResponse)
+    }
+    
+    static {
+      defaultInstance = new RecoveryStatusResponse(true);
+      edu.brown.hstore.Hstoreservice.internalForceInit();
+      defaultInstance.initFields();
+    }
+    
+    // @@protoc_insertion_point(class_scope:edu.brown.hstore.RecoveryStatusResponse)
+  }
+  
   public static abstract class HStoreService
       implements com.google.protobuf.Service {
     protected HStoreService() {}
@@ -12381,6 +13001,11 @@ public final class Hstoreservice {
           edu.brown.hstore.Hstoreservice.TimeSyncRequest request,
           com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.TimeSyncResponse> done);
       
+      public abstract void recoveryStatus(
+          com.google.protobuf.RpcController controller,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request,
+          com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.RecoveryStatusResponse> done);
+      
     }
     
     public static com.google.protobuf.Service newReflectiveService(
@@ -12482,6 +13107,14 @@ public final class Hstoreservice {
           impl.timeSync(controller, request, done);
         }
         
+        @Override
+        public  void recoveryStatus(
+            com.google.protobuf.RpcController controller,
+            edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request,
+            com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.RecoveryStatusResponse> done) {
+          impl.recoveryStatus(controller, request, done);
+        }
+        
       };
     }
     
@@ -12528,6 +13161,8 @@ public final class Hstoreservice {
               return impl.shutdown(controller, (edu.brown.hstore.Hstoreservice.ShutdownRequest)request);
             case 11:
               return impl.timeSync(controller, (edu.brown.hstore.Hstoreservice.TimeSyncRequest)request);
+            case 12:
+              return impl.recoveryStatus(controller, (edu.brown.hstore.Hstoreservice.RecoveryStatusRequest)request);
             default:
               throw new java.lang.AssertionError("Can't get here.");
           }
@@ -12566,6 +13201,8 @@ public final class Hstoreservice {
               return edu.brown.hstore.Hstoreservice.ShutdownRequest.getDefaultInstance();
             case 11:
               return edu.brown.hstore.Hstoreservice.TimeSyncRequest.getDefaultInstance();
+            case 12:
+              return edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.getDefaultInstance();
             default:
               throw new java.lang.AssertionError("Can't get here.");
           }
@@ -12604,6 +13241,8 @@ public final class Hstoreservice {
               return edu.brown.hstore.Hstoreservice.ShutdownResponse.getDefaultInstance();
             case 11:
               return edu.brown.hstore.Hstoreservice.TimeSyncResponse.getDefaultInstance();
+            case 12:
+              return edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance();
             default:
               throw new java.lang.AssertionError("Can't get here.");
           }
@@ -12672,6 +13311,11 @@ public final class Hstoreservice {
         edu.brown.hstore.Hstoreservice.TimeSyncRequest request,
         com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.TimeSyncResponse> done);
     
+    public abstract void recoveryStatus(
+        com.google.protobuf.RpcController controller,
+        edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request,
+        com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.RecoveryStatusResponse> done);
+    
     public static final
         com.google.protobuf.Descriptors.ServiceDescriptor
         getDescriptor() {
@@ -12754,6 +13398,11 @@ public final class Hstoreservice {
             com.google.protobuf.RpcUtil.<edu.brown.hstore.Hstoreservice.TimeSyncResponse>specializeCallback(
               done));
           return;
+        case 12:
+          this.recoveryStatus(controller, (edu.brown.hstore.Hstoreservice.RecoveryStatusRequest)request,
+            com.google.protobuf.RpcUtil.<edu.brown.hstore.Hstoreservice.RecoveryStatusResponse>specializeCallback(
+              done));
+          return;
         default:
           throw new java.lang.AssertionError("Can't get here.");
       }
@@ -12792,6 +13441,8 @@ public final class Hstoreservice {
           return edu.brown.hstore.Hstoreservice.ShutdownRequest.getDefaultInstance();
         case 11:
           return edu.brown.hstore.Hstoreservice.TimeSyncRequest.getDefaultInstance();
+        case 12:
+          return edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.getDefaultInstance();
         default:
           throw new java.lang.AssertionError("Can't get here.");
       }
@@ -12830,6 +13481,8 @@ public final class Hstoreservice {
           return edu.brown.hstore.Hstoreservice.ShutdownResponse.getDefaultInstance();
         case 11:
           return edu.brown.hstore.Hstoreservice.TimeSyncResponse.getDefaultInstance();
+        case 12:
+          return edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance();
         default:
           throw new java.lang.AssertionError("Can't get here.");
       }
@@ -13030,6 +13683,21 @@ public final class Hstoreservice {
             edu.brown.hstore.Hstoreservice.TimeSyncResponse.class,
             edu.brown.hstore.Hstoreservice.TimeSyncResponse.getDefaultInstance()));
       }
+      
+      public  void recoveryStatus(
+          com.google.protobuf.RpcController controller,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request,
+          com.google.protobuf.RpcCallback<edu.brown.hstore.Hstoreservice.RecoveryStatusResponse> done) {
+        channel.callMethod(
+          getDescriptor().getMethods().get(12),
+          controller,
+          request,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance(),
+          com.google.protobuf.RpcUtil.generalizeCallback(
+            done,
+            edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.class,
+            edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance()));
+      }
     }
     
     public static BlockingInterface newBlockingStub(
@@ -13097,6 +13765,11 @@ public final class Hstoreservice {
           com.google.protobuf.RpcController controller,
           edu.brown.hstore.Hstoreservice.TimeSyncRequest request)
           throws com.google.protobuf.ServiceException;
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusResponse recoveryStatus(
+          com.google.protobuf.RpcController controller,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request)
+          throws com.google.protobuf.ServiceException;
     }
     
     private static final class BlockingStub implements BlockingInterface {
@@ -13249,6 +13922,18 @@ public final class Hstoreservice {
           edu.brown.hstore.Hstoreservice.TimeSyncResponse.getDefaultInstance());
       }
       
+      
+      public edu.brown.hstore.Hstoreservice.RecoveryStatusResponse recoveryStatus(
+          com.google.protobuf.RpcController controller,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusRequest request)
+          throws com.google.protobuf.ServiceException {
+        return (edu.brown.hstore.Hstoreservice.RecoveryStatusResponse) channel.callBlockingMethod(
+          getDescriptor().getMethods().get(12),
+          controller,
+          request,
+          edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.getDefaultInstance());
+      }
+      
     }
   }
   
@@ -13392,6 +14077,16 @@ public final class Hstoreservice {
   private static
     com.google.protobuf.GeneratedMessage.FieldAccessorTable
       internal_static_edu_brown_hstore_TimeSyncResponse_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_edu_brown_hstore_RecoveryStatusRequest_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_edu_brown_hstore_RecoveryStatusRequest_fieldAccessorTable;
+  private static com.google.protobuf.Descriptors.Descriptor
+    internal_static_edu_brown_hstore_RecoveryStatusResponse_descriptor;
+  private static
+    com.google.protobuf.GeneratedMessage.FieldAccessorTable
+      internal_static_edu_brown_hstore_RecoveryStatusResponse_fieldAccessorTable;
   
   public static com.google.protobuf.Descriptors.FileDescriptor
       getDescriptor() {
@@ -13485,43 +14180,49 @@ public final class Hstoreservice {
       "te\030\001 \002(\005\"4\n\017TimeSyncRequest\022\023\n\013sender_si" +
       "te\030\001 \002(\005\022\014\n\004t0_s\030\002 \002(\003\"Q\n\020TimeSyncRespon" +
       "se\022\023\n\013sender_site\030\001 \002(\005\022\014\n\004t0_s\030\002 \002(\003\022\014\n" +
-      "\004t0_r\030\003 \002(\003\022\014\n\004t1_s\030\004 \002(\003*\265\001\n\006Status\022\006\n\002" +
-      "OK\020\000\022\016\n\nABORT_USER\020\001\022\022\n\016ABORT_GRACEFUL\020\002" +
-      "\022\024\n\020ABORT_UNEXPECTED\020\003\022\031\n\025ABORT_CONNECTI" +
-      "ON_LOST\020\004\022\024\n\020ABORT_MISPREDICT\020\005\022\021\n\rABORT" +
-      "_RESTART\020\006\022\020\n\014ABORT_REJECT\020\007\022\023\n\017ABORT_TH" +
-      "ROTTLED\020\0102\321\t\n\rHStoreService\022f\n\017Transacti",
-      "onInit\022(.edu.brown.hstore.TransactionIni" +
-      "tRequest\032).edu.brown.hstore.TransactionI" +
-      "nitResponse\022f\n\017TransactionWork\022(.edu.bro" +
-      "wn.hstore.TransactionWorkRequest\032).edu.b" +
-      "rown.hstore.TransactionWorkResponse\022x\n\023T" +
-      "ransactionPrefetch\022+.edu.brown.hstore.Tr" +
-      "ansactionPrefetchResult\0324.edu.brown.hsto" +
-      "re.TransactionPrefetchAcknowledgement\022c\n" +
-      "\016TransactionMap\022\'.edu.brown.hstore.Trans" +
-      "actionMapRequest\032(.edu.brown.hstore.Tran",
-      "sactionMapResponse\022l\n\021TransactionReduce\022" +
-      "*.edu.brown.hstore.TransactionReduceRequ" +
-      "est\032+.edu.brown.hstore.TransactionReduce" +
-      "Response\022o\n\022TransactionPrepare\022+.edu.bro" +
-      "wn.hstore.TransactionPrepareRequest\032,.ed" +
-      "u.brown.hstore.TransactionPrepareRespons" +
-      "e\022l\n\021TransactionFinish\022*.edu.brown.hstor" +
-      "e.TransactionFinishRequest\032+.edu.brown.h" +
-      "store.TransactionFinishResponse\022r\n\023Trans" +
-      "actionRedirect\022,.edu.brown.hstore.Transa",
-      "ctionRedirectRequest\032-.edu.brown.hstore." +
-      "TransactionRedirectResponse\022Q\n\010SendData\022" +
-      "!.edu.brown.hstore.SendDataRequest\032\".edu" +
-      ".brown.hstore.SendDataResponse\022W\n\nInitia" +
-      "lize\022#.edu.brown.hstore.InitializeReques" +
-      "t\032$.edu.brown.hstore.InitializeResponse\022" +
-      "Q\n\010Shutdown\022!.edu.brown.hstore.ShutdownR" +
-      "equest\032\".edu.brown.hstore.ShutdownRespon" +
-      "se\022Q\n\010TimeSync\022!.edu.brown.hstore.TimeSy" +
-      "ncRequest\032\".edu.brown.hstore.TimeSyncRes",
-      "ponse"
+      "\004t0_r\030\003 \002(\003\022\014\n\004t1_s\030\004 \002(\003\"V\n\025RecoverySta" +
+      "tusRequest\022\023\n\013sender_site\030\001 \002(\005\022(\n\006statu" +
+      "s\030\002 \002(\0162\030.edu.brown.hstore.Status\"-\n\026Rec" +
+      "overyStatusResponse\022\023\n\013sender_site\030\001 \002(\005" +
+      "*\265\001\n\006Status\022\006\n\002OK\020\000\022\016\n\nABORT_USER\020\001\022\022\n\016A" +
+      "BORT_GRACEFUL\020\002\022\024\n\020ABORT_UNEXPECTED\020\003\022\031\n",
+      "\025ABORT_CONNECTION_LOST\020\004\022\024\n\020ABORT_MISPRE" +
+      "DICT\020\005\022\021\n\rABORT_RESTART\020\006\022\020\n\014ABORT_REJEC" +
+      "T\020\007\022\023\n\017ABORT_THROTTLED\020\0102\266\n\n\rHStoreServi" +
+      "ce\022f\n\017TransactionInit\022(.edu.brown.hstore" +
+      ".TransactionInitRequest\032).edu.brown.hsto" +
+      "re.TransactionInitResponse\022f\n\017Transactio" +
+      "nWork\022(.edu.brown.hstore.TransactionWork" +
+      "Request\032).edu.brown.hstore.TransactionWo" +
+      "rkResponse\022x\n\023TransactionPrefetch\022+.edu." +
+      "brown.hstore.TransactionPrefetchResult\0324",
+      ".edu.brown.hstore.TransactionPrefetchAck" +
+      "nowledgement\022c\n\016TransactionMap\022\'.edu.bro" +
+      "wn.hstore.TransactionMapRequest\032(.edu.br" +
+      "own.hstore.TransactionMapResponse\022l\n\021Tra" +
+      "nsactionReduce\022*.edu.brown.hstore.Transa" +
+      "ctionReduceRequest\032+.edu.brown.hstore.Tr" +
+      "ansactionReduceResponse\022o\n\022TransactionPr" +
+      "epare\022+.edu.brown.hstore.TransactionPrep" +
+      "areRequest\032,.edu.brown.hstore.Transactio" +
+      "nPrepareResponse\022l\n\021TransactionFinish\022*.",
+      "edu.brown.hstore.TransactionFinishReques" +
+      "t\032+.edu.brown.hstore.TransactionFinishRe" +
+      "sponse\022r\n\023TransactionRedirect\022,.edu.brow" +
+      "n.hstore.TransactionRedirectRequest\032-.ed" +
+      "u.brown.hstore.TransactionRedirectRespon" +
+      "se\022Q\n\010SendData\022!.edu.brown.hstore.SendDa" +
+      "taRequest\032\".edu.brown.hstore.SendDataRes" +
+      "ponse\022W\n\nInitialize\022#.edu.brown.hstore.I" +
+      "nitializeRequest\032$.edu.brown.hstore.Init" +
+      "ializeResponse\022Q\n\010Shutdown\022!.edu.brown.h",
+      "store.ShutdownRequest\032\".edu.brown.hstore" +
+      ".ShutdownResponse\022Q\n\010TimeSync\022!.edu.brow" +
+      "n.hstore.TimeSyncRequest\032\".edu.brown.hst" +
+      "ore.TimeSyncResponse\022c\n\016RecoveryStatus\022\'" +
+      ".edu.brown.hstore.RecoveryStatusRequest\032" +
+      "(.edu.brown.hstore.RecoveryStatusRespons" +
+      "e"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -13752,6 +14453,22 @@ public final class Hstoreservice {
               new java.lang.String[] { "SenderSite", "T0S", "T0R", "T1S", },
               edu.brown.hstore.Hstoreservice.TimeSyncResponse.class,
               edu.brown.hstore.Hstoreservice.TimeSyncResponse.Builder.class);
+          internal_static_edu_brown_hstore_RecoveryStatusRequest_descriptor =
+            getDescriptor().getMessageTypes().get(26);
+          internal_static_edu_brown_hstore_RecoveryStatusRequest_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_edu_brown_hstore_RecoveryStatusRequest_descriptor,
+              new java.lang.String[] { "SenderSite", "Status", },
+              edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.class,
+              edu.brown.hstore.Hstoreservice.RecoveryStatusRequest.Builder.class);
+          internal_static_edu_brown_hstore_RecoveryStatusResponse_descriptor =
+            getDescriptor().getMessageTypes().get(27);
+          internal_static_edu_brown_hstore_RecoveryStatusResponse_fieldAccessorTable = new
+            com.google.protobuf.GeneratedMessage.FieldAccessorTable(
+              internal_static_edu_brown_hstore_RecoveryStatusResponse_descriptor,
+              new java.lang.String[] { "SenderSite", },
+              edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.class,
+              edu.brown.hstore.Hstoreservice.RecoveryStatusResponse.Builder.class);
           return null;
         }
       };
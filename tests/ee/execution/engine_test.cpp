@@ -76,6 +76,8 @@
 #include "catalog/table.h"
 #include "catalog/database.h"
 #include "catalog/constraint.h"
+#include "common/Topend.h"
+#include "common/serializeio.h"
 
 using namespace std;
 
@@ -145,12 +147,11 @@ class ExecutionEngineTest : public Test {
                 "\nset /clusters[cluster]/databases[database]/tables[STOCK]/columns[S_QUANTITY] nullable false"
                 "\nset /clusters[cluster]/databases[database]/tables[STOCK]/columns[S_QUANTITY] name \"S_QUANTITY\""
                 "\nadd /clusters[cluster] hosts 0"
-                "\nadd /clusters[cluster] partitions 0"
-                "\nadd /clusters[cluster] partitions 1"
-                "\nadd /clusters[cluster] partitions 2"
                 "\nadd /clusters[cluster] sites 0"
-                "\nset /clusters[cluster]/sites[0] partition /clusters[cluster]/partitions[0]"
-                "\nset /clusters[cluster]/sites[0] host /clusters[cluster]/hosts[0]";
+                "\nset /clusters[cluster]/sites[0] host /clusters[cluster]/hosts[0]"
+                "\nadd /clusters[cluster]/sites[0] partitions 0"
+                "\nadd /clusters[cluster]/sites[0] partitions 1"
+                "\nadd /clusters[cluster]/sites[0] partitions 2";
 
             /*
              * Initialize the engine
@@ -206,6 +207,9 @@ class ExecutionEngineTest : public Test {
         int stock_table_id;
 
         void compareTables(voltdb::Table *first, voltdb::Table* second);
+        void executeBatch(voltdb::VoltDBEngine *engine, int batchSize, const int64_t *fragmentIds,
+                          const int32_t *inputDepIds, const int32_t *outputDepIds,
+                          map<int32_t, int64_t> &results);
 };
 
 //Shouldn't this functionality go into table.h?
@@ -237,6 +241,158 @@ void ExecutionEngineTest::compareTables(voltdb::Table *first, voltdb::Table *sec
     }
 }
 
+/*
+ * Topend that just counts how many times the engine asked Java for a dependency
+ */
+class CountingTopend : public voltdb::Topend {
+    public:
+        CountingTopend() : loadCount(0) {}
+        int loadNextDependency(int32_t dependencyId, voltdb::Pool *pool, voltdb::Table* destination) {
+            loadCount++;
+            return 0;
+        }
+        void crashVoltDB(voltdb::FatalException e) {
+            abort();
+        }
+        int loadCount;
+};
+
+#define STOCK_COLUMNS "\"OUTPUT_COLUMNS\":[" \
+    "{\"GUID\":1,\"NAME\":\"S_I_ID\",\"TYPE\":\"INTEGER\",\"SIZE\":4,\"INPUT_COLUMN_NAME\":\"S_I_ID\"}," \
+    "{\"GUID\":2,\"NAME\":\"S_W_ID\",\"TYPE\":\"INTEGER\",\"SIZE\":4,\"INPUT_COLUMN_NAME\":\"S_W_ID\"}," \
+    "{\"GUID\":3,\"NAME\":\"S_QUANTITY\",\"TYPE\":\"INTEGER\",\"SIZE\":4,\"INPUT_COLUMN_NAME\":\"S_QUANTITY\"}]"
+
+// SELECT * FROM STOCK -> SEND
+const char *SCAN_FRAGMENT = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":[],\"PARENT_IDS\":[2],\"CHILDREN_IDS\":[],"
+    STOCK_COLUMNS ",\"TARGET_TABLE_NAME\":\"STOCK\"},"
+    "{\"PLAN_NODE_TYPE\":\"SEND\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[1],"
+    STOCK_COLUMNS ",\"FAKE\":false}],"
+    "\"EXECUTE_LIST\":[1,2],\"PARAMETERS\":[]}";
+
+// RECEIVE -> SEND
+const char *RECEIVE_FRAGMENT = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"RECEIVE\",\"ID\":3,\"INLINE_NODES\":[],\"PARENT_IDS\":[4],\"CHILDREN_IDS\":[],"
+    STOCK_COLUMNS "},"
+    "{\"PLAN_NODE_TYPE\":\"SEND\",\"ID\":4,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[3],"
+    STOCK_COLUMNS ",\"FAKE\":false}],"
+    "\"EXECUTE_LIST\":[3,4],\"PARAMETERS\":[]}";
+
+#define SCAN_FRAGMENT_ID 101
+#define RECEIVE_FRAGMENT_ID 102
+
+/*
+ * Execute a batch of fragments the same way that voltdbjni.cpp does and
+ * return the number of rows that came back for each dependency that was sent up
+ */
+void ExecutionEngineTest::executeBatch(voltdb::VoltDBEngine *engine, int batchSize, const int64_t *fragmentIds,
+                                       const int32_t *inputDepIds, const int32_t *outputDepIds,
+                                       map<int32_t, int64_t> &results) {
+    engine->resetReusedResultOutputBuffer();
+    voltdb::NValueArray params(0);
+    engine->prepareLocalDependencies(batchSize, inputDepIds, outputDepIds);
+    for (int i = 0; i < batchSize; i++) {
+        ASSERT_EQ(ENGINE_ERRORCODE_SUCCESS,
+                  engine->executeQuery(fragmentIds[i], outputDepIds[i], inputDepIds[i], params,
+                                       1, 0, i == 0, i == (batchSize - 1)));
+    }
+    engine->clearLocalDependencies();
+
+    voltdb::Table *stock = engine->getTable("STOCK");
+    voltdb::TupleSchema *schema = voltdb::TupleSchema::createTupleSchema(stock->schema());
+    vector<string> names = stock->getColumnNames();
+    boost::scoped_ptr<voltdb::TempTable> output(voltdb::TableFactory::getTempTable(0, "RESULT", schema, &names[0], NULL));
+
+    voltdb::ReferenceSerializeInput in(engine->getReusedResultBuffer(), engine->getResultsSize());
+    in.readInt(); // total size
+    in.readBool(); // dirty
+    results.clear();
+    for (int i = 0; i < batchSize; i++) {
+        int numDependencies = in.readInt();
+        for (int j = 0; j < numDependencies; j++) {
+            int32_t depId = in.readInt();
+            in.readInt(); // table size
+            output->deleteAllTuples(true);
+            output->loadTuplesFrom(true, in);
+            results[depId] = output->activeTupleCount();
+        }
+    }
+}
+
+// ------------------------------------------------------------------
+// LocalDependencies
+// ------------------------------------------------------------------
+TEST_F(ExecutionEngineTest, LocalDependencies) {
+    //
+    // Execute a two-round plan in one batch and make sure that the intermediate
+    // result never leaves the EE and that the engine never asks Java for it
+    //
+    char hex[4096];
+    string fragments = catalog_string;
+    fragments += "\nadd /clusters[cluster]/databases[database] procedures GetStock"
+                 "\nadd /clusters[cluster]/databases[database]/procedures[GetStock] statements getStock"
+                 "\nadd /clusters[cluster]/databases[database]/procedures[GetStock]/statements[getStock] ms_fragments 101"
+                 "\nset /clusters[cluster]/databases[database]/procedures[GetStock]/statements[getStock]/ms_fragments[101] plannodetree \"";
+    catalog::Catalog::hexEncodeString(SCAN_FRAGMENT, hex);
+    fragments += hex;
+    fragments += "\""
+                 "\nadd /clusters[cluster]/databases[database]/procedures[GetStock]/statements[getStock] ms_fragments 102"
+                 "\nset /clusters[cluster]/databases[database]/procedures[GetStock]/statements[getStock]/ms_fragments[102] plannodetree \"";
+    catalog::Catalog::hexEncodeString(RECEIVE_FRAGMENT, hex);
+    fragments += hex;
+    fragments += "\"";
+
+    // The engine takes ownership of the topend
+    CountingTopend *topend = new CountingTopend();
+    voltdb::VoltDBEngine *local_engine = new voltdb::VoltDBEngine(topend, new voltdb::StdoutLogProxy());
+    ASSERT_TRUE(local_engine->initialize(this->cluster_id, this->site_id, 0, 0, ""));
+    ASSERT_TRUE(local_engine->loadCatalog(fragments));
+    ASSERT_TRUE(tableutil::addRandomTuples(local_engine->getTable("STOCK"), NUM_OF_TUPLES));
+
+    boost::scoped_array<char> parameterBuffer(new char[1024]);
+    boost::scoped_array<char> resultBuffer(new char[1024 * 1024]);
+    boost::scoped_array<char> exceptionBuffer(new char[1024]);
+    local_engine->setBuffers(parameterBuffer.get(), 1024,
+                             resultBuffer.get(), 1024 * 1024,
+                             exceptionBuffer.get(), 1024);
+    map<int32_t, int64_t> results;
+
+    // Both rounds in a single batch. Only the last one should come back
+    int64_t fragmentIds[] = { SCAN_FRAGMENT_ID, RECEIVE_FRAGMENT_ID };
+    int32_t inputDepIds[] = { -1, 10 };
+    int32_t outputDepIds[] = { 10, 11 };
+    for (int i = 0; i < 2; i++) {
+        executeBatch(local_engine, 2, fragmentIds, inputDepIds, outputDepIds, results);
+        ASSERT_EQ(1, results.size());
+        ASSERT_EQ(1, results.count(11));
+        ASSERT_EQ(NUM_OF_TUPLES, results[11]);
+        ASSERT_EQ(0, topend->loadCount);
+    }
+
+    // Two Statements with two rounds each
+    int64_t twoFragmentIds[] = { SCAN_FRAGMENT_ID, RECEIVE_FRAGMENT_ID, SCAN_FRAGMENT_ID, RECEIVE_FRAGMENT_ID };
+    int32_t twoInputDepIds[] = { -1, 10, -1, 12 };
+    int32_t twoOutputDepIds[] = { 10, 11, 12, 13 };
+    executeBatch(local_engine, 4, twoFragmentIds, twoInputDepIds, twoOutputDepIds, results);
+    ASSERT_EQ(2, results.size());
+    ASSERT_EQ(NUM_OF_TUPLES, results[11]);
+    ASSERT_EQ(NUM_OF_TUPLES, results[13]);
+    ASSERT_EQ(0, topend->loadCount);
+
+    // If the input was not produced in this batch, then it still has to come from Java
+    executeBatch(local_engine, 1, &fragmentIds[1], &inputDepIds[1], &outputDepIds[1], results);
+    ASSERT_EQ(1, results.size());
+    ASSERT_EQ(0, results[11]);
+    ASSERT_EQ(1, topend->loadCount);
+
+    // And the output of a fragment that nobody else in the batch reads gets sent back
+    executeBatch(local_engine, 1, fragmentIds, inputDepIds, outputDepIds, results);
+    ASSERT_EQ(1, results.size());
+    ASSERT_EQ(NUM_OF_TUPLES, results[10]);
+
+    delete local_engine;
+}
+
 /*
 // ------------------------------------------------------------------
 // Execute_PlanFragmentInfo
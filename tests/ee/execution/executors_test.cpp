@@ -50,10 +50,15 @@
  */
 
 #include <iostream>
+#include <sstream>
 #include <cstdlib>
 #include <stdint.h>
 #include <ctime>
 #include <boost/shared_ptr.hpp>
+#include <boost/scoped_array.hpp>
+#include <limits>
+#include <algorithm>
+#include <cmath>
 #include "harness.h"
 #include "common/common.h"
 #include "common/NValue.hpp"
@@ -68,8 +73,10 @@
 #include "execution/VoltDBEngine.h"
 #include "executors/executors.h"
 #include "executors/executorutil.h"
+#include "executors/tuplebatch.h"
 #include "plannodes/nodes.h"
 #include "plannodes/abstractplannode.h"
+#include "plannodes/plannodefragment.h"
 #include "indexes/tableindex.h"
 #include "storage/table.h"
 #include "storage/persistenttable.h"
@@ -433,6 +440,858 @@ TEST_F(ExecutionPlanNodeTest, IndexScan) {
     //printf("%s\n", this->temp_table->debug().c_str());
 }
 
+// ---------------------------------------------------------------
+// Batch Execution
+// ---------------------------------------------------------------
+//
+// The SeqScan, Projection, and Aggregate executors process their input a
+// TupleBatch at a time when they can. These tests run the same plans through
+// both the batched path and the tuple-at-a-time path and make sure that they
+// produce the same output. The parameter types decide which path a SeqScan
+// uses: BatchPredicate::prepare() gives up when a parameter does not match its
+// column's type, so we can force the tuple-at-a-time path for the same plan.
+// An aggregate that BatchAggregate does not support (e.g., AVG)
+// does the same thing for the AggregateExecutor.
+//
+#define NUM_OF_BATCH_TUPLES 2500 // must span more than one TupleBatch
+
+#define BATCH_TVE(idx, name, type, size) \
+    "{\"TYPE\":\"VALUE_TUPLE\",\"VALUE_TYPE\":\"" type "\",\"VALUE_SIZE\":" #size "," \
+    "\"COLUMN_IDX\":" #idx ",\"TABLE_NAME\":\"BATCH\",\"COLUMN_NAME\":\"" name "\"}"
+#define BATCH_PARAM(idx) \
+    "{\"TYPE\":\"VALUE_PARAMETER\",\"VALUE_TYPE\":\"BIGINT\",\"VALUE_SIZE\":8,\"PARAM_IDX\":" #idx "}"
+#define BATCH_COMPARE(type, left, right) \
+    "{\"TYPE\":\"" type "\",\"VALUE_TYPE\":\"BIGINT\",\"VALUE_SIZE\":8,\"LEFT\":" left ",\"RIGHT\":" right "}"
+#define BATCH_COLUMN(guid, name, type, size) \
+    "{\"GUID\":" #guid ",\"NAME\":\"" name "\",\"TYPE\":\"" type "\",\"SIZE\":" #size ",\"INPUT_COLUMN_NAME\":\"" name "\"}"
+
+#define BATCH_COLUMNS "\"OUTPUT_COLUMNS\":[" \
+    BATCH_COLUMN(1, "A", "BIGINT", 8) "," \
+    BATCH_COLUMN(2, "B", "INTEGER", 4) "," \
+    BATCH_COLUMN(3, "C", "FLOAT", 8) "," \
+    BATCH_COLUMN(4, "G", "INTEGER", 4) "]"
+
+// A >= ?0 AND ?1 > C
+#define BATCH_PREDICATE "\"PREDICATE\":" \
+    "{\"TYPE\":\"CONJUNCTION_AND\",\"VALUE_TYPE\":\"BIGINT\",\"VALUE_SIZE\":8,\"LEFT\":" \
+    BATCH_COMPARE("COMPARE_GREATERTHANOREQUALTO", BATCH_TVE(0, "A", "BIGINT", 8), BATCH_PARAM(0)) ",\"RIGHT\":" \
+    BATCH_COMPARE("COMPARE_GREATERTHAN", BATCH_PARAM(1), BATCH_TVE(2, "C", "FLOAT", 8)) "}"
+
+// SELECT * FROM BATCH WHERE A >= ?0 AND ?1 > C
+const char *BATCH_SCAN = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"," BATCH_PREDICATE "}],"
+    "\"EXECUTE_LIST\":[1],\"PARAMETERS\":[]}";
+
+// SELECT * FROM BATCH WHERE A >= ?0 AND ?1 > C LIMIT ?2
+const char *BATCH_SCAN_LIMIT = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"LIMIT\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"LIMIT\":-1,\"OFFSET\":0,\"LIMIT_PARAM_IDX\":2}],"
+    "\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"," BATCH_PREDICATE "}],"
+    "\"EXECUTE_LIST\":[1],\"PARAMETERS\":[]}";
+
+// SELECT * FROM BATCH LIMIT ?0
+const char *BATCH_SCAN_ONLY_LIMIT = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"LIMIT\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"LIMIT\":-1,\"OFFSET\":0,\"LIMIT_PARAM_IDX\":0}],"
+    "\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"}],"
+    "\"EXECUTE_LIST\":[1],\"PARAMETERS\":[]}";
+
+#define BATCH_PROJECTION_COLUMNS "\"OUTPUT_COLUMNS\":[" \
+    "{\"GUID\":11,\"NAME\":\"C\",\"TYPE\":\"FLOAT\",\"SIZE\":8,\"EXPRESSION\":" BATCH_TVE(2, "C", "FLOAT", 8) "}," \
+    "{\"GUID\":12,\"NAME\":\"A\",\"TYPE\":\"BIGINT\",\"SIZE\":8,\"EXPRESSION\":" BATCH_TVE(0, "A", "BIGINT", 8) "}," \
+    "{\"GUID\":13,\"NAME\":\"B\",\"TYPE\":\"INTEGER\",\"SIZE\":4,\"EXPRESSION\":" BATCH_TVE(1, "B", "INTEGER", 4) "}]"
+
+// SELECT C, A, B FROM BATCH WHERE A >= ?0 AND ?1 > C
+const char *BATCH_SCAN_PROJECTION = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"PROJECTION\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_PROJECTION_COLUMNS "}],"
+    "\"PARENT_IDS\":[],\"CHILDREN_IDS\":[],"
+    BATCH_PROJECTION_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"," BATCH_PREDICATE "}],"
+    "\"EXECUTE_LIST\":[1],\"PARAMETERS\":[]}";
+
+// SELECT * FROM BATCH -> SELECT C, A, B
+const char *BATCH_PROJECTION = "{\"PLAN_NODES\":["
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":[],\"PARENT_IDS\":[2],\"CHILDREN_IDS\":[],"
+    BATCH_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"},"
+    "{\"PLAN_NODE_TYPE\":\"PROJECTION\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[1],"
+    BATCH_PROJECTION_COLUMNS "}],"
+    "\"EXECUTE_LIST\":[1,2],\"PARAMETERS\":[]}";
+
+#define BATCH_AGGREGATE_COLUMN(type, guid, idx) \
+    "{\"AGGREGATE_TYPE\":\"" type "\",\"AGGREGATE_NAME\":\"AGG" #idx "\"," \
+    "\"AGGREGATE_GUID\":" #guid ",\"AGGREGATE_OUTPUT_COLUMN\":" #idx "}"
+#define BATCH_AGGREGATE_OUTPUT(idx, type, size) \
+    "{\"GUID\":1" #idx "0,\"NAME\":\"AGG" #idx "\",\"TYPE\":\"" type "\",\"SIZE\":" #size "}"
+
+//
+// The aggregates that BatchAggregate supports. AVG is not one of them, so
+// adding it sends the whole plan down the tuple-at-a-time path
+//
+#define BATCH_AGGREGATE_OUTPUTS \
+    BATCH_AGGREGATE_OUTPUT(0, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(1, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(2, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(3, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(4, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(5, "BIGINT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(6, "INTEGER", 4) "," \
+    BATCH_AGGREGATE_OUTPUT(7, "INTEGER", 4) "," \
+    BATCH_AGGREGATE_OUTPUT(8, "FLOAT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(9, "FLOAT", 8) "," \
+    BATCH_AGGREGATE_OUTPUT(10, "BIGINT", 8)
+#define BATCH_AGGREGATE_COLUMNS \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_COUNT_STAR", 1, 0) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_COUNT", 1, 1) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_COUNT", 3, 2) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_SUM", 1, 3) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MIN", 1, 4) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MAX", 1, 5) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MIN", 2, 6) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MAX", 2, 7) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MIN", 3, 8) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_MAX", 3, 9) "," \
+    BATCH_AGGREGATE_COLUMN("AGGREGATE_SUM", 2, 10)
+#define NUM_OF_BATCH_AGGREGATES 11
+#define BATCH_PASS_THROUGH BATCH_COLUMN(1, "A", "BIGINT", 8)
+#define BATCH_GROUPBY ",\"GROUPBY_COLUMNS\":[" BATCH_COLUMN(4, "G", "INTEGER", 4) "]"
+
+#define BATCH_AGGREGATE_PLAN(type, outputs, aggregates, groupby) "{\"PLAN_NODES\":[" \
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":[],\"PARENT_IDS\":[2],\"CHILDREN_IDS\":[]," \
+    BATCH_COLUMNS ",\"TARGET_TABLE_NAME\":\"BATCH\"}," \
+    "{\"PLAN_NODE_TYPE\":\"" type "\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[1]," \
+    "\"OUTPUT_COLUMNS\":[" outputs "],\"AGGREGATE_COLUMNS\":[" aggregates "]" groupby "}]," \
+    "\"EXECUTE_LIST\":[1,2],\"PARAMETERS\":[]}"
+
+#define BATCH_AGGREGATE_PLANS(outputs, aggregates, groupby) { \
+    BATCH_AGGREGATE_PLAN("AGGREGATE", outputs, aggregates, groupby), \
+    BATCH_AGGREGATE_PLAN("HASHAGGREGATE", outputs, aggregates, groupby) }
+
+// SELECT COUNT(*), COUNT(A), ..., A FROM BATCH
+const char *BATCH_AGGREGATE[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS "," BATCH_PASS_THROUGH,
+    BATCH_AGGREGATE_COLUMNS, "");
+// SELECT COUNT(*), COUNT(A), ..., A, AVG(A) FROM BATCH
+const char *TUPLE_AGGREGATE[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS "," BATCH_PASS_THROUGH "," BATCH_AGGREGATE_OUTPUT(12, "BIGINT", 8),
+    BATCH_AGGREGATE_COLUMNS "," BATCH_AGGREGATE_COLUMN("AGGREGATE_AVG", 1, 12), "");
+// SELECT COUNT(*), COUNT(A), ..., A FROM BATCH GROUP BY G
+const char *GROUPBY_AGGREGATE[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS "," BATCH_PASS_THROUGH,
+    BATCH_AGGREGATE_COLUMNS, BATCH_GROUPBY);
+
+//
+// Without the pass-through column, since there is no input tuple to take it
+// from when the table is empty
+//
+const char *BATCH_AGGREGATE_ONLY[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS, BATCH_AGGREGATE_COLUMNS, "");
+const char *TUPLE_AGGREGATE_ONLY[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS "," BATCH_AGGREGATE_OUTPUT(11, "BIGINT", 8),
+    BATCH_AGGREGATE_COLUMNS "," BATCH_AGGREGATE_COLUMN("AGGREGATE_AVG", 1, 11), "");
+const char *GROUPBY_AGGREGATE_ONLY[] = BATCH_AGGREGATE_PLANS(
+    BATCH_AGGREGATE_OUTPUTS, BATCH_AGGREGATE_COLUMNS, BATCH_GROUPBY);
+
+class BatchExecutionTest : public Test {
+public:
+    BatchExecutionTest() {
+        catalog_string =
+            "add / clusters cluster"
+            "\nadd /clusters[cluster] databases database"
+            "\nadd /clusters[cluster]/databases[database] programs program"
+            "\nadd /clusters[cluster]/databases[database] tables BATCH"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH] type 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH] isreplicated false"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH] partitioncolumn 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH] estimatedtuplecount 0"
+            "\nadd /clusters[cluster]/databases[database]/tables[BATCH] columns A"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[A] index 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[A] type 6"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[A] size 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[A] nullable true"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[A] name \"A\""
+            "\nadd /clusters[cluster]/databases[database]/tables[BATCH] columns B"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[B] index 1"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[B] type 5"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[B] size 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[B] nullable true"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[B] name \"B\""
+            "\nadd /clusters[cluster]/databases[database]/tables[BATCH] columns C"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[C] index 2"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[C] type 8"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[C] size 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[C] nullable true"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[C] name \"C\""
+            "\nadd /clusters[cluster]/databases[database]/tables[BATCH] columns G"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[G] index 3"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[G] type 5"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[G] size 0"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[G] nullable false"
+            "\nset /clusters[cluster]/databases[database]/tables[BATCH]/columns[G] name \"G\"";
+        // K1 is an INTEGER in the outer table but a BIGINT in the inner table
+        addJoinTable("HJ_OUTER", 5, 6);
+        addJoinTable("HJ_INNER", 6, 6);
+
+        engine = new voltdb::VoltDBEngine();
+        ASSERT_TRUE(engine->initialize(0, 1001, 0, 0, ""));
+        ASSERT_TRUE(engine->loadCatalog(catalog_string));
+        database = engine->getCatalog()->clusters().get("cluster")->databases().get("database");
+        table = engine->getTable("BATCH");
+        ASSERT_TRUE(table != NULL);
+    }
+    //
+    // The tables for the HashJoin tests. Each one has an ID column, two key
+    // columns with the given catalog types, and a column R that is only used
+    // by residual predicates
+    //
+    void addJoinTable(const std::string &name, int k1_type, int k2_type) {
+        std::string path = "/clusters[cluster]/databases[database]/tables[" + name + "]";
+        catalog_string += "\nadd /clusters[cluster]/databases[database] tables " + name;
+        catalog_string += "\nset " + path + " type 0";
+        catalog_string += "\nset " + path + " isreplicated false";
+        catalog_string += "\nset " + path + " partitioncolumn 0";
+        catalog_string += "\nset " + path + " estimatedtuplecount 0";
+        const char *columns[] = { "ID", "K1", "K2", "R" };
+        int types[] = { 5, k1_type, k2_type, 5 };
+        for (int ii = 0; ii < 4; ii++) {
+            std::string column = path + "/columns[" + columns[ii] + "]";
+            std::stringstream ss;
+            ss << "\nadd " << path << " columns " << columns[ii]
+               << "\nset " << column << " index " << ii
+               << "\nset " << column << " type " << types[ii]
+               << "\nset " << column << " size 0"
+               << "\nset " << column << " nullable " << (ii == 0 ? "false" : "true")
+               << "\nset " << column << " name \"" << columns[ii] << "\"";
+            catalog_string += ss.str();
+        }
+    }
+    ~BatchExecutionTest() {
+        //
+        // The fragments own their executors and output tables, so they
+        // have to go before the engine
+        //
+        for (int ii = 0; ii < (int)fragments.size(); ii++) {
+            delete fragments[ii];
+        }
+        delete engine;
+    }
+
+protected:
+    std::string catalog_string;
+    voltdb::VoltDBEngine *engine;
+    catalog::Database *database;
+    voltdb::Table *table;
+    std::vector<voltdb::PlanNodeFragment*> fragments;
+
+    void insertTuple(const NValue &a, const NValue &b, const NValue &c) {
+        voltdb::TableTuple &tuple = table->tempTuple();
+        tuple.setNValue(0, a);
+        tuple.setNValue(1, b);
+        tuple.setNValue(2, c);
+        tuple.setNValue(3, ValueFactory::getIntegerValue(1));
+        EXPECT_TRUE(table->insertTuple(tuple));
+    }
+
+    //
+    // Every few rows has a NULL in one of the columns, and the FLOAT column
+    // also has some NaNs
+    //
+    void loadTuples() {
+        for (int ii = 0; ii < NUM_OF_BATCH_TUPLES; ii++) {
+            insertTuple(ii % 7 == 0 ? NValue::getNullValue(VALUE_TYPE_BIGINT) :
+                                      ValueFactory::getBigIntValue((ii * 31) % 100 - 50),
+                        ii % 11 == 0 ? NValue::getNullValue(VALUE_TYPE_INTEGER) :
+                                       ValueFactory::getIntegerValue((ii * 17) % 37 - 18),
+                        ii % 13 == 0 ? NValue::getNullValue(VALUE_TYPE_DOUBLE) :
+                        ii % 17 == 0 ? ValueFactory::getDoubleValue(std::numeric_limits<double>::quiet_NaN()) :
+                                       ValueFactory::getDoubleValue(((ii * 7) % 50) / 4.0 - 5));
+        }
+    }
+
+    //
+    // Load the plan fragment, initialize each of its nodes the same way that
+    // the VoltDBEngine does, and then execute it. Returns the output table of
+    // the last node in the fragment or NULL if an executor threw an exception
+    //
+    voltdb::Table* execute(const char *json, const voltdb::NValueArray &params) {
+        std::string plan(json);
+        boost::scoped_array<char> hex(new char[plan.size() * 2 + 1]);
+        catalog::Catalog::hexEncodeString(plan.c_str(), hex.get());
+        voltdb::PlanNodeFragment *pnf = voltdb::PlanNodeFragment::createFromCatalog(hex.get(), database);
+        fragments.push_back(pnf);
+
+        int mem = 0;
+        for (int ctr = 0, cnt = (int)pnf->getExecuteList().size(); ctr < cnt; ctr++) {
+            EXPECT_TRUE(initPlanNode(pnf->getExecuteList()[ctr], &mem));
+        }
+        try {
+            for (int ctr = 0, cnt = (int)pnf->getExecuteList().size(); ctr < cnt; ctr++) {
+                EXPECT_TRUE(pnf->getExecuteList()[ctr]->getExecutor()->execute(params));
+            }
+        } catch (voltdb::SerializableEEException &e) {
+            return NULL;
+        }
+        return pnf->getExecuteList().back()->getOutputTable();
+    }
+
+    bool initPlanNode(voltdb::AbstractPlanNode *node, int *mem) {
+        voltdb::AbstractExecutor *executor = voltdb::getNewExecutor(engine, node);
+        if (executor == NULL) return false;
+        node->setExecutor(executor);
+        std::map<PlanNodeType, AbstractPlanNode*>::iterator it;
+        for (it = node->getInlinePlanNodes().begin(); it != node->getInlinePlanNodes().end(); it++) {
+            if (!initPlanNode(it->second, mem)) return false;
+        }
+        return executor->init(engine, database, mem);
+    }
+
+    //
+    // NULLs only match NULLs and NaNs only match NaNs
+    //
+    bool sameValue(const NValue &first, const NValue &second) {
+        if (first.isNull() || second.isNull()) {
+            return (first.isNull() && second.isNull());
+        }
+        if (ValuePeeker::peekValueType(first) == VALUE_TYPE_DOUBLE &&
+            ValuePeeker::peekValueType(second) == VALUE_TYPE_DOUBLE) {
+            double x = ValuePeeker::peekDouble(first);
+            double y = ValuePeeker::peekDouble(second);
+            if (std::isnan(x) || std::isnan(y)) {
+                return (std::isnan(x) && std::isnan(y));
+            }
+            return (x == y);
+        }
+        return first.op_equals(second).isTrue();
+    }
+
+    //
+    // Compare the first num_columns columns of every tuple in the two tables
+    //
+    void compareTables(voltdb::Table *first, voltdb::Table *second, int num_columns) {
+        ASSERT_TRUE(first != NULL);
+        ASSERT_TRUE(second != NULL);
+        ASSERT_EQ(first->activeTupleCount(), second->activeTupleCount());
+        voltdb::TableIterator first_iter = first->tableIterator();
+        voltdb::TableIterator second_iter = second->tableIterator();
+        voltdb::TableTuple first_tuple(first->schema());
+        voltdb::TableTuple second_tuple(second->schema());
+        while (first_iter.next(first_tuple)) {
+            ASSERT_TRUE(second_iter.next(second_tuple));
+            for (int col_ctr = 0; col_ctr < num_columns; col_ctr++) {
+                EXPECT_TRUE(sameValue(first_tuple.getNValue(col_ctr), second_tuple.getNValue(col_ctr)));
+            }
+        }
+    }
+
+    //
+    // Returns the parameters for BATCH_PREDICATE. The batched path needs a
+    // BIGINT (or an untyped NULL) for A. A FLOAT with the same value sends
+    // the same plan down the tuple-at-a-time path
+    //
+    voltdb::NValueArray scanParams(bool batched, const NValue &a, const NValue &c, int num_params = 2) {
+        voltdb::NValueArray params(num_params);
+        params[0] = a;
+        if (!batched) {
+            params[0] = (a.isNull() ? NValue::getNullValue(VALUE_TYPE_DOUBLE) :
+                                      ValueFactory::getDoubleValue((double)ValuePeeker::peekAsBigInt(a)));
+        }
+        params[1] = c;
+        return params;
+    }
+};
+
+// ------------------------------------------------------------------
+// SeqScanPredicate
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, SeqScanPredicate) {
+    loadTuples();
+    //
+    // The comparisons do not treat NULL or NaN specially: NULL is compared as
+    // its sentinel value and NaN is less than everything. Whatever they do,
+    // both paths have to agree, including for NULL and NaN parameters
+    //
+    NValue a_values[] = { ValueFactory::getBigIntValue(-100),
+                          ValueFactory::getBigIntValue(0),
+                          ValueFactory::getBigIntValue(49),
+                          ValueFactory::getBigIntValue(50),
+                          NValue::getNullValue(VALUE_TYPE_BIGINT),
+                          ValueFactory::getNullValue() };
+    NValue c_values[] = { ValueFactory::getDoubleValue(100),
+                          ValueFactory::getDoubleValue(0),
+                          ValueFactory::getDoubleValue(-5),
+                          ValueFactory::getDoubleValue(std::numeric_limits<double>::quiet_NaN()),
+                          NValue::getNullValue(VALUE_TYPE_DOUBLE) };
+    for (int a_ctr = 0; a_ctr < sizeof(a_values) / sizeof(NValue); a_ctr++) {
+        for (int c_ctr = 0; c_ctr < sizeof(c_values) / sizeof(NValue); c_ctr++) {
+            voltdb::Table *batched = execute(BATCH_SCAN, scanParams(true, a_values[a_ctr], c_values[c_ctr]));
+            voltdb::Table *tuples = execute(BATCH_SCAN, scanParams(false, a_values[a_ctr], c_values[c_ctr]));
+            compareTables(tuples, batched, 4);
+        }
+    }
+
+    // Every tuple that has a non-NULL A and a C that is not NaN
+    int expected = 0;
+    for (int ii = 0; ii < NUM_OF_BATCH_TUPLES; ii++) {
+        if (ii % 7 != 0 && (ii % 13 == 0 || ii % 17 != 0)) expected++;
+    }
+    voltdb::Table *batched = execute(BATCH_SCAN, scanParams(true, a_values[0], c_values[0]));
+    ASSERT_TRUE(batched != NULL);
+    EXPECT_EQ(expected, batched->activeTupleCount());
+}
+
+// ------------------------------------------------------------------
+// SeqScanLimit
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, SeqScanLimit) {
+    loadTuples();
+    voltdb::Table *all = execute(BATCH_SCAN, scanParams(true, ValueFactory::getBigIntValue(-100),
+                                                        ValueFactory::getDoubleValue(100)));
+    ASSERT_TRUE(all != NULL);
+    int matches = (int)all->activeTupleCount();
+    ASSERT_TRUE(matches > TUPLE_BATCH_SIZE);
+
+    //
+    // A LIMIT of 0 does not return anything no matter which path we take.
+    // The other limits include one that ends in the middle of the second batch
+    //
+    int limits[] = { 0, 1, 2, TUPLE_BATCH_SIZE + 10, NUM_OF_BATCH_TUPLES * 2 };
+    for (int ii = 0; ii < sizeof(limits) / sizeof(int); ii++) {
+        int expected = std::min(limits[ii], matches);
+        voltdb::NValueArray params = scanParams(true, ValueFactory::getBigIntValue(-100),
+                                                ValueFactory::getDoubleValue(100), 3);
+        params[2] = ValueFactory::getIntegerValue(limits[ii]);
+        voltdb::Table *batched = execute(BATCH_SCAN_LIMIT, params);
+        ASSERT_TRUE(batched != NULL);
+        EXPECT_EQ(expected, batched->activeTupleCount());
+
+        params = scanParams(false, ValueFactory::getBigIntValue(-100),
+                            ValueFactory::getDoubleValue(100), 3);
+        params[2] = ValueFactory::getIntegerValue(limits[ii]);
+        voltdb::Table *tuples = execute(BATCH_SCAN_LIMIT, params);
+        ASSERT_TRUE(tuples != NULL);
+        EXPECT_EQ(expected, tuples->activeTupleCount());
+        compareTables(tuples, batched, 4);
+
+        // Without a predicate we always use the tuple-at-a-time path
+        voltdb::NValueArray limit_params(1);
+        limit_params[0] = ValueFactory::getIntegerValue(limits[ii]);
+        voltdb::Table *limited = execute(BATCH_SCAN_ONLY_LIMIT, limit_params);
+        ASSERT_TRUE(limited != NULL);
+        EXPECT_EQ(std::min(limits[ii], NUM_OF_BATCH_TUPLES), limited->activeTupleCount());
+    }
+}
+
+// ------------------------------------------------------------------
+// SeqScanProjection
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, SeqScanProjection) {
+    loadTuples();
+    NValue a_values[] = { ValueFactory::getBigIntValue(-100),
+                          ValueFactory::getBigIntValue(10),
+                          NValue::getNullValue(VALUE_TYPE_BIGINT) };
+    for (int a_ctr = 0; a_ctr < sizeof(a_values) / sizeof(NValue); a_ctr++) {
+        voltdb::Table *batched = execute(BATCH_SCAN_PROJECTION, scanParams(true, a_values[a_ctr],
+                                                                           ValueFactory::getDoubleValue(1)));
+        voltdb::Table *tuples = execute(BATCH_SCAN_PROJECTION, scanParams(false, a_values[a_ctr],
+                                                                          ValueFactory::getDoubleValue(1)));
+        compareTables(tuples, batched, 3);
+    }
+}
+
+// ------------------------------------------------------------------
+// Projection
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, Projection) {
+    loadTuples();
+    voltdb::NValueArray params(0);
+    voltdb::Table *output = execute(BATCH_PROJECTION, params);
+    ASSERT_TRUE(output != NULL);
+    ASSERT_EQ(NUM_OF_BATCH_TUPLES, output->activeTupleCount());
+
+    // The columns are just copied, NULLs and NaNs included
+    voltdb::TableIterator input_iter = table->tableIterator();
+    voltdb::TableIterator output_iter = output->tableIterator();
+    voltdb::TableTuple input_tuple(table->schema());
+    voltdb::TableTuple output_tuple(output->schema());
+    while (input_iter.next(input_tuple)) {
+        ASSERT_TRUE(output_iter.next(output_tuple));
+        EXPECT_TRUE(sameValue(input_tuple.getNValue(2), output_tuple.getNValue(0)));
+        EXPECT_TRUE(sameValue(input_tuple.getNValue(0), output_tuple.getNValue(1)));
+        EXPECT_TRUE(sameValue(input_tuple.getNValue(1), output_tuple.getNValue(2)));
+    }
+}
+
+// ------------------------------------------------------------------
+// Aggregate
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, Aggregate) {
+    //
+    // Put a distinct value for A in the first and the last tuples so that we
+    // can tell where the pass-through column came from
+    //
+    insertTuple(ValueFactory::getBigIntValue(1000),
+                ValueFactory::getIntegerValue(1),
+                ValueFactory::getDoubleValue(1));
+    loadTuples();
+    insertTuple(ValueFactory::getBigIntValue(-1000),
+                ValueFactory::getIntegerValue(1),
+                ValueFactory::getDoubleValue(1));
+    voltdb::NValueArray params(0);
+    int64_t pass_through[] = { -1000, 1000 }; // AGGREGATE, HASHAGGREGATE
+
+    for (int ii = 0; ii < 2; ii++) {
+        voltdb::Table *batched = execute(BATCH_AGGREGATE[ii], params);
+        voltdb::Table *tuples = execute(TUPLE_AGGREGATE[ii], params);
+        voltdb::Table *grouped = execute(GROUPBY_AGGREGATE[ii], params);
+        ASSERT_TRUE(batched != NULL);
+        ASSERT_EQ(1, batched->activeTupleCount());
+        compareTables(tuples, batched, NUM_OF_BATCH_AGGREGATES + 1);
+        compareTables(grouped, batched, NUM_OF_BATCH_AGGREGATES + 1);
+
+        voltdb::TableTuple tuple(batched->schema());
+        voltdb::TableIterator iter = batched->tableIterator();
+        ASSERT_TRUE(iter.next(tuple));
+        EXPECT_EQ(NUM_OF_BATCH_TUPLES + 2, ValuePeeker::peekAsBigInt(tuple.getNValue(0)));
+        EXPECT_EQ(pass_through[ii], ValuePeeker::peekAsBigInt(tuple.getNValue(NUM_OF_BATCH_AGGREGATES)));
+    }
+}
+
+// ------------------------------------------------------------------
+// AggregateOverflow
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, AggregateOverflow) {
+    //
+    // Summing these two has to fail on both paths instead of wrapping around
+    //
+    insertTuple(ValueFactory::getBigIntValue(INT64_MAX - 10),
+                ValueFactory::getIntegerValue(1),
+                ValueFactory::getDoubleValue(1));
+    insertTuple(ValueFactory::getBigIntValue(20),
+                ValueFactory::getIntegerValue(1),
+                ValueFactory::getDoubleValue(1));
+    voltdb::NValueArray params(0);
+    for (int ii = 0; ii < 2; ii++) {
+        EXPECT_TRUE(execute(BATCH_AGGREGATE[ii], params) == NULL);
+        EXPECT_TRUE(execute(TUPLE_AGGREGATE[ii], params) == NULL);
+        EXPECT_TRUE(execute(GROUPBY_AGGREGATE[ii], params) == NULL);
+    }
+}
+
+// ------------------------------------------------------------------
+// AggregateEmpty
+// ------------------------------------------------------------------
+TEST_F(BatchExecutionTest, AggregateEmpty) {
+    voltdb::NValueArray params(0);
+    for (int ii = 0; ii < 2; ii++) {
+        //
+        // Without a GROUP BY we always get a single tuple back with the
+        // counts set to zero and everything else set to NULL
+        //
+        voltdb::Table *batched = execute(BATCH_AGGREGATE_ONLY[ii], params);
+        voltdb::Table *tuples = execute(TUPLE_AGGREGATE_ONLY[ii], params);
+        ASSERT_TRUE(batched != NULL);
+        ASSERT_EQ(1, batched->activeTupleCount());
+        compareTables(tuples, batched, NUM_OF_BATCH_AGGREGATES);
+
+        voltdb::TableTuple tuple(batched->schema());
+        voltdb::TableIterator iter = batched->tableIterator();
+        ASSERT_TRUE(iter.next(tuple));
+        for (int col_ctr = 0; col_ctr < NUM_OF_BATCH_AGGREGATES; col_ctr++) {
+            if (col_ctr <= 2) {
+                EXPECT_EQ(0, ValuePeeker::peekAsBigInt(tuple.getNValue(col_ctr)));
+            } else {
+                EXPECT_TRUE(tuple.getNValue(col_ctr).isNull());
+            }
+        }
+
+        // But there are no groups at all with one
+        voltdb::Table *grouped = execute(GROUPBY_AGGREGATE_ONLY[ii], params);
+        ASSERT_TRUE(grouped != NULL);
+        EXPECT_EQ(0, grouped->activeTupleCount());
+    }
+}
+
+// ---------------------------------------------------------------
+// Hash Join
+// ---------------------------------------------------------------
+//
+// Each plan joins HJ_OUTER with HJ_INNER. We run it once with a HASHJOIN
+// node and once with a NESTLOOP node that has the same predicate, and check
+// both against the pairs of IDs that a brute-force join gives us.
+//
+#define HJ_TVE(table, idx, name, type, size) \
+    "{\"TYPE\":\"VALUE_TUPLE\",\"VALUE_TYPE\":\"" type "\",\"VALUE_SIZE\":" #size "," \
+    "\"COLUMN_IDX\":" #idx ",\"TABLE_NAME\":\"" table "\",\"COLUMN_NAME\":\"" name "\"}"
+#define HJ_AND(left, right) \
+    "{\"TYPE\":\"CONJUNCTION_AND\",\"VALUE_TYPE\":\"BIGINT\",\"VALUE_SIZE\":8,\"LEFT\":" left ",\"RIGHT\":" right "}"
+
+#define HJ_OUTER_COLUMNS \
+    BATCH_COLUMN(21, "ID", "INTEGER", 4) "," \
+    BATCH_COLUMN(22, "K1", "INTEGER", 4) "," \
+    BATCH_COLUMN(23, "K2", "BIGINT", 8) "," \
+    BATCH_COLUMN(24, "R", "INTEGER", 4)
+#define HJ_INNER_COLUMNS \
+    BATCH_COLUMN(25, "ID", "INTEGER", 4) "," \
+    BATCH_COLUMN(26, "K1", "BIGINT", 8) "," \
+    BATCH_COLUMN(27, "K2", "BIGINT", 8) "," \
+    BATCH_COLUMN(28, "R", "INTEGER", 4)
+
+// HJ_OUTER.K1 = HJ_INNER.K1 (INTEGER = BIGINT)
+#define HJ_K1 BATCH_COMPARE("COMPARE_EQUAL", \
+    HJ_TVE("HJ_OUTER", 1, "K1", "INTEGER", 4), HJ_TVE("HJ_INNER", 1, "K1", "BIGINT", 8))
+// HJ_INNER.K2 = HJ_OUTER.K2 (BIGINT = BIGINT, with the inner table on the left)
+#define HJ_K2 BATCH_COMPARE("COMPARE_EQUAL", \
+    HJ_TVE("HJ_INNER", 2, "K2", "BIGINT", 8), HJ_TVE("HJ_OUTER", 2, "K2", "BIGINT", 8))
+// HJ_OUTER.R < HJ_INNER.R
+#define HJ_R BATCH_COMPARE("COMPARE_LESSTHAN", \
+    HJ_TVE("HJ_OUTER", 3, "R", "INTEGER", 4), HJ_TVE("HJ_INNER", 3, "R", "INTEGER", 4))
+
+#define HJ_PLAN(type, predicate) "{\"PLAN_NODES\":[" \
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":1,\"INLINE_NODES\":[],\"PARENT_IDS\":[3],\"CHILDREN_IDS\":[]," \
+    "\"OUTPUT_COLUMNS\":[" HJ_OUTER_COLUMNS "],\"TARGET_TABLE_NAME\":\"HJ_OUTER\"}," \
+    "{\"PLAN_NODE_TYPE\":\"SEQSCAN\",\"ID\":2,\"INLINE_NODES\":[],\"PARENT_IDS\":[3],\"CHILDREN_IDS\":[]," \
+    "\"OUTPUT_COLUMNS\":[" HJ_INNER_COLUMNS "],\"TARGET_TABLE_NAME\":\"HJ_INNER\"}," \
+    "{\"PLAN_NODE_TYPE\":\"" type "\",\"ID\":3,\"INLINE_NODES\":[],\"PARENT_IDS\":[],\"CHILDREN_IDS\":[1,2]," \
+    "\"OUTPUT_COLUMNS\":[" HJ_OUTER_COLUMNS "," HJ_INNER_COLUMNS "]," \
+    "\"JOIN_TYPE\":\"INNER\",\"PREDICATE\":" predicate "}]," \
+    "\"EXECUTE_LIST\":[1,2,3],\"PARAMETERS\":[]}"
+
+#define HJ_PLANS(predicate) { \
+    HJ_PLAN("HASHJOIN", predicate), \
+    HJ_PLAN("NESTLOOP", predicate) }
+
+const char *HJ_KEY1[] = HJ_PLANS(HJ_K1);
+const char *HJ_KEY2[] = HJ_PLANS(HJ_K2);
+const char *HJ_KEYS[] = HJ_PLANS(HJ_AND(HJ_K1, HJ_K2));
+const char *HJ_RESIDUAL[] = HJ_PLANS(HJ_AND(HJ_K1, HJ_R));
+
+#define HJ_NULL INT64_MIN
+#define HJ_CHECK_K1 0x1
+#define HJ_CHECK_K2 0x2
+#define HJ_CHECK_R  0x4
+
+class HashJoinExecutionTest : public BatchExecutionTest {
+protected:
+    struct JoinRow {
+        int32_t id;
+        int64_t k1; // HJ_NULL for NULL
+        int64_t k2; // HJ_NULL for NULL
+        int32_t r;
+    };
+    typedef std::vector<std::pair<int32_t, int32_t> > JoinIds;
+
+    std::vector<JoinRow> outer_rows;
+    std::vector<JoinRow> inner_rows;
+
+    void addRow(std::vector<JoinRow> &rows, int64_t k1, int64_t k2, int32_t r) {
+        JoinRow row = { (int32_t)rows.size(), k1, k2, r };
+        rows.push_back(row);
+    }
+
+    NValue keyValue(ValueType type, int64_t value) {
+        if (value == HJ_NULL) return NValue::getNullValue(type);
+        if (type == VALUE_TYPE_INTEGER) return ValueFactory::getIntegerValue((int32_t)value);
+        return ValueFactory::getBigIntValue(value);
+    }
+
+    void loadRows(const char *name, const std::vector<JoinRow> &rows) {
+        voltdb::Table *join_table = engine->getTable(name);
+        ASSERT_TRUE(join_table != NULL);
+        voltdb::TableTuple &tuple = join_table->tempTuple();
+        for (int ii = 0; ii < (int)rows.size(); ii++) {
+            tuple.setNValue(0, ValueFactory::getIntegerValue(rows[ii].id));
+            tuple.setNValue(1, keyValue(join_table->schema()->columnType(1), rows[ii].k1));
+            tuple.setNValue(2, keyValue(join_table->schema()->columnType(2), rows[ii].k2));
+            tuple.setNValue(3, ValueFactory::getIntegerValue(rows[ii].r));
+            EXPECT_TRUE(join_table->insertTuple(tuple));
+        }
+    }
+
+    //
+    // A key never matches anything if it is NULL on either side
+    //
+    bool keyMatch(int64_t outer, int64_t inner) {
+        return (outer != HJ_NULL && inner != HJ_NULL && outer == inner);
+    }
+
+    JoinIds expectedIds(int checks) {
+        JoinIds ids;
+        for (int ii = 0; ii < (int)outer_rows.size(); ii++) {
+            for (int jj = 0; jj < (int)inner_rows.size(); jj++) {
+                const JoinRow &outer = outer_rows[ii];
+                const JoinRow &inner = inner_rows[jj];
+                if ((checks & HJ_CHECK_K1) && !keyMatch(outer.k1, inner.k1)) continue;
+                if ((checks & HJ_CHECK_K2) && !keyMatch(outer.k2, inner.k2)) continue;
+                if ((checks & HJ_CHECK_R) && !(outer.r < inner.r)) continue;
+                ids.push_back(std::make_pair(outer.id, inner.id));
+            }
+        }
+        std::sort(ids.begin(), ids.end());
+        return ids;
+    }
+
+    //
+    // The outer and inner IDs of every joined tuple. The hash join does not
+    // return the matches for an outer tuple in the same order as the
+    // nested loop join, so we sort them
+    //
+    JoinIds outputIds(voltdb::Table *output) {
+        JoinIds ids;
+        voltdb::TableIterator iter = output->tableIterator();
+        voltdb::TableTuple tuple(output->schema());
+        while (iter.next(tuple)) {
+            ids.push_back(std::make_pair(ValuePeeker::peekAsInteger(tuple.getNValue(0)),
+                                         ValuePeeker::peekAsInteger(tuple.getNValue(4))));
+        }
+        std::sort(ids.begin(), ids.end());
+        return ids;
+    }
+
+    //
+    // Load the rows and run the HASHJOIN plan and, if nested_loop is true, the
+    // NESTLOOP plan too. Returns the number of joined tuples
+    //
+    int checkJoin(const char *plans[], int checks, bool nested_loop) {
+        JoinIds expected = expectedIds(checks);
+        voltdb::NValueArray params(0);
+        for (int ii = 0; ii < (nested_loop ? 2 : 1); ii++) {
+            voltdb::Table *output = execute(plans[ii], params);
+            EXPECT_TRUE(output != NULL);
+            if (output == NULL) continue;
+            EXPECT_EQ(8, output->columnCount());
+            EXPECT_TRUE(expected == outputIds(output));
+        }
+        return (int)expected.size();
+    }
+};
+
+// ------------------------------------------------------------------
+// HashJoinMultiColumnKey
+// ------------------------------------------------------------------
+TEST_F(HashJoinExecutionTest, HashJoinMultiColumnKey) {
+    //
+    // Lots of duplicate keys on both sides, so every outer tuple matches
+    // several inner tuples with one key column but fewer with both
+    //
+    for (int ii = 0; ii < 300; ii++) {
+        addRow(outer_rows, ii % 10, ii % 7, ii % 13);
+    }
+    for (int ii = 0; ii < 200; ii++) {
+        addRow(inner_rows, ii % 10, ii % 5, ii % 11);
+    }
+    loadRows("HJ_OUTER", outer_rows);
+    loadRows("HJ_INNER", inner_rows);
+
+    int both = checkJoin(HJ_KEYS, HJ_CHECK_K1 | HJ_CHECK_K2, true);
+    int k1 = checkJoin(HJ_KEY1, HJ_CHECK_K1, true);
+    int k2 = checkJoin(HJ_KEY2, HJ_CHECK_K2, true);
+    EXPECT_TRUE(both > 0);
+    EXPECT_TRUE(both < k1);
+    EXPECT_TRUE(both < k2);
+}
+
+// ------------------------------------------------------------------
+// HashJoinKeyWidth
+// ------------------------------------------------------------------
+TEST_F(HashJoinExecutionTest, HashJoinKeyWidth) {
+    //
+    // The INTEGER keys are promoted to BIGINTs, so they have to match the
+    // same value on the other side and not anything that has the same
+    // lower 32 bits
+    //
+    const int64_t high = 1LL << 32;
+    int64_t outer_keys[] = { 0, 5, -5, INT32_MAX, INT32_MIN + 1 };
+    int64_t inner_keys[] = { 0, high, 5, 5 + high, -5, -5 - high,
+                             INT32_MAX, (int64_t)INT32_MAX + 1,
+                             INT32_MIN + 1, (int64_t)INT32_MIN + 1 - high };
+    for (int ii = 0; ii < sizeof(outer_keys) / sizeof(int64_t); ii++) {
+        addRow(outer_rows, outer_keys[ii], 0, 0);
+    }
+    for (int ii = 0; ii < sizeof(inner_keys) / sizeof(int64_t); ii++) {
+        addRow(inner_rows, inner_keys[ii], 0, 0);
+    }
+    loadRows("HJ_OUTER", outer_rows);
+    loadRows("HJ_INNER", inner_rows);
+
+    EXPECT_EQ((int)(sizeof(outer_keys) / sizeof(int64_t)), checkJoin(HJ_KEY1, HJ_CHECK_K1, true));
+}
+
+// ------------------------------------------------------------------
+// HashJoinNullKeys
+// ------------------------------------------------------------------
+TEST_F(HashJoinExecutionTest, HashJoinNullKeys) {
+    //
+    // The nested loop join compares a NULL as its sentinel value, so it
+    // would match NULLs of the same type. We only check the hash join here
+    //
+    int64_t outer_keys[][2] = { { 1, 1 }, { 2, HJ_NULL }, { HJ_NULL, 1 },
+                                { HJ_NULL, HJ_NULL }, { 3, 3 } };
+    int64_t inner_keys[][2] = { { 1, 1 }, { 2, HJ_NULL }, { HJ_NULL, 1 },
+                                { HJ_NULL, HJ_NULL }, { 1, HJ_NULL }, { 3, 3 } };
+    for (int ii = 0; ii < sizeof(outer_keys) / sizeof(outer_keys[0]); ii++) {
+        addRow(outer_rows, outer_keys[ii][0], outer_keys[ii][1], 0);
+    }
+    for (int ii = 0; ii < sizeof(inner_keys) / sizeof(inner_keys[0]); ii++) {
+        addRow(inner_rows, inner_keys[ii][0], inner_keys[ii][1], 0);
+    }
+    loadRows("HJ_OUTER", outer_rows);
+    loadRows("HJ_INNER", inner_rows);
+
+    EXPECT_EQ(2, checkJoin(HJ_KEYS, HJ_CHECK_K1 | HJ_CHECK_K2, false));
+    EXPECT_EQ(4, checkJoin(HJ_KEY1, HJ_CHECK_K1, false));
+    EXPECT_EQ(5, checkJoin(HJ_KEY2, HJ_CHECK_K2, false));
+}
+
+// ------------------------------------------------------------------
+// HashJoinResidualPredicate
+// ------------------------------------------------------------------
+TEST_F(HashJoinExecutionTest, HashJoinResidualPredicate) {
+    //
+    // Only K1 is a hash key. The R comparison has to be checked
+    // for every inner tuple with a matching key
+    //
+    for (int ii = 0; ii < 300; ii++) {
+        addRow(outer_rows, ii % 10, 0, ii % 13);
+    }
+    for (int ii = 0; ii < 200; ii++) {
+        addRow(inner_rows, ii % 10, 0, ii % 11);
+    }
+    loadRows("HJ_OUTER", outer_rows);
+    loadRows("HJ_INNER", inner_rows);
+
+    int residual = checkJoin(HJ_RESIDUAL, HJ_CHECK_K1 | HJ_CHECK_R, true);
+    EXPECT_TRUE(residual > 0);
+    EXPECT_TRUE(residual < checkJoin(HJ_KEY1, HJ_CHECK_K1, true));
+}
+
+// ------------------------------------------------------------------
+// HashJoinEmpty
+// ------------------------------------------------------------------
+TEST_F(HashJoinExecutionTest, HashJoinEmpty) {
+    // Nothing to build the hash table from
+    for (int ii = 0; ii < 100; ii++) {
+        addRow(outer_rows, ii % 10, ii % 7, ii % 13);
+    }
+    loadRows("HJ_OUTER", outer_rows);
+    EXPECT_EQ(0, checkJoin(HJ_KEYS, HJ_CHECK_K1 | HJ_CHECK_K2, true));
+    EXPECT_EQ(0, checkJoin(HJ_RESIDUAL, HJ_CHECK_K1 | HJ_CHECK_R, true));
+
+    // Nothing to probe it with
+    voltdb::Table *outer_table = engine->getTable("HJ_OUTER");
+    outer_table->deleteAllTuples(true);
+    outer_rows.clear();
+    for (int ii = 0; ii < 100; ii++) {
+        addRow(inner_rows, ii % 10, ii % 5, ii % 11);
+    }
+    loadRows("HJ_INNER", inner_rows);
+    EXPECT_EQ(0, checkJoin(HJ_KEYS, HJ_CHECK_K1 | HJ_CHECK_K2, true));
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -58,8 +58,13 @@
 
 #include "expressions/abstractexpression.h"
 #include "expressions/expressions.h"
+#include "expressions/expressionutil.h"
+#include "expressions/compiledpredicateexpression.h"
 #include "common/types.h"
 #include "common/ValuePeeker.hpp"
+#include "common/ValueFactory.hpp"
+#include "common/TupleSchema.h"
+#include "common/tabletuple.h"
 
 using namespace std;
 using namespace voltdb;
@@ -315,6 +320,85 @@ TEST_F(ExpressionTest, SimpleMultiplication) {
     ASSERT_EQ(ValuePeeker::peekAsBigInt(r2), 13LL);
 }
 
+/*
+ * Show that a compiled predicate gives the same answers as the
+ * expression tree that it was compiled from
+ */
+TEST_F(ExpressionTest, CompiledPredicate) {
+    vector<ValueType> types;
+    types.push_back(VALUE_TYPE_INTEGER);
+    types.push_back(VALUE_TYPE_DOUBLE);
+    types.push_back(VALUE_TYPE_BIGINT);
+    vector<int32_t> sizes;
+    for (int i = 0; i < types.size(); i++) {
+        sizes.push_back(NValue::getTupleStorageSize(types[i]));
+    }
+    vector<bool> allowNull(types.size(), true);
+    TupleSchema *schema = TupleSchema::createTupleSchema(types, sizes, allowNull, true);
+    char *data = new char[schema->tupleLength() + TUPLE_HEADER_SIZE];
+    ::memset(data, 0, schema->tupleLength() + TUPLE_HEADER_SIZE);
+    TableTuple tuple(data, schema);
+
+    // ((col0 > ?0) AND (2.5 >= col1)) AND ((col2 + 1) <> 10)
+    AbstractExpression *predicate =
+        conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND,
+            conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND,
+                comparisonFactory(EXPRESSION_TYPE_COMPARE_GREATERTHAN,
+                                  tupleValueFactory(0), parameterValueFactory(0)),
+                comparisonFactory(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                                  constantValueFactory(ValueFactory::getDoubleValue(2.5)),
+                                  tupleValueFactory(1))),
+            comparisonFactory(EXPRESSION_TYPE_COMPARE_NOTEQUAL,
+                operatorFactory(EXPRESSION_TYPE_OPERATOR_PLUS,
+                                tupleValueFactory(2),
+                                constantValueFactory(ValueFactory::getBigIntValue(1))),
+                constantValueFactory(ValueFactory::getBigIntValue(10))));
+
+    auto_ptr<AbstractExpression> compiled(compilePredicate(predicate, schema));
+    ASSERT_TRUE(compiled.get() != NULL);
+    CompiledPredicateExpression *casted = dynamic_cast<CompiledPredicateExpression*>(compiled.get());
+    ASSERT_TRUE(casted != NULL);
+    ASSERT_EQ(2, casted->getClauseCount());
+
+    NValueArray params(1);
+    params[0] = ValueFactory::getIntegerValue(5);
+    compiled->substitute(params);
+    ASSERT_FALSE(casted->isFallback());
+
+    const double doubles[] = { 0.0, 2.5, 3.0 };
+    for (int32_t i = 0; i < 10; i++) {
+        for (int j = 0; j < 3; j++) {
+            for (int64_t k = 8; k < 11; k++) {
+                tuple.setNValue(0, ValueFactory::getIntegerValue(i));
+                tuple.setNValue(1, ValueFactory::getDoubleValue(doubles[j]));
+                tuple.setNValue(2, ValueFactory::getBigIntValue(k));
+                ASSERT_EQ(predicate->eval(&tuple, NULL).isTrue(),
+                          compiled->eval(&tuple, NULL).isTrue());
+            }
+        }
+    }
+
+    // NULLs are compared the same way too
+    tuple.setNValue(0, NValue::getNullValue(VALUE_TYPE_INTEGER));
+    tuple.setNValue(1, NValue::getNullValue(VALUE_TYPE_DOUBLE));
+    ASSERT_EQ(predicate->eval(&tuple, NULL).isTrue(),
+              compiled->eval(&tuple, NULL).isTrue());
+
+    // A parameter that does not match the column's type means that
+    // we have to use the original expression
+    params[0] = ValueFactory::getDoubleValue(4.5);
+    compiled->substitute(params);
+    ASSERT_TRUE(casted->isFallback());
+    tuple.setNValue(0, ValueFactory::getIntegerValue(5));
+    tuple.setNValue(1, ValueFactory::getDoubleValue(1.0));
+    ASSERT_TRUE(compiled->eval(&tuple, NULL).isTrue());
+
+    compiled.reset();
+    delete predicate;
+    TupleSchema::freeTupleSchema(schema);
+    delete [] data;
+}
+
 int main() {
      return TestSuite::globalInstance()->runAll();
 }
@@ -618,6 +618,317 @@ TEST_F(IndexTest, IntsMulti) {
     delete[] searchkey.address();
 }
 
+TEST_F(IndexTest, BTreeIntsUnique) {
+    vector<int> btu_column_indices;
+    vector<ValueType> btu_column_types;
+    btu_column_indices.push_back(3);
+    btu_column_types.push_back(VALUE_TYPE_BIGINT);
+    init(TableIndexScheme("btu",
+                          BTREE_INDEX,
+                          btu_column_indices,
+                          btu_column_types,
+                          true, true, NULL));
+
+    TableIndex* index = table->index("btu");
+    EXPECT_EQ(true, index != NULL);
+    EXPECT_EQ("BPlusTreeUniqueIndex", index->getTypeName());
+    EXPECT_EQ(NUM_OF_TUPLES, (int)index->getSize());
+
+    TableTuple tuple(table->schema());
+    vector<ValueType> keyColumnTypes(1, VALUE_TYPE_BIGINT);
+    vector<int32_t>
+        keyColumnLengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    vector<bool> keyColumnAllowNull(1, true);
+    TupleSchema* keySchema =
+        TupleSchema::createTupleSchema(keyColumnTypes,
+                                       keyColumnLengths,
+                                       keyColumnAllowNull,
+                                       true);
+    TableTuple searchkey(keySchema);
+    searchkey.move(new char[searchkey.tupleLength()]);
+
+    // Point lookups
+    for (int64_t i = 1; i <= NUM_OF_TUPLES; ++i)
+    {
+        searchkey.setNValue(0, ValueFactory::getBigIntValue(i + 20));
+        EXPECT_TRUE(index->moveToKey(&searchkey));
+        tuple = index->nextValueAtKey();
+        EXPECT_TRUE(ValueFactory::getBigIntValue(i).
+                    op_equals(tuple.getNValue(0)).isTrue());
+        EXPECT_TRUE(index->nextValueAtKey().isNullTuple());
+    }
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(5)));
+    EXPECT_FALSE(index->moveToKey(&searchkey));
+
+    // Forward and reverse scans across all of the leaves
+    int count = 0;
+    index->moveToEnd(true);
+    while (!(tuple = index->nextValue()).isNullTuple())
+    {
+        ++count;
+        EXPECT_TRUE(ValueFactory::getBigIntValue(count).
+                    op_equals(tuple.getNValue(0)).isTrue());
+    }
+    EXPECT_EQ(NUM_OF_TUPLES, count);
+    index->moveToEnd(false);
+    while (!(tuple = index->nextValue()).isNullTuple())
+    {
+        EXPECT_TRUE(ValueFactory::getBigIntValue(count).
+                    op_equals(tuple.getNValue(0)).isTrue());
+        --count;
+    }
+    EXPECT_EQ(0, count);
+
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(520)));
+    index->moveToGreaterThanKey(&searchkey);
+    tuple = index->nextValue();
+    EXPECT_TRUE(ValueFactory::getBigIntValue(501).
+                op_equals(tuple.getNValue(0)).isTrue());
+
+    // Delete every other tuple so that the leaves have to be merged
+    vector<TableTuple> deleted;
+    index->moveToEnd(true);
+    while (!(tuple = index->nextValue()).isNullTuple())
+    {
+        if (ValueFactory::getBigIntValue(0).
+            op_equals(tuple.getNValue(1)).isTrue())
+            deleted.push_back(tuple);
+    }
+    for (int i = 0; i < (int)deleted.size(); ++i)
+    {
+        EXPECT_TRUE(table->deleteTuple(deleted[i], true));
+    }
+    EXPECT_EQ(NUM_OF_TUPLES / 2, (int)index->getSize());
+    count = 0;
+    index->moveToEnd(true);
+    while (!(tuple = index->nextValue()).isNullTuple())
+    {
+        EXPECT_TRUE(ValueFactory::getBigIntValue(count * 2 + 1).
+                    op_equals(tuple.getNValue(0)).isTrue());
+        ++count;
+    }
+    EXPECT_EQ(NUM_OF_TUPLES / 2, count);
+
+    TupleSchema::freeTupleSchema(keySchema);
+    delete[] searchkey.address();
+}
+
+TEST_F(IndexTest, BTreeIntsMulti) {
+    vector<int> btm_column_indices;
+    vector<ValueType> btm_column_types;
+    btm_column_indices.push_back(2);
+    btm_column_types.push_back(VALUE_TYPE_BIGINT);
+    init(TableIndexScheme("btm",
+                          BTREE_INDEX,
+                          btm_column_indices,
+                          btm_column_types,
+                          false, true, NULL));
+
+    TableIndex* index = table->index("btm");
+    EXPECT_EQ(true, index != NULL);
+    EXPECT_EQ("BPlusTreeMultiMapIndex", index->getTypeName());
+
+    TableTuple tuple(table->schema());
+    vector<ValueType> keyColumnTypes(1, VALUE_TYPE_BIGINT);
+    vector<int32_t>
+        keyColumnLengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    vector<bool> keyColumnAllowNull(1, true);
+    TupleSchema* keySchema =
+        TupleSchema::createTupleSchema(keyColumnTypes,
+                                       keyColumnLengths,
+                                       keyColumnAllowNull,
+                                       true);
+    TableTuple searchkey(keySchema);
+    searchkey.move(new char[searchkey.tupleLength()]);
+
+    // Each key has a third of the tuples, so they span multiple leaves
+    int expected[3] = { NUM_OF_TUPLES / 3, NUM_OF_TUPLES / 3 + 1, NUM_OF_TUPLES / 3 };
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(0)));
+    EXPECT_TRUE(index->moveToKey(&searchkey));
+    for (int64_t key = 0; key < 3; ++key)
+    {
+        int count = 0;
+        while (!(tuple = index->nextValueAtKey()).isNullTuple())
+        {
+            ++count;
+            EXPECT_TRUE(ValueFactory::getBigIntValue(key).
+                        op_equals(tuple.getNValue(2)).isTrue());
+        }
+        EXPECT_EQ(expected[key], count);
+        EXPECT_EQ(key < 2, index->advanceToNextKey());
+    }
+
+    // Remove all of the tuples for the middle key
+    vector<TableTuple> deleted;
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(1)));
+    index->moveToKey(&searchkey);
+    while (!(tuple = index->nextValueAtKey()).isNullTuple())
+    {
+        deleted.push_back(tuple);
+    }
+    for (int i = 0; i < (int)deleted.size(); ++i)
+    {
+        EXPECT_TRUE(table->deleteTuple(deleted[i], true));
+    }
+    EXPECT_FALSE(index->moveToKey(&searchkey));
+    EXPECT_EQ(NUM_OF_TUPLES - expected[1], (int)index->getSize());
+
+    index->moveToGreaterThanKey(&searchkey);
+    tuple = index->nextValue();
+    EXPECT_TRUE(ValueFactory::getBigIntValue(2).
+                op_equals(tuple.getNValue(2)).isTrue());
+
+    TupleSchema::freeTupleSchema(keySchema);
+    delete[] searchkey.address();
+}
+
+TEST_F(IndexTest, OpenHashIntsUnique) {
+    vector<int> ohu_column_indices;
+    vector<ValueType> ohu_column_types;
+    ohu_column_indices.push_back(4);
+    ohu_column_indices.push_back(2);
+    ohu_column_types.push_back(VALUE_TYPE_BIGINT);
+    ohu_column_types.push_back(VALUE_TYPE_BIGINT);
+    init(TableIndexScheme("ohu",
+                          OPEN_HASH_INDEX,
+                          ohu_column_indices,
+                          ohu_column_types,
+                          true, true, NULL));
+
+    TableIndex* index = table->index("ohu");
+    EXPECT_EQ(true, index != NULL);
+    EXPECT_EQ("OpenHashUniqueIndex", index->getTypeName());
+    EXPECT_EQ(NUM_OF_TUPLES, (int)index->getSize());
+
+    TableTuple tuple(table->schema());
+    vector<ValueType> keyColumnTypes(2, VALUE_TYPE_BIGINT);
+    vector<int32_t>
+        keyColumnLengths(2, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    vector<bool> keyColumnAllowNull(2, true);
+    TupleSchema* keySchema =
+        TupleSchema::createTupleSchema(keyColumnTypes,
+                                       keyColumnLengths,
+                                       keyColumnAllowNull,
+                                       true);
+    TableTuple searchkey(keySchema);
+    searchkey.move(new char[searchkey.tupleLength()]);
+
+    // The table has been resized several times by now, so every
+    // tuple should still be found wherever it ended up
+    for (int64_t i = 1; i <= NUM_OF_TUPLES; ++i)
+    {
+        searchkey.setNValue(0, ValueFactory::getBigIntValue(i * 11));
+        searchkey.setNValue(1, ValueFactory::getBigIntValue(i % 3));
+        EXPECT_TRUE(index->moveToKey(&searchkey));
+        tuple = index->nextValueAtKey();
+        EXPECT_TRUE(ValueFactory::getBigIntValue(i).
+                    op_equals(tuple.getNValue(0)).isTrue());
+        EXPECT_TRUE(index->nextValueAtKey().isNullTuple());
+    }
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(550)));
+    searchkey.setNValue(1, ValueFactory::getBigIntValue(static_cast<int64_t>(1)));
+    EXPECT_FALSE(index->moveToKey(&searchkey));
+
+    // Delete half of the tuples and make sure that the rest are still there
+    for (int64_t i = 2; i <= NUM_OF_TUPLES; i += 2)
+    {
+        searchkey.setNValue(0, ValueFactory::getBigIntValue(i * 11));
+        searchkey.setNValue(1, ValueFactory::getBigIntValue(i % 3));
+        EXPECT_TRUE(index->moveToKey(&searchkey));
+        tuple = index->nextValueAtKey();
+        EXPECT_TRUE(table->deleteTuple(tuple, true));
+    }
+    EXPECT_EQ(NUM_OF_TUPLES / 2, (int)index->getSize());
+    for (int64_t i = 1; i <= NUM_OF_TUPLES; ++i)
+    {
+        searchkey.setNValue(0, ValueFactory::getBigIntValue(i * 11));
+        searchkey.setNValue(1, ValueFactory::getBigIntValue(i % 3));
+        EXPECT_EQ(i % 2 == 1, index->moveToKey(&searchkey));
+    }
+
+    // Duplicate keys must be rejected
+    TableTuple &tmptuple = table->tempTuple();
+    tmptuple.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(1234)));
+    tmptuple.setNValue(1, ValueFactory::getBigIntValue(static_cast<int64_t>(0)));
+    tmptuple.setNValue(2, ValueFactory::getBigIntValue(static_cast<int64_t>(1)));
+    tmptuple.setNValue(3, ValueFactory::getBigIntValue(static_cast<int64_t>(-200)));
+    tmptuple.setNValue(4, ValueFactory::getBigIntValue(static_cast<int64_t>(11)));
+    TupleSchema::freeTupleSchema(keySchema);
+    delete[] searchkey.address();
+    bool exceptionThrown = false;
+    try
+    {
+        EXPECT_EQ(false, table->insertTuple(tmptuple));
+    }
+    catch (SerializableEEException &e)
+    {
+        exceptionThrown = true;
+    }
+    EXPECT_TRUE(exceptionThrown);
+}
+
+TEST_F(IndexTest, OpenHashIntsMulti) {
+    vector<int> ohm_column_indices;
+    vector<ValueType> ohm_column_types;
+    ohm_column_indices.push_back(2);
+    ohm_column_types.push_back(VALUE_TYPE_BIGINT);
+    init(TableIndexScheme("ohm",
+                          OPEN_HASH_INDEX,
+                          ohm_column_indices,
+                          ohm_column_types,
+                          false, true, NULL));
+
+    TableIndex* index = table->index("ohm");
+    EXPECT_EQ(true, index != NULL);
+    EXPECT_EQ("OpenHashMultiMapIndex", index->getTypeName());
+
+    TableTuple tuple(table->schema());
+    vector<ValueType> keyColumnTypes(1, VALUE_TYPE_BIGINT);
+    vector<int32_t>
+        keyColumnLengths(1, NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+    vector<bool> keyColumnAllowNull(1, true);
+    TupleSchema* keySchema =
+        TupleSchema::createTupleSchema(keyColumnTypes,
+                                       keyColumnLengths,
+                                       keyColumnAllowNull,
+                                       true);
+    TableTuple searchkey(keySchema);
+    searchkey.move(new char[searchkey.tupleLength()]);
+
+    int expected[3] = { NUM_OF_TUPLES / 3, NUM_OF_TUPLES / 3 + 1, NUM_OF_TUPLES / 3 };
+    for (int64_t key = 0; key < 3; ++key)
+    {
+        searchkey.setNValue(0, ValueFactory::getBigIntValue(key));
+        EXPECT_TRUE(index->moveToKey(&searchkey));
+        int count = 0;
+        while (!(tuple = index->nextValueAtKey()).isNullTuple())
+        {
+            ++count;
+            EXPECT_TRUE(ValueFactory::getBigIntValue(key).
+                        op_equals(tuple.getNValue(2)).isTrue());
+        }
+        EXPECT_EQ(expected[key], count);
+    }
+
+    // Remove all of the tuples for one of the keys
+    vector<TableTuple> deleted;
+    searchkey.setNValue(0, ValueFactory::getBigIntValue(static_cast<int64_t>(1)));
+    index->moveToKey(&searchkey);
+    while (!(tuple = index->nextValueAtKey()).isNullTuple())
+    {
+        deleted.push_back(tuple);
+    }
+    for (int i = 0; i < (int)deleted.size(); ++i)
+    {
+        EXPECT_TRUE(table->deleteTuple(deleted[i], true));
+    }
+    EXPECT_FALSE(index->moveToKey(&searchkey));
+    EXPECT_EQ(NUM_OF_TUPLES - expected[1], (int)index->getSize());
+
+    TupleSchema::freeTupleSchema(keySchema);
+    delete[] searchkey.address();
+}
+
 int main()
 {
     return TestSuite::globalInstance()->runAll();
@@ -51,6 +51,7 @@
 
 #include <cstdlib>
 #include <ctime>
+#include <algorithm>
 #include "harness.h"
 #include "common/common.h"
 #include "common/NValue.hpp"
@@ -266,6 +267,51 @@ TEST_F(TableTest, TupleDelete) {
     }
 }
 */
+TEST_F(TableTest, TempTableRetainedBlocks) {
+    //
+    // By default a TempTable only keeps its first block after it is cleared
+    //
+    voltdb::TempTable* table = dynamic_cast<voltdb::TempTable*>(this->temp_table);
+    ASSERT_TRUE(table != NULL);
+    size_t blocks = table->getAllocatedBlockCount();
+    ASSERT_TRUE(blocks > 1);
+    table->deleteAllTuples(true);
+    EXPECT_EQ(1, table->getAllocatedBlockCount());
+
+    //
+    // Refill it and ask it to hold on to its blocks this time
+    //
+    assert(tableutil::addRandomTuples(table, NUM_OF_TUPLES));
+    EXPECT_EQ(blocks, table->getAllocatedBlockCount());
+    table->setRetainedBlockCount(TEMP_TABLE_MAX_RETAINED_BLOCKS * 2);
+    EXPECT_EQ(TEMP_TABLE_MAX_RETAINED_BLOCKS, table->getRetainedBlockCount());
+    table->deleteAllTuples(true);
+    EXPECT_EQ(0, table->activeTupleCount());
+    EXPECT_EQ(std::min(blocks, (size_t)TEMP_TABLE_MAX_RETAINED_BLOCKS), table->getAllocatedBlockCount());
+
+    //
+    // Filling it back up should reuse the blocks that we kept
+    //
+    assert(tableutil::addRandomTuples(table, NUM_OF_TUPLES));
+    EXPECT_EQ(blocks, table->getAllocatedBlockCount());
+    EXPECT_EQ(NUM_OF_TUPLES, table->activeTupleCount());
+
+    //
+    // Dropping the retained count on an empty table releases the blocks
+    //
+    table->deleteAllTuples(true);
+    table->setRetainedBlockCount(1);
+    EXPECT_EQ(1, table->getAllocatedBlockCount());
+
+    //
+    // The memory that it reports is the number of blocks that it holds times the block size
+    //
+    int64_t blockMemory = table->getAllocatedBlockMemory();
+    EXPECT_TRUE(blockMemory > 0);
+    assert(tableutil::addRandomTuples(table, NUM_OF_TUPLES));
+    EXPECT_EQ(blockMemory * static_cast<int64_t>(blocks), table->getAllocatedBlockMemory());
+}
+
 /*TEST_F(TableTest, TupleInsertXact) {
     this->init(true);
     //
@@ -8,6 +8,8 @@ import com.google.protobuf.RpcController;
 import edu.brown.hstore.Hstoreservice.HStoreService;
 import edu.brown.hstore.Hstoreservice.InitializeRequest;
 import edu.brown.hstore.Hstoreservice.InitializeResponse;
+import edu.brown.hstore.Hstoreservice.RecoveryStatusRequest;
+import edu.brown.hstore.Hstoreservice.RecoveryStatusResponse;
 import edu.brown.hstore.Hstoreservice.SendDataRequest;
 import edu.brown.hstore.Hstoreservice.SendDataResponse;
 import edu.brown.hstore.Hstoreservice.ShutdownRequest;
@@ -155,6 +157,16 @@ public class MockHStoreCoordinator extends HStoreCoordinator {
             // TODO Auto-generated method stub
             
         }
+        
+        @Override
+        public void recoveryStatus(RpcController controller, RecoveryStatusRequest request, RpcCallback<RecoveryStatusResponse> done) {
+            LOG.info("Incoming " + request.getClass().getSimpleName());
+            updateRecoveryStatus(request.getStatus());
+            RecoveryStatusResponse response = RecoveryStatusResponse.newBuilder()
+                                                     .setSenderSite(hstore_site.getSiteId())
+                                                     .build();
+            done.run(response);
+        }
 
         @Override
         public void transactionMap(RpcController controller, TransactionMapRequest request, RpcCallback<TransactionMapResponse> done) {
@@ -16,6 +16,7 @@ import org.voltdb.catalog.Partition;
 import org.voltdb.catalog.Site;
 
 import edu.brown.BaseTestCase;
+import edu.brown.hstore.Hstoreservice.Status;
 import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.utils.ProjectType;
 import edu.brown.utils.ThreadUtil;
@@ -206,6 +207,19 @@ public class TestHStoreCoordinator extends BaseTestCase {
         
     }
 
+    /**
+     * testRecoveryStatus
+     */
+    @Test
+    public void testRecoveryStatus() throws Exception {
+        // The first site tells everyone else that its snapshot restore failed
+        // Make sure that all of the other sites get back that status
+        this.coordinators[0].sendRecoveryStatus(Status.ABORT_UNEXPECTED);
+        for (int i = 1; i < NUM_SITES; i++) {
+            assertEquals(Status.ABORT_UNEXPECTED, this.coordinators[i].waitForRecoveryStatus());
+        } // FOR
+    }
+
 //    /**
 //     * testSendFragmentLocal
 //     */
@@ -0,0 +1,144 @@
+package edu.brown.hstore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.voltdb.messaging.InitiateTaskMessage;
+import org.voltdb.messaging.VoltMessage;
+
+import junit.framework.TestCase;
+
+public class TestPartitionExecutorQueue extends TestCase {
+
+    private static final int NUM_PRODUCERS = 4;
+    private static final int NUM_MESSAGES = 5000;
+    private static final int CAPACITY = 64;
+
+    private PartitionExecutorQueue queue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Use a small array so that we also end up using the overflow queue
+        this.queue = new PartitionExecutorQueue(CAPACITY);
+    }
+
+    private InitiateTaskMessage makeMessage(long txnId) {
+        InitiateTaskMessage msg = new InitiateTaskMessage();
+        msg.setTxnId(txnId);
+        return (msg);
+    }
+
+    /**
+     * testMultipleProducers
+     */
+    public void testMultipleProducers() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < NUM_PRODUCERS; i++) {
+            final long base = i * NUM_MESSAGES;
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < NUM_MESSAGES; j++) {
+                        queue.offer(makeMessage(base + j));
+                    } // FOR
+                };
+            };
+            t.setDaemon(true);
+            t.start();
+            producers.add(t);
+        } // FOR
+        start.countDown();
+
+        // Every message should come out exactly once
+        Set<Long> seen = new HashSet<Long>();
+        for (int i = 0, cnt = NUM_PRODUCERS * NUM_MESSAGES; i < cnt; i++) {
+            VoltMessage msg = this.queue.take();
+            assertNotNull(msg);
+            assertTrue(seen.add(((InitiateTaskMessage)msg).getTxnId()));
+        } // FOR
+        for (Thread t : producers) {
+            t.join();
+        } // FOR
+        assertEquals(NUM_PRODUCERS * NUM_MESSAGES, seen.size());
+        assertEquals(0, this.queue.size());
+        assertNull(this.queue.poll());
+    }
+
+    /**
+     * testDrainTo
+     */
+    public void testDrainTo() throws Exception {
+        int cnt = CAPACITY * 2;
+        for (int i = 0; i < cnt; i++) {
+            this.queue.add(this.makeMessage(i));
+        } // FOR
+        assertEquals(cnt, this.queue.size());
+
+        List<VoltMessage> drained = new ArrayList<VoltMessage>();
+        assertEquals(cnt, this.queue.drainTo(drained));
+        assertEquals(cnt, drained.size());
+        assertTrue(this.queue.isEmpty());
+    }
+
+    /**
+     * testClear
+     */
+    public void testClear() throws Exception {
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            this.queue.add(this.makeMessage(i));
+        } // FOR
+        assertNotNull(this.queue.poll());
+        this.queue.clear();
+        assertEquals(0, this.queue.size());
+        assertNull(this.queue.poll());
+    }
+
+    /**
+     * testNonConsumer
+     */
+    public void testNonConsumer() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            this.queue.add(this.makeMessage(i));
+        } // FOR
+        final VoltMessage first = this.queue.peek();
+        assertNotNull(first);
+        assertTrue(this.queue.contains(first));
+
+        // Everything but the producer methods has to fail in another thread
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread t = new Thread() {
+            public void run() {
+                queue.offer(makeMessage(100));
+                try {
+                    queue.contains(first);
+                } catch (IllegalStateException ex) {
+                    errors.add(ex);
+                }
+                try {
+                    queue.peek();
+                } catch (IllegalStateException ex) {
+                    errors.add(ex);
+                }
+                try {
+                    queue.poll();
+                } catch (IllegalStateException ex) {
+                    errors.add(ex);
+                }
+            };
+        };
+        t.start();
+        t.join();
+        assertEquals(3, errors.size());
+        assertEquals(11, this.queue.size());
+        assertSame(first, this.queue.poll());
+    }
+}
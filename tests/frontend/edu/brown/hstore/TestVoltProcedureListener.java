@@ -2,6 +2,7 @@ package edu.brown.hstore;
 
 import static org.junit.Assert.assertArrayEquals;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 import java.util.Random;
@@ -57,7 +58,7 @@ public class TestVoltProcedureListener extends TestCase {
         public long getInstanceId() {
             return 0;
         }
-        public void procedureInvocation(byte[] serializedRequest, RpcCallback<byte[]> done) {
+        public void procedureInvocation(ByteBuffer serializedRequest, RpcCallback<byte[]> done) {
             StoredProcedureInvocation invocation = VoltProcedureListener.decodeRequest(serializedRequest);
             invocation.buildParameterSet();
             assertEquals(PROC_NAME, invocation.getProcName());
@@ -175,6 +176,51 @@ public class TestVoltProcedureListener extends TestCase {
         assertEquals(expected, this.handler.getParameter());
     }
 
+    /**
+     * testMultipleConnectionLoops
+     */
+    public void testMultipleConnectionLoops() throws Exception {
+        // Create a second listener that hands out its connections to multiple
+        // event loops and batches its responses 
+        final int num_loops = 3;
+        final NIOEventLoop acceptLoop = new NIOEventLoop();
+        final NIOEventLoop connectionLoops[] = new NIOEventLoop[num_loops];
+        Thread threads[] = new Thread[num_loops];
+        for (int i = 0; i < num_loops; i++) {
+            connectionLoops[i] = (i == 0 ? acceptLoop : new NIOEventLoop());
+            final NIOEventLoop loop = connectionLoops[i];
+            threads[i] = new Thread() {
+                public void run() {
+                    loop.run();
+                }
+            };
+        } // FOR
+        VoltProcedureListener multiListener = new VoltProcedureListener(0, acceptLoop, connectionLoops, this.handler, true);
+        multiListener.bind(PORT + 1);
+        for (Thread t : threads) t.start();
+        
+        try {
+            // Make more connections than we have loops so that some of them share 
+            for (int i = 0; i < num_loops * 2; i++) {
+                Client client = ClientFactory.createClient();
+                client.createConnection(null, HOST, PORT + 1, USERNAME, PASSWORD);
+                for (int j = 0; j < 5; j++) {
+                    Long expected = rand.nextLong();
+                    VoltTable[] result = client.callProcedure(PROC_NAME, expected).getResults();
+                    assertNotNull(result);
+                    assertEquals(expected, this.handler.getParameter());
+                } // FOR
+                client.close();
+            } // FOR
+        } finally {
+            for (int i = 0; i < num_loops; i++) {
+                connectionLoops[i].exitLoop();
+                threads[i].join();
+            } // FOR
+            multiListener.close();
+        }
+    }
+
     public void testBlockedWrites() {
         // Create a fake listener
         MockEventLoop mockEvent = new MockEventLoop();
@@ -0,0 +1,259 @@
+package edu.brown.hstore.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.voltdb.VoltProcedure;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.mappings.ParameterMappingsSet;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.markov.TransactionEstimator;
+import edu.brown.markov.containers.MarkovGraphContainersUtil;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.TransactionTrace;
+import edu.brown.workload.Workload;
+import edu.brown.workload.filters.BasePartitionTxnFilter;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+import edu.brown.workload.filters.ProcedureNameFilter;
+
+public class TestMarkovMaintenanceThread extends BaseTestCase {
+
+    private static final Class<? extends VoltProcedure> TARGET_PROCEDURE = neworder.class;
+    private static final int WORKLOAD_XACT_LIMIT = 100;
+    private static final int BASE_PARTITION = 1;
+    private static final int NUM_PARTITIONS = 10;
+
+    private static Workload workload;
+    private static MarkovGraphsContainer markovs;
+    private static ParameterMappingsSet correlations;
+
+    private Procedure catalog_proc;
+    private MarkovGraph markov;
+    private final List<List<MarkovVertex>> paths = new ArrayList<List<MarkovVertex>>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+
+        if (markovs == null) {
+            File file = this.getParameterMappingsFile(ProjectType.TPCC);
+            correlations = new ParameterMappingsSet();
+            correlations.load(file.getAbsolutePath(), catalog_db);
+
+            Filter filter = new ProcedureNameFilter(false)
+                    .include(TARGET_PROCEDURE.getSimpleName())
+                    .attach(new BasePartitionTxnFilter(p_estimator, BASE_PARTITION))
+                    .attach(new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+            file = this.getWorkloadFile(ProjectType.TPCC);
+            workload = new Workload(catalog);
+            workload.load(file.getAbsolutePath(), catalog_db, filter);
+            assert(workload.getTransactionCount() > 0);
+
+            markovs = MarkovGraphContainersUtil.createBasePartitionMarkovGraphsContainer(catalog_db, workload, p_estimator);
+            assertNotNull(markovs);
+        }
+        this.markov = markovs.get(BASE_PARTITION, this.catalog_proc);
+        assertNotNull(this.markov);
+
+        // Generate the paths for all of the txns in the workload using a scratch graph
+        MarkovGraph scratch = new MarkovGraph(this.catalog_proc).initialize();
+        for (TransactionTrace txn_trace : workload.getTransactions()) {
+            this.paths.add(scratch.processTransaction(txn_trace, p_estimator));
+        } // FOR
+    }
+
+    /**
+     * testCopy
+     */
+    public void testCopy() throws Exception {
+        MarkovGraph clone = this.markov.copy();
+        assertNotSame(this.markov, clone);
+        assertEquals(this.markov.getProcedure(), clone.getProcedure());
+        assertEquals(this.markov.getVertexCount(), clone.getVertexCount());
+        assertEquals(this.markov.getEdgeCount(), clone.getEdgeCount());
+        assertEquals(this.markov.getTransactionCount(), clone.getTransactionCount());
+
+        for (MarkovEdge e : this.markov.getEdges()) {
+            MarkovVertex v0 = this.markov.getSource(e);
+            MarkovVertex v1 = this.markov.getDest(e);
+            MarkovVertex clone_v0 = clone.getVertex(v0);
+            MarkovVertex clone_v1 = clone.getVertex(v1);
+            assertNotNull(v0.toString(), clone_v0);
+            assertNotNull(v1.toString(), clone_v1);
+            assertNotSame(v0, clone_v0);
+            assertEquals(v0.getTotalHits(), clone_v0.getTotalHits());
+            assertEquals(v1.getTotalHits(), clone_v1.getTotalHits());
+
+            MarkovEdge clone_e = clone.findEdge(clone_v0, clone_v1);
+            assertNotNull(clone_e);
+            assertNotSame(e, clone_e);
+            assertEquals(e.getTotalHits(), clone_e.getTotalHits());
+            assertEquals(e.getProbability(), clone_e.getProbability(), MarkovGraph.PROBABILITY_EPSILON);
+        } // FOR
+
+        // Updating the copy should not change the original
+        long orig_hits = this.markov.getStartVertex().getTotalHits();
+        clone.getStartVertex().incrementTotalHits();
+        assertEquals(orig_hits, this.markov.getStartVertex().getTotalHits());
+    }
+
+    /**
+     * testProcessPath
+     */
+    public void testProcessPath() throws Exception {
+        // Applying the paths to an empty graph should give us the same graph that
+        // we would get by processing the TransactionTraces directly
+        MarkovGraph expected = new MarkovGraph(this.catalog_proc).initialize();
+        for (TransactionTrace txn_trace : workload.getTransactions()) {
+            expected.processTransaction(txn_trace, p_estimator);
+        } // FOR
+        expected.calculateProbabilities();
+
+        MarkovGraph clone = new MarkovGraph(this.catalog_proc).initialize();
+        for (List<MarkovVertex> path : this.paths) {
+            List<MarkovVertex> mapped = clone.processPath(path);
+            assertEquals(path.size(), mapped.size());
+            for (int i = 0; i < path.size(); i++) {
+                assertTrue(clone.containsVertex(mapped.get(i)));
+                assertEquals(path.get(i).getType(), mapped.get(i).getType());
+            } // FOR
+        } // FOR
+        clone.calculateProbabilities();
+
+        assertEquals(expected.getVertexCount(), clone.getVertexCount());
+        assertEquals(expected.getEdgeCount(), clone.getEdgeCount());
+        for (MarkovEdge e : expected.getEdges()) {
+            MarkovVertex v0 = clone.getVertex(expected.getSource(e));
+            MarkovVertex v1 = clone.getVertex(expected.getDest(e));
+            assertNotNull(v0);
+            assertNotNull(v1);
+            MarkovEdge clone_e = clone.findEdge(v0, v1);
+            assertNotNull(clone_e);
+            assertEquals(e.getTotalHits(), clone_e.getTotalHits());
+            assertEquals(e.getProbability(), clone_e.getProbability(), MarkovGraph.PROBABILITY_EPSILON);
+        } // FOR
+    }
+
+    /**
+     * testSwap
+     */
+    public void testSwap() throws Exception {
+        MarkovGraph live = this.markov.copy();
+        MarkovGraphsContainer container = new MarkovGraphsContainer();
+        container.put(BASE_PARTITION, live);
+        TransactionEstimator t_estimator = new TransactionEstimator(p_estimator, correlations, container);
+
+        int threshold = this.paths.size() / 2;
+        assert(threshold > 0);
+        MarkovMaintenanceThread thread = new MarkovMaintenanceThread(null, this.paths.size(), threshold);
+        thread.register(t_estimator);
+        assertSame(thread, t_estimator.getMaintenanceThread());
+
+        for (int i = 0; i < threshold - 1; i++) {
+            assertTrue(thread.queue(live, this.paths.get(i)));
+        } // FOR
+        assertEquals(threshold - 1, thread.processQueue());
+        assertEquals(0, thread.getSwapCount());
+        assertSame(live, container.get(BASE_PARTITION, this.catalog_proc));
+
+        // The next path should cause the shadow copy to get swapped in
+        long orig_hits = live.getStartVertex().getTotalHits();
+        assertTrue(thread.queue(live, this.paths.get(threshold - 1)));
+        assertEquals(1, thread.processQueue());
+        assertEquals(1, thread.getSwapCount());
+        assertEquals(threshold, thread.getProcessedCount());
+
+        MarkovGraph next = container.get(BASE_PARTITION, this.catalog_proc);
+        assertNotSame(live, next);
+        assertEquals(orig_hits, live.getStartVertex().getTotalHits());
+        assertEquals(orig_hits + threshold, next.getStartVertex().getTotalHits());
+        assertTrue(next.isValid());
+
+        // Paths for the old graph should still go to the same shadow copy
+        for (int i = threshold; i < threshold * 2; i++) {
+            MarkovGraph target = (i % 2 == 0 ? live : next);
+            assertTrue(thread.queue(target, this.paths.get(i)));
+        } // FOR
+        assertEquals(threshold, thread.processQueue());
+        assertEquals(2, thread.getSwapCount());
+        MarkovGraph last = container.get(BASE_PARTITION, this.catalog_proc);
+        assertNotSame(next, last);
+        assertEquals(orig_hits + (threshold * 2), last.getStartVertex().getTotalHits());
+    }
+
+    /**
+     * testCopyHoldsGraphLock
+     */
+    public void testCopyHoldsGraphLock() throws Exception {
+        final MarkovGraph live = this.markov.copy();
+        MarkovGraphsContainer container = new MarkovGraphsContainer();
+        container.put(BASE_PARTITION, live);
+        TransactionEstimator t_estimator = new TransactionEstimator(p_estimator, correlations, container);
+        final MarkovMaintenanceThread thread = new MarkovMaintenanceThread(null, this.paths.size(), 1);
+        thread.register(t_estimator);
+        assertTrue(thread.queue(live, this.paths.get(0)));
+
+        // The TransactionEstimator holds the graph's lock while it adds new vertices,
+        // so the maintenance thread has to wait for it before it can make its shadow copy
+        Thread processor = new Thread() {
+            public void run() {
+                thread.processQueue();
+            }
+        };
+        MarkovVertex v = null;
+        synchronized (live) {
+            processor.start();
+            while (processor.getState() != Thread.State.BLOCKED) {
+                assertTrue(processor.isAlive());
+                Thread.yield();
+            } // WHILE
+            assertEquals(0, thread.getProcessedCount());
+
+            v = new MarkovVertex(CollectionUtil.first(this.catalog_proc.getStatements()),
+                                 MarkovVertex.Type.QUERY, 999,
+                                 Collections.singleton(BASE_PARTITION),
+                                 Collections.<Integer>emptySet());
+            live.addVertex(v);
+            live.addToEdge(live.getStartVertex(), v);
+        } // SYNCH
+        processor.join();
+        assertEquals(1, thread.getProcessedCount());
+        assertEquals(1, thread.getSwapCount());
+
+        // So the copy that got swapped in has to include the new vertex
+        MarkovGraph next = container.get(BASE_PARTITION, this.catalog_proc);
+        assertNotSame(live, next);
+        assertNotNull(next.getVertex(v));
+        assertEquals(live.getVertexCount(), next.getVertexCount());
+        assertEquals(live.getEdgeCount(), next.getEdgeCount());
+    }
+
+    /**
+     * testDropPaths
+     */
+    public void testDropPaths() throws Exception {
+        MarkovMaintenanceThread thread = new MarkovMaintenanceThread(null, 2, 1000);
+        assertTrue(thread.queue(this.markov, this.paths.get(0)));
+        assertTrue(thread.queue(this.markov, this.paths.get(1)));
+        assertFalse(thread.queue(this.markov, this.paths.get(2)));
+        assertEquals(1, thread.getDroppedCount());
+        assertEquals(2, thread.getQueueSize());
+
+        thread.drop();
+        assertEquals(2, thread.getDroppedCount());
+        thread.prepareShutdown(false);
+        assertEquals(0, thread.getQueueSize());
+    }
+}
@@ -103,6 +103,85 @@ public class TestQueryCache extends BaseTestCase {
         
     }
     
+    /**
+     * testGlobalCacheGet
+     */
+    public void testGlobalCacheGet() throws Exception {
+        int fragmentId = 2222;
+        int tableIds[] = { 1, 3 };
+        QueryCache cache = new QueryCache(1024, txnBufferSize);
+        ParameterSet params = new ParameterSet("Squirrels", 1981);
+        VoltTable result = new VoltTable(TARGET_RESULT);
+        result.addRow(1234l);
+        
+        assertNull(cache.getGlobalCachedResult(fragmentId, params));
+        cache.addGlobalQueryResult(fragmentId, tableIds, params, result);
+        
+        // We should be able to get it back with an equivalent ParameterSet
+        // even after the original one was cleared
+        params.clear();
+        for (int i = 0; i < 2; i++) {
+            VoltTable cacheResult = cache.getGlobalCachedResult(fragmentId, new ParameterSet("Squi" + "rrels", 1981));
+            assertNotNull(cacheResult);
+            assertEquals(1, cacheResult.getRowCount());
+            assertEquals(1234l, cacheResult.asScalarLong());
+        } // FOR
+        assertNull(cache.getGlobalCachedResult(fragmentId, new ParameterSet("WuTang!", 1981)));
+        assertNull(cache.getGlobalCachedResult(fragmentId+1, new ParameterSet("Squirrels", 1981)));
+        assertEquals(2, cache.getGlobalCacheHits());
+        assertEquals(3, cache.getGlobalCacheMisses());
+        
+        // Writing to a table that the query didn't read shouldn't affect it
+        params = new ParameterSet("Squirrels", 1981);
+        cache.markTableWritten(2);
+        cache.markTableWritten(100);
+        assertNotNull(cache.getGlobalCachedResult(fragmentId, params));
+        
+        // But writing to one of its tables should
+        cache.markTablesWritten(new int[]{ 3 });
+        assertNull(cache.getGlobalCachedResult(fragmentId, params));
+        assertEquals(0, cache.getGlobalCacheSize());
+        assertEquals(0, cache.getGlobalCacheBytes());
+        
+        // Check that we can store it again after it was invalidated
+        cache.addGlobalQueryResult(fragmentId, tableIds, params, result);
+        assertNotNull(cache.getGlobalCachedResult(fragmentId, params));
+        cache.invalidateGlobalCache();
+        assertNull(cache.getGlobalCachedResult(fragmentId, params));
+    }
     
+    /**
+     * testGlobalCacheEviction
+     */
+    public void testGlobalCacheEviction() throws Exception {
+        int baseFragmentId = 3333;
+        int tableIds[] = { 1 };
+        ParameterSet params = new ParameterSet("Squirrels", 1981);
+        VoltTable result = new VoltTable(TARGET_RESULT);
+        result.addRow(1234l);
+        int size = result.getUnderlyingBufferSize();
+        int numEntries = 5;
+        QueryCache cache = new QueryCache(size * numEntries, txnBufferSize);
+        
+        for (int i = 0; i < numEntries; i++) {
+            cache.addGlobalQueryResult(baseFragmentId + i, tableIds, params, result);
+        } // FOR
+        assertEquals(numEntries, cache.getGlobalCacheSize());
+        assertEquals(size * numEntries, cache.getGlobalCacheBytes());
+        
+        // Touch the first entry so that the second one is the least recently used
+        assertNotNull(cache.getGlobalCachedResult(baseFragmentId, params));
+        cache.addGlobalQueryResult(baseFragmentId + numEntries, tableIds, params, result);
+        assertEquals(numEntries, cache.getGlobalCacheSize());
+        assertEquals(1, cache.getGlobalCacheEvictions());
+        assertNull(cache.getGlobalCachedResult(baseFragmentId + 1, params));
+        assertNotNull(cache.getGlobalCachedResult(baseFragmentId, params));
+        assertNotNull(cache.getGlobalCachedResult(baseFragmentId + numEntries, params));
+        
+        // Results that are bigger than the entire cache should never be stored
+        cache = new QueryCache(size - 1, txnBufferSize);
+        cache.addGlobalQueryResult(baseFragmentId, tableIds, params, result);
+        assertEquals(0, cache.getGlobalCacheSize());
+    }
     
 }
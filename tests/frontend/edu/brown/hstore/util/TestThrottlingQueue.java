@@ -0,0 +1,88 @@
+package edu.brown.hstore.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestThrottlingQueue extends TestCase {
+
+    private static final int QUEUE_MAX = 100;
+    private static final double QUEUE_RELEASE = 0.75;
+    private static final int QUEUE_INCREASE = 10;
+    private static final int QUEUE_INCREASE_MAX = 300;
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ThrottlingQueue<Integer> queue;
+    private long now;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.queue = new ThrottlingQueue<Integer>(new LinkedList<Integer>(),
+                                                  QUEUE_MAX,
+                                                  QUEUE_RELEASE,
+                                                  QUEUE_INCREASE,
+                                                  QUEUE_INCREASE_MAX);
+        // 10ms target latency, 1ms interval
+        this.queue.enableAdaptiveThrottling(10, 1);
+        assertTrue(this.queue.isAdaptive());
+        this.now = System.nanoTime();
+    }
+
+    /**
+     * Record a service time measurement at the end of the next interval,
+     * instead of waiting for the real clock to get there
+     */
+    private void recordNextInterval(long nanoseconds) {
+        this.now += INTERVAL * 2;
+        this.queue.recordServiceTime(nanoseconds, this.now);
+    }
+
+    /**
+     * testAdaptiveDecrease
+     */
+    public void testAdaptiveDecrease() throws Exception {
+        // Each element takes 1ms, so with 50 elements in the queue we
+        // are always way over our target latency
+        for (int i = 0; i < 50; i++) {
+            this.queue.offer(i, true);
+        } // FOR
+        for (int i = 0; i < 10; i++) {
+            this.recordNextInterval(1000000);
+        } // FOR
+        assertEquals(1.0, this.queue.getAverageServiceTime(), 0.0001);
+        assertTrue(this.queue.getAdaptiveDecreases() > 0);
+        assertTrue(this.queue.getQueueMax() < QUEUE_MAX);
+        assertTrue(this.queue.getQueueMax() >= QUEUE_INCREASE);
+        assertTrue(this.queue.getQueueRelease() <= this.queue.getQueueMax());
+
+        // We can only process 10 elements within the target latency
+        assertEquals(QUEUE_INCREASE, this.queue.getQueueMax());
+    }
+
+    /**
+     * testAdaptiveIncrease
+     */
+    public void testAdaptiveIncrease() throws Exception {
+        // Each element takes 10us and the queue is empty, so we should
+        // keep raising the limit until we hit the max
+        for (int i = 0; i < 100; i++) {
+            this.recordNextInterval(10000);
+        } // FOR
+        assertEquals(0, this.queue.getAdaptiveDecreases());
+        assertTrue(this.queue.getAdaptiveIncreases() > 0);
+        assertTrue(this.queue.getQueueMax() > QUEUE_MAX);
+        assertTrue(this.queue.getQueueMax() <= QUEUE_INCREASE_MAX);
+
+        // Every interval adds QUEUE_INCREASE until we get to the max
+        assertEquals(QUEUE_INCREASE_MAX, this.queue.getQueueMax());
+        assertEquals((QUEUE_INCREASE_MAX - QUEUE_MAX) / QUEUE_INCREASE, this.queue.getAdaptiveIncreases());
+
+        // The old increase-when-empty policy should be disabled
+        int before = this.queue.getQueueMax();
+        this.queue.checkThrottling(true);
+        assertEquals(before, this.queue.getQueueMax());
+    }
+}
@@ -26,7 +26,9 @@
 package edu.brown.hstore.wal;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
@@ -35,6 +37,8 @@ import org.voltdb.VoltProcedure;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Site;
 
+import com.google.protobuf.RpcCallback;
+
 import edu.brown.BaseTestCase;
 import edu.brown.benchmark.tm1.procedures.UpdateLocation;
 import edu.brown.catalog.CatalogUtil;
@@ -62,6 +66,7 @@ public class TestCommandLogger extends BaseTestCase {
     CommandLogWriter logger;
     Procedure catalog_proc;
     File outputFile;
+    final List<ClientResponseImpl> sentResponses = new ArrayList<ClientResponseImpl>();
     
     @Override
     protected void setUp() throws Exception {
@@ -71,7 +76,18 @@ public class TestCommandLogger extends BaseTestCase {
         
         Site catalog_site = CollectionUtil.first(CatalogUtil.getCluster(catalog).getSites());
         HStoreConf hstore_conf = HStoreConf.singleton();
-        hstore_site = new MockHStoreSite(catalog_site, hstore_conf);
+        hstore_conf.site.exec_command_logging_group_commit = 0;
+        hstore_site = new MockHStoreSite(catalog_site, hstore_conf) {
+            @Override
+            public void sendClientResponse(ClientResponseImpl cresponse,
+                                           RpcCallback<byte[]> clientCallback,
+                                           long initiateTime,
+                                           int restartCounter) {
+                synchronized (sentResponses) {
+                    sentResponses.add(cresponse);
+                } // SYNCH
+            }
+        };
         
         outputFile = FileUtil.getTempFile("log"); //"/research/hstore/mkirsch/testwal.log";
         logger = new CommandLogWriter(hstore_site, outputFile);
@@ -79,26 +95,41 @@ public class TestCommandLogger extends BaseTestCase {
 
     @Override
     public void tearDown() throws Exception {
-        if (outputFile != null && outputFile.exists())
-            outputFile.delete();
+        HStoreConf.singleton().site.exec_command_logging_group_commit = 0;
+        HStoreConf.singleton().site.exec_command_logging_compression = false;
+        if (outputFile != null) {
+            if (CommandLogManifest.exists(outputFile))
+                CommandLogManifest.load(outputFile).deleteAll();
+            if (outputFile.exists())
+                outputFile.delete();
+        }
     }
     
-    @Test
-    public void testSimpleTest() {
-        // Write out a new txn invocation to the log
+    private LocalTransaction makeTransaction(long txnId) {
         LocalTransaction ts = new LocalTransaction(hstore_site);
-        long txnId = TXN_ID.incrementAndGet(); 
         ts.testInit(new Long(txnId),
                     BASE_PARTITION,
                     Collections.singleton(BASE_PARTITION),
                     catalog_proc,
                     TARGET_PARAMS);
-        ClientResponseImpl cresponse = new ClientResponseImpl(txnId,
-                                                              12345l,
-                                                              BASE_PARTITION,
-                                                              Status.OK,
-                                                              HStoreConstants.EMPTY_RESULT,
-                                                              "");
+        return (ts);
+    }
+    
+    private ClientResponseImpl makeClientResponse(long txnId) {
+        return new ClientResponseImpl(txnId,
+                                      12345l,
+                                      BASE_PARTITION,
+                                      Status.OK,
+                                      HStoreConstants.EMPTY_RESULT,
+                                      "");
+    }
+    
+    @Test
+    public void testSimpleTest() {
+        // Write out a new txn invocation to the log
+        long txnId = TXN_ID.incrementAndGet(); 
+        LocalTransaction ts = this.makeTransaction(txnId);
+        ClientResponseImpl cresponse = this.makeClientResponse(txnId);
         boolean ret = logger.appendToLog(ts, cresponse);
         assertTrue(ret);
         logger.shutdown(); // This closes the file
@@ -123,4 +154,57 @@ public class TestCommandLogger extends BaseTestCase {
         }
         assertEquals(1, ctr);
     }
+    
+    @Test
+    public void testGroupCommit() throws Exception {
+        // Make a new writer that uses group commit and start its writer thread
+        final int groupCommit = 4;
+        HStoreConf.singleton().site.exec_command_logging_group_commit = groupCommit;
+        logger.shutdown();
+        logger = new CommandLogWriter(hstore_site, outputFile);
+        assertTrue(logger.isGroupCommitEnabled());
+        Thread writer = new Thread(logger);
+        writer.setDaemon(true);
+        writer.start();
+        
+        // None of the ClientResponses should go out until the whole batch is queued
+        long txnIds[] = new long[groupCommit];
+        for (int i = 0; i < groupCommit; i++) {
+            txnIds[i] = TXN_ID.incrementAndGet();
+            boolean ret = logger.appendToLog(makeTransaction(txnIds[i]), makeClientResponse(txnIds[i]));
+            assertFalse(ret);
+        } // FOR
+        for (int i = 0; i < 100; i++) {
+            synchronized (sentResponses) {
+                if (sentResponses.size() == groupCommit) break;
+            } // SYNCH
+            Thread.sleep(10);
+        } // FOR
+        assertEquals(groupCommit, sentResponses.size());
+        for (int i = 0; i < groupCommit; i++) {
+            assertEquals(txnIds[i], sentResponses.get(i).getTransactionId());
+        } // FOR
+        logger.shutdown();
+        
+        // All of the entries should be in the log in the same order
+        CommandLogReader reader = new CommandLogReader(outputFile.getAbsolutePath());
+        int ctr = 0;
+        for (LogEntry entry : reader) {
+            assertNotNull(entry);
+            assertEquals(txnIds[ctr], entry.txnId.longValue());
+            assertEquals(catalog_proc.getId(), entry.procId);
+            Object[] entryParams = entry.procParams.toArray();
+            assertEquals(TARGET_PARAMS.length, entryParams.length);
+            for (int i = 0; i < TARGET_PARAMS.length; i++)
+                assertEquals(TARGET_PARAMS[i], entryParams[i]);
+            ctr++;
+        } // FOR
+        assertEquals(groupCommit, ctr);
+    }
+    
+    @Test
+    public void testGroupCommitCompression() throws Exception {
+        HStoreConf.singleton().site.exec_command_logging_compression = true;
+        this.testGroupCommit();
+    }
 }
@@ -0,0 +1,293 @@
+package edu.brown.markov;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.voltdb.VoltProcedure;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.BaseTestCase;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.mappings.ParameterMappingsSet;
+import edu.brown.markov.containers.MarkovGraphContainersUtil;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.TransactionTrace;
+import edu.brown.workload.Workload;
+import edu.brown.workload.filters.BasePartitionTxnFilter;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+import edu.brown.workload.filters.ProcedureNameFilter;
+
+public class TestCompiledMarkovGraph extends BaseTestCase {
+
+    private static final Class<? extends VoltProcedure> TARGET_PROCEDURE = neworder.class;
+    private static final int WORKLOAD_XACT_LIMIT = 100;
+    private static final int BASE_PARTITION = 1;
+    private static final int NUM_PARTITIONS = 10;
+
+    private static Workload workload;
+    private static MarkovGraphsContainer markovs;
+    private static ParameterMappingsSet correlations;
+
+    private Procedure catalog_proc;
+    private MarkovGraph markov;
+    private CompiledMarkovGraph compiled;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+
+        if (markovs == null) {
+            File file = this.getParameterMappingsFile(ProjectType.TPCC);
+            correlations = new ParameterMappingsSet();
+            correlations.load(file.getAbsolutePath(), catalog_db);
+
+            Filter filter = new ProcedureNameFilter(false)
+                    .include(TARGET_PROCEDURE.getSimpleName())
+                    .attach(new BasePartitionTxnFilter(p_estimator, BASE_PARTITION))
+                    .attach(new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+            file = this.getWorkloadFile(ProjectType.TPCC);
+            workload = new Workload(catalog);
+            workload.load(file.getAbsolutePath(), catalog_db, filter);
+            assert(workload.getTransactionCount() > 0);
+
+            markovs = MarkovGraphContainersUtil.createBasePartitionMarkovGraphsContainer(catalog_db, workload, p_estimator);
+            assertNotNull(markovs);
+        }
+        this.markov = markovs.get(BASE_PARTITION, this.catalog_proc);
+        assertNotNull(this.markov);
+        this.compiled = this.markov.getCompiled();
+        assertNotNull(this.compiled);
+    }
+
+    private Set<Integer> toSet(int partitions[]) {
+        Set<Integer> ret = new HashSet<Integer>();
+        for (int p : partitions) ret.add(p);
+        return (ret);
+    }
+
+    /**
+     * testVertices
+     */
+    public void testVertices() throws Exception {
+        Collection<MarkovVertex> vertices = this.markov.getVertices();
+        assertEquals(vertices.size(), this.compiled.getVertexCount());
+        assertEquals(this.markov.getStartVertex(), this.compiled.getVertex(this.compiled.getStartOffset()));
+
+        for (MarkovVertex v : vertices) {
+            int offset = this.compiled.getVertexOffset(v);
+            assert(offset >= 0) : "Missing " + v;
+            assertSame(v, this.compiled.getVertex(offset));
+            assertEquals(v.getCatalogItem(), this.compiled.getStatement(offset));
+            assertEquals(v.getQueryInstanceIndex(), this.compiled.getQueryInstanceIndex(offset));
+            assertEquals(v.isQueryVertex(), this.compiled.isQueryVertex(offset));
+            assertEquals(v.getPartitions(), this.toSet(this.compiled.getPartitions(offset)));
+            assertEquals(v.getAbortProbability(), this.compiled.getAbortProbability(offset), MarkovGraph.PROBABILITY_EPSILON);
+        } // FOR
+    }
+
+    /**
+     * testEdges
+     */
+    public void testEdges() throws Exception {
+        assertEquals(this.markov.getEdgeCount(), this.compiled.getEdgeCount());
+        for (MarkovVertex v : this.markov.getVertices()) {
+            int offset = this.compiled.getVertexOffset(v);
+            Collection<MarkovEdge> expected = this.markov.getOutEdges(v);
+            assertEquals(expected.size(), this.compiled.getEdgeEnd(offset) - this.compiled.getEdgeStart(offset));
+
+            float last = Float.MAX_VALUE;
+            for (int e = this.compiled.getEdgeStart(offset); e < this.compiled.getEdgeEnd(offset); e++) {
+                MarkovEdge edge = this.compiled.getEdge(e);
+                assert(expected.contains(edge)) : "Unexpected edge " + edge + " from " + v;
+                assertSame(this.markov.getDest(edge), this.compiled.getVertex(this.compiled.getEdgeDest(e)));
+                assertEquals(edge.getProbability(), this.compiled.getEdgeProbability(e), MarkovGraph.PROBABILITY_EPSILON);
+
+                // The edges must be in the same order as a SortedSet<MarkovEdge>
+                assert(this.compiled.getEdgeProbability(e) <= last + 0.01f) : v + " edges are not sorted";
+                last = this.compiled.getEdgeProbability(e);
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testFindEdge
+     */
+    public void testFindEdge() throws Exception {
+        long partitions[] = new long[this.compiled.getNumWords()];
+        long past[] = new long[this.compiled.getNumWords()];
+        for (MarkovVertex v : this.markov.getVertices()) {
+            int offset = this.compiled.getVertexOffset(v);
+            for (MarkovEdge edge : this.markov.getOutEdges(v)) {
+                MarkovVertex dest = this.markov.getDest(edge);
+                if (dest.isQueryVertex() == false) continue;
+                Statement catalog_stmt = dest.getCatalogItem();
+                CompiledMarkovGraph.setBits(partitions, dest.getPartitions());
+                CompiledMarkovGraph.setBits(past, dest.getPastPartitions());
+
+                int e = this.compiled.findEdge(offset, catalog_stmt, dest.getQueryInstanceIndex(), partitions, past);
+                assert(e >= 0) : "Failed to find edge from " + v + " to " + dest;
+                assertSame(edge, this.compiled.getEdge(e));
+                assertTrue(dest.isEqual(catalog_stmt, dest.getPartitions(), dest.getPastPartitions(), dest.getQueryInstanceIndex()));
+
+                // Changing the instance index should never match
+                assertEquals(-1, this.compiled.findEdge(offset, catalog_stmt, dest.getQueryInstanceIndex() + 1000, partitions, past));
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testRecompile
+     */
+    public void testRecompile() throws Exception {
+        MarkovGraph markov = new MarkovGraph(this.catalog_proc).initialize();
+        CompiledMarkovGraph first = markov.getCompiled();
+        assertTrue(markov.isCompiled());
+        assertSame(first, markov.getCompiled());
+        assertEquals(3, first.getVertexCount());
+        assertEquals(0, first.getEdgeCount());
+
+        Statement catalog_stmt = CollectionUtil.first(this.catalog_proc.getStatements());
+        MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0,
+                                          Arrays.asList(BASE_PARTITION), new HashSet<Integer>());
+        markov.addVertex(v);
+        markov.addToEdge(markov.getStartVertex(), v);
+        assertFalse(markov.isCompiled());
+        assertSame(first, markov.getLastCompiled());
+        assertEquals(-1, first.getVertexOffset(v));
+
+        CompiledMarkovGraph second = markov.getCompiled();
+        assertNotSame(first, second);
+        assertTrue(markov.isCompiled());
+        assertEquals(4, second.getVertexCount());
+        assertEquals(1, second.getEdgeCount());
+        int start = second.getStartOffset();
+        assertEquals(1, second.getEdgeEnd(start) - second.getEdgeStart(start));
+        assertSame(v, second.getVertex(second.getEdgeDest(second.getEdgeStart(start))));
+    }
+
+    /**
+     * testCompileInBackground
+     */
+    public void testCompileInBackground() throws Exception {
+        MarkovGraph markov = new MarkovGraph(this.catalog_proc).initialize();
+        CompiledMarkovGraph first = markov.getCompiled();
+
+        Statement catalog_stmt = CollectionUtil.first(this.catalog_proc.getStatements());
+        MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0,
+                                          Arrays.asList(BASE_PARTITION), new HashSet<Integer>());
+        markov.addVertex(v);
+        markov.addToEdge(markov.getStartVertex(), v);
+        assertFalse(markov.isCompiled());
+
+        markov.compileInBackground();
+        for (int i = 0; i < 100 && markov.isCompiled() == false; i++) {
+            Thread.sleep(50);
+        } // FOR
+        assertTrue(markov.isCompiled());
+        CompiledMarkovGraph second = markov.getLastCompiled();
+        assertNotSame(first, second);
+        assertEquals(4, second.getVertexCount());
+        assertTrue(second.getVertexOffset(v) >= 0);
+    }
+
+    /**
+     * testPathEstimatorLastCompiled
+     */
+    public void testPathEstimatorLastCompiled() throws Exception {
+        TransactionEstimator t_estimator = new TransactionEstimator(p_estimator, correlations, markovs);
+        HStoreConf hstore_conf = HStoreConf.singleton();
+        boolean orig = hstore_conf.site.markov_compiled;
+        try {
+            hstore_conf.site.markov_compiled = true;
+            MarkovGraph markov = new MarkovGraph(this.catalog_proc).initialize();
+            CompiledMarkovGraph first = markov.getCompiled();
+
+            Statement catalog_stmt = CollectionUtil.first(this.catalog_proc.getStatements());
+            MarkovVertex v = new MarkovVertex(catalog_stmt, MarkovVertex.Type.QUERY, 0,
+                                              Arrays.asList(BASE_PARTITION), new HashSet<Integer>());
+            markov.addVertex(v);
+            markov.addToEdge(markov.getStartVertex(), v);
+            assertFalse(markov.isCompiled());
+
+            // Starting a new txn must not rebuild the snapshot
+            Object args[] = CollectionUtil.first(workload.getTransactions()).getParams();
+            new MarkovPathEstimator(markov, t_estimator, BASE_PARTITION, args);
+            assertFalse(markov.isCompiled());
+            assertSame(first, markov.getLastCompiled());
+        } finally {
+            hstore_conf.site.markov_compiled = orig;
+        }
+    }
+
+    /**
+     * testBits
+     */
+    public void testBits() throws Exception {
+        int num_partitions = 130;
+        long mask[] = new long[CompiledMarkovGraph.getNumWords(num_partitions)];
+        assertEquals(3, mask.length);
+        assertEquals(1, CompiledMarkovGraph.getNumWords(1));
+        assertEquals(1, CompiledMarkovGraph.getNumWords(64));
+        assertEquals(2, CompiledMarkovGraph.getNumWords(65));
+
+        List<Integer> partitions = Arrays.asList(0, 63, 64, 129);
+        CompiledMarkovGraph.setBits(mask, partitions);
+        for (int p = 0; p < num_partitions; p++) {
+            assertEquals(Integer.toString(p), partitions.contains(p), CompiledMarkovGraph.isSet(mask, p));
+        } // FOR
+
+        // setBits() must clear out the old partitions
+        CompiledMarkovGraph.setBits(mask, Arrays.asList(5));
+        assertTrue(CompiledMarkovGraph.isSet(mask, 5));
+        assertFalse(CompiledMarkovGraph.isSet(mask, 129));
+
+        CompiledMarkovGraph.addBits(mask, new int[]{ 100 });
+        CompiledMarkovGraph.set(mask, 65);
+        assertTrue(CompiledMarkovGraph.isSet(mask, 5));
+        assertTrue(CompiledMarkovGraph.isSet(mask, 65));
+        assertTrue(CompiledMarkovGraph.isSet(mask, 100));
+    }
+
+    /**
+     * testPathEstimator
+     */
+    public void testPathEstimator() throws Exception {
+        TransactionEstimator t_estimator = new TransactionEstimator(p_estimator, correlations, markovs);
+        HStoreConf hstore_conf = HStoreConf.singleton();
+        boolean orig = hstore_conf.site.markov_compiled;
+        try {
+            for (TransactionTrace txn_trace : workload.getTransactions()) {
+                Object args[] = txn_trace.getParams();
+                List<List<MarkovVertex>> paths = new ArrayList<List<MarkovVertex>>();
+                float confidences[] = new float[2];
+                List<Set<Integer>> touched = new ArrayList<Set<Integer>>();
+                for (int i = 0; i < 2; i++) {
+                    hstore_conf.site.markov_compiled = (i == 0);
+                    MarkovPathEstimator estimator = new MarkovPathEstimator(this.markov, t_estimator, BASE_PARTITION, args);
+                    estimator.enableForceTraversal(true);
+                    estimator.traverse(this.markov.getStartVertex());
+                    paths.add(new ArrayList<MarkovVertex>(estimator.getVisitPath()));
+                    confidences[i] = estimator.getConfidence();
+                    touched.add(new HashSet<Integer>(estimator.getTouchedPartitions()));
+                } // FOR
+                assertEquals(txn_trace.toString(), paths.get(1), paths.get(0));
+                assertEquals(txn_trace.toString(), confidences[1], confidences[0], MarkovGraph.PROBABILITY_EPSILON);
+                assertEquals(txn_trace.toString(), touched.get(1), touched.get(0));
+            } // FOR
+        } finally {
+            hstore_conf.site.markov_compiled = orig;
+        }
+    }
+}
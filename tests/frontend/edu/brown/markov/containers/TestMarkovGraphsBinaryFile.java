@@ -0,0 +1,119 @@
+package edu.brown.markov.containers;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltProcedure;
+import org.voltdb.benchmark.tpcc.procedures.neworder;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.Workload;
+import edu.brown.workload.filters.BasePartitionTxnFilter;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+import edu.brown.workload.filters.ProcedureNameFilter;
+
+public class TestMarkovGraphsBinaryFile extends BaseTestCase {
+
+    private static final Class<? extends VoltProcedure> TARGET_PROCEDURE = neworder.class;
+    private static final int WORKLOAD_XACT_LIMIT = 100;
+    private static final int BASE_PARTITION = 1;
+    private static final int NUM_PARTITIONS = 10;
+
+    private static MarkovGraphsContainer markovs;
+    private static File binary_file;
+
+    private Procedure catalog_proc;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.catalog_proc = this.getProcedure(TARGET_PROCEDURE);
+
+        if (markovs == null) {
+            Filter filter = new ProcedureNameFilter(false)
+                    .include(TARGET_PROCEDURE.getSimpleName())
+                    .attach(new BasePartitionTxnFilter(p_estimator, BASE_PARTITION))
+                    .attach(new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+            File file = this.getWorkloadFile(ProjectType.TPCC);
+            Workload workload = new Workload(catalog);
+            workload.load(file.getAbsolutePath(), catalog_db, filter);
+            assert(workload.getTransactionCount() > 0);
+
+            markovs = MarkovGraphContainersUtil.createBasePartitionMarkovGraphsContainer(catalog_db, workload, p_estimator);
+            assertNotNull(markovs);
+
+            Map<Integer, MarkovGraphsContainer> m = new HashMap<Integer, MarkovGraphsContainer>();
+            m.put(BASE_PARTITION, markovs);
+            binary_file = FileUtil.getTempFile("markovs", false);
+            MarkovGraphsBinaryFile.save(m, binary_file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * testIsBinaryFile
+     */
+    public void testIsBinaryFile() throws Exception {
+        assertTrue(MarkovGraphsBinaryFile.isBinaryFile(binary_file));
+
+        Map<Integer, MarkovGraphsContainer> m = new HashMap<Integer, MarkovGraphsContainer>();
+        m.put(BASE_PARTITION, markovs);
+        File json_file = FileUtil.getTempFile("markovs", false);
+        MarkovGraphContainersUtil.save(m, json_file.getAbsolutePath());
+        assertFalse(MarkovGraphsBinaryFile.isBinaryFile(json_file));
+    }
+
+    /**
+     * testLazyLoad
+     */
+    public void testLazyLoad() throws Exception {
+        Map<Integer, MarkovGraphsContainer> loaded = MarkovGraphContainersUtil.load(catalog_db, binary_file.getAbsolutePath(), null, null);
+        assertNotNull(loaded);
+        MarkovGraphsContainer clone = loaded.get(BASE_PARTITION);
+        assertNotNull(clone);
+        assertEquals(markovs.getClass(), clone.getClass());
+
+        // Nothing should be deserialized until we ask for it
+        int unloaded = clone.getUnloadedCount();
+        assertTrue(unloaded > 0);
+        MarkovGraph clone_m = clone.get(BASE_PARTITION, this.catalog_proc);
+        assertNotNull(clone_m);
+        assertEquals(unloaded - 1, clone.getUnloadedCount());
+        assertSame(clone_m, clone.get(BASE_PARTITION, this.catalog_proc));
+
+        MarkovGraph markov = markovs.get(BASE_PARTITION, this.catalog_proc);
+        assertNotNull(markov);
+        assertEquals(markov.getGraphId(), clone_m.getGraphId());
+        assertEquals(markov.getProcedure(), clone_m.getProcedure());
+        assertEquals(markov.getEdgeCount(), clone_m.getEdgeCount());
+        assertTrue(clone_m.isValid());
+
+        for (MarkovEdge e : markov.getEdges()) {
+            MarkovVertex v0 = markov.getSource(e);
+            MarkovVertex v1 = markov.getDest(e);
+            MarkovVertex clone_v0 = clone_m.getVertex(v0);
+            MarkovVertex clone_v1 = clone_m.getVertex(v1);
+            assertNotNull(v0.toString(), clone_v0);
+            assertNotNull(v1.toString(), clone_v1);
+            assertEquals(v0.getTotalHits(), clone_v0.getTotalHits());
+            assertEquals(v1.getTotalHits(), clone_v1.getTotalHits());
+
+            MarkovEdge clone_e = clone_m.findEdge(clone_v0, clone_v1);
+            assertNotNull(clone_e);
+            assertEquals(e.getTotalHits(), clone_e.getTotalHits());
+            assertEquals(e.getProbability(), clone_e.getProbability(), MarkovGraph.PROBABILITY_EPSILON);
+        } // FOR
+
+        // Iterating over the container should pull in everything else
+        assertEquals(markovs.size(), clone.size());
+        assertEquals(0, clone.getUnloadedCount());
+    }
+}
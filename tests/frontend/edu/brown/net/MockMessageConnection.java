@@ -24,10 +24,14 @@ THE SOFTWARE.
 
 package edu.brown.net;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
+
 public class MockMessageConnection implements MessageConnection {
     public byte[] tryRead() {
         assert !closed;
@@ -36,6 +40,11 @@ public class MockMessageConnection implements MessageConnection {
         return result;
     }
 
+    public BBContainer tryReadBuffer() {
+        byte[] result = tryRead();
+        return (result == null ? null : DBBPool.wrapBB(ByteBuffer.wrap(result)));
+    }
+
     public boolean write(byte[] message) {
         assert !closed;
         assert message.length > 0;  // zero length messages are prohibited
@@ -43,6 +52,23 @@ public class MockMessageConnection implements MessageConnection {
         return writeBlocked;
     }
 
+    public void enqueue(byte[] message) {
+        assert !closed;
+        assert message.length > 0;  // zero length messages are prohibited
+        lastWrite = message;
+    }
+
+    public boolean write(ByteBuffer message) {
+        enqueue(message);
+        return writeBlocked;
+    }
+
+    public void enqueue(ByteBuffer message) {
+        byte[] copy = new byte[message.remaining()];
+        message.get(copy);
+        enqueue(copy);
+    }
+
     public boolean tryWrite() {
         tryWriteCalled = true;
         return writeBlocked;
@@ -41,6 +41,8 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
 
 
 public class NIOMessageConnectionTest {
@@ -106,6 +108,66 @@ public class NIOMessageConnectionTest {
         assertNull(connection.tryRead());
     }
 
+    @Test
+    public void testReadBuffer() throws IOException {
+        connection = new NIOMessageConnection((SocketChannel) connection.getChannel(),
+                                              new DBBPool(false, false));
+        assertNull(connection.tryReadBuffer());
+        writeServer(new byte[]{
+                5, 0, 0, 0,
+                1, 2, 3, 4, 5,
+                3, 0, 0});
+        BBContainer c = connection.tryReadBuffer();
+        assertEquals(5, c.b.remaining());
+        assertEquals(1, c.b.get(0));
+        assertEquals(5, c.b.get(4));
+        c.discard();
+        assertNull(connection.tryReadBuffer());
+
+        writeServer(new byte[]{
+                0,
+                7, 8, 9});
+        c = connection.tryReadBuffer();
+        assertEquals(3, c.b.remaining());
+        assertEquals(7, c.b.get());
+        assertEquals(8, c.b.get());
+        assertEquals(9, c.b.get());
+        c.discard();
+
+        // closed connections return an empty buffer
+        serverSide.close();
+        c = connection.tryReadBuffer();
+        assertEquals(0, c.b.remaining());
+    }
+
+    @Test
+    public void testWriteBuffer() throws IOException {
+        ByteBuffer message = ByteBuffer.allocateDirect(16);
+        message.put(new byte[]{9, 1, 2, 3, 9});
+        message.flip();
+        // only the remaining bytes get written
+        message.position(1);
+        message.limit(4);
+
+        connection.write(message);
+        assertEquals(0, message.remaining());
+        byte[] buffer = new byte[4096];
+        int length = serverSide.getInputStream().read(buffer);
+        assertEquals(4 + 3, length);
+        assertEquals(3, buffer[0]);
+        assertEquals(0, buffer[1]);
+        assertEquals(0, buffer[2]);
+        assertEquals(0, buffer[3]);
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(i + 1, buffer[4 + i]);
+        }
+
+        try {
+            connection.write(message);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {}
+    }
+
     @Test
     public void testWriteMessage() throws IOException {
         final byte[] message = new byte[]{1, 2, 3};
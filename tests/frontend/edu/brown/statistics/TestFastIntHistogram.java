@@ -114,6 +114,24 @@ public class TestFastIntHistogram extends BaseTestCase {
         assertEquals(h.getValueCount(), fast_h.getValueCount());
     }
     
+    /**
+     * testPutHistogram
+     */
+    public void testPutHistogram() {
+        FastIntHistogram other = new FastIntHistogram(RANGE);
+        for (Integer val : fast_h.values()) {
+            other.fastPut(val.intValue(), fast_h.fastGet(val.intValue()));
+        } // FOR
+        assertEquals(fast_h, other);
+        
+        other.putHistogram(fast_h);
+        assertEquals(fast_h.getSampleCount() * 2, other.getSampleCount());
+        assertEquals(fast_h.getValueCount(), other.getValueCount());
+        for (Integer val : fast_h.values()) {
+            assertEquals(fast_h.fastGet(val.intValue()) * 2, other.fastGet(val.intValue()));
+        } // FOR
+    }
+    
     
     
 
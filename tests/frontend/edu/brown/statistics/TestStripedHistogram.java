@@ -0,0 +1,102 @@
+package edu.brown.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestStripedHistogram extends TestCase {
+
+    public static final int NUM_THREADS = 4;
+    public static final int NUM_SAMPLES = 1000;
+    public static final int RANGE = 20;
+
+    /**
+     * Have each thread put NUM_SAMPLES values into the histogram
+     */
+    private void runThreads(final StripedHistogram<Integer> h, final boolean fast) throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < NUM_SAMPLES; j++) {
+                        if (fast) {
+                            ((StripedIntHistogram)h).fastPut(j % RANGE);
+                        } else {
+                            h.put(j % RANGE);
+                        }
+                    } // FOR
+                }
+            });
+        } // FOR
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+    }
+
+    /**
+     * testPut
+     */
+    public void testPut() throws Exception {
+        StripedHistogram<Integer> h = new StripedHistogram<Integer>();
+        assertTrue(h.isEmpty());
+        this.runThreads(h, false);
+        assertFalse(h.isEmpty());
+        assertEquals(NUM_THREADS * NUM_SAMPLES, h.getSampleCount());
+
+        Histogram<Integer> merged = h.getHistogram();
+        assertEquals(NUM_THREADS * NUM_SAMPLES, merged.getSampleCount());
+        assertEquals(RANGE, merged.getValueCount());
+        for (int i = 0; i < RANGE; i++) {
+            long expected = NUM_THREADS * (NUM_SAMPLES / RANGE);
+            assertEquals(expected, merged.get(i).longValue());
+            assertEquals(expected, h.get(i).longValue());
+        } // FOR
+        assertNull(h.get(RANGE));
+    }
+
+    /**
+     * testFastPut
+     */
+    public void testFastPut() throws Exception {
+        StripedIntHistogram h = new StripedIntHistogram(RANGE + 1);
+        this.runThreads(h, true);
+        assertEquals(NUM_THREADS * NUM_SAMPLES, h.getSampleCount());
+
+        Histogram<Integer> merged = h.getHistogram();
+        assertEquals(RANGE, merged.getValueCount());
+        for (int i = 0; i < RANGE; i++) {
+            long expected = NUM_THREADS * (NUM_SAMPLES / RANGE);
+            assertEquals(expected, merged.get(i).longValue());
+            assertEquals(expected, h.get(i).longValue());
+        } // FOR
+        assertNull(h.get(RANGE));
+
+        // Removing a value that was added by another thread
+        h.remove(0);
+        long expected = NUM_THREADS * (NUM_SAMPLES / RANGE) - 1;
+        assertEquals(expected, h.getHistogram().get(0).longValue());
+        assertEquals(expected, h.get(0).longValue());
+        assertEquals(NUM_THREADS * NUM_SAMPLES - 1, h.getSampleCount());
+
+        // Removing everything that other threads added for a value
+        // should take it out of the histogram completely
+        for (int i = 0; i < expected; i++) {
+            h.remove(0);
+        } // FOR
+        assertNull(h.getHistogram().get(0));
+        assertEquals(0, h.get(0).longValue());
+    }
+
+    /**
+     * testClear
+     */
+    public void testClear() throws Exception {
+        StripedHistogram<Integer> h = new StripedHistogram<Integer>();
+        this.runThreads(h, false);
+        h.clear();
+        assertTrue(h.isEmpty());
+        assertEquals(0, h.getSampleCount());
+        assertTrue(h.getHistogram().isEmpty());
+    }
+}
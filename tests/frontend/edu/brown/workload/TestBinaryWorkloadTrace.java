@@ -0,0 +1,125 @@
+package edu.brown.workload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+
+public class TestBinaryWorkloadTrace extends BaseTestCase {
+
+    protected static final int WORKLOAD_XACT_LIMIT = 500;
+
+    // Reading the workload takes a long time, so we only want to do it once
+    protected static Workload workload;
+    protected static File binary_file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+
+        if (workload == null) {
+            File workload_file = this.getWorkloadFile(ProjectType.TPCC);
+            workload = new Workload(catalog);
+            workload.load(workload_file.getAbsolutePath(), catalog_db, new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+            assertEquals(WORKLOAD_XACT_LIMIT, workload.getTransactionCount());
+
+            binary_file = FileUtil.getTempFile("trace", true);
+            int ctr = BinaryWorkloadTrace.convert(catalog_db, workload_file, binary_file);
+            assert(ctr >= WORKLOAD_XACT_LIMIT) : "Only converted " + ctr + " txns";
+        }
+        assertNotNull(binary_file);
+    }
+
+    /**
+     * testIsBinaryFile
+     */
+    @Test
+    public void testIsBinaryFile() throws Exception {
+        assertTrue(BinaryWorkloadTrace.isBinaryFile(binary_file));
+        assertFalse(BinaryWorkloadTrace.isBinaryFile(this.getWorkloadFile(ProjectType.TPCC)));
+    }
+
+    /**
+     * testStreamIterator
+     */
+    @Test
+    public void testStreamIterator() throws Exception {
+        WorkloadStreamIterator it = new WorkloadStreamIterator(binary_file, catalog_db, new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+        assertTrue(it.isBinary());
+
+        Iterator<TransactionTrace> expected_it = workload.iterator();
+        while (it.hasNext()) {
+            TransactionTrace txn_trace = it.next();
+            assertTrue(expected_it.hasNext());
+            TransactionTrace expected = expected_it.next();
+
+            assertEquals(expected.getTransactionId(), txn_trace.getTransactionId());
+            assertEquals(expected.getCatalogItemName(), txn_trace.getCatalogItemName());
+            assertEquals(expected.getStartTimestamp(), txn_trace.getStartTimestamp());
+            assertEquals(expected.getParams().length, txn_trace.getParams().length);
+            assertEquals(expected.getQueryCount(), txn_trace.getQueryCount());
+            for (int i = 0, cnt = expected.getQueryCount(); i < cnt; i++) {
+                QueryTrace expected_query = expected.getQueries().get(i);
+                QueryTrace query_trace = txn_trace.getQueries().get(i);
+                assertEquals(expected_query.getCatalogItemName(), query_trace.getCatalogItemName());
+                assertEquals(expected_query.getParams().length, query_trace.getParams().length);
+            } // FOR
+        } // WHILE
+        assertFalse(expected_it.hasNext());
+        assert(it.getReadCount() >= WORKLOAD_XACT_LIMIT);
+        assertEquals(0, it.getSkipCount());
+    }
+
+    /**
+     * testLoadBinary
+     */
+    @Test
+    public void testLoadBinary() throws Exception {
+        Workload binary = new Workload(catalog);
+        binary.load(binary_file.getAbsolutePath(), catalog_db, new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+        assertFalse(binary.isStreaming());
+        assertEquals(workload.getTransactionCount(), binary.getTransactionCount());
+        assertEquals(workload.getQueryCount(), binary.getQueryCount());
+        assertEquals(workload.getMinStartTimestamp(), binary.getMinStartTimestamp());
+        assertEquals(workload.getMaxStartTimestamp(), binary.getMaxStartTimestamp());
+    }
+
+    /**
+     * testStream
+     */
+    @Test
+    public void testStream() throws Exception {
+        Workload stream = new Workload(catalog);
+        stream.stream(binary_file.getAbsolutePath(), catalog_db, new ProcedureLimitFilter(WORKLOAD_XACT_LIMIT));
+        assertTrue(stream.isStreaming());
+        assertEquals(workload.getTransactionCount(), stream.getTransactionCount());
+        assertEquals(workload.getQueryCount(), stream.getQueryCount());
+        assertEquals(workload.getProcedureHistogram().getSampleCount(), stream.getProcedureHistogram().getSampleCount());
+
+        // We should be able to iterate over it more than once
+        for (int i = 0; i < 2; i++) {
+            List<Long> txn_ids = new ArrayList<Long>();
+            for (TransactionTrace txn_trace : stream) {
+                txn_ids.add(txn_trace.getTransactionId());
+            } // FOR
+            assertEquals(workload.getTransactionCount(), txn_ids.size());
+        } // FOR
+
+        // Make sure that we can still get the traces for a single procedure
+        Procedure catalog_proc = this.getProcedure("neworder");
+        List<TransactionTrace> expected = workload.getTraces(catalog_proc);
+        List<TransactionTrace> traces = stream.getTraces(catalog_proc);
+        assertEquals(expected.size(), traces.size());
+        for (int i = 0, cnt = expected.size(); i < cnt; i++) {
+            assertEquals(expected.get(i).getTransactionId(), traces.get(i).getTransactionId());
+        } // FOR
+    }
+}
@@ -3,6 +3,7 @@ package org.voltdb;
 import static org.junit.Assert.*;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -141,6 +142,49 @@ public class TestStoredProcedureInvocation extends BaseTestCase {
         assertFalse(clone.hasPartitions());
     }
     
+    /**
+     * testGetParameterPrefix
+     */
+    public void testGetParameterPrefix() throws Exception {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation(CLIENT_HANDLE, TARGET_PROCEDURE, PARAMS);
+        byte[] invocation_bytes = FastSerializer.serialize(invocation);
+        assertNotNull(invocation_bytes);
+        
+        for (int count = 0; count <= PARAMS.length + 1; count++) {
+            FastDeserializer fds = new FastDeserializer(invocation_bytes);
+            StoredProcedureInvocation clone = fds.readObject(StoredProcedureInvocation.class);
+            Object prefix[] = clone.getParameterPrefix(count);
+            assertEquals(count, prefix.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.toString(i), (i < PARAMS.length ? PARAMS[i] : null), prefix[i]);
+            } // FOR
+            
+            // Make sure that we can still get the full ParameterSet afterwards
+            // without having to call buildParameterSet() first
+            assertNotNull(clone.getParams());
+            assertArrayEquals(PARAMS, clone.getParams().toArray());
+        } // FOR
+    }
+    
+    /**
+     * testCopyUnserializedParams
+     */
+    public void testCopyUnserializedParams() throws Exception {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation(CLIENT_HANDLE, TARGET_PROCEDURE, PARAMS);
+        byte[] invocation_bytes = FastSerializer.serialize(invocation);
+        assertNotNull(invocation_bytes);
+        
+        FastDeserializer fds = new FastDeserializer(invocation_bytes);
+        StoredProcedureInvocation clone = fds.readObject(StoredProcedureInvocation.class);
+        clone.copyUnserializedParams();
+        
+        // Clobber the original buffer like the VoltProcedureListener would
+        // when it reuses it for the next request
+        Arrays.fill(invocation_bytes, (byte)0);
+        assertNotNull(clone.getParams());
+        assertArrayEquals(PARAMS, clone.getParams().toArray());
+    }
+    
     /**
      * testDeserializationWithPartitions
      */
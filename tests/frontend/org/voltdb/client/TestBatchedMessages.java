@@ -0,0 +1,77 @@
+package org.voltdb.client;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class TestBatchedMessages extends TestCase {
+
+    private static final byte MESSAGES[][] = {
+        { 1, 2, 3 },
+        { 0 },
+        { 0, 4, 5, 6, 7, 8 },
+    };
+    
+    private ByteBuffer makeBatch() {
+        int messageBytes = 0;
+        for (byte m[] : MESSAGES) {
+            messageBytes += m.length;
+        } // FOR
+        ByteBuffer out = ByteBuffer.allocate(BatchedMessages.getSerializedSize(MESSAGES.length, messageBytes));
+        BatchedMessages.writeHeader(out, MESSAGES.length);
+        for (byte m[] : MESSAGES) {
+            ByteBuffer message = ByteBuffer.wrap(m);
+            BatchedMessages.writeMessage(out, message);
+            assertEquals(0, message.remaining());
+        } // FOR
+        assertEquals(0, out.remaining());
+        out.flip();
+        return (out);
+    }
+    
+    /**
+     * testIsBatch
+     */
+    public void testIsBatch() throws Exception {
+        ByteBuffer batch = makeBatch();
+        assertTrue(BatchedMessages.isBatch(batch));
+        assertTrue(BatchedMessages.isBatch(batch.array()));
+        
+        // Regular invocations and responses start with a 0 or 1
+        for (byte m[] : MESSAGES) {
+            assertFalse(BatchedMessages.isBatch(m));
+            assertFalse(BatchedMessages.isBatch(ByteBuffer.wrap(m)));
+        } // FOR
+        assertFalse(BatchedMessages.isBatch(new byte[0]));
+    }
+    
+    /**
+     * testSplit
+     */
+    public void testSplit() throws Exception {
+        ByteBuffer batch = makeBatch();
+        ByteBuffer messages[] = BatchedMessages.split(batch);
+        assertEquals(0, batch.remaining());
+        assertEquals(MESSAGES.length, messages.length);
+        for (int i = 0; i < MESSAGES.length; i++) {
+            assertEquals(MESSAGES[i].length, messages[i].remaining());
+            for (int j = 0; j < MESSAGES[i].length; j++) {
+                assertEquals(MESSAGES[i][j], messages[i].get(j));
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * testUnpack
+     */
+    public void testUnpack() throws Exception {
+        byte messages[][] = BatchedMessages.unpack(makeBatch().array());
+        assertEquals(MESSAGES.length, messages.length);
+        for (int i = 0; i < MESSAGES.length; i++) {
+            assertEquals(MESSAGES[i].length, messages[i].length);
+            for (int j = 0; j < MESSAGES[i].length; j++) {
+                assertEquals(MESSAGES[i][j], messages[i][j]);
+            } // FOR
+        } // FOR
+    }
+}
@@ -29,6 +29,8 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -58,9 +60,16 @@ public class TestDistributer extends TestCase {
 
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
+            if (BatchedMessages.isBatch(message)) {
+                for (ByteBuffer m : BatchedMessages.split(message)) {
+                    this.handleMessage(m, c);
+                } // FOR
+                return;
+            }
             try {
                 FastDeserializer fds = new FastDeserializer(message);
                 StoredProcedureInvocation spi = fds.readObject(StoredProcedureInvocation.class);
+                handles.add(spi.getClientHandle());
 
                 VoltTable vt[] = new VoltTable[1];
                 vt[0] = new VoltTable(new VoltTable.ColumnInfo("Foo", VoltType.BIGINT));
@@ -104,6 +113,7 @@ public class TestDistributer extends TestCase {
 
         }
         AtomicInteger roundTrips = new AtomicInteger();
+        final List<Long> handles = new CopyOnWriteArrayList<Long>();
 
         @Override
         public Runnable offBackPressure() {
@@ -354,6 +364,42 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    /**
+     * Batched invocations must reach the server in the order they were queued
+     */
+    public void testQueueBatched() throws Exception {
+        final int num_invocations = 100;
+        MockVolt volt = null;
+        try {
+            volt = new MockVolt(20000);
+            volt.start();
+
+            // Small enough that both full batches and flushed partial batches go out
+            Distributer dist = new Distributer(128, null, false, null, 100, 256, 1000);
+            dist.createConnection(null, "localhost", 20000, "", "");
+            assertNotNull(volt.handler);
+
+            for (int handle = 1; handle <= num_invocations; handle++) {
+                StoredProcedureInvocation pi = new StoredProcedureInvocation(handle, "i1", new Integer(1));
+                dist.queue(pi, new ProcCallback(), 128, true);
+                if (handle % 10 == 0) Thread.sleep(5);
+            } // FOR
+            dist.drain();
+
+            assertEquals(num_invocations, volt.handler.roundTrips.get());
+            assertEquals(num_invocations, volt.handler.handles.size());
+            for (int i = 0; i < num_invocations; i++) {
+                assertEquals(i+1, volt.handler.handles.get(i).longValue());
+            } // FOR
+            dist.shutdown();
+        } finally {
+            if (volt != null) {
+                volt.shutdown();
+                volt.join();
+            }
+        }
+    }
+
     public void testClient() {
        MockVolt volt = null;
 
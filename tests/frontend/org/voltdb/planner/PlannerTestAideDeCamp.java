@@ -57,6 +57,7 @@ public class PlannerTestAideDeCamp {
     private final HSQLInterface hsql;
     private final Database db;
     int compileCounter = 0;
+    private boolean enableHashJoins = false;
 
     /**
      * Loads the schema at ddlurl and setups a voltcompiler / hsql instance.
@@ -92,6 +93,10 @@ public class PlannerTestAideDeCamp {
         return catalog;
     }
 
+    public void setEnableHashJoins(boolean val) {
+        enableHashJoins = val;
+    }
+
 
     /**
      * Compile a statement and return the final plan graph.
@@ -129,6 +134,7 @@ public class PlannerTestAideDeCamp {
         QueryPlanner planner =
             new QueryPlanner(catalog.getClusters().get("cluster"), db, hsql,
                              estimates, true, false);
+        planner.setEnableHashJoins(enableHashJoins);
 
         CompiledPlan plan = null;
         plan = planner.compilePlan(costModel, catalogStmt.getSqltext(), catalogStmt.getTypeName(),
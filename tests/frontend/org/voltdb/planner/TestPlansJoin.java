@@ -0,0 +1,82 @@
+package org.voltdb.planner;
+
+import junit.framework.TestCase;
+
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Table;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansJoin extends TestCase {
+
+    private PlannerTestAideDeCamp aide;
+
+    private AbstractPlanNode compile(String sql, int paramCount) {
+        AbstractPlanNode pn = null;
+        try {
+            pn =  aide.compile(sql, paramCount);
+        }
+        catch (NullPointerException ex) {
+            // aide may throw NPE if no plangraph was created
+            ex.printStackTrace();
+            fail();
+        }
+        catch (Exception ex) {
+            ex.printStackTrace();
+            fail();
+        }
+        assertTrue(pn != null);
+        return pn;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        aide = new PlannerTestAideDeCamp(TestPlansJoin.class.getResource("testplans-join-ddl.sql"), "testplansjoin");
+        aide.setEnableHashJoins(true);
+
+        // Set all tables to replicated so that we get single-fragment plans
+        Cluster cluster = aide.getCatalog().getClusters().get("cluster");
+        CatalogMap<Table> tmap = cluster.getDatabases().get("database").getTables();
+        for (Table t : tmap) {
+            t.setIsreplicated(true);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        aide.tearDown();
+    }
+
+    public void testEquiJoinWithoutIndex() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1_NUM = R2_NUM", 0);
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX).isEmpty());
+    }
+
+    public void testEquiJoinHashJoinDisabled() {
+        aide.setEnableHashJoins(false);
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1_NUM = R2_NUM", 0);
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+    }
+
+    public void testEquiJoinWithExtraClause() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1_NUM = R2_NUM AND R1_PKEY > R2_VAL", 0);
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+    }
+
+    public void testEquiJoinWithIndex() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1_PKEY = R2_PKEY", 0);
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX).isEmpty());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+    }
+
+    public void testNonEquiJoin() {
+        AbstractPlanNode pn = compile("SELECT * FROM R1, R2 WHERE R1_NUM < R2_NUM", 0);
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.HASHJOIN).isEmpty());
+    }
+}
@@ -0,0 +1,50 @@
+package org.voltdb.sysprocs;
+
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+
+import edu.brown.BaseTestCase;
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.utils.ProjectType;
+
+public class TestGetCatalog extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 6;
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+    }
+    
+    /**
+     * testEncodeDecode
+     */
+    public void testEncodeDecode() throws Exception {
+        VoltTable vt = GetCatalog.encode(catalog);
+        assertNotNull(vt);
+        assert(vt.getRowCount() > 0);
+        
+        Catalog clone = GetCatalog.decode(vt);
+        assertNotNull(clone);
+        assertEquals(catalog.serialize(), clone.serialize());
+        
+        // Make sure that the client will have everything that it needs to route txns
+        Database clone_db = CatalogUtil.getDatabase(clone);
+        assertEquals(NUM_PARTITIONS, CatalogUtil.getNumberOfPartitions(clone_db));
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            Procedure clone_proc = clone_db.getProcedures().get(catalog_proc.getName());
+            assertNotNull(catalog_proc.getName(), clone_proc);
+            assertEquals(catalog_proc.getPartitionparameter(), clone_proc.getPartitionparameter());
+        } // FOR
+        
+        int expected[] = CatalogUtil.getPartitionSiteXrefArray(catalog);
+        int actual[] = CatalogUtil.getPartitionSiteXrefArray(clone);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+        } // FOR
+    }
+}